@@ -0,0 +1,153 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+/**
+ * Determines how often the Hue bridge should be polled for light state. The interval drops to its minimum whenever
+ * a command is sent or a change is detected and then doubles (up to a maximum) for each successive poll that
+ * finds nothing has changed.
+ *
+ * @author Dan Noguerol
+ */
+public class AdaptivePollController {
+    // weight given to the most recent poll when calculating the change rate
+    private static final double CHANGE_RATE_WEIGHT = 0.2;
+
+    private long minInterval;
+    private long maxInterval;
+    private long interval;
+    private long reconcileInterval;
+    private long lastPollTime;
+    private double changeRate;
+    private long pollCount;
+    private long changeCount;
+
+    /**
+     * Constructor.
+     *
+     * @param minInterval the shortest time between polls (in milliseconds)
+     * @param maxInterval the longest time between polls (in milliseconds)
+     */
+    public AdaptivePollController(long minInterval, long maxInterval) {
+        setIntervals(minInterval, maxInterval);
+        this.interval = minInterval;
+    }
+
+    /**
+     * Sets the bounds of the poll interval.
+     *
+     * @param minInterval the shortest time between polls (in milliseconds)
+     * @param maxInterval the longest time between polls (in milliseconds)
+     */
+    synchronized public void setIntervals(long minInterval, long maxInterval) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Invalid poll interval range: " + minInterval + "-" + maxInterval);
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = Math.max(minInterval, Math.min(interval, maxInterval));
+    }
+
+    /**
+     * Sets a fixed interval to use in place of the adaptive one. This is used when light state changes are being
+     * pushed by the bridge and polling is only needed to catch anything that was missed.
+     *
+     * @param reconcileInterval the time between polls (in milliseconds) or 0 to return to adaptive polling
+     */
+    synchronized public void setReconcileInterval(long reconcileInterval) {
+        if (reconcileInterval < 0) {
+            throw new IllegalArgumentException("Invalid reconcile interval: " + reconcileInterval);
+        }
+        this.reconcileInterval = reconcileInterval;
+    }
+
+    /**
+     * Indicates whether a poll should be sent.
+     *
+     * @param now the current time
+     *
+     * @return a boolean
+     */
+    synchronized public boolean isPollDue(long now) {
+        return (lastPollTime == 0 || now - lastPollTime >= getInterval());
+    }
+
+    /**
+     * Called when a poll is sent to the bridge.
+     *
+     * @param now the current time
+     */
+    synchronized public void onPollSent(long now) {
+        lastPollTime = now;
+    }
+
+    /**
+     * Called when the result of a poll is received.
+     *
+     * @param changed whether any light state changed since the previous poll
+     */
+    synchronized public void onPollResult(boolean changed) {
+        pollCount++;
+        changeRate = CHANGE_RATE_WEIGHT * (changed ? 1.0 : 0.0) + (1.0 - CHANGE_RATE_WEIGHT) * changeRate;
+        if (changed) {
+            changeCount++;
+            interval = minInterval;
+        } else {
+            interval = Math.min(interval * 2, maxInterval);
+        }
+    }
+
+    /**
+     * Called when a change is detected outside of a poll (e.g. from a single light request).
+     */
+    synchronized public void onChange() {
+        changeCount++;
+        interval = minInterval;
+    }
+
+    /**
+     * Called when a command is sent to a light. The next poll is made after the minimum interval so that the
+     * light's new state is picked up quickly.
+     *
+     * @param now the current time
+     */
+    synchronized public void onWrite(long now) {
+        interval = minInterval;
+        if (lastPollTime == 0 || now - lastPollTime >= minInterval) {
+            lastPollTime = now;
+        }
+    }
+
+    /**
+     * Returns the current poll interval.
+     *
+     * @return a time interval in milliseconds
+     */
+    synchronized public long getInterval() {
+        return (reconcileInterval > 0) ? reconcileInterval : interval;
+    }
+
+    /**
+     * Returns the fraction of recent polls that found a change, weighted towards the most recent.
+     *
+     * @return a value between 0 and 1
+     */
+    synchronized public double getChangeRate() {
+        return changeRate;
+    }
+
+    synchronized public long getPollCount() {
+        return pollCount;
+    }
+
+    synchronized public long getChangeCount() {
+        return changeCount;
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue;
+
+import java.util.Random;
+
+/**
+ * A circuit breaker that stops requests from being sent to a bridge that isn't responding (e.g. while it reboots).
+ *
+ * The breaker starts closed and lets everything through. After a number of consecutive failures it opens and
+ * rejects all requests until a backoff delay has passed. It then becomes half-open and lets a single probe request
+ * through: if the probe succeeds the breaker closes again and if it fails the breaker re-opens with a longer
+ * delay. Delays double with each failed probe (up to a maximum) and are jittered so that multiple plugins don't
+ * hit a recovering bridge at the same moment.
+ *
+ * @author Dan Noguerol
+ */
+public class BridgeCircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Random random;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int attempt;
+    private long nextAttemptTime;
+    private long openCount;
+    private long rejectedCount;
+    private long probeCount;
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param baseDelay the delay (in milliseconds) before the first probe
+     * @param maxDelay the longest delay (in milliseconds) between probes
+     */
+    public BridgeCircuitBreaker(int failureThreshold, long baseDelay, long maxDelay) {
+        this(failureThreshold, baseDelay, maxDelay, new Random());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param baseDelay the delay (in milliseconds) before the first probe
+     * @param maxDelay the longest delay (in milliseconds) between probes
+     * @param random the source of jitter
+     */
+    public BridgeCircuitBreaker(int failureThreshold, long baseDelay, long maxDelay, Random random) {
+        if (failureThreshold < 1 || baseDelay <= 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings: " + failureThreshold + "/" + baseDelay + "/" + maxDelay);
+        }
+        this.failureThreshold = failureThreshold;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    /**
+     * Indicates whether a request can be sent. When the breaker is open and its delay has passed, this
+     * transitions it to half-open and allows the caller's request through as the probe.
+     *
+     * @param now the current time
+     *
+     * @return a boolean
+     */
+    synchronized public boolean allowRequest(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+            case HALF_OPEN:
+                if (now >= nextAttemptTime) {
+                    state = State.HALF_OPEN;
+                    // if the probe is never answered, another is allowed after the maximum delay
+                    nextAttemptTime = now + maxDelay;
+                    probeCount++;
+                    return true;
+                }
+                break;
+        }
+        // either still backing off or waiting on the outstanding probe
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Indicates whether requests are currently being rejected. Unlike allowRequest(), this doesn't change the
+     * breaker's state so it can be used to find out whether a request would be dropped without using up the probe.
+     *
+     * @param now the current time
+     *
+     * @return a boolean
+     */
+    synchronized public boolean isRejecting(long now) {
+        return (state != State.CLOSED && now < nextAttemptTime);
+    }
+
+    /**
+     * Called when a response is received from the bridge.
+     *
+     * @return true if this closed the breaker
+     */
+    synchronized public boolean onSuccess() {
+        consecutiveFailures = 0;
+        attempt = 0;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called when a request to the bridge fails.
+     *
+     * @param now the current time
+     *
+     * @return true if this opened a previously closed breaker
+     */
+    synchronized public boolean onFailure(long now) {
+        consecutiveFailures++;
+        switch (state) {
+            case CLOSED:
+                if (consecutiveFailures >= failureThreshold) {
+                    open(now);
+                    openCount++;
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                // the probe failed
+                attempt++;
+                open(now);
+                break;
+        }
+        // failures while open come from requests sent before it opened and don't extend the delay
+        return false;
+    }
+
+    synchronized public State getState() {
+        return state;
+    }
+
+    synchronized public long getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    synchronized public long getOpenCount() {
+        return openCount;
+    }
+
+    synchronized public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    synchronized public long getProbeCount() {
+        return probeCount;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        // the delay is chosen at random from the upper half of the backoff interval
+        long delay = Math.min(maxDelay, baseDelay << Math.min(attempt, 20));
+        nextAttemptTime = now + delay / 2 + (long)(random.nextDouble() * (delay - delay / 2));
+    }
+}
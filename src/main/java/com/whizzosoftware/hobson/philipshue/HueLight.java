@@ -17,6 +17,9 @@ import com.whizzosoftware.hobson.api.property.TypedProperty;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableState;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
 import com.whizzosoftware.hobson.api.variable.VariableMask;
+import com.whizzosoftware.hobson.philipshue.api.ColorConversion;
+import com.whizzosoftware.hobson.philipshue.api.XYColorCache;
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
 import com.whizzosoftware.hobson.philipshue.api.dto.Light;
 import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 import com.whizzosoftware.hobson.philipshue.api.dto.GetLightAttributeAndStateRequest;
@@ -31,16 +34,27 @@ import java.util.Map;
 /**
  * A class that represents a Hobson device for a Hue light.
  *
+ * Colors are sent to the light as CIE xy coordinates (clamped to the gamut of the light's model) with brightness
+ * sent separately. Reported xy colors are converted back to hue and saturation; since the two conversions don't
+ * quite round-trip, a reported color that matches the last one sent is published as the color that was requested.
+ * Hue/saturation and color temperature strings come from a LightColorCache shared by all lights.
+ *
  * @author Dan Noguerol
  */
 public class HueLight extends AbstractHobsonDeviceProxy {
     private Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final HuePlugin plugin;
     private final String model;
+    private final XYColorCache xyCache;
+    private final LightColorCache colorCache;
     private StateContext context;
     private Boolean initialOnValue;
     private String initialColor;
     private boolean available;
+    private volatile CompactLightState lastState;
+    private final LightStateSnapshot snapshot = new LightStateSnapshot();
+    private volatile SentColor sentColor;
 
     /**
      * Constructor.
@@ -53,7 +67,10 @@ public class HueLight extends AbstractHobsonDeviceProxy {
      */
     public HueLight(HuePlugin plugin, String id, String model, String defaultName, StateContext context) {
         super(plugin, id, defaultName, DeviceType.LIGHTBULB);
+        this.plugin = plugin;
         this.model = model;
+        this.xyCache = plugin.getXYColorCache();
+        this.colorCache = plugin.getLightColorCache();
         this.context = context;
         this.available = false;
     }
@@ -130,21 +147,70 @@ public class HueLight extends AbstractHobsonDeviceProxy {
         }
 
         if (on != null || color != null) {
-            LightState state = new LightState(on, color, null, null);
+            LightState state = (color != null && color.isColor()) ? createXYLightState(on, color) : new LightState(on, color, null, null);
             logger.debug("New state for device {} is {}", getContext(), state);
-            context.sendSetLightStateRequest(new SetLightStateRequest(getContext().getDeviceId(), state));
+            boolean sent = context.sendSetLightStateRequest(new SetLightStateRequest(getContext().getDeviceId(), state));
+
+            // reflect the new state right away rather than waiting for the bridge to report it; state the bridge
+            // reports before it catches up is ignored so this won't flip back in the meantime
+            if (sent && available) {
+                Map<String,Object> updates = new HashMap<>();
+                if (on != null) {
+                    updates.put(VariableConstants.ON, on);
+                }
+                String c = convertLightStateToColor(CompactLightState.of(state));
+                if (c != null) {
+                    updates.put(VariableConstants.COLOR, c);
+                }
+                setVariableValues(updates);
+                snapshot.invalidate();
+            }
         }
     }
 
+    /**
+     * Creates the state for a color command in xy form.
+     *
+     * @param on the on value (or null)
+     * @param color the color
+     *
+     * @return a LightState
+     */
+    private LightState createXYLightState(Boolean on, Color color) {
+        int[] rgb = new int[3];
+        float[] xy = new float[2];
+        ColorConversion.rgbFromHueSaturation(color.getHue(), color.getSaturation(), rgb);
+        xyCache.calculateXY(rgb[0], rgb[1], rgb[2], plugin.getColorGamuts().forModel(model), xy);
+
+        LightState state = new LightState();
+        state.setOn(on);
+        state.setXY(xy[0], xy[1]);
+        state.setBrightness((int)(color.getBrightness() * 2.54));
+        state.setColorMode(LightState.MODE_XY);
+
+        sentColor = new SentColor(xy[0], xy[1], color.getHue(), color.getSaturation());
+
+        return state;
+    }
+
     void refresh() {
         logger.debug("Refreshing device {}", getContext());
         context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(getContext().getDeviceId()));
     }
 
-    void onLightState(LightState state) {
+    /**
+     * Returns the last state reported for this light by the Hue bridge.
+     *
+     * @return a CompactLightState or null if the state is not known
+     */
+    CompactLightState getLastState() {
+        return lastState;
+    }
+
+    void onLightState(CompactLightState state) {
         if (state != null) {
             long now = System.currentTimeMillis();
-            Map<String,Object> updates = null;
+            lastState = state;
 
             // set the check-in time
             if (state.isReachable()) {
@@ -154,25 +220,32 @@ public class HueLight extends AbstractHobsonDeviceProxy {
 
                 setLastCheckin(now);
 
+                // most polls don't change anything so the variables are only looked at (and the color only
+                // converted) if a field that feeds into them differs from the last state
+                int changes = snapshot.update(state);
+                if (changes == 0) {
+                    return;
+                }
+
+                Map<String,Object> updates = null;
+
                 DeviceVariableState var = getVariableState(VariableConstants.ON);
-                if (var != null) {
+                if (var == null) {
+                    snapshot.invalidate();
+                } else if ((changes & LightStateSnapshot.ON) != 0) {
                     Boolean on = state.getOn();
-                    if (!state.isReachable()) {
-                        on = null;
-                    }
                     if ((var.getValue() == null && on != null) || (var.getValue() != null && !var.getValue().equals(on))) {
-                        logger.debug("Detected change in on status for {}: {} (old value was {})", getContext(), state.getOn(), var.getValue());
+                        logger.debug("Detected change in on status for {}: {} (old value was {})", getContext(), on, var.getValue());
                         updates = new HashMap<>();
                         updates.put(VariableConstants.ON, on);
                     }
                 }
 
                 var = getVariableState(VariableConstants.COLOR);
-                if (var != null) {
+                if (var == null) {
+                    snapshot.invalidate();
+                } else if ((changes & LightStateSnapshot.COLOR) != 0) {
                     String color = convertLightStateToColor(state);
-                    if (!state.isReachable()) {
-                        color = null;
-                    }
                     if ((var.getValue() == null && color != null) || (color != null && !var.getValue().equals(color))) {
                         logger.debug("Detected change in color status for {}: {} (old value was {})", getContext(), color, var.getValue());
                         if (updates == null) {
@@ -185,18 +258,43 @@ public class HueLight extends AbstractHobsonDeviceProxy {
                 if (updates != null) {
                     setVariableValues(updates);
                 }
-            } else if (available) {
-                available = false;
-                postEvent(new DeviceUnavailableEvent(now, getContext()));
+            } else {
+                snapshot.invalidate();
+                if (available) {
+                    available = false;
+                    postEvent(new DeviceUnavailableEvent(now, getContext()));
+                }
             }
         }
     }
 
+    /**
+     * Called when a command that has already been reflected in the variables is dropped before it reaches the Hue
+     * bridge. The variables are put back to the last state the bridge reported.
+     */
+    void onCommandDropped() {
+        snapshot.invalidate();
+        onLightState(lastState);
+    }
+
+    void onLightStateUnchanged() {
+        // the variables are already current so only the check-in time needs updating
+        if (available) {
+            setLastCheckin(System.currentTimeMillis());
+        }
+    }
+
     void onLightStateFailure(Throwable t) {
         logger.debug("Received failure for light " + getContext(), t);
 
         // set all variables to null to indicate that the current state of this light is now unknown
         long now = System.currentTimeMillis();
+        lastState = null;
+        snapshot.invalidate();
+        if (available) {
+            available = false;
+            postEvent(new DeviceUnavailableEvent(now, getContext()));
+        }
         Map<String,Object> updates = new HashMap<>();
         updates.put(VariableConstants.ON, now);
         updates.put(VariableConstants.COLOR, now);
@@ -235,13 +333,45 @@ public class HueLight extends AbstractHobsonDeviceProxy {
         }
     } 
 
-    String convertLightStateToColor(LightState state) {
+    String convertLightStateToColor(CompactLightState state) {
         if (state != null && state.hasColor()) {
-            return new Color((int)(Math.round(state.getHue() / 182.0416666667)), (int)(state.getSaturation() / 2.54), (int)(state.getBrightness() / 2.54)).toString();
+            return colorCache.getHueSaturationColor(state.getHue(-1), state.getSaturation(-1), state.getBrightness(-1));
+        } else if (state != null && state.hasColorXY()) {
+            return convertXYToColor(state.getX(0.0f), state.getY(0.0f), (int)(state.getBrightness() / 2.54));
         } else if (state != null && state.hasColorTemperature()) {
-            return new Color(1000000 / state.getColorTemperature(), (int)(state.getBrightness() / 2.54)).toString();
+            return colorCache.getTemperatureColor(state.getColorTemperature(-1), state.getBrightness(-1));
         } else {
             return null;
         }
     }
+
+    private String convertXYToColor(float x, float y, int brightness) {
+        SentColor sc = sentColor;
+        if (sc != null && Math.abs(sc.x - x) <= LightStateShadow.XY_TOLERANCE && Math.abs(sc.y - y) <= LightStateShadow.XY_TOLERANCE) {
+            return new Color(sc.hue, sc.saturation, brightness).toString();
+        }
+        float[] xy = {x, y};
+        int[] rgb = new int[3];
+        ColorConversion.colorFromXY(xy, plugin.getColorGamuts().forModel(model), rgb);
+        int[] hs = new int[2];
+        ColorConversion.hueSaturationFromRGB(Math.min(rgb[0], 255), Math.min(rgb[1], 255), Math.min(rgb[2], 255), hs);
+        return new Color(hs[0], hs[1], brightness).toString();
+    }
+
+    /**
+     * The last color sent to the light and the xy coordinates it was sent as.
+     */
+    private static class SentColor {
+        final float x;
+        final float y;
+        final int hue;
+        final int saturation;
+
+        SentColor(float x, float y, int hue, int saturation) {
+            this.x = x;
+            this.y = y;
+            this.hue = hue;
+            this.saturation = saturation;
+        }
+    }
 }
@@ -15,15 +15,30 @@ import com.whizzosoftware.hobson.api.event.EventHandler;
 import com.whizzosoftware.hobson.api.event.advertisement.DeviceAdvertisementEvent;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.api.plugin.http.AbstractHttpClientPlugin;
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
 import com.whizzosoftware.hobson.api.plugin.http.HttpResponse;
 import com.whizzosoftware.hobson.api.property.PropertyConstraintType;
 import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.property.TypedProperty;
+import com.whizzosoftware.hobson.philipshue.api.BridgeCertificateTrust;
+import com.whizzosoftware.hobson.philipshue.api.BridgeRequestScheduler;
+import com.whizzosoftware.hobson.philipshue.api.ColorGamut;
+import com.whizzosoftware.hobson.philipshue.api.ColorGamutRegistry;
 import com.whizzosoftware.hobson.philipshue.api.HttpContext;
+import com.whizzosoftware.hobson.philipshue.api.HttpResponseHandler;
 import com.whizzosoftware.hobson.philipshue.api.HueBridge;
+import com.whizzosoftware.hobson.philipshue.api.HueEventListener;
+import com.whizzosoftware.hobson.philipshue.api.HueEventStream;
 import com.whizzosoftware.hobson.philipshue.api.HueException;
+import com.whizzosoftware.hobson.philipshue.api.HueTimeoutException;
+import com.whizzosoftware.hobson.philipshue.api.KeepAliveHttpContext;
+import com.whizzosoftware.hobson.philipshue.api.XYColorCache;
 import com.whizzosoftware.hobson.philipshue.api.dto.*;
 import com.whizzosoftware.hobson.philipshue.state.InitializingState;
+import com.whizzosoftware.hobson.philipshue.state.PollStrategy;
+import com.whizzosoftware.hobson.philipshue.state.RunningState;
+import com.whizzosoftware.hobson.philipshue.state.ShadowMatch;
 import com.whizzosoftware.hobson.philipshue.state.State;
 import com.whizzosoftware.hobson.philipshue.state.StateContext;
 import com.whizzosoftware.hobson.ssdp.SSDPPacket;
@@ -31,9 +46,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Philips Hue plugin. This uses a REST client to communicate with the Hue bridge in order to discover
@@ -41,20 +62,97 @@ import java.util.Collections;
  *
  * @author Dan Noguerol
  */
-public class HuePlugin extends AbstractHttpClientPlugin implements StateContext, HttpContext {
+public class HuePlugin extends AbstractHttpClientPlugin implements StateContext, HttpContext, HttpResponseHandler, HueEventListener {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public static final String PROP_BRIDGE_HOST = "bridge.host";
+    public static final String PROP_BRIDGE_CERTIFICATE = "bridge.certificate";
+    public static final String PROP_WRITE_WINDOW = "write.window";
+    public static final String PROP_WRITE_BATCH_DELAY = "write.batch.delay";
+    public static final String PROP_WRITE_SETTLE_WINDOW = "write.settle.window";
+    public static final String PROP_BRIDGE_RATE = "bridge.rate";
+    public static final String PROP_BRIDGE_BURST = "bridge.burst";
+    public static final String PROP_POLL_MIN_INTERVAL = "poll.interval.min";
+    public static final String PROP_POLL_MAX_INTERVAL = "poll.interval.max";
+    public static final String PROP_POLL_FULL_STATE = "poll.fullstate";
+    public static final String PROP_EVENT_STREAM = "eventstream.enabled";
+    public static final String PROP_RECONCILE_INTERVAL = "eventstream.reconcile.interval";
+    public static final String PROP_REQUEST_TIMEOUT = "request.timeout";
+    public static final String PROP_HTTP_KEEPALIVE = "http.keepalive";
+    public static final String PROP_HTTP_CONNECTIONS = "http.connections";
+    public static final String PROP_COLOR_GAMUTS = "color.gamuts";
     private static final String HUE_DEVICE = "whizzohobson";
     private static final String HUE_USER = "whizzohobson";
-    private static final long DEFAULT_REFRESH_INTERVAL_IN_SECONDS = 5;
+    // the refresh interval is only a tick; the adaptive poll controller decides when the bridge is actually polled
+    private static final long REFRESH_INTERVAL_IN_SECONDS = 1;
+    private static final long DEFAULT_POLL_MIN_INTERVAL_IN_MS = 1000;
+    private static final long DEFAULT_POLL_MAX_INTERVAL_IN_MS = 30000;
+    private static final long DEFAULT_RECONCILE_INTERVAL_IN_MS = 60000;
+    private static final long DEFAULT_WRITE_WINDOW_IN_MS = 100;
+    private static final long DEFAULT_WRITE_BATCH_DELAY_IN_MS = 20;
+    private static final long DEFAULT_WRITE_SETTLE_WINDOW_IN_MS = 2000;
+    private static final long DEFAULT_BRIDGE_RATE = 10;
+    private static final long DEFAULT_BRIDGE_BURST = 5;
+    private static final int MAX_TRANSIENT_GROUPS = 16;
+    private static final long MAX_PENDING_REQUEST_TIME_IN_MS = 15000;
+    private static final int BREAKER_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_HTTP_CONNECTIONS = 2;
+    private static final long BREAKER_BASE_DELAY_IN_MS = 1000;
+    private static final long BREAKER_MAX_DELAY_IN_MS = 60000;
+    // group actions are more expensive for the bridge than single light commands so small batches aren't collapsed
+    private static final int MIN_GROUP_ACTION_SIZE = 3;
+    private static final int XY_COLOR_CACHE_SIZE = 64;
+    private static final int LIGHT_COLOR_CACHE_SIZE = 256;
 
     private HueBridge bridge;
     private State state = new InitializingState();
     private final HueBridgeList bridges = new HueBridgeList();
+    private final LightStateWriteQueue writeQueue = new LightStateWriteQueue(DEFAULT_WRITE_WINDOW_IN_MS, DEFAULT_WRITE_BATCH_DELAY_IN_MS);
+    private final LightCommandFilter commandFilter = new LightCommandFilter();
+    private final LightStateShadow shadow = new LightStateShadow(DEFAULT_WRITE_SETTLE_WINDOW_IN_MS);
+    private final LightGroupRegistry groupRegistry = new LightGroupRegistry(MAX_TRANSIENT_GROUPS);
+    private final RequestTracker requestTracker = new RequestTracker(MAX_PENDING_REQUEST_TIME_IN_MS);
+    private final BridgeCircuitBreaker breaker = new BridgeCircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_BASE_DELAY_IN_MS, BREAKER_MAX_DELAY_IN_MS);
+    private final AdaptivePollController pollController = new AdaptivePollController(DEFAULT_POLL_MIN_INTERVAL_IN_MS, DEFAULT_POLL_MAX_INTERVAL_IN_MS);
+    private final XYColorCache xyColorCache = new XYColorCache(XY_COLOR_CACHE_SIZE);
+    private final LightColorCache lightColorCache = new LightColorCache(LIGHT_COLOR_CACHE_SIZE);
+    private long groupActionCount;
+    private long groupCollapsedCount;
+    private long lightStateAppliedCount;
+    private long lightStateUnchangedCount;
+    private long lightEventCount;
+    private boolean allLightsFailed;
+    private final ScheduledExecutorService scheduler;
+    private final Executor eventLoopExecutor = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            executeInEventLoop(r);
+        }
+    };
+    private final BridgeRequestScheduler httpContext;
+    private ScheduledFuture writeQueueFlushFuture;
+    private volatile PollStrategy pollStrategy = PollStrategy.LIGHTS;
+    private boolean eventStreamEnabled;
+    private long reconcileInterval = DEFAULT_RECONCILE_INTERVAL_IN_MS;
+    private HueEventStream eventStream;
+    private volatile String bridgeCertificate;
+    private volatile long requestTimeout = MAX_PENDING_REQUEST_TIME_IN_MS;
+    private volatile KeepAliveHttpContext keepAliveContext;
+    private volatile ColorGamutRegistry colorGamuts = ColorGamutRegistry.DEFAULT;
+    private long writeQueueFlushTime;
 
     public HuePlugin(String pluginId, String version, String description) {
         super(pluginId, version, description);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Hue Plugin Scheduler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        httpContext = new BridgeRequestScheduler(this, scheduler, eventLoopExecutor, DEFAULT_BRIDGE_RATE, (int)DEFAULT_BRIDGE_BURST);
     }
 
     // ***
@@ -63,6 +161,8 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
 
     @Override
     public void onStartup(PropertyContainer config) {
+        applyConfiguration(config);
+
         try {
             String bridgeHost = (String)config.getPropertyValue(PROP_BRIDGE_HOST);
             // if the bridge host is already configured, use it; otherwise, look for a device advertisement
@@ -84,6 +184,9 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
 
     @Override
     public void onShutdown() {
+        stopEventStream();
+        setKeepAliveConnections(0);
+        scheduler.shutdownNow();
     }
 
     @Override
@@ -91,6 +194,36 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
         return new TypedProperty[] {
             new TypedProperty.Builder(PROP_BRIDGE_HOST, "Hue Bridge", "The hostname or IP address of the Philips Hue Bridge. This should be detected automatically but you can enter it manually here if necessary.", TypedProperty.Type.STRING)
                 .constraint(PropertyConstraintType.required, true)
+                .build(),
+            new TypedProperty.Builder(PROP_WRITE_WINDOW, "Command Window", "The minimum time (in milliseconds) between commands sent to the same light. Commands that arrive faster than this are merged into a single command.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_WRITE_BATCH_DELAY, "Command Batch Delay", "The time (in milliseconds) to hold new commands so that identical commands to many lights can be sent to the bridge as a single group command.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_WRITE_SETTLE_WINDOW, "Command Settle Window", "The time (in milliseconds) to give the Hue bridge to reflect a command. Light state it reports during this time that contradicts the command is ignored.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_BRIDGE_RATE, "Bridge Request Rate", "The maximum number of requests per second to send to the Hue bridge.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_BRIDGE_BURST, "Bridge Request Burst", "The maximum number of requests that can be sent to the Hue bridge back-to-back before the request rate applies.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_POLL_MIN_INTERVAL, "Minimum Poll Interval", "The shortest time (in milliseconds) between light state polls. This is used after a command is sent or a change is detected.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_POLL_MAX_INTERVAL, "Maximum Poll Interval", "The longest time (in milliseconds) between light state polls when nothing is changing.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_POLL_FULL_STATE, "Poll Full Bridge State", "Retrieve the bridge's entire datastore (lights and groups) with each poll instead of just the lights. This is recommended for large installs and older bridge firmware.", TypedProperty.Type.BOOLEAN)
+                .build(),
+            new TypedProperty.Builder(PROP_EVENT_STREAM, "Use Event Stream", "Receive light changes from the bridge as they happen rather than waiting for the next poll. This requires a bridge that supports the event stream.", TypedProperty.Type.BOOLEAN)
+                .build(),
+            new TypedProperty.Builder(PROP_BRIDGE_CERTIFICATE, "Bridge Certificate", "The SHA-256 fingerprint of the Hue bridge's certificate, used to secure the event stream. This is filled in automatically the first time the event stream connects; clear it if the bridge is replaced.", TypedProperty.Type.STRING)
+                .build(),
+            new TypedProperty.Builder(PROP_RECONCILE_INTERVAL, "Reconcile Interval", "The time (in milliseconds) between light state polls while the event stream is connected.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_REQUEST_TIMEOUT, "Request Timeout", "The time (in milliseconds) to wait for the Hue bridge to respond to a request before giving up on it.", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_HTTP_KEEPALIVE, "Persistent Connections", "Re-use connections to the Hue bridge rather than opening a new one for every request.", TypedProperty.Type.BOOLEAN)
+                .build(),
+            new TypedProperty.Builder(PROP_HTTP_CONNECTIONS, "Maximum Connections", "The maximum number of persistent connections to keep open to the Hue bridge (no more than the JVM's http.maxConnections, which is 5 by default).", TypedProperty.Type.NUMBER)
+                .build(),
+            new TypedProperty.Builder(PROP_COLOR_GAMUTS, "Color Gamuts", "Color gamuts for light models that aren't recognized, as a comma-separated list of model=gamut pairs (e.g. LCT015=C). The gamut can be A, B or C.", TypedProperty.Type.STRING)
                 .build()
         };
     }
@@ -102,16 +235,19 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
 
     @Override
     public long getRefreshInterval() {
-        return DEFAULT_REFRESH_INTERVAL_IN_SECONDS;
+        return REFRESH_INTERVAL_IN_SECONDS;
     }
 
     @Override
     public void onRefresh() {
+        expireRequests(System.currentTimeMillis());
         setState(state.onRefresh(this));
     }
 
     @Override
     public void onPluginConfigurationUpdate(PropertyContainer config) {
+        applyConfiguration(config);
+
         String host = (String)config.getPropertyValue(PROP_BRIDGE_HOST);
         if (bridge == null || !host.equals(bridge.getHost())) {
             try {
@@ -137,8 +273,25 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
     @Override
     public void onHttpResponse(HttpResponse response, Object context) {
         logger.trace("Received HTTP response");
+        long now = System.currentTimeMillis();
+        requestTracker.complete(context, now);
+        // any response at all means the bridge is reachable
+        if (breaker.onSuccess()) {
+            logger.info("Hue bridge is responding again");
+            pollController.onChange();
+        }
         try {
             BridgeResponse br = bridge.parseResponse(context, response.getStatusCode(), response.getBody());
+            if (br instanceof SetLightStateResponse) {
+                shadow.onAcknowledge(((SetLightStateResponse)br).getId(), now);
+            } else if (br instanceof SetGroupActionResponse) {
+                for (String id : ((SetGroupActionRequest)context).getLightIds()) {
+                    shadow.onAcknowledge(id, now);
+                }
+            } else {
+                // the bridge rejected the command so its state is what counts
+                clearShadow(context);
+            }
             setState(state.onBridgeResponse(this, br));
         } catch (HueException e) {
             logger.error("Error processing bridge response", e);
@@ -147,11 +300,71 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
         }
     }
 
+    @Override
+    public void sendHttpRequest(URI uri, HttpRequest.Method method, Map<String,String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+        KeepAliveHttpContext ctx = keepAliveContext;
+        if (ctx != null) {
+            ctx.sendHttpRequest(uri, method, headers, cookies, body, context);
+        } else {
+            super.sendHttpRequest(uri, method, headers, cookies, body, context);
+        }
+    }
+
     @Override
     public void onHttpRequestFailure(Throwable cause, Object context) {
+        requestTracker.complete(context);
+        clearShadow(context);
+        onBridgeFailure(System.currentTimeMillis());
         state.onBridgeRequestFailure(this, context, cause);
     }
 
+    // ***
+    // HueEventListener methods
+    // ***
+
+    // stream callbacks arrive on the stream's thread so they're handed to the plugin event loop to be processed
+    // with everything else; the state machine and lights are only ever touched from the event loop
+
+    @Override
+    public void onEventStreamConnected() {
+        executeInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (HuePlugin.this) {
+                    logger.info("Connected to Hue bridge event stream; polling every {}ms to reconcile", reconcileInterval);
+                    pollController.setReconcileInterval(reconcileInterval);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onLightEvent(final String lightId, final LightState lightState) {
+        final long sequence = requestTracker.nextSequence();
+        synchronized (this) {
+            lightEventCount++;
+        }
+        executeInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                setState(state.onLightEvent(HuePlugin.this, lightId, lightState, sequence));
+            }
+        });
+    }
+
+    @Override
+    public void onEventStreamDisconnected(Throwable t) {
+        executeInEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Lost connection to Hue bridge event stream; resuming polling");
+                pollController.setReconcileInterval(0);
+                // poll soon in case anything was missed while the stream was down
+                pollController.onChange();
+            }
+        });
+    }
+
     // ***
     // StateContext methods
     // ***
@@ -172,15 +385,39 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
     }
 
     @Override
-    public void onLightState(String deviceId, LightState state) {
+    public void onLightState(String deviceId, CompactLightState state, long sequence) {
         HueLight light = (HueLight)getDeviceProxy(deviceId);
         if (light != null) {
             light.onLightState(state);
+            synchronized (this) {
+                lightStateAppliedCount++;
+            }
         } else {
             logger.error("Received state for unknown Hue device: {}", deviceId);
         }
     }
 
+    @Override
+    public boolean isLightStateCurrent(String deviceId, long sequence) {
+        return requestTracker.acceptLightState(deviceId, sequence);
+    }
+
+    @Override
+    public ShadowMatch checkLightState(String deviceId, CompactLightState state) {
+        return shadow.check(deviceId, state, System.currentTimeMillis());
+    }
+
+    @Override
+    public void onLightStateUnchanged(String deviceId) {
+        HueLight light = (HueLight)getDeviceProxy(deviceId);
+        if (light != null) {
+            light.onLightStateUnchanged();
+            synchronized (this) {
+                lightStateUnchangedCount++;
+            }
+        }
+    }
+
     @Override
     public void onLightStateFailure(String deviceId, Throwable t) {
         HueLight light = (HueLight)getDeviceProxy(deviceId);
@@ -193,6 +430,13 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
 
     @Override
     public void onAllLightStateFailure(Throwable t) {
+        // lights are only failed once per outage rather than on every failed poll
+        synchronized (this) {
+            if (allLightsFailed) {
+                return;
+            }
+            allLightsFailed = true;
+        }
         for (HobsonDeviceProxy hd : getDeviceProxies()) {
             ((HueLight)hd).onLightStateFailure(t);
         }
@@ -215,43 +459,134 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
 
     @Override
     public void sendCreateUserRequest(CreateUserRequest request) {
+        requestTracker.start(request, System.currentTimeMillis());
         try {
-            bridge.sendCreateUserRequest(this, request);
+            bridge.sendCreateUserRequest(httpContext, request);
         } catch (HueException e) {
+            requestTracker.complete(request);
             logger.error("Error sending CreateUser request", e);
         }
     }
 
     @Override
     public void sendGetAllLightsRequest(GetAllLightsRequest request) {
+        if (!requestTracker.start(request, System.currentTimeMillis())) {
+            logger.trace("GetAllLights request already pending; skipping");
+            return;
+        }
+        if (!isBridgeAvailable(request)) {
+            return;
+        }
+        pollController.onPollSent(System.currentTimeMillis());
         try {
-            bridge.sendGetAllLightsRequest(this, request);
+            bridge.sendGetAllLightsRequest(httpContext, request);
             logger.trace("Sent GetAllLights request");
         } catch (HueException e) {
+            requestTracker.complete(request);
             logger.error("Error sending GetAllLights request", e);
         }
     }
 
     @Override
-    public void sendGetLightAttributeAndStateRequest(GetLightAttributeAndStateRequest request) {
+    public void sendGetFullStateRequest(GetFullStateRequest request) {
+        if (!requestTracker.start(request, System.currentTimeMillis())) {
+            logger.trace("GetFullState request already pending; skipping");
+            return;
+        }
+        if (!isBridgeAvailable(request)) {
+            return;
+        }
+        pollController.onPollSent(System.currentTimeMillis());
         try {
-            bridge.sendGetLightAttributeAndStateRequest(this, request);
+            bridge.sendGetFullStateRequest(httpContext, request);
+            logger.trace("Sent GetFullState request");
         } catch (HueException e) {
-            logger.error("Error sending GetLightAttributeAndState request", e);
+            requestTracker.complete(request);
+            logger.error("Error sending GetFullState request", e);
         }
     }
 
     @Override
-    public void sendSetLightStateRequest(SetLightStateRequest request) {
+    public void sendGetLightAttributeAndStateRequest(GetLightAttributeAndStateRequest request) {
+        if (!requestTracker.start(request, System.currentTimeMillis())) {
+            logger.trace("GetLightAttributeAndState request for {} already pending; skipping", request.getId());
+            return;
+        }
+        if (!isBridgeAvailable(request)) {
+            return;
+        }
         try {
-            bridge.sendSetLightStateRequest(this, request);
+            bridge.sendGetLightAttributeAndStateRequest(httpContext, request);
         } catch (HueException e) {
-            logger.error("Error sending SetLightState request", request);
+            requestTracker.complete(request);
+            logger.error("Error sending GetLightAttributeAndState request", e);
+        }
+    }
+
+    @Override
+    public boolean sendSetLightStateRequest(SetLightStateRequest request) {
+        long now = System.currentTimeMillis();
+        if (breaker.isRejecting(now)) {
+            logger.debug("Hue bridge is not responding; dropping {}", request);
+            return false;
+        }
+        request = filterCommand(request);
+        if (request == null) {
+            return true;
+        }
+        shadow.onWrite(request.getId(), request.getState(), now);
+        SetLightStateRequest r = writeQueue.offer(request, now);
+        if (r != null) {
+            sendQueuedSetLightStateRequest(r);
+        } else {
+            logger.trace("Queued SetLightState request: {}", request);
+            scheduleWriteQueueFlush();
+        }
+        return true;
+    }
+
+    @Override
+    public PollStrategy getPollStrategy() {
+        return pollStrategy;
+    }
+
+    @Override
+    public boolean isPollDue() {
+        return pollController.isPollDue(System.currentTimeMillis());
+    }
+
+    @Override
+    public void onPollResult(boolean changed) {
+        synchronized (this) {
+            allLightsFailed = false;
         }
+        pollController.onPollResult(changed);
+        logger.trace("Poll complete (changed={}); next poll in {}ms", changed, pollController.getInterval());
+    }
+
+    @Override
+    public void onLightStateChange() {
+        pollController.onChange();
+    }
+
+    @Override
+    public void onAllGroups(Collection<Group> groups) {
+        logger.debug("Received {} groups from Hue bridge", groups.size());
+        groupRegistry.setGroups(groups);
+    }
+
+    @Override
+    public void onGroupCreated(Group group) {
+        logger.debug("Created Hue group {}", group);
+        groupRegistry.addGroup(group);
     }
 
     public void setBridgeHost(String host) throws HueException {
         if (host != null) {
+            // a different bridge has a different certificate
+            if (bridge != null && !host.equals(bridge.getHost())) {
+                bridgeCertificate = null;
+            }
             bridge = new HueBridge(host, HUE_DEVICE, HUE_USER);
             setState(state.onBridgeHostUpdate(this));
         }
@@ -285,10 +620,524 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
         }
     }
 
+    /**
+     * Checks with the circuit breaker that a tracked request can be sent. Requests that can't are dropped; the poll
+     * made once the bridge recovers brings everything back up to date.
+     *
+     * @param request the request
+     *
+     * @return true if the request should be sent
+     */
+    private boolean isBridgeAvailable(BridgeRequest request) {
+        if (breaker.allowRequest(System.currentTimeMillis())) {
+            return true;
+        }
+        requestTracker.complete(request);
+        logger.trace("Hue bridge is not responding; dropping {}", request);
+        return false;
+    }
+
+    /**
+     * Called when a command that was accepted (and so may already be reflected in a light's variables) is dropped
+     * because the bridge stopped responding while it was queued. Nothing will confirm the command so the light's
+     * shadow is cleared and its variables are put back to the last state the bridge reported.
+     *
+     * @param ids the IDs of the lights the command was for
+     */
+    private void onCommandDropped(Collection<String> ids) {
+        for (String id : ids) {
+            shadow.clear(id);
+            HueLight light = (HueLight)getDeviceProxy(id);
+            if (light != null) {
+                light.onCommandDropped();
+            }
+        }
+    }
+
+    /**
+     * Clears the shadow of the lights a command was for when the command failed or was rejected since nothing will
+     * confirm it.
+     *
+     * @param request the request (can be anything; only commands have an effect)
+     */
+    private void clearShadow(Object request) {
+        if (request instanceof SetLightStateRequest) {
+            shadow.clear(((SetLightStateRequest)request).getId());
+        } else if (request instanceof SetGroupActionRequest) {
+            for (String id : ((SetGroupActionRequest)request).getLightIds()) {
+                shadow.clear(id);
+            }
+        }
+    }
+
+    private void onBridgeFailure(long now) {
+        if (breaker.onFailure(now)) {
+            logger.warn("Hue bridge is not responding; backing off for {}ms", breaker.getNextAttemptTime() - now);
+        }
+    }
+
+    /**
+     * Removes anything from a command that wouldn't change the light's state. The light's last reported state is
+     * combined with the commands the bridge hasn't reflected yet so that, for example, an "on" that follows an
+     * "off" still in flight isn't dropped. Without the shadow there's no way to know what's in flight so nothing
+     * is filtered.
+     *
+     * @param request the request
+     *
+     * @return the request to send or null if it shouldn't be sent
+     */
+    private SetLightStateRequest filterCommand(SetLightStateRequest request) {
+        HueLight light = (HueLight)getDeviceProxy(request.getId());
+        CompactLightState last = (light != null) ? light.getLastState() : null;
+        HueBridge b = bridge;
+        if (last == null || b == null || shadow.getSettleWindow() == 0) {
+            return request;
+        }
+
+        LightState known = last.toLightState();
+        LightState pending = shadow.getState(request.getId());
+        if (pending != null) {
+            known = known.merge(pending);
+        }
+
+        LightState state = commandFilter.filter(request.getState(), known);
+        if (state == request.getState()) {
+            return request;
+        }
+        commandFilter.onBytesSaved(b.getLightStateBodyLength(request.getState()) - (state != null ? b.getLightStateBodyLength(state) : 0));
+        if (state == null) {
+            logger.debug("Dropping command that wouldn't change Hue light {}: {}", request.getId(), request.getState());
+            return null;
+        }
+        logger.trace("Trimmed command for Hue light {} to {}", request.getId(), state);
+        return new SetLightStateRequest(request.getId(), state);
+    }
+
+    private void sendQueuedSetLightStateRequest(SetLightStateRequest request) {
+        long now = System.currentTimeMillis();
+        requestTracker.start(request, now);
+        if (!isBridgeAvailable(request)) {
+            onCommandDropped(Collections.singleton(request.getId()));
+            return;
+        }
+        pollController.onWrite(now);
+        try {
+            bridge.sendSetLightStateRequest(httpContext, request);
+        } catch (HueException e) {
+            requestTracker.complete(request);
+            logger.error("Error sending SetLightState request: " + request, e);
+        }
+    }
+
+    private void sendSetGroupActionRequest(SetGroupActionRequest request) {
+        long now = System.currentTimeMillis();
+        requestTracker.start(request, now);
+        if (!isBridgeAvailable(request)) {
+            onCommandDropped(request.getLightIds());
+            return;
+        }
+        pollController.onWrite(now);
+        try {
+            bridge.sendSetGroupActionRequest(httpContext, request);
+            synchronized (this) {
+                groupActionCount++;
+                groupCollapsedCount += request.getLightIds().size();
+            }
+        } catch (HueException e) {
+            requestTracker.complete(request);
+            logger.error("Error sending SetGroupAction request: " + request, e);
+        }
+    }
+
+    private void sendGroupRequest(BridgeRequest request) {
+        requestTracker.start(request, System.currentTimeMillis());
+        if (!isBridgeAvailable(request)) {
+            return;
+        }
+        try {
+            if (request instanceof GetAllGroupsRequest) {
+                bridge.sendGetAllGroupsRequest(httpContext, (GetAllGroupsRequest)request);
+            } else if (request instanceof CreateGroupRequest) {
+                bridge.sendCreateGroupRequest(httpContext, (CreateGroupRequest)request);
+            } else if (request instanceof DeleteGroupRequest) {
+                bridge.sendDeleteGroupRequest(httpContext, (DeleteGroupRequest)request);
+            }
+        } catch (HueException e) {
+            requestTracker.complete(request);
+            logger.error("Error sending group request: " + request, e);
+        }
+    }
+
+    /**
+     * Sends any queued SetLightState requests whose window has closed. Requests for several lights that share an
+     * identical state are collapsed into a single group action when the bridge has a matching group.
+     */
+    void flushWriteQueue() {
+        long now = System.currentTimeMillis();
+
+        // batch the requests by the command they send; the first request's state is sent for the whole batch
+        Map<CommandKey,WriteBatch> batches = new LinkedHashMap<>();
+        for (SetLightStateRequest r : writeQueue.poll(now)) {
+            CommandKey key = new CommandKey(r.getState());
+            WriteBatch batch = batches.get(key);
+            if (batch == null) {
+                batch = new WriteBatch(r.getState());
+                batches.put(key, batch);
+            }
+            batch.ids.add(r.getId());
+        }
+
+        for (WriteBatch batch : batches.values()) {
+            Set<String> ids = batch.ids;
+            if (ids.size() >= MIN_GROUP_ACTION_SIZE) {
+                String groupId = groupRegistry.getGroupId(ids, getHueLightIds());
+                if (groupId != null) {
+                    sendSetGroupActionRequest(new SetGroupActionRequest(groupId, batch.state, ids));
+                    continue;
+                } else {
+                    // no group exists yet so ask for one to be available next time
+                    for (BridgeRequest br : groupRegistry.prepareGroup(ids, now)) {
+                        sendGroupRequest(br);
+                    }
+                }
+            }
+            for (String id : ids) {
+                sendQueuedSetLightStateRequest(new SetLightStateRequest(id, batch.state));
+            }
+        }
+
+        scheduleWriteQueueFlush();
+    }
+
+    private Set<String> getHueLightIds() {
+        Set<String> ids = new HashSet<>();
+        for (HobsonDeviceProxy hd : getDeviceProxies()) {
+            ids.add(hd.getContext().getDeviceId());
+        }
+        return ids;
+    }
+
+    synchronized private void scheduleWriteQueueFlush() {
+        long next = writeQueue.getNextFlushTime();
+        if (next > -1 && (writeQueueFlushFuture == null || writeQueueFlushFuture.isDone() || next < writeQueueFlushTime)) {
+            if (writeQueueFlushFuture != null) {
+                writeQueueFlushFuture.cancel(false);
+            }
+            writeQueueFlushTime = next;
+            // the scheduler only keeps time; the flush itself runs on the plugin event loop like every other request
+            writeQueueFlushFuture = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    executeInEventLoop(new Runnable() {
+                        @Override
+                        public void run() {
+                            flushWriteQueue();
+                        }
+                    });
+                }
+            }, Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void applyConfiguration(PropertyContainer config) {
+        writeQueue.setWindow(getLongConfigurationValue(config, PROP_WRITE_WINDOW, DEFAULT_WRITE_WINDOW_IN_MS));
+        writeQueue.setBatchDelay(getLongConfigurationValue(config, PROP_WRITE_BATCH_DELAY, DEFAULT_WRITE_BATCH_DELAY_IN_MS));
+        long settle = getLongConfigurationValue(config, PROP_WRITE_SETTLE_WINDOW, DEFAULT_WRITE_SETTLE_WINDOW_IN_MS);
+        if (settle >= 0) {
+            shadow.setSettleWindow(settle);
+        } else {
+            logger.warn("Ignoring invalid command settle window: {}", settle);
+        }
+        long rate = getLongConfigurationValue(config, PROP_BRIDGE_RATE, DEFAULT_BRIDGE_RATE);
+        long burst = getLongConfigurationValue(config, PROP_BRIDGE_BURST, DEFAULT_BRIDGE_BURST);
+        if (rate > 0 && burst > 0) {
+            httpContext.setRate(rate, (int)burst);
+        } else {
+            logger.warn("Ignoring invalid bridge rate limit: {}/{}", rate, burst);
+        }
+        pollStrategy = getBooleanConfigurationValue(config, PROP_POLL_FULL_STATE, false) ? PollStrategy.FULL_STATE : PollStrategy.LIGHTS;
+        long minPoll = getLongConfigurationValue(config, PROP_POLL_MIN_INTERVAL, DEFAULT_POLL_MIN_INTERVAL_IN_MS);
+        long maxPoll = getLongConfigurationValue(config, PROP_POLL_MAX_INTERVAL, DEFAULT_POLL_MAX_INTERVAL_IN_MS);
+        if (minPoll > 0 && maxPoll >= minPoll) {
+            pollController.setIntervals(minPoll, maxPoll);
+        } else {
+            logger.warn("Ignoring invalid poll interval range: {}-{}", minPoll, maxPoll);
+        }
+        long timeout = getLongConfigurationValue(config, PROP_REQUEST_TIMEOUT, MAX_PENDING_REQUEST_TIME_IN_MS);
+        if (timeout > 0) {
+            requestTimeout = timeout;
+            requestTracker.setMaxPendingTime(timeout);
+        } else {
+            logger.warn("Ignoring invalid request timeout: {}", timeout);
+        }
+        long connections = getLongConfigurationValue(config, PROP_HTTP_CONNECTIONS, DEFAULT_HTTP_CONNECTIONS);
+        if (connections < 1) {
+            logger.warn("Ignoring invalid maximum connection count: {}", connections);
+            connections = DEFAULT_HTTP_CONNECTIONS;
+        }
+        // idle connections are kept by the JVM-wide HttpURLConnection cache which closes any beyond its own limit
+        int jdkLimit = KeepAliveHttpContext.getJdkConnectionLimit();
+        if (jdkLimit == 0) {
+            logger.warn("HTTP keep-alive is disabled for this JVM (http.keepAlive=false); connections to the Hue bridge won't be re-used");
+        } else if (connections > jdkLimit) {
+            logger.warn("Limiting connections to the Hue bridge to {} (the JVM's http.maxConnections)", jdkLimit);
+            connections = jdkLimit;
+        }
+        setKeepAliveConnections(getBooleanConfigurationValue(config, PROP_HTTP_KEEPALIVE, false) ? (int)connections : 0);
+        applyColorGamuts((config != null) ? config.getPropertyValue(PROP_COLOR_GAMUTS) : null);
+        Object cert = (config != null) ? config.getPropertyValue(PROP_BRIDGE_CERTIFICATE) : null;
+        bridgeCertificate = (cert instanceof String) ? (String)cert : null;
+        long reconcile = getLongConfigurationValue(config, PROP_RECONCILE_INTERVAL, DEFAULT_RECONCILE_INTERVAL_IN_MS);
+        boolean streamEnabled = getBooleanConfigurationValue(config, PROP_EVENT_STREAM, false);
+        synchronized (this) {
+            if (reconcile > 0) {
+                reconcileInterval = reconcile;
+                if (eventStream != null && eventStream.isConnected()) {
+                    pollController.setReconcileInterval(reconcile);
+                }
+            } else {
+                logger.warn("Ignoring invalid reconcile interval: {}", reconcile);
+            }
+            eventStreamEnabled = streamEnabled;
+        }
+        if (streamEnabled && state instanceof RunningState) {
+            startEventStream();
+        } else if (!streamEnabled) {
+            stopEventStream();
+        }
+    }
+
+    /**
+     * Reports any requests that the bridge hasn't responded to in time as failures. The authorization states
+     * have their own timeouts so expired requests are only reported while running.
+     *
+     * @param now the current time
+     */
+    private void expireRequests(long now) {
+        for (BridgeRequest request : requestTracker.expire(now)) {
+            onBridgeFailure(now);
+            clearShadow(request);
+            if (state instanceof RunningState) {
+                logger.warn("Timed out waiting for Hue bridge to respond to {}", request);
+                setState(state.onBridgeRequestFailure(this, request, new HueTimeoutException("No response from Hue bridge within " + requestTimeout + "ms")));
+            } else {
+                logger.debug("Timed out waiting for Hue bridge to respond to {}", request);
+            }
+        }
+    }
+
+    /**
+     * Switches between the plugin's own HTTP client and a dedicated pool of persistent connections to the bridge.
+     *
+     * @param maxConnections the size of the connection pool or 0 to use the plugin's HTTP client
+     */
+    synchronized private void setKeepAliveConnections(int maxConnections) {
+        KeepAliveHttpContext old = keepAliveContext;
+        if ((old == null && maxConnections == 0) || (old != null && old.getMaxConnections() == maxConnections)) {
+            return;
+        }
+        keepAliveContext = (maxConnections > 0) ? new KeepAliveHttpContext(this, eventLoopExecutor, maxConnections) : null;
+        if (old != null) {
+            old.close();
+        }
+        logger.debug("Using {} for Hue bridge requests", maxConnections > 0 ? maxConnections + " persistent connection(s)" : "the plugin HTTP client");
+    }
+
+    synchronized private void startEventStream() {
+        if (eventStreamEnabled && eventStream == null && bridge != null) {
+            try {
+                eventStream = bridge.createEventStream(this, new BridgeCertificateTrust(bridgeCertificate, new BridgeCertificateTrust.Listener() {
+                    @Override
+                    public void onCertificatePinned(final String fingerprint) {
+                        executeInEventLoop(new Runnable() {
+                            @Override
+                            public void run() {
+                                logger.info("Trusting Hue bridge certificate {}", fingerprint);
+                                bridgeCertificate = fingerprint;
+                                setPluginConfigurationProperty(getContext(), PROP_BRIDGE_CERTIFICATE, fingerprint);
+                            }
+                        });
+                    }
+                }));
+                eventStream.start();
+                logger.debug("Started event stream for {}", eventStream.getUri());
+            } catch (HueException e) {
+                logger.error("Unable to start Hue bridge event stream", e);
+            }
+        }
+    }
+
+    synchronized private void stopEventStream() {
+        if (eventStream != null) {
+            eventStream.stop();
+            eventStream = null;
+            pollController.setReconcileInterval(0);
+        }
+    }
+
+    /**
+     * Registers the configured model to gamut mappings in addition to the built-in ones.
+     *
+     * @param value the configuration value (e.g. "LCT015=C,LCT016=C")
+     */
+    private void applyColorGamuts(Object value) {
+        // the registry is built in full and then swapped in so lights never see a partial set of mappings
+        Map<String,ColorGamut> models = new HashMap<>();
+        if (value instanceof String) {
+            StringTokenizer tok = new StringTokenizer((String)value, ",");
+            while (tok.hasMoreTokens()) {
+                String pair = tok.nextToken().trim();
+                int ix = pair.indexOf('=');
+                ColorGamut gamut = (ix > 0) ? ColorGamut.forName(pair.substring(ix + 1).trim()) : null;
+                if (gamut != null) {
+                    models.put(pair.substring(0, ix).trim(), gamut);
+                } else if (pair.length() > 0) {
+                    logger.warn("Ignoring invalid color gamut mapping: {}", pair);
+                }
+            }
+        }
+        colorGamuts = models.isEmpty() ? ColorGamutRegistry.DEFAULT : new ColorGamutRegistry(models);
+    }
+
+    private boolean getBooleanConfigurationValue(PropertyContainer config, String name, boolean defaultValue) {
+        Object o = (config != null) ? config.getPropertyValue(name) : null;
+        if (o instanceof Boolean) {
+            return (Boolean)o;
+        } else if (o instanceof String) {
+            return Boolean.parseBoolean((String)o);
+        }
+        return defaultValue;
+    }
+
+    private long getLongConfigurationValue(PropertyContainer config, String name, long defaultValue) {
+        Object o = (config != null) ? config.getPropertyValue(name) : null;
+        if (o instanceof Number) {
+            return ((Number)o).longValue();
+        } else if (o instanceof String) {
+            try {
+                return Long.parseLong((String)o);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid value for {}: {}", name, o);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns a snapshot of the plugin's bridge traffic metrics.
+     *
+     * @return a Map of metric name to value
+     */
+    public Map<String,Object> getBridgeMetrics() {
+        Map<String,Object> metrics = new LinkedHashMap<>();
+        metrics.put("write.sent", writeQueue.getSentCount());
+        metrics.put("write.merged", writeQueue.getMergedCount());
+        metrics.put("write.suppressed", commandFilter.getSuppressedCount());
+        metrics.put("write.trimmed", commandFilter.getTrimmedCount());
+        metrics.put("write.bytesSaved", commandFilter.getBytesSaved());
+        metrics.put("shadow.active", shadow.getShadowCount());
+        metrics.put("shadow.confirmed", shadow.getConfirmedCount());
+        metrics.put("shadow.suppressed", shadow.getSuppressedCount());
+        metrics.put("shadow.overridden", shadow.getOverriddenCount());
+        synchronized (this) {
+            metrics.put("group.actions", groupActionCount);
+            metrics.put("group.collapsed", groupCollapsedCount);
+            metrics.put("lights.applied", lightStateAppliedCount);
+            metrics.put("lights.unchanged", lightStateUnchangedCount);
+            metrics.put("lights.unchangedRate", getHitRate(lightStateUnchangedCount, lightStateAppliedCount));
+            metrics.put("lights.events", lightEventCount);
+            metrics.put("eventstream.connected", eventStream != null && eventStream.isConnected());
+            if (eventStream != null) {
+                metrics.put("eventstream.connects", eventStream.getConnectCount());
+                metrics.put("eventstream.events", eventStream.getEventCount());
+                metrics.put("eventstream.errors", eventStream.getErrorCount());
+            }
+        }
+        for (BridgeRequestScheduler.Lane lane : BridgeRequestScheduler.Lane.values()) {
+            String name = lane.name().toLowerCase();
+            metrics.put("scheduler." + name + ".sent", httpContext.getSentCount(lane));
+            metrics.put("scheduler." + name + ".waiting", httpContext.getQueueSize(lane));
+        }
+        metrics.put("scheduler.delayed", httpContext.getQueuedCount());
+        metrics.put("requests.user.outstanding", requestTracker.getOutstandingCount(CreateUserRequest.class));
+        metrics.put("requests.lights.outstanding", requestTracker.getOutstandingCount(GetAllLightsRequest.class));
+        metrics.put("requests.light.outstanding", requestTracker.getOutstandingCount(GetLightAttributeAndStateRequest.class));
+        metrics.put("requests.write.outstanding", requestTracker.getOutstandingCount(SetLightStateRequest.class));
+        metrics.put("requests.suppressed", requestTracker.getSuppressedCount());
+        metrics.put("requests.stale", requestTracker.getStaleCount());
+        metrics.put("requests.timeouts", requestTracker.getTimeoutCount());
+        KeepAliveHttpContext ctx = keepAliveContext;
+        if (ctx != null) {
+            metrics.put("http.requests", ctx.getRequestCount());
+            metrics.put("http.failures", ctx.getFailureCount());
+            if (KeepAliveHttpContext.isReuseTracked()) {
+                long reused = ctx.getReuseCount();
+                long connects = ctx.getConnectCount();
+                metrics.put("http.connects", connects);
+                metrics.put("http.reused", reused);
+                metrics.put("http.reuseRate", getHitRate(reused, connects));
+            }
+        }
+        metrics.put("breaker.state", breaker.getState().name());
+        metrics.put("breaker.opened", breaker.getOpenCount());
+        metrics.put("breaker.probes", breaker.getProbeCount());
+        metrics.put("breaker.rejected", breaker.getRejectedCount());
+        putLatencyMetrics(metrics, "lights", GetAllLightsRequest.class);
+        putLatencyMetrics(metrics, "fullstate", GetFullStateRequest.class);
+        putLatencyMetrics(metrics, "light", GetLightAttributeAndStateRequest.class);
+        putLatencyMetrics(metrics, "write", SetLightStateRequest.class);
+        putLatencyMetrics(metrics, "group", SetGroupActionRequest.class);
+        metrics.put("poll.strategy", pollStrategy.name());
+        metrics.put("poll.interval", pollController.getInterval());
+        metrics.put("poll.changeRate", pollController.getChangeRate());
+        metrics.put("poll.count", pollController.getPollCount());
+        metrics.put("poll.changes", pollController.getChangeCount());
+        if (bridge != null) {
+            long parsed = bridge.getAllLightsParsedCount();
+            long unchanged = bridge.getAllLightsUnchangedCount();
+            metrics.put("poll.parsed", parsed);
+            metrics.put("poll.unchanged", unchanged);
+            metrics.put("poll.unchangedRate", getHitRate(unchanged, parsed));
+            long lightsParsed = bridge.getLightParsedCount();
+            long lightsUnchanged = bridge.getLightUnchangedCount();
+            metrics.put("poll.lights.parsed", lightsParsed);
+            metrics.put("poll.lights.unchanged", lightsUnchanged);
+            metrics.put("poll.lights.unchangedRate", getHitRate(lightsUnchanged, lightsParsed));
+            metrics.put("bridge.uris.built", bridge.getUriBuildCount());
+            metrics.put("bridge.bodies.cached", bridge.getBodyCacheHitCount());
+            metrics.put("bridge.bodies.encoded", bridge.getBodyCacheMissCount());
+        }
+        metrics.put("color.xy.cached", xyColorCache.getHitCount());
+        metrics.put("color.xy.converted", xyColorCache.getMissCount());
+        metrics.put("color.string.cached", lightColorCache.getHitCount());
+        metrics.put("color.string.created", lightColorCache.getMissCount());
+        return metrics;
+    }
+
+    private void putLatencyMetrics(Map<String,Object> metrics, String name, Class requestClass) {
+        LatencyStats stats = requestTracker.getLatencyStats(requestClass);
+        if (stats != null) {
+            metrics.put("latency." + name + ".p50", stats.getPercentile(50));
+            metrics.put("latency." + name + ".p99", stats.getPercentile(99));
+            metrics.put("latency." + name + ".max", stats.getMax());
+        }
+    }
+
+    private double getHitRate(long hits, long misses) {
+        long total = hits + misses;
+        return (total > 0) ? (double)hits / total : 0.0;
+    }
+
     protected void setState(State state) {
         if (this.state != state) {
             logger.debug("Changing to state: " + state);
             this.state = state;
+            // the event stream is only useful once the bridge is reachable and authorized
+            if (state instanceof RunningState) {
+                startEventStream();
+            } else {
+                stopEventStream();
+            }
             onRefresh();
         }
     }
@@ -297,7 +1146,105 @@ public class HuePlugin extends AbstractHttpClientPlugin implements StateContext,
         return state;
     }
 
+    /**
+     * Returns the RGB to xy conversion cache shared by all lights.
+     *
+     * @return an XYColorCache
+     */
+    XYColorCache getXYColorCache() {
+        return xyColorCache;
+    }
+
+    /**
+     * Returns the color string cache shared by all lights.
+     *
+     * @return a LightColorCache
+     */
+    LightColorCache getLightColorCache() {
+        return lightColorCache;
+    }
+
+    /**
+     * Returns the color gamuts to use for light models, including any configured ones.
+     *
+     * @return a ColorGamutRegistry
+     */
+    ColorGamutRegistry getColorGamuts() {
+        return colorGamuts;
+    }
+
     protected Collection<HobsonDeviceProxy> getDeviceProxies() {
         return super.getDeviceProxies();
     }
+
+    /**
+     * The fields of a LightState that are actually sent to the bridge. Two requests with equal keys send the same
+     * command even if their states differ in reported-only fields such as the model or reachability.
+     */
+    private static final class CommandKey {
+        private final Boolean on;
+        private final Integer hue;
+        private final Integer saturation;
+        private final Integer brightness;
+        private final Integer colorTemperature;
+        private final Float x;
+        private final Float y;
+        private final String effect;
+        private final int hash;
+
+        CommandKey(LightState state) {
+            this.on = state.getOn();
+            this.hue = state.getHue();
+            this.saturation = state.getSaturation();
+            this.brightness = state.getBrightness();
+            this.colorTemperature = state.getColorTemperature();
+            this.x = state.getX();
+            this.y = state.getY();
+            this.effect = state.getEffect();
+            this.hash = Arrays.hashCode(new Object[] {on, hue, saturation, brightness, colorTemperature, x, y, effect});
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommandKey)) {
+                return false;
+            }
+            CommandKey k = (CommandKey)o;
+            return (
+                hash == k.hash &&
+                equals(on, k.on) &&
+                equals(hue, k.hue) &&
+                equals(saturation, k.saturation) &&
+                equals(brightness, k.brightness) &&
+                equals(colorTemperature, k.colorTemperature) &&
+                equals(x, k.x) &&
+                equals(y, k.y) &&
+                equals(effect, k.effect)
+            );
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equals(Object o1, Object o2) {
+            return (o1 == o2) || (o1 != null && o1.equals(o2));
+        }
+    }
+
+    /**
+     * The lights that a single command is being sent to.
+     */
+    private static class WriteBatch {
+        final LightState state;
+        final Set<String> ids = new HashSet<>();
+
+        WriteBatch(LightState state) {
+            this.state = state;
+        }
+    }
 }
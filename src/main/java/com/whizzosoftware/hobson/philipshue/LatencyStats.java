@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue;
+
+import java.util.Arrays;
+
+/**
+ * Collects response latencies and reports percentiles over the most recent samples. Samples are kept in a fixed
+ * size ring buffer so memory use doesn't grow and the percentiles reflect current bridge behavior rather than the
+ * plugin's entire lifetime.
+ *
+ * @author Dan Noguerol
+ */
+public class LatencyStats {
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long count;
+    private long max;
+
+    /**
+     * Constructor.
+     *
+     * @param window the number of most recent samples to report percentiles over
+     */
+    public LatencyStats(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid latency window: " + window);
+        }
+        this.samples = new long[window];
+    }
+
+    /**
+     * Records a latency sample.
+     *
+     * @param latency the latency in milliseconds
+     */
+    synchronized public void record(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        count++;
+        max = Math.max(max, latency);
+    }
+
+    /**
+     * Returns a percentile of the recent samples using the nearest-rank method.
+     *
+     * @param percentile the percentile (0-100)
+     *
+     * @return a latency in milliseconds or 0 if nothing has been recorded
+     */
+    synchronized public long getPercentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int)Math.ceil(percentile / 100.0 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    /**
+     * Returns the total number of samples recorded (including those no longer in the window).
+     *
+     * @return a count
+     */
+    synchronized public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the largest latency ever recorded.
+     *
+     * @return a latency in milliseconds
+     */
+    synchronized public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.api.color.Color;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the color variable strings published for reported light states. Lights report the same few
+ * hue/saturation/brightness and color temperature combinations poll after poll, so each combination only needs to be
+ * scaled and formatted once and every light reporting it publishes the same String instance. The least recently used
+ * strings are discarded once the cache is full.
+ *
+ * Entries are keyed by the raw bridge values packed into a long. Values outside the bridge's ranges aren't cached.
+ *
+ * @author Dan Noguerol
+ */
+public class LightColorCache {
+    private static final long MODE_HS = 1L << 48;
+    private static final long MODE_CT = 2L << 48;
+
+    private final Map<Long,String> cache;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of strings to cache
+     */
+    public LightColorCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this.cache = new LinkedHashMap<Long,String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the color string for a hue/saturation light state.
+     *
+     * @param hue the bridge hue value (0-65535)
+     * @param saturation the bridge saturation value (0-254)
+     * @param brightness the bridge brightness value (0-254)
+     *
+     * @return a String
+     */
+    synchronized public String getHueSaturationColor(int hue, int saturation, int brightness) {
+        if ((hue & ~0xffff) != 0 || (saturation & ~0xff) != 0 || (brightness & ~0xff) != 0) {
+            missCount++;
+            return createHueSaturationColor(hue, saturation, brightness);
+        }
+        Long key = MODE_HS | ((long)hue << 16) | (saturation << 8) | brightness;
+        String s = cache.get(key);
+        if (s == null) {
+            s = createHueSaturationColor(hue, saturation, brightness);
+            cache.put(key, s);
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the color string for a color temperature light state.
+     *
+     * @param colorTemperature the bridge color temperature value in mireds
+     * @param brightness the bridge brightness value (0-254)
+     *
+     * @return a String
+     */
+    synchronized public String getTemperatureColor(int colorTemperature, int brightness) {
+        if (colorTemperature <= 0 || (colorTemperature & ~0xffff) != 0 || (brightness & ~0xff) != 0) {
+            missCount++;
+            return createTemperatureColor(colorTemperature, brightness);
+        }
+        Long key = MODE_CT | ((long)colorTemperature << 8) | brightness;
+        String s = cache.get(key);
+        if (s == null) {
+            s = createTemperatureColor(colorTemperature, brightness);
+            cache.put(key, s);
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return s;
+    }
+
+    synchronized public int size() {
+        return cache.size();
+    }
+
+    synchronized public long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized public long getMissCount() {
+        return missCount;
+    }
+
+    private static String createHueSaturationColor(int hue, int saturation, int brightness) {
+        return new Color((int)(Math.round(hue / 182.0416666667)), (int)(saturation / 2.54), (int)(brightness / 2.54)).toString();
+    }
+
+    private static String createTemperatureColor(int colorTemperature, int brightness) {
+        return new Color(1000000 / colorTemperature, (int)(brightness / 2.54)).toString();
+    }
+}
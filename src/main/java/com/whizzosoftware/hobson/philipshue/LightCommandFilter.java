@@ -0,0 +1,113 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+/**
+ * Removes the parts of a light command that wouldn't change anything given the light's known state. Commands
+ * that wouldn't change anything at all are dropped.
+ *
+ * Color fields are only sent together (as hue/saturation/brightness, xy/brightness or color temperature/brightness)
+ * so they are either all kept or all removed, and they are only removed if the light is known to be in the same
+ * color mode.
+ *
+ * @author Dan Noguerol
+ */
+public class LightCommandFilter {
+    private long suppressedCount;
+    private long trimmedCount;
+    private long bytesSaved;
+
+    /**
+     * Filters a command.
+     *
+     * @param requested the requested state
+     * @param known the known state of the light (or null if it isn't known)
+     *
+     * @return the state to send, which is the requested instance if nothing could be removed, or null if the
+     * command should not be sent at all
+     */
+    synchronized public LightState filter(LightState requested, LightState known) {
+        if (requested == null || known == null || !known.isReachable()) {
+            return requested;
+        }
+
+        boolean hasColor = requested.hasColor() || requested.hasColorXY() || requested.hasColorTemperature();
+        boolean sameOn = !requested.hasOn() || requested.getOn().equals(known.getOn());
+        boolean sameColor = !hasColor || isSameColor(requested, known);
+        boolean sameEffect = !requested.hasEffect() || requested.getEffect().equals(known.getEffect());
+
+        if (sameOn && sameColor && sameEffect) {
+            suppressedCount++;
+            return null;
+        } else if (!(requested.hasOn() && sameOn) && !(hasColor && sameColor) && !(requested.hasEffect() && sameEffect)) {
+            // every field is a change
+            return requested;
+        }
+
+        LightState s = new LightState();
+        if (!sameOn) {
+            s.setOn(requested.getOn());
+        }
+        if (!sameColor) {
+            s.setHue(requested.getHue());
+            s.setSaturation(requested.getSaturation());
+            s.setBrightness(requested.getBrightness());
+            s.setColorTemperature(requested.getColorTemperature());
+            s.setXY(requested.getX(), requested.getY());
+            s.setColorMode(requested.getColorMode());
+        }
+        if (!sameEffect) {
+            s.setEffect(requested.getEffect());
+        }
+        trimmedCount++;
+        return s;
+    }
+
+    /**
+     * Records the number of request body bytes saved by filtering.
+     *
+     * @param bytes the number of bytes
+     */
+    synchronized public void onBytesSaved(long bytes) {
+        bytesSaved += bytes;
+    }
+
+    synchronized public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    synchronized public long getTrimmedCount() {
+        return trimmedCount;
+    }
+
+    synchronized public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private boolean isSameColor(LightState requested, LightState known) {
+        if (requested.hasColor()) {
+            return known.hasColor() &&
+                requested.getHue().equals(known.getHue()) &&
+                requested.getSaturation().equals(known.getSaturation()) &&
+                requested.getBrightness().equals(known.getBrightness());
+        } else if (requested.hasColorXY()) {
+            return known.hasColorXY() &&
+                requested.getX().equals(known.getX()) &&
+                requested.getY().equals(known.getY()) &&
+                requested.getBrightness().equals(known.getBrightness());
+        } else {
+            return known.hasColorTemperature() &&
+                requested.getColorTemperature().equals(known.getColorTemperature()) &&
+                requested.getBrightness().equals(known.getBrightness());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+
+import java.util.*;
+
+/**
+ * Keeps track of the light groups that exist on the Hue bridge so that a batch of identical light commands can be
+ * sent as a single group action. Groups are matched by exact light membership; when no group exists for a
+ * batch, a transient group is created on the bridge for next time. The number of transient groups is bounded and
+ * the least recently used one is deleted when a new one is needed.
+ *
+ * @author Dan Noguerol
+ */
+public class LightGroupRegistry {
+    static final String TRANSIENT_GROUP_PREFIX = "hobson-";
+    private static final long REQUEST_TIMEOUT = 60000;
+
+    private final int maxTransientGroups;
+    private boolean loaded;
+    private long loadRequestTime;
+    private final Map<Set<String>,String> groups = new HashMap<>();
+    private final LinkedHashMap<Set<String>,String> transientGroups = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Set<String>,Long> pendingCreates = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param maxTransientGroups the maximum number of transient groups to create on the bridge
+     */
+    public LightGroupRegistry(int maxTransientGroups) {
+        this.maxTransientGroups = maxTransientGroups;
+    }
+
+    /**
+     * Returns the ID of a bridge group containing exactly the specified lights.
+     *
+     * @param lightIds the light IDs
+     * @param allLightIds the IDs of all lights known to the bridge
+     *
+     * @return a group ID or null if there is no such group
+     */
+    synchronized public String getGroupId(Set<String> lightIds, Set<String> allLightIds) {
+        if (lightIds.equals(allLightIds)) {
+            return SetGroupActionRequest.ALL_LIGHTS_GROUP;
+        }
+        String id = groups.get(lightIds);
+        if (id == null) {
+            id = transientGroups.get(lightIds);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the requests needed in order for a group containing exactly the specified lights to become available.
+     *
+     * @param lightIds the light IDs
+     * @param now the current time
+     *
+     * @return a list of requests to send to the bridge (may be empty)
+     */
+    synchronized public List<BridgeRequest> prepareGroup(Set<String> lightIds, long now) {
+        List<BridgeRequest> requests = new ArrayList<>();
+
+        // the current list of groups on the bridge is needed before anything can be created
+        if (!loaded) {
+            if (loadRequestTime == 0 || now - loadRequestTime >= REQUEST_TIMEOUT) {
+                loadRequestTime = now;
+                requests.add(new GetAllGroupsRequest());
+            }
+            return requests;
+        }
+
+        Long createTime = pendingCreates.get(lightIds);
+        if (createTime == null || now - createTime >= REQUEST_TIMEOUT) {
+            // make room by deleting the least recently used transient group
+            if (transientGroups.size() + pendingCreates.size() >= maxTransientGroups) {
+                Iterator<Map.Entry<Set<String>,String>> it = transientGroups.entrySet().iterator();
+                if (!it.hasNext()) {
+                    return requests;
+                }
+                requests.add(new DeleteGroupRequest(it.next().getValue()));
+                it.remove();
+            }
+            pendingCreates.put(lightIds, now);
+            requests.add(new CreateGroupRequest(TRANSIENT_GROUP_PREFIX + Integer.toHexString(lightIds.hashCode()), new TreeSet<>(lightIds)));
+        }
+
+        return requests;
+    }
+
+    /**
+     * Replaces the known groups with the full list of groups from the bridge.
+     *
+     * @param groups the groups
+     */
+    synchronized public void setGroups(Collection<Group> groups) {
+        this.groups.clear();
+        this.transientGroups.clear();
+        for (Group g : groups) {
+            addGroup(g);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Adds a single group (e.g. one that was just created).
+     *
+     * @param group the group
+     */
+    synchronized public void addGroup(Group group) {
+        Set<String> lightIds = new HashSet<>(group.getLights());
+        pendingCreates.remove(lightIds);
+        if (group.getName() != null && group.getName().startsWith(TRANSIENT_GROUP_PREFIX)) {
+            transientGroups.put(lightIds, group.getId());
+        } else {
+            groups.put(lightIds, group.getId());
+        }
+    }
+
+    synchronized public int getTransientGroupCount() {
+        return transientGroups.size();
+    }
+}
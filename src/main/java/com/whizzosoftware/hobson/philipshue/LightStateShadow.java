@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import com.whizzosoftware.hobson.philipshue.state.ShadowMatch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a shadow copy of the state most recently commanded for each light. The bridge can take a moment to apply
+ * a command, so state it reports shortly after one was sent may still be the old state. Reported state that
+ * disagrees with the shadow is considered stale until the settle window has passed since the command was sent
+ * (or acknowledged by the bridge, whichever is later). Once the bridge reports the commanded state, or the
+ * window passes without it doing so, the shadow is discarded and the bridge is authoritative again.
+ *
+ * @author Dan Noguerol
+ */
+public class LightStateShadow {
+    // the bridge stores xy with 4 decimal places and may nudge a value onto its own gamut
+    static final float XY_TOLERANCE = 0.001f;
+
+    private long settleWindow;
+    private final Map<String,Shadow> shadows = new HashMap<>();
+    private long confirmedCount;
+    private long suppressedCount;
+    private long overriddenCount;
+
+    /**
+     * Constructor.
+     *
+     * @param settleWindow how long (in milliseconds) to wait for the bridge to reflect a command (0 to disable)
+     */
+    public LightStateShadow(long settleWindow) {
+        setSettleWindow(settleWindow);
+    }
+
+    synchronized public long getSettleWindow() {
+        return settleWindow;
+    }
+
+    synchronized public void setSettleWindow(long settleWindow) {
+        if (settleWindow < 0) {
+            throw new IllegalArgumentException("Invalid settle window: " + settleWindow);
+        }
+        this.settleWindow = settleWindow;
+        if (settleWindow == 0) {
+            shadows.clear();
+        }
+    }
+
+    /**
+     * Records a command sent to a light. Successive commands are merged with the most recent value of each
+     * field winning.
+     *
+     * @param id the light ID
+     * @param state the commanded state
+     * @param now the current time
+     */
+    synchronized public void onWrite(String id, LightState state, long now) {
+        if (settleWindow == 0 || state == null) {
+            return;
+        }
+        Shadow s = shadows.get(id);
+        if (s == null) {
+            shadows.put(id, new Shadow(new LightState().merge(state), now + settleWindow));
+        } else {
+            s.state = s.state.merge(state);
+            s.settleTime = Math.max(s.settleTime, now + settleWindow);
+        }
+    }
+
+    /**
+     * Records that the bridge acknowledged a command sent to a light. The settle window restarts since the bridge
+     * may still take a moment before it reports the new state.
+     *
+     * @param id the light ID
+     * @param now the current time
+     */
+    synchronized public void onAcknowledge(String id, long now) {
+        Shadow s = shadows.get(id);
+        if (s != null) {
+            s.settleTime = Math.max(s.settleTime, now + settleWindow);
+        }
+    }
+
+    /**
+     * Discards the shadow for a light (e.g. because a command failed and the outcome is unknown).
+     *
+     * @param id the light ID
+     */
+    synchronized public void clear(String id) {
+        shadows.remove(id);
+    }
+
+    /**
+     * Checks state reported by the bridge against the shadow for a light.
+     *
+     * @param id the light ID
+     * @param state the reported state
+     * @param now the current time
+     *
+     * @return a ShadowMatch
+     */
+    synchronized public ShadowMatch check(String id, CompactLightState state, long now) {
+        Shadow s = shadows.get(id);
+        if (s == null || state == null) {
+            return ShadowMatch.NONE;
+        } else if (matches(s.state, state)) {
+            shadows.remove(id);
+            confirmedCount++;
+            return ShadowMatch.CONFIRMED;
+        } else if (now < s.settleTime) {
+            suppressedCount++;
+            return ShadowMatch.STALE;
+        } else {
+            // the bridge never reflected the command (e.g. it was changed elsewhere) so it wins
+            shadows.remove(id);
+            overriddenCount++;
+            return ShadowMatch.NONE;
+        }
+    }
+
+    /**
+     * Returns the shadow state for a light.
+     *
+     * @param id the light ID
+     *
+     * @return a LightState or null if there is no outstanding command for the light
+     */
+    synchronized public LightState getState(String id) {
+        Shadow s = shadows.get(id);
+        return (s != null) ? s.state : null;
+    }
+
+    synchronized public int getShadowCount() {
+        return shadows.size();
+    }
+
+    synchronized public long getConfirmedCount() {
+        return confirmedCount;
+    }
+
+    synchronized public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    synchronized public long getOverriddenCount() {
+        return overriddenCount;
+    }
+
+    private boolean matches(LightState shadow, CompactLightState state) {
+        // values the bridge didn't report come back as -1, which no commanded value can match
+        return (shadow.getOn() == null || (state.hasOn() && shadow.getOn() == state.getOn(false))) &&
+            matches(shadow.getHue(), state.getHue(-1)) &&
+            matches(shadow.getSaturation(), state.getSaturation(-1)) &&
+            matches(shadow.getBrightness(), state.getBrightness(-1)) &&
+            matches(shadow.getColorTemperature(), state.getColorTemperature(-1)) &&
+            matches(shadow.getX(), state.getX(-1.0f)) &&
+            matches(shadow.getY(), state.getY(-1.0f)) &&
+            (shadow.getEffect() == null || shadow.getEffect().equals(state.getEffect()));
+    }
+
+    private boolean matches(Integer shadow, int value) {
+        return (shadow == null || shadow == value);
+    }
+
+    private boolean matches(Float shadow, float value) {
+        return (shadow == null || Math.abs(shadow - value) <= XY_TOLERANCE);
+    }
+
+    private static class Shadow {
+        LightState state;
+        long settleTime;
+
+        Shadow(LightState state, long settleTime) {
+            this.state = state;
+            this.settleTime = settleTime;
+        }
+    }
+}
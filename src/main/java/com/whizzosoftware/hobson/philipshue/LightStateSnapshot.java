@@ -0,0 +1,106 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+/**
+ * A primitive copy of the fields of the last light state a HueLight published. Comparing new state against it
+ * tells which variables could have changed without creating any objects, so that the (comparatively expensive)
+ * color conversion only happens when the color actually changed.
+ *
+ * @author Dan Noguerol
+ */
+class LightStateSnapshot {
+    static final int ON = 1;
+    static final int COLOR = 2;
+
+    private static final int NONE = -1;
+    private static final int MODE_HS = 1;
+    private static final int MODE_CT = 2;
+    private static final int MODE_XY = 3;
+    private static final int MODE_OTHER = 4;
+
+    private boolean valid;
+    private int on;
+    private int hue;
+    private int saturation;
+    private int brightness;
+    private int colorTemperature;
+    private int x;
+    private int y;
+    private int colorMode;
+
+    /**
+     * Records a new state.
+     *
+     * @param state the state
+     *
+     * @return a bit mask of the variables (ON and/or COLOR) that may have changed since the previous state
+     */
+    synchronized int update(CompactLightState state) {
+        int on = state.hasOn() ? (state.getOn(false) ? 1 : 0) : NONE;
+        int hue = state.getHue(NONE);
+        int saturation = state.getSaturation(NONE);
+        int brightness = state.getBrightness(NONE);
+        int colorTemperature = state.getColorTemperature(NONE);
+        // compared by their bits; NaN (not reported) always has the same bits
+        int x = Float.floatToIntBits(state.getX(Float.NaN));
+        int y = Float.floatToIntBits(state.getY(Float.NaN));
+        int colorMode = toMode(state.getColorMode());
+
+        int changes = 0;
+        if (!valid || on != this.on) {
+            changes |= ON;
+        }
+        if (!valid || hue != this.hue || saturation != this.saturation || brightness != this.brightness || colorTemperature != this.colorTemperature || x != this.x || y != this.y || colorMode != this.colorMode) {
+            changes |= COLOR;
+        }
+
+        this.valid = true;
+        this.on = on;
+        this.hue = hue;
+        this.saturation = saturation;
+        this.brightness = brightness;
+        this.colorTemperature = colorTemperature;
+        this.x = x;
+        this.y = y;
+        this.colorMode = colorMode;
+
+        return changes;
+    }
+
+    /**
+     * Forgets the recorded state so that the next update reports everything as changed. This is needed whenever
+     * the variables are changed by something other than reported state.
+     */
+    synchronized void invalidate() {
+        valid = false;
+    }
+
+    synchronized boolean isValid() {
+        return valid;
+    }
+
+    private int toMode(String mode) {
+        if (mode == null) {
+            return NONE;
+        } else if (LightState.MODE_HS.equals(mode)) {
+            return MODE_HS;
+        } else if (LightState.MODE_CT.equals(mode)) {
+            return MODE_CT;
+        } else if (LightState.MODE_XY.equals(mode)) {
+            return MODE_XY;
+        } else {
+            return MODE_OTHER;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.SetLightStateRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A write-behind queue for SetLightState requests. At most one request per light is sent per window; any
+ * requests that arrive for a light while its window is still open are merged into a single pending request
+ * (with the most recent value of each field winning) that is flushed once the window closes.
+ *
+ * An optional batch delay holds every new request for a short time so that requests for many lights that
+ * arrive together (e.g. from a scene) are released together and can be collapsed into group actions.
+ *
+ * @author Dan Noguerol
+ */
+public class LightStateWriteQueue {
+    private long window;
+    private long batchDelay;
+    private long batchDueTime;
+    private final Map<String,Long> lastSendTimes = new HashMap<>();
+    private final Map<String,PendingRequest> pending = new HashMap<>();
+    private long mergedCount;
+    private long sentCount;
+
+    /**
+     * Constructor.
+     *
+     * @param window the minimum time between requests to the same light (in milliseconds)
+     */
+    public LightStateWriteQueue(long window) {
+        this(window, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param window the minimum time between requests to the same light (in milliseconds)
+     * @param batchDelay the time to hold new requests so they can be batched with others (in milliseconds)
+     */
+    public LightStateWriteQueue(long window, long batchDelay) {
+        this.window = window;
+        this.batchDelay = batchDelay;
+    }
+
+    synchronized public long getWindow() {
+        return window;
+    }
+
+    synchronized public void setWindow(long window) {
+        this.window = window;
+    }
+
+    synchronized public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    synchronized public void setBatchDelay(long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Offers a new request to the queue.
+     *
+     * @param request the request
+     * @param now the current time
+     *
+     * @return the request if it should be sent immediately or null if it has been queued
+     */
+    synchronized public SetLightStateRequest offer(SetLightStateRequest request, long now) {
+        String id = request.getId();
+        PendingRequest p = pending.get(id);
+        if (p != null) {
+            p.request = new SetLightStateRequest(id, p.request.getState().merge(request.getState()));
+            mergedCount++;
+            return null;
+        } else if (batchDelay > 0 || isWindowOpen(id, now)) {
+            // requests that arrive while a batch is open all share the same due time so they are released together
+            if (batchDelay > 0 && batchDueTime <= now) {
+                batchDueTime = now + batchDelay;
+            }
+            Long last = lastSendTimes.get(id);
+            pending.put(id, new PendingRequest(request, Math.max(batchDelay > 0 ? batchDueTime : 0, last != null ? last + window : 0)));
+            return null;
+        } else {
+            lastSendTimes.put(id, now);
+            sentCount++;
+            return request;
+        }
+    }
+
+    /**
+     * Removes and returns all pending requests whose window has closed.
+     *
+     * @param now the current time
+     *
+     * @return a list of requests to send (may be empty)
+     */
+    synchronized public List<SetLightStateRequest> poll(long now) {
+        List<SetLightStateRequest> results = new ArrayList<>();
+        Iterator<Map.Entry<String,PendingRequest>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String,PendingRequest> e = it.next();
+            if (now >= e.getValue().dueTime) {
+                results.add(e.getValue().request);
+                lastSendTimes.put(e.getKey(), now);
+                sentCount++;
+                it.remove();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the time at which the next pending request can be sent.
+     *
+     * @return a time in milliseconds or -1 if there are no pending requests
+     */
+    synchronized public long getNextFlushTime() {
+        long next = -1;
+        for (PendingRequest p : pending.values()) {
+            if (next == -1 || p.dueTime < next) {
+                next = p.dueTime;
+            }
+        }
+        return next;
+    }
+
+    synchronized public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Returns the number of requests that were merged into another pending request rather than being sent.
+     *
+     * @return a count
+     */
+    synchronized public long getMergedCount() {
+        return mergedCount;
+    }
+
+    /**
+     * Returns the number of requests that have been released to be sent to the bridge.
+     *
+     * @return a count
+     */
+    synchronized public long getSentCount() {
+        return sentCount;
+    }
+
+    private boolean isWindowOpen(String id, long now) {
+        Long last = lastSendTimes.get(id);
+        return (last != null && now - last < window);
+    }
+
+    private static class PendingRequest {
+        SetLightStateRequest request;
+        long dueTime;
+
+        PendingRequest(SetLightStateRequest request, long dueTime) {
+            this.request = request;
+            this.dueTime = dueTime;
+        }
+    }
+}
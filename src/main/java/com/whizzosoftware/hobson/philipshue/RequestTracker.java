@@ -0,0 +1,255 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.BridgeRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.GetAllLightsRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.GetFullStateRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.GetLightAttributeAndStateRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the requests that are outstanding with the Hue bridge. Every request is assigned a sequence number
+ * when it is sent, duplicate state requests (for the same target) are suppressed while one is still pending and
+ * light state is only applied if it came from a request newer than the one that produced the light's current state.
+ *
+ * Requests that go unanswered for too long are expired so that they can be reported as timed out and response
+ * latencies are recorded for each request type.
+ *
+ * @author Dan Noguerol
+ */
+public class RequestTracker {
+    private static final int LATENCY_WINDOW = 1024;
+
+    private long maxPendingTime;
+    private long nextSequence = 1;
+    private final Map<BridgeRequest,Long> outstanding = new IdentityHashMap<>();
+    private final Map<String,BridgeRequest> pendingByKey = new HashMap<>();
+    private final Map<Class,Integer> outstandingCounts = new HashMap<>();
+    private final Map<String,Long> appliedSequences = new HashMap<>();
+    private final Map<Class,LatencyStats> latencies = new HashMap<>();
+    private long suppressedCount;
+    private long staleCount;
+    private long timeoutCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPendingTime how long (in milliseconds) a request can be pending before it is assumed to be lost
+     */
+    public RequestTracker(long maxPendingTime) {
+        setMaxPendingTime(maxPendingTime);
+    }
+
+    /**
+     * Sets how long a request can be pending before it is assumed to be lost.
+     *
+     * @param maxPendingTime the time in milliseconds
+     */
+    synchronized public void setMaxPendingTime(long maxPendingTime) {
+        if (maxPendingTime <= 0) {
+            throw new IllegalArgumentException("Invalid request timeout: " + maxPendingTime);
+        }
+        this.maxPendingTime = maxPendingTime;
+    }
+
+    /**
+     * Starts tracking a request that is about to be sent.
+     *
+     * @param request the request
+     * @param now the current time
+     *
+     * @return false if an identical request is already pending (and this one should not be sent)
+     */
+    synchronized public boolean start(BridgeRequest request, long now) {
+        String key = getKey(request);
+        if (key != null) {
+            BridgeRequest pending = pendingByKey.get(key);
+            if (pending != null) {
+                Long startTime = outstanding.get(pending);
+                if (startTime != null && now - startTime < maxPendingTime) {
+                    suppressedCount++;
+                    return false;
+                }
+                remove(pending);
+            }
+            pendingByKey.put(key, request);
+        }
+        request.setSequence(nextSequence++);
+        outstanding.put(request, now);
+        Integer c = outstandingCounts.get(request.getClass());
+        outstandingCounts.put(request.getClass(), c != null ? c + 1 : 1);
+        return true;
+    }
+
+    /**
+     * Returns a new sequence number for light state that didn't come from a request (e.g. a pushed event). State
+     * from any request sent before this call is considered older.
+     *
+     * @return a sequence number
+     */
+    synchronized public long nextSequence() {
+        return nextSequence++;
+    }
+
+    /**
+     * Stops tracking a request because a response (or failure) has been received for it.
+     *
+     * @param request the request
+     *
+     * @return true if the request was being tracked
+     */
+    synchronized public boolean complete(Object request) {
+        if (request instanceof BridgeRequest && outstanding.containsKey(request)) {
+            remove((BridgeRequest)request);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops tracking a request because a response has been received for it and records how long it took.
+     *
+     * @param request the request
+     * @param now the current time
+     *
+     * @return true if the request was being tracked
+     */
+    synchronized public boolean complete(Object request, long now) {
+        Long startTime = (request instanceof BridgeRequest) ? outstanding.get(request) : null;
+        if (startTime != null) {
+            remove((BridgeRequest)request);
+            LatencyStats stats = latencies.get(request.getClass());
+            if (stats == null) {
+                stats = new LatencyStats(LATENCY_WINDOW);
+                latencies.put(request.getClass(), stats);
+            }
+            stats.record(now - startTime);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops tracking all requests that have been pending for too long.
+     *
+     * @param now the current time
+     *
+     * @return the requests that timed out (in no particular order)
+     */
+    synchronized public List<BridgeRequest> expire(long now) {
+        List<BridgeRequest> expired = null;
+        Iterator<Map.Entry<BridgeRequest,Long>> it = outstanding.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<BridgeRequest,Long> e = it.next();
+            if (now - e.getValue() >= maxPendingTime) {
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(e.getKey());
+            }
+        }
+        if (expired == null) {
+            return Collections.emptyList();
+        }
+        for (BridgeRequest r : expired) {
+            remove(r);
+        }
+        timeoutCount += expired.size();
+        return expired;
+    }
+
+    /**
+     * Indicates whether light state produced by a request with the specified sequence number should be applied.
+     * If so, the sequence number is recorded as the light's most recent.
+     *
+     * @param lightId the light ID
+     * @param sequence the sequence number of the request that produced the state
+     *
+     * @return false if the state is older than state that has already been applied
+     */
+    synchronized public boolean acceptLightState(String lightId, long sequence) {
+        Long applied = appliedSequences.get(lightId);
+        if (applied != null && sequence < applied) {
+            staleCount++;
+            return false;
+        }
+        if (sequence > 0) {
+            appliedSequences.put(lightId, sequence);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of outstanding requests of a particular type.
+     *
+     * @param requestClass the request class
+     *
+     * @return a count
+     */
+    synchronized public int getOutstandingCount(Class requestClass) {
+        Integer c = outstandingCounts.get(requestClass);
+        return (c != null) ? c : 0;
+    }
+
+    synchronized public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    synchronized public long getStaleCount() {
+        return staleCount;
+    }
+
+    synchronized public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * Returns the response latency statistics for a particular type of request.
+     *
+     * @param requestClass the request class
+     *
+     * @return a LatencyStats instance (or null if no response has been received for that type)
+     */
+    synchronized public LatencyStats getLatencyStats(Class requestClass) {
+        return latencies.get(requestClass);
+    }
+
+    private void remove(BridgeRequest request) {
+        outstanding.remove(request);
+        String key = getKey(request);
+        if (key != null && pendingByKey.get(key) == request) {
+            pendingByKey.remove(key);
+        }
+        Integer c = outstandingCounts.get(request.getClass());
+        if (c != null) {
+            outstandingCounts.put(request.getClass(), c - 1);
+        }
+    }
+
+    private String getKey(BridgeRequest request) {
+        if (request instanceof GetAllLightsRequest) {
+            return "lights";
+        } else if (request instanceof GetFullStateRequest) {
+            return "";
+        } else if (request instanceof GetLightAttributeAndStateRequest) {
+            return "lights/" + ((GetLightAttributeAndStateRequest)request).getId();
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Decides whether to trust the TLS certificate presented by a Hue bridge. Bridges present a certificate that is
+ * self-signed (or signed by the manufacturer's private CA) and issued to the bridge ID rather than to its address,
+ * so neither the JVM's trust store nor the usual host name check can be used.
+ *
+ * Instead the bridge's certificate is pinned by its SHA-256 fingerprint. If no fingerprint is known yet, the first
+ * certificate seen is trusted and reported to the listener so that it can be saved; from then on only a certificate
+ * with that fingerprint is accepted.
+ *
+ * @author Dan Noguerol
+ */
+public class BridgeCertificateTrust implements X509TrustManager, HostnameVerifier {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Listener listener;
+    private String fingerprint;
+    private SSLSocketFactory socketFactory;
+
+    /**
+     * Constructor.
+     *
+     * @param fingerprint the SHA-256 fingerprint of the bridge's certificate (or null to trust the first one seen)
+     * @param listener the listener to notify when a certificate is pinned (can be null)
+     */
+    public BridgeCertificateTrust(String fingerprint, Listener listener) {
+        this.fingerprint = normalize(fingerprint);
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the fingerprint of the pinned certificate.
+     *
+     * @return a lower case hex string (or null if no certificate has been pinned yet)
+     */
+    synchronized public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns a socket factory that uses this object to check the bridge's certificate.
+     *
+     * @return an SSLSocketFactory
+     *
+     * @throws HueException on failure
+     */
+    synchronized public SSLSocketFactory getSocketFactory() throws HueException {
+        if (socketFactory == null) {
+            try {
+                SSLContext ctx = SSLContext.getInstance("TLS");
+                ctx.init(null, new TrustManager[] {this}, null);
+                socketFactory = ctx.getSocketFactory();
+            } catch (GeneralSecurityException e) {
+                throw new HueException("Unable to create TLS context for Hue bridge", e);
+            }
+        }
+        return socketFactory;
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new CertificateException("Hue bridge presented no certificate");
+        }
+        String fp = getFingerprint(chain[0]);
+        boolean pinned = false;
+        synchronized (this) {
+            if (fingerprint == null) {
+                fingerprint = fp;
+                pinned = true;
+            } else if (!fingerprint.equals(fp)) {
+                throw new CertificateException("Hue bridge certificate " + fp + " doesn't match the pinned certificate " + fingerprint);
+            }
+        }
+        if (pinned && listener != null) {
+            listener.onCertificatePinned(fp);
+        }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        throw new CertificateException("Client certificates are not supported");
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+    }
+
+    /**
+     * Verifies the host name of a connection. The bridge's certificate names the bridge ID rather than its address
+     * so the pinned certificate is what identifies the bridge.
+     *
+     * @param hostname the host name that was connected to
+     * @param session the TLS session
+     *
+     * @return true if the session's certificate is the pinned one
+     */
+    @Override
+    public boolean verify(String hostname, SSLSession session) {
+        try {
+            Certificate[] certs = session.getPeerCertificates();
+            String fp = getFingerprint();
+            return (certs != null && certs.length > 0 && fp != null && fp.equals(getFingerprint(certs[0])));
+        } catch (SSLPeerUnverifiedException | CertificateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 fingerprint of a certificate.
+     *
+     * @param cert the certificate
+     *
+     * @return a lower case hex string
+     *
+     * @throws CertificateException on failure
+     */
+    static String getFingerprint(Certificate cert) throws CertificateException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+            char[] c = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                c[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                c[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(c);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new CertificateException("Unable to calculate certificate fingerprint", e);
+        }
+    }
+
+    /**
+     * Converts a fingerprint to the form used for comparisons so that the usual "AB:CD:..." form can be used in
+     * configuration.
+     *
+     * @param fingerprint the fingerprint (can be null)
+     *
+     * @return a lower case hex string without separators (or null if the fingerprint is null or empty)
+     */
+    static String normalize(String fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        String s = fingerprint.replace(":", "").replace(" ", "").toLowerCase();
+        return s.isEmpty() ? null : s;
+    }
+
+    /**
+     * An interface for being notified when a bridge certificate has been pinned.
+     */
+    public interface Listener {
+        /**
+         * Called when a bridge certificate has been trusted for the first time. This is called on the thread
+         * making the connection.
+         *
+         * @param fingerprint the certificate's SHA-256 fingerprint
+         */
+        void onCertificatePinned(String fingerprint);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An HttpResponse received by the KeepAliveHttpContext. The bridge doesn't use cookies so none are parsed.
+ *
+ * @author Dan Noguerol
+ */
+class BridgeHttpResponse implements HttpResponse {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int statusCode;
+    private final String statusText;
+    private final Map<String,Collection<String>> headers;
+    private final byte[] body;
+
+    /**
+     * Constructor.
+     *
+     * @param statusCode the status code
+     * @param statusText the status text
+     * @param headers the headers (keyed by lower case name)
+     * @param body the body
+     */
+    BridgeHttpResponse(int statusCode, String statusText, Map<String,Collection<String>> headers, byte[] body) {
+        this.statusCode = statusCode;
+        this.statusText = statusText;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    @Override
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    @Override
+    public String getStatusText() {
+        return statusText;
+    }
+
+    @Override
+    public boolean hasHeader(String name) {
+        return headers.containsKey(name.toLowerCase());
+    }
+
+    @Override
+    public Collection<String> getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    @Override
+    public Map<String,Collection<String>> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public boolean hasCookies() {
+        return false;
+    }
+
+    @Override
+    public Collection<Cookie> getCookies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getBody() {
+        return new String(body, UTF8);
+    }
+
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(body);
+    }
+}
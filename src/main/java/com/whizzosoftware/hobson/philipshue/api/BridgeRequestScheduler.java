@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An HttpContext that sits between HueBridge and the real HttpContext in order to pace the requests sent to the
+ * bridge. Requests are admitted by a token bucket and, when they have to wait, are queued in priority lanes so that
+ * user commands are always sent before light refreshes which are always sent before periodic polls.
+ *
+ * Queued requests are sent on the caller-supplied send executor (normally the plugin event loop) so that they are
+ * issued from the same thread as every other request; the timer is only used to wait for tokens.
+ *
+ * @author Dan Noguerol
+ */
+public class BridgeRequestScheduler implements HttpContext {
+    private static final Logger logger = LoggerFactory.getLogger(BridgeRequestScheduler.class);
+
+    private static final int MAX_LANE_SIZE = 250;
+
+    /**
+     * The request lanes in priority order.
+     */
+    public enum Lane {
+        COMMAND,
+        REFRESH,
+        POLL
+    }
+
+    private final HttpContext delegate;
+    private final ScheduledExecutorService timer;
+    private final Executor sendExecutor;
+    private final TokenBucket bucket;
+    private final Queue<QueuedRequest>[] lanes;
+    private final long[] sentCounts = new long[Lane.values().length];
+    private long queuedCount;
+    private ScheduledFuture drainFuture;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the HttpContext that actually sends requests
+     * @param timer the executor used to wait until tokens become available
+     * @param sendExecutor the executor used to send queued requests
+     * @param ratePerSecond the sustained number of requests per second allowed
+     * @param burst the maximum number of requests that can be sent back-to-back
+     */
+    @SuppressWarnings("unchecked")
+    public BridgeRequestScheduler(HttpContext delegate, ScheduledExecutorService timer, Executor sendExecutor, double ratePerSecond, int burst) {
+        this.delegate = delegate;
+        this.timer = timer;
+        this.sendExecutor = sendExecutor;
+        this.bucket = new TokenBucket(ratePerSecond, burst, System.currentTimeMillis());
+        this.lanes = new Queue[Lane.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+    }
+
+    synchronized public void setRate(double ratePerSecond, int burst) {
+        bucket.setRate(ratePerSecond, burst);
+    }
+
+    @Override
+    public void sendHttpRequest(URI uri, HttpRequest.Method method, Map<String, String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+        QueuedRequest qr = new QueuedRequest(uri, method, headers, cookies, body, context);
+        Lane lane = getLane(context);
+        synchronized (this) {
+            if (isEmpty() && bucket.tryAcquire(System.currentTimeMillis())) {
+                sentCounts[lane.ordinal()]++;
+            } else {
+                Queue<QueuedRequest> q = lanes[lane.ordinal()];
+                if (q.size() >= MAX_LANE_SIZE) {
+                    throw new IllegalStateException("Too many requests waiting to be sent to the Hue bridge");
+                }
+                q.add(qr);
+                queuedCount++;
+                scheduleDrain(System.currentTimeMillis());
+                return;
+            }
+        }
+        qr.send(delegate);
+    }
+
+    /**
+     * Sends as many queued requests as the token bucket currently allows, highest priority lane first.
+     */
+    void drain() {
+        long now = System.currentTimeMillis();
+        QueuedRequest qr;
+        while ((qr = poll(now)) != null) {
+            try {
+                qr.send(delegate);
+            } catch (Exception e) {
+                logger.error("Error sending queued request to Hue bridge", e);
+            }
+        }
+        synchronized (this) {
+            drainFuture = null;
+            scheduleDrain(now);
+        }
+    }
+
+    /**
+     * Returns the number of requests sent for a particular lane.
+     *
+     * @param lane the lane
+     *
+     * @return a count
+     */
+    synchronized public long getSentCount(Lane lane) {
+        return sentCounts[lane.ordinal()];
+    }
+
+    /**
+     * Returns the number of requests that had to wait for a token before being sent.
+     *
+     * @return a count
+     */
+    synchronized public long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Returns the number of requests currently waiting in a particular lane.
+     *
+     * @param lane the lane
+     *
+     * @return a count
+     */
+    synchronized public int getQueueSize(Lane lane) {
+        return lanes[lane.ordinal()].size();
+    }
+
+    static Lane getLane(Object context) {
+        if (context instanceof GetAllLightsRequest || context instanceof GetFullStateRequest) {
+            return Lane.POLL;
+        } else if (context instanceof GetLightAttributeAndStateRequest || context instanceof GetAllGroupsRequest) {
+            return Lane.REFRESH;
+        } else {
+            return Lane.COMMAND;
+        }
+    }
+
+    synchronized private QueuedRequest poll(long now) {
+        for (Queue<QueuedRequest> q : lanes) {
+            if (!q.isEmpty()) {
+                if (bucket.tryAcquire(now)) {
+                    sentCounts[getLane(q.peek().context).ordinal()]++;
+                    return q.poll();
+                } else {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isEmpty() {
+        for (Queue<QueuedRequest> q : lanes) {
+            if (!q.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void scheduleDrain(long now) {
+        if (drainFuture == null && !isEmpty()) {
+            drainFuture = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sendExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            drain();
+                        }
+                    });
+                }
+            }, bucket.getWaitTime(now), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class QueuedRequest {
+        URI uri;
+        HttpRequest.Method method;
+        Map<String,String> headers;
+        Collection<Cookie> cookies;
+        byte[] body;
+        Object context;
+
+        QueuedRequest(URI uri, HttpRequest.Method method, Map<String,String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+            this.uri = uri;
+            this.method = method;
+            this.headers = headers;
+            this.cookies = cookies;
+            this.body = body;
+            this.context = context;
+        }
+
+        void send(HttpContext http) {
+            http.sendHttpRequest(uri, method, headers, cookies, body, context);
+        }
+    }
+}
@@ -8,9 +8,10 @@
 package com.whizzosoftware.hobson.philipshue.api;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Hue color conversion convenience methods.
@@ -18,48 +19,87 @@ import java.util.StringTokenizer;
  * This was converted from Philips Objective-C code posted here:
  *
  * https://github.com/PhilipsHue/PhilipsHueSDK-iOS-OSX/blob/master/ApplicationDesignNotes/RGB%20to%20xy%20Color%20conversion.md
+ *
+ * The sRGB gamma curve is looked up in tables rather than calculated with Math.pow(). Since RGB input is 8-bit, the
+ * table used by calculateXY() holds the exact value for every input. The table used by colorFromXY() is sampled at
+ * a configurable number of points and interpolated between them; with the default size the result is within
+ * 0.00002 of the calculated value, which can change an RGB value by at most 1.
  */
 public class ColorConversion {
+    public static final int DEFAULT_GAMMA_TABLE_SIZE = 4096;
+    /**
+     * The smallest batch that is split across a ForkJoinPool. Smaller batches finish before the work could be
+     * handed to other threads.
+     */
+    public static final int PARALLEL_BATCH_THRESHOLD = 4096;
+
+    private static final int BATCH_SPLIT_SIZE = 1024;
+
     private static final int cptRED = 0;
     private static final int cptGREEN = 1;
     private static final int cptBLUE = 2;
 
-    static public Color colorFromXY(PointF xy, String model) {
-        List<PointF> colorPoints = colorPointsForModel(model);
-        boolean inReachOfLamps = checkPointInLampsReach(xy, colorPoints);
+    private static final float[] linearTable = createLinearTable();
+    private static volatile float[] gammaTable = createGammaTable(DEFAULT_GAMMA_TABLE_SIZE);
 
-        if (!inReachOfLamps) {
-            // It seems the colour is out of reach; let's find the closest colour we can produce with our lamp and
-            // send this XY value out.
+    /**
+     * Sets the number of points the gamma curve used by colorFromXY() is sampled at. More points are more accurate
+     * but take more memory (4 bytes each).
+     *
+     * @param size the number of points (at least 256) or 0 to calculate every value without tables
+     */
+    static public void setGammaTableSize(int size) {
+        if (size != 0 && size < 256) {
+            throw new IllegalArgumentException("Gamma table size must be 0 or at least 256");
+        }
+        gammaTable = (size > 0) ? createGammaTable(size) : null;
+    }
 
-            // Find the closest point on each line in the triangle
-            PointF pAB = getClosestPointToPoints(colorPoints.get(cptRED), colorPoints.get(cptGREEN), xy);
-            PointF pAC = getClosestPointToPoints(colorPoints.get(cptBLUE), colorPoints.get(cptRED), xy);
-            PointF pBC = getClosestPointToPoints(colorPoints.get(cptGREEN), colorPoints.get(cptBLUE), xy);
+    static public int getGammaTableSize() {
+        float[] t = gammaTable;
+        return (t != null) ? t.length : 0;
+    }
+
+    static public Color colorFromXY(PointF xy, String model) {
+        return colorFromXY(xy, ColorGamut.forModel(model));
+    }
 
-            // Get the distances per point and see which point is closer to our Point
-            float dAB = getDistanceBetweenTwoPoints(xy, pAB);
-            float dAC = getDistanceBetweenTwoPoints(xy, pAC);
-            float dBC = getDistanceBetweenTwoPoints(xy, pBC);
+    /**
+     * Converts a CIE xy color to RGB. If the color is out of reach of the lamp, xy is changed to the closest color
+     * the lamp can produce.
+     *
+     * @param xy the color
+     * @param gamut the gamut of the lamp
+     *
+     * @return a Color
+     */
+    static public Color colorFromXY(PointF xy, ColorGamut gamut) {
+        float[] p = {xy.x, xy.y};
+        int[] rgb = new int[3];
+        colorFromXY(p, gamut, rgb);
 
-            float lowest = dAB;
-            PointF closestPoint = pAB;
+        // Change the xy value to a value which is within the reach of the lamp
+        xy.x = p[0];
+        xy.y = p[1];
 
-            if (dAC < lowest) {
-                lowest = dAC;
-                closestPoint = pAC;
-            }
-            if (dBC < lowest) {
-                closestPoint = pBC;
-            }
+        return new Color(rgb[0], rgb[1], rgb[2]);
+    }
 
-            // Change the xy value to a value which is within the reach of the lamp
-            xy.x = closestPoint.x;
-            xy.y = closestPoint.y;
-        }
+    /**
+     * Converts a CIE xy color to RGB without creating any objects. This gives the same results as
+     * colorFromXY(PointF, ColorGamut).
+     *
+     * @param xy the x and y values of the color; if the color is out of reach of the lamp, they are changed to the
+     *           closest color the lamp can produce
+     * @param gamut the gamut of the lamp
+     * @param rgb receives the red, green and blue values (0-255)
+     */
+    static public void colorFromXY(float[] xy, ColorGamut gamut, int[] rgb) {
+        // if the colour is out of reach, find the closest colour we can produce with our lamp
+        gamut.clamp(xy[0], xy[1], xy);
 
-        float x = xy.x;
-        float y = xy.y;
+        float x = xy[0];
+        float y = xy[1];
         float z = 1.0f - x - y;
 
         float Y = 1.0f;
@@ -91,9 +131,10 @@ public class ColorConversion {
         }
 
         // Apply gamma correction
-        r = r <= 0.0031308f ? 12.92f * r : (1.0f + 0.055f) * (float)Math.pow((double)r, (double)((1.0f / 2.4f))) - 0.055f;
-        g = g <= 0.0031308f ? 12.92f * g : (1.0f + 0.055f) * (float)Math.pow((double)g, (double)((1.0f / 2.4f))) - 0.055f;
-        b = b <= 0.0031308f ? 12.92f * b : (1.0f + 0.055f) * (float)Math.pow((double)b, (double)((1.0f / 2.4f))) - 0.055f;
+        float[] table = gammaTable;
+        r = toGamma(r, table);
+        g = toGamma(g, table);
+        b = toGamma(b, table);
 
         if (r > b && r > g) {
             // red is biggest
@@ -120,18 +161,95 @@ public class ColorConversion {
             }
         }
 
-        return new Color(r, g, b);
+        rgb[0] = toColorValue(r);
+        rgb[1] = toColorValue(g);
+        rgb[2] = toColorValue(b);
     }
 
     static public PointF calculateXY(int aRed, int aGreen, int aBlue, String model) {
-        double normalizedRed = (double)aRed / 255.0;
-        double normalizedGreen = (double)aGreen / 255.0;
-        double normalizedBlue = (double)aBlue / 255.0;
+        return calculateXY(aRed, aGreen, aBlue, ColorGamut.forModel(model));
+    }
 
+    /**
+     * Converts an RGB color to the closest CIE xy color a lamp can produce.
+     *
+     * @param aRed the red value (0-255)
+     * @param aGreen the green value (0-255)
+     * @param aBlue the blue value (0-255)
+     * @param gamut the gamut of the lamp
+     *
+     * @return a new PointF
+     */
+    static public PointF calculateXY(int aRed, int aGreen, int aBlue, ColorGamut gamut) {
+        float[] xy = new float[2];
+        calculateXY(aRed, aGreen, aBlue, gamut, xy);
+        return new PointF(xy[0], xy[1]);
+    }
+
+    /**
+     * Converts an RGB color to the closest CIE xy color a lamp can produce without creating any objects. This
+     * gives the same results as calculateXY(int, int, int, ColorGamut).
+     *
+     * @param aRed the red value (0-255)
+     * @param aGreen the green value (0-255)
+     * @param aBlue the blue value (0-255)
+     * @param gamut the gamut of the lamp
+     * @param xy receives the x and y values (can be a re-used array)
+     */
+    static public void calculateXY(int aRed, int aGreen, int aBlue, ColorGamut gamut, float[] xy) {
+        calculateXY(aRed, aGreen, aBlue, gamut, xy, 0, gammaTable != null);
+    }
+
+    /**
+     * Converts a batch of RGB colors to the closest CIE xy colors their lamps can produce. This gives the same
+     * results as calling calculateXY() for each color, but the gamma setting is only read once and the loop works
+     * on primitive arrays so nothing is created per color.
+     *
+     * @param rgb the colors as 0xRRGGBB values
+     * @param gamutIndexes the index into gamuts of the gamut of the lamp for each color
+     * @param gamuts the gamuts of the lamps (e.g. one per distinct model)
+     * @param xy receives the x and y values of each color (x at 2 * i and y at 2 * i + 1)
+     * @param count the number of colors to convert
+     */
+    static public void calculateXY(int[] rgb, int[] gamutIndexes, ColorGamut[] gamuts, float[] xy, int count) {
+        calculateXY(rgb, gamutIndexes, gamuts, xy, count, null);
+    }
+
+    /**
+     * Converts a batch of RGB colors to the closest CIE xy colors their lamps can produce, splitting batches of
+     * at least PARALLEL_BATCH_THRESHOLD colors across a ForkJoinPool.
+     *
+     * @param rgb the colors as 0xRRGGBB values
+     * @param gamutIndexes the index into gamuts of the gamut of the lamp for each color
+     * @param gamuts the gamuts of the lamps (e.g. one per distinct model)
+     * @param xy receives the x and y values of each color (x at 2 * i and y at 2 * i + 1)
+     * @param count the number of colors to convert
+     * @param pool the pool to run large batches in (or null to always convert on the calling thread)
+     */
+    static public void calculateXY(int[] rgb, int[] gamutIndexes, ColorGamut[] gamuts, float[] xy, int count, ForkJoinPool pool) {
+        if (count < 0 || count > rgb.length || count > gamutIndexes.length || count > xy.length / 2) {
+            throw new IllegalArgumentException("Invalid batch size: " + count);
+        }
+        boolean useTable = (gammaTable != null);
+        if (pool != null && count >= PARALLEL_BATCH_THRESHOLD) {
+            pool.invoke(new XYBatchTask(rgb, gamutIndexes, gamuts, xy, 0, count, useTable));
+        } else {
+            calculateXY(rgb, gamutIndexes, gamuts, xy, 0, count, useTable);
+        }
+    }
+
+    static private void calculateXY(int[] rgb, int[] gamutIndexes, ColorGamut[] gamuts, float[] xy, int start, int end, boolean useTable) {
+        for (int i = start; i < end; i++) {
+            int c = rgb[i];
+            calculateXY((c >> 16) & 0xff, (c >> 8) & 0xff, c & 0xff, gamuts[gamutIndexes[i]], xy, i * 2, useTable);
+        }
+    }
+
+    static private void calculateXY(int aRed, int aGreen, int aBlue, ColorGamut gamut, float[] xy, int offset, boolean useTable) {
         // apply gamma correction
-        float red = (normalizedRed > 0.04045f) ? (float)Math.pow((normalizedRed + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedRed / 12.92);
-        float green = (normalizedGreen > 0.04045) ? (float)Math.pow((normalizedGreen + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedGreen / 12.92);
-        float blue = (normalizedBlue > 0.04045) ? (float)Math.pow((normalizedBlue + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedBlue / 12.92);
+        float red = toLinear(aRed, useTable);
+        float green = toLinear(aGreen, useTable);
+        float blue = toLinear(aBlue, useTable);
 
         // wide gamut conversion D65
         float X = (red * 0.649926f + green * 0.103455f + blue * 0.197109f);
@@ -143,79 +261,89 @@ public class ColorConversion {
 
         // TODO: check for NaN
 
-        PointF xyPoint = new PointF(cx, cy);
-        List<PointF> colorPoints = colorPointsForModel(model);
-        boolean inReachOfLamps = checkPointInLampsReach(xyPoint, colorPointsForModel(model));
-
-        if (!inReachOfLamps) {
-            // It seems the colour is out of reach let's find the closest colour we can produce with our lamp and
-            // send this XY value out
-
-            // Find the closest point on each line in the triangle
-            PointF pAB = getClosestPointToPoints(colorPoints.get(cptRED), colorPoints.get(cptGREEN), xyPoint);
-            PointF pAC = getClosestPointToPoints(colorPoints.get(cptBLUE), colorPoints.get(cptRED), xyPoint);
-            PointF pBC = getClosestPointToPoints(colorPoints.get(cptGREEN), colorPoints.get(cptBLUE), xyPoint);
-
-            // Get the distances per point and see which point is closer to our Point
-            float dAB = getDistanceBetweenTwoPoints(xyPoint, pAB);
-            float dAC = getDistanceBetweenTwoPoints(xyPoint, pAC);
-            float dBC = getDistanceBetweenTwoPoints(xyPoint, pBC);
-
-            float lowest = dAB;
-            PointF closestPoint = pAB;
-
-            if (dAC < lowest) {
-                lowest = dAC;
-                closestPoint = pAC;
-            }
-            if (dBC < lowest) {
-                closestPoint = pBC;
-            }
+        // if the colour is out of reach, find the closest colour we can produce with our lamp
+        gamut.clamp(cx, cy, xy, offset);
+    }
 
-            // Change the xy value to a value which is within reach of the lamp
-            cx = closestPoint.x;
-            cy = closestPoint.y;
+    /**
+     * Converts a hue and saturation to RGB at full brightness. Hue lights take brightness separately from their
+     * color so it isn't part of the conversion.
+     *
+     * @param hue the hue (0-360)
+     * @param saturation the saturation (0-100)
+     * @param rgb receives the red, green and blue values (0-255)
+     */
+    static public void rgbFromHueSaturation(int hue, int saturation, int[] rgb) {
+        float h = (((hue % 360) + 360) % 360) / 60.0f;
+        float s = Math.max(0, Math.min(100, saturation)) / 100.0f;
+        int sector = (int)h;
+        float f = h - sector;
+        float p = 1.0f - s;
+        float q = 1.0f - s * f;
+        float t = 1.0f - s * (1.0f - f);
+        float r, g, b;
+        switch (sector) {
+            case 0:
+                r = 1.0f; g = t; b = p;
+                break;
+            case 1:
+                r = q; g = 1.0f; b = p;
+                break;
+            case 2:
+                r = p; g = 1.0f; b = t;
+                break;
+            case 3:
+                r = p; g = q; b = 1.0f;
+                break;
+            case 4:
+                r = t; g = p; b = 1.0f;
+                break;
+            default:
+                r = 1.0f; g = p; b = q;
         }
+        rgb[0] = Math.round(r * 255);
+        rgb[1] = Math.round(g * 255);
+        rgb[2] = Math.round(b * 255);
+    }
 
-        return new PointF(cx, cy);
+    /**
+     * Converts RGB to a hue and saturation. This is the reverse of rgbFromHueSaturation().
+     *
+     * @param r the red value (0-255)
+     * @param g the green value (0-255)
+     * @param b the blue value (0-255)
+     * @param hs receives the hue (0-359) and saturation (0-100)
+     */
+    static public void hueSaturationFromRGB(int r, int g, int b, int[] hs) {
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        float d = max - min;
+        float h;
+        if (d == 0) {
+            h = 0;
+        } else if (max == r) {
+            h = 60.0f * ((g - b) / d);
+        } else if (max == g) {
+            h = 60.0f * ((b - r) / d + 2.0f);
+        } else {
+            h = 60.0f * ((r - g) / d + 4.0f);
+        }
+        hs[0] = (Math.round(h) + 360) % 360;
+        hs[1] = (max > 0) ? Math.round(d / max * 100.0f) : 0;
     }
 
+    /**
+     * Returns the corners of the gamut triangle for a light model.
+     *
+     * @param model the model ID
+     *
+     * @return a new List of PointF (red, green and blue)
+     */
     static public List<PointF> colorPointsForModel(String model) {
         List<PointF> colorPoints = new ArrayList<PointF>();
-
-        List<String> hueBulbs = Arrays.asList(
-                "LCT001", // Hue A19
-                "LCT002", // Hue BR30
-                "LCT003"  // Hue GU10
-        );
-        List<String> livingColors = Arrays.asList(
-                "LLC001", // Monet, Renoir, Mondriaan (gen II)
-                "LLC005", // Bloom (gen II)
-                "LLC006", // Iris (gen III)
-                "LLC007", // Bloom, Aura (gen III)
-                "LLC011", // Hue Bloom
-                "LLC012", // Hue Bloom
-                "LLC013", // Storylight
-                "LST001"  // Light Strips
-        );
-
-        if (hueBulbs.contains(model)) {
-            // Hue bulbs color gamut triangle
-            colorPoints.add(new PointF(0.674f, 0.322f)); // Red
-            colorPoints.add(new PointF(0.408f, 0.517f)); // Green
-            colorPoints.add(new PointF(0.168f, 0.041f)); // Blue
-        } else if (livingColors.contains(model)) {
-            // LivingColors color gamut triangle
-            colorPoints.add(new PointF(0.703f, 0.296f)); // Red
-            colorPoints.add(new PointF(0.214f, 0.709f)); // Green
-            colorPoints.add(new PointF(0.139f, 0.081f)); // Blue
-        } else {
-            // Default construct triangle which contains all values
-            colorPoints.add(new PointF(1.0f, 0.0f)); // Red
-            colorPoints.add(new PointF(0.0f, 1.0f)); // Green
-            colorPoints.add(new PointF(0.0f, 0.0f)); // Blue
+        for (PointF p : ColorGamut.forModel(model).getColorPoints()) {
+            colorPoints.add(new PointF(p.x, p.y));
         }
-
         return colorPoints;
     }
 
@@ -274,6 +402,107 @@ public class ColorConversion {
         return null;
     }
 
+    /**
+     * Converts an 8-bit sRGB value to a linear value between 0 and 1.
+     */
+    static float toLinear(int v) {
+        return toLinear(v, gammaTable != null);
+    }
+
+    static private float toLinear(int v, boolean useTable) {
+        if (useTable && v >= 0 && v < linearTable.length) {
+            return linearTable[v];
+        }
+        return calculateLinear(v);
+    }
+
+    static float calculateLinear(int v) {
+        double normalized = (double)v / 255.0;
+        return (normalized > 0.04045) ? (float)Math.pow((normalized + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalized / 12.92);
+    }
+
+    /**
+     * Converts a linear value to an sRGB value between 0 and 1.
+     */
+    static float toGamma(float v) {
+        return toGamma(v, gammaTable);
+    }
+
+    static private float toGamma(float v, float[] table) {
+        if (table == null || v <= 0.0031308f || v >= 1.0f) {
+            return calculateGamma(v);
+        }
+        // interpolate between the closest two points
+        float pos = v * (table.length - 1);
+        int ix = (int)pos;
+        return table[ix] + (table[ix + 1] - table[ix]) * (pos - ix);
+    }
+
+    static float calculateGamma(float v) {
+        return v <= 0.0031308f ? 12.92f * v : calculateGammaCurve(v);
+    }
+
+    static private float calculateGammaCurve(float v) {
+        return (1.0f + 0.055f) * (float)Math.pow((double)v, (double)((1.0f / 2.4f))) - 0.055f;
+    }
+
+    static private float[] createLinearTable() {
+        float[] t = new float[256];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = calculateLinear(i);
+        }
+        return t;
+    }
+
+    static private float[] createGammaTable(int size) {
+        // the linear part of the curve is always calculated so every point uses the exponential part
+        float[] t = new float[size];
+        for (int i = 0; i < size; i++) {
+            t[i] = calculateGammaCurve((float)i / (size - 1));
+        }
+        return t;
+    }
+
+    static private int toColorValue(float f) {
+        return Math.max((int)Math.ceil(f * 255), 0);
+    }
+
+    /**
+     * Converts part of a batch and splits itself in half until the parts are small enough.
+     */
+    static private class XYBatchTask extends RecursiveAction {
+        private final int[] rgb;
+        private final int[] gamutIndexes;
+        private final ColorGamut[] gamuts;
+        private final float[] xy;
+        private final int start;
+        private final int end;
+        private final boolean useTable;
+
+        XYBatchTask(int[] rgb, int[] gamutIndexes, ColorGamut[] gamuts, float[] xy, int start, int end, boolean useTable) {
+            this.rgb = rgb;
+            this.gamutIndexes = gamutIndexes;
+            this.gamuts = gamuts;
+            this.xy = xy;
+            this.start = start;
+            this.end = end;
+            this.useTable = useTable;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= BATCH_SPLIT_SIZE) {
+                calculateXY(rgb, gamutIndexes, gamuts, xy, start, end, useTable);
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(
+                    new XYBatchTask(rgb, gamutIndexes, gamuts, xy, start, mid, useTable),
+                    new XYBatchTask(rgb, gamutIndexes, gamuts, xy, mid, end, useTable)
+                );
+            }
+        }
+    }
+
     /**
      * A color convenience class.
      */
@@ -290,9 +519,9 @@ public class ColorConversion {
          * @param b the value of blue as a float between 0 and 1
          */
         public Color(float r, float g, float b) {
-            this.r = Math.max((int)Math.ceil(r * 255), 0);
-            this.g = Math.max((int)Math.ceil(g * 255), 0);
-            this.b = Math.max((int)Math.ceil(b * 255), 0);
+            this.r = toColorValue(r);
+            this.g = toColorValue(g);
+            this.b = toColorValue(b);
         }
 
         /**
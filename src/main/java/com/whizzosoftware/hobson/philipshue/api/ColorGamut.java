@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The triangle of CIE xy colors a Hue light can produce. Instances are immutable and the values that only depend on
+ * the triangle are computed once so that checking or clamping a point doesn't create any objects.
+ *
+ * Gamuts are looked up by light model. The built-in models can be extended (or overridden) with a
+ * ColorGamutRegistry.
+ *
+ * @author Dan Noguerol
+ */
+public final class ColorGamut {
+    /**
+     * LivingColors lamps, Bloom, Iris and the original light strips.
+     */
+    public static final ColorGamut A = new ColorGamut(0, "A", 0.703f, 0.296f, 0.214f, 0.709f, 0.139f, 0.081f);
+    /**
+     * First generation Hue bulbs.
+     */
+    public static final ColorGamut B = new ColorGamut(1, "B", 0.674f, 0.322f, 0.408f, 0.517f, 0.168f, 0.041f);
+    /**
+     * Third generation Hue bulbs and light strips.
+     */
+    public static final ColorGamut C = new ColorGamut(2, "C", 0.692f, 0.308f, 0.17f, 0.7f, 0.153f, 0.048f);
+    /**
+     * A triangle that contains all values, used for unknown models.
+     */
+    public static final ColorGamut DEFAULT = new ColorGamut(3, "default", 1.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f);
+
+    private static final Map<String,ColorGamut> MODELS = createDefaultModels();
+
+    private final int id;
+    private final String name;
+    private final float redX;
+    private final float redY;
+    private final float greenX;
+    private final float greenY;
+    private final float blueX;
+    private final float blueY;
+    private final float cross;
+    private final List<ColorConversion.PointF> colorPoints;
+
+    private ColorGamut(int id, String name, float redX, float redY, float greenX, float greenY, float blueX, float blueY) {
+        this.id = id;
+        this.name = name;
+        this.redX = redX;
+        this.redY = redY;
+        this.greenX = greenX;
+        this.greenY = greenY;
+        this.blueX = blueX;
+        this.blueY = blueY;
+        this.cross = crossProduct(greenX - redX, greenY - redY, blueX - redX, blueY - redY);
+
+        List<ColorConversion.PointF> points = new ArrayList<>();
+        points.add(new ColorConversion.PointF(redX, redY));
+        points.add(new ColorConversion.PointF(greenX, greenY));
+        points.add(new ColorConversion.PointF(blueX, blueY));
+        this.colorPoints = Collections.unmodifiableList(points);
+    }
+
+    /**
+     * Returns the built-in gamut for a light model.
+     *
+     * @param model the model ID (can be null)
+     *
+     * @return a ColorGamut (DEFAULT if the model isn't known)
+     */
+    public static ColorGamut forModel(String model) {
+        ColorGamut g = (model != null) ? MODELS.get(model) : null;
+        return (g != null) ? g : DEFAULT;
+    }
+
+    /**
+     * Returns a gamut by name.
+     *
+     * @param name the name ("A", "B", "C" or "default"; case is ignored)
+     *
+     * @return a ColorGamut or null if the name isn't known
+     */
+    public static ColorGamut forName(String name) {
+        for (ColorGamut g : new ColorGamut[] {A, B, C, DEFAULT}) {
+            if (g.name.equalsIgnoreCase(name)) {
+                return g;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a small number that is unique to this gamut (e.g. for use in cache keys).
+     *
+     * @return an int between 0 and 3
+     */
+    int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the red, green and blue corners of the gamut triangle (in that order). The returned list and points
+     * are shared and must not be modified.
+     *
+     * @return a List of PointF
+     */
+    public List<ColorConversion.PointF> getColorPoints() {
+        return colorPoints;
+    }
+
+    /**
+     * Indicates whether a point is within reach of lights with this gamut.
+     *
+     * @param x the x value
+     * @param y the y value
+     *
+     * @return a boolean
+     */
+    public boolean contains(float x, float y) {
+        float qx = x - redX;
+        float qy = y - redY;
+        float s = crossProduct(qx, qy, blueX - redX, blueY - redY) / cross;
+        float t = crossProduct(greenX - redX, greenY - redY, qx, qy) / cross;
+        return (s >= 0.0f) && (t >= 0.0f) && (s + t <= 1.0f);
+    }
+
+    /**
+     * Returns the closest point to the given point that is within the gamut. Points already within the gamut are
+     * returned as is.
+     *
+     * @param x the x value
+     * @param y the y value
+     *
+     * @return a new PointF
+     */
+    public ColorConversion.PointF getClosestPoint(float x, float y) {
+        float[] xy = new float[2];
+        clamp(x, y, xy);
+        return new ColorConversion.PointF(xy[0], xy[1]);
+    }
+
+    /**
+     * Finds the closest point to the given point that is within the gamut without creating any objects.
+     *
+     * @param x the x value
+     * @param y the y value
+     * @param xy receives the x and y values of the point (can be a re-used array)
+     */
+    public void clamp(float x, float y, float[] xy) {
+        clamp(x, y, xy, 0);
+    }
+
+    /**
+     * Finds the closest point to the given point that is within the gamut and stores it at an offset in an array.
+     *
+     * @param x the x value
+     * @param y the y value
+     * @param xy receives the x and y values of the point
+     * @param offset the index to store the x value at (y is stored after it)
+     */
+    void clamp(float x, float y, float[] xy, int offset) {
+        if (contains(x, y)) {
+            xy[offset] = x;
+            xy[offset + 1] = y;
+            return;
+        }
+
+        // find the closest point on each side of the triangle and pick the closest of those
+        float t = getClosestPointOnLine(redX, redY, greenX, greenY, x, y);
+        float closestX = redX + (greenX - redX) * t;
+        float closestY = redY + (greenY - redY) * t;
+        float lowest = getDistance(x, y, closestX, closestY);
+
+        t = getClosestPointOnLine(blueX, blueY, redX, redY, x, y);
+        float px = blueX + (redX - blueX) * t;
+        float py = blueY + (redY - blueY) * t;
+        float d = getDistance(x, y, px, py);
+        if (d < lowest) {
+            lowest = d;
+            closestX = px;
+            closestY = py;
+        }
+
+        t = getClosestPointOnLine(greenX, greenY, blueX, blueY, x, y);
+        px = greenX + (blueX - greenX) * t;
+        py = greenY + (blueY - greenY) * t;
+        d = getDistance(x, y, px, py);
+        if (d < lowest) {
+            closestX = px;
+            closestY = py;
+        }
+
+        xy[offset] = closestX;
+        xy[offset + 1] = closestY;
+    }
+
+    public String toString() {
+        return "Gamut " + name;
+    }
+
+    /**
+     * Finds the closest point on the line between A and B to P. This follows
+     * ColorConversion.getClosestPointToPoints() step for step so the results are identical.
+     *
+     * @return the position of the point along the line (0-1)
+     */
+    private static float getClosestPointOnLine(float ax, float ay, float bx, float by, float px, float py) {
+        float abx = bx - ax;
+        float aby = by - ay;
+        float ab2 = abx * abx + aby * aby;
+        float ap_ab = (px - ax) * abx + (py - ay) * aby;
+        float t = ap_ab / ab2;
+        if (t < 0.0f) {
+            t = 0.0f;
+        } else if (t > 1.0f) {
+            t = 1.0f;
+        }
+        return t;
+    }
+
+    private static float getDistance(float x1, float y1, float x2, float y2) {
+        float dx = x1 - x2;
+        float dy = y1 - y2;
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float crossProduct(float x1, float y1, float x2, float y2) {
+        return (x1 * y2 - y1 * x2);
+    }
+
+    private static Map<String,ColorGamut> createDefaultModels() {
+        Map<String,ColorGamut> m = new HashMap<>();
+        for (String model : new String[] {
+            "LLC001", // Monet, Renoir, Mondriaan (gen II)
+            "LLC005", // Bloom (gen II)
+            "LLC006", // Iris (gen III)
+            "LLC007", // Bloom, Aura (gen III)
+            "LLC010", // Hue Living Colors Iris
+            "LLC011", // Hue Bloom
+            "LLC012", // Hue Bloom
+            "LLC013", // Storylight
+            "LLC014", // Living Colors Aura
+            "LST001"  // Light Strips
+        }) {
+            m.put(model, A);
+        }
+        for (String model : new String[] {
+            "LCT001", // Hue A19
+            "LCT002", // Hue BR30
+            "LCT003", // Hue GU10
+            "LCT007", // Hue A19 (gen II)
+            "LLM001"  // Color Light Module
+        }) {
+            m.put(model, B);
+        }
+        for (String model : new String[] {
+            "LCT010", // Hue A19 (gen III)
+            "LCT011", // Hue BR30 (gen III)
+            "LCT014", // Hue A19 (gen III)
+            "LLC020", // Hue Go
+            "LST002"  // Light Strips Plus
+        }) {
+            m.put(model, C);
+        }
+        return Collections.unmodifiableMap(m);
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable set of light model to color gamut mappings that extends (or overrides) the built-in ones. This is
+ * intended for models released after this code was written. A new registry is built whenever the mappings change
+ * so that lookups never need to lock.
+ *
+ * @author Dan Noguerol
+ */
+public final class ColorGamutRegistry {
+    /**
+     * A registry with only the built-in models.
+     */
+    public static final ColorGamutRegistry DEFAULT = new ColorGamutRegistry(Collections.<String,ColorGamut>emptyMap());
+
+    private final Map<String,ColorGamut> models;
+
+    /**
+     * Constructor.
+     *
+     * @param models the gamut to use for each light model (the map is copied)
+     */
+    public ColorGamutRegistry(Map<String,ColorGamut> models) {
+        for (Map.Entry<String,ColorGamut> e : models.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) {
+                throw new IllegalArgumentException("Model and gamut are required");
+            }
+        }
+        this.models = Collections.unmodifiableMap(new HashMap<>(models));
+    }
+
+    /**
+     * Returns the gamut for a light model.
+     *
+     * @param model the model ID (can be null)
+     *
+     * @return a ColorGamut (the built-in one if the model has no mapping; DEFAULT if the model isn't known at all)
+     */
+    public ColorGamut forModel(String model) {
+        ColorGamut g = (model != null) ? models.get(model) : null;
+        return (g != null) ? g : ColorGamut.forModel(model);
+    }
+
+    /**
+     * Returns the number of models with a mapping in this registry.
+     *
+     * @return an int
+     */
+    public int size() {
+        return models.size();
+    }
+}
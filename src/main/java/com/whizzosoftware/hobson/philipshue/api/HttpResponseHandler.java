@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.HttpResponse;
+
+/**
+ * An interface for receiving the results of requests sent by an HttpContext that doesn't go through the plugin's
+ * own HTTP client.
+ *
+ * @author Dan Noguerol
+ */
+public interface HttpResponseHandler {
+    /**
+     * Called when a response is received.
+     *
+     * @param response the response
+     * @param context the context object passed with the request
+     */
+    void onHttpResponse(HttpResponse response, Object context);
+
+    /**
+     * Called when a request fails.
+     *
+     * @param cause the cause of the failure
+     * @param context the context object passed with the request
+     */
+    void onHttpRequestFailure(Throwable cause, Object context);
+}
@@ -14,6 +14,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
 
 /**
  * A class for communicating with the Hue bridge via its REST interface.
@@ -26,7 +28,14 @@ public class HueBridge {
     private String userName;
     private String host;
     private String bridgeBaseUrl;
-    private HueBridgeParser parser;
+    private StreamingHueBridgeParser parser;
+    private RequestUriCache uris;
+    private LightStateSerializer serializer;
+    private String lastAllLightsBody;
+    private int lastAllLightsHash;
+    private Collection<Light> lastAllLights;
+    private long allLightsParsedCount;
+    private long allLightsUnchangedCount;
 
     /**
      * Constructor
@@ -42,7 +51,9 @@ public class HueBridge {
         this.userName = userName;
         this.bridgeBaseUrl = "http://" + host;
 
-        this.parser = new HueBridgeParser();
+        this.parser = new StreamingHueBridgeParser();
+        this.uris = new RequestUriCache(bridgeBaseUrl, userName);
+        this.serializer = new LightStateSerializer();
 
         // verify that username meets length requirement
         if (userName == null) {
@@ -56,6 +67,62 @@ public class HueBridge {
         return host;
     }
 
+    /**
+     * Creates a subscription to the bridge's event stream. The stream must be started by the caller.
+     *
+     * @param listener the listener to notify of events
+     * @param trust the trust to check the bridge's certificate with
+     *
+     * @return a HueEventStream instance
+     *
+     * @throws HueException on failure
+     */
+    public HueEventStream createEventStream(HueEventListener listener, BridgeCertificateTrust trust) throws HueException {
+        try {
+            return new HueEventStream(new URI("https://" + host + "/eventstream/clip/v2"), userName, listener, trust);
+        } catch (URISyntaxException e) {
+            throw new HueException("Invalid event stream URI for bridge " + host, e);
+        }
+    }
+
+    /**
+     * Returns the number of request URIs that have had to be built (rather than coming from the cache).
+     *
+     * @return a count
+     */
+    public long getUriBuildCount() {
+        return uris.getMissCount();
+    }
+
+    /**
+     * Returns the size of the request body that would be sent to set a light state.
+     *
+     * @param state the light state
+     *
+     * @return the size in bytes
+     */
+    public int getLightStateBodyLength(LightState state) {
+        return serializer.getLength(state);
+    }
+
+    /**
+     * Returns the number of light state request bodies that came from the serializer's cache.
+     *
+     * @return a count
+     */
+    public long getBodyCacheHitCount() {
+        return serializer.getHitCount();
+    }
+
+    /**
+     * Returns the number of light state request bodies that had to be encoded.
+     *
+     * @return a count
+     */
+    public long getBodyCacheMissCount() {
+        return serializer.getMissCount();
+    }
+
     /**
      * Create a user on the Hue bridge.
      *
@@ -69,13 +136,12 @@ public class HueBridge {
         json.put("devicetype", request.getDeviceType());
         json.put("username", request.getUserName());
 
-        String uri = bridgeBaseUrl + "/api";
-        if (logger.isTraceEnabled()) {
-            logger.trace("createUser sending request to {}: {}", uri, json.toString());
-        }
-
         try {
-            http.sendHttpRequest(new URI(uri), HttpRequest.Method.POST, null, null, json.toString().getBytes(), null);
+            URI uri = uris.get(RequestUriCache.Type.CREATE_USER, null);
+            if (logger.isTraceEnabled()) {
+                logger.trace("createUser sending request to {}: {}", uri, json.toString());
+            }
+            http.sendHttpRequest(uri, HttpRequest.Method.POST, null, null, json.toString().getBytes(), request);
         } catch (Exception e) {
             throw new HueException("Error sending CreateUser request", e);
         }
@@ -91,14 +157,32 @@ public class HueBridge {
      */
     public void sendGetAllLightsRequest(HttpContext http, GetAllLightsRequest request) throws HueException {
         try {
-            String uri = bridgeBaseUrl + "/api/" + userName + "/lights";
+            URI uri = uris.get(RequestUriCache.Type.ALL_LIGHTS, null);
             logger.trace("getAllLights sending request to {}", uri);
-            http.sendHttpRequest(new URI(uri), HttpRequest.Method.GET, null, null, null, request);
+            http.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, request);
         } catch (Exception e) {
             throw new HueException("Error sending GetAllLights request", e);
         }
     }
 
+    /**
+     * Return the entire bridge datastore (lights, groups, configuration, etc.) in a single request.
+     *
+     * @param http the HttpChannel instance to use for the request
+     * @param request the request object
+     *
+     * @throws HueException on failure
+     */
+    public void sendGetFullStateRequest(HttpContext http, GetFullStateRequest request) throws HueException {
+        try {
+            URI uri = uris.get(RequestUriCache.Type.FULL_STATE, null);
+            logger.trace("getFullState sending request to {}", uri);
+            http.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, request);
+        } catch (Exception e) {
+            throw new HueException("Error sending GetFullState request", e);
+        }
+    }
+
     /**
      * Return information about a specific light.
      *
@@ -109,9 +193,9 @@ public class HueBridge {
      */
     public void sendGetLightAttributeAndStateRequest(HttpContext http, GetLightAttributeAndStateRequest request) throws HueException {
         try {
-            String uri = bridgeBaseUrl + "/api/" + userName + "/lights/" + request.getId();
+            URI uri = uris.get(RequestUriCache.Type.LIGHT, request.getId());
             logger.trace("getLightAttributeAndState sending request to {}", uri);
-            http.sendHttpRequest(new URI(uri), HttpRequest.Method.GET, null, null, null, request);
+            http.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, request);
         } catch (Exception e) {
             throw new HueException("Error getting light attribute information", e);
         }
@@ -126,16 +210,95 @@ public class HueBridge {
      * @throws HueException on failure
      */
     public void sendSetLightStateRequest(HttpContext http, SetLightStateRequest request) throws HueException {
-        String json = parser.createLightStateJSON(request.getState()).toString();
-        String uri = bridgeBaseUrl + "/api/" + userName + "/lights/" + request.getId() + "/state";
-        logger.trace("setLightState sending request to {}: {}", uri, json);
+        byte[] body = serializer.serialize(request.getState());
         try {
-            http.sendHttpRequest(new URI(uri), HttpRequest.Method.PUT, null, null, json.getBytes(), json);
+            URI uri = uris.get(RequestUriCache.Type.LIGHT_STATE, request.getId());
+            if (logger.isTraceEnabled()) {
+                logger.trace("setLightState sending request to {}: {}", uri, new String(body, "UTF-8"));
+            }
+            http.sendHttpRequest(uri, HttpRequest.Method.PUT, null, null, body, request);
         } catch (Exception e) {
             throw new HueException("Error sending SetLightState request", e);
         }
     }
 
+    /**
+     * Return all groups the Hue bridge knows about.
+     *
+     * @param http the HttpChannel instance to use for the request
+     * @param request the request object
+     *
+     * @throws HueException on failure
+     */
+    public void sendGetAllGroupsRequest(HttpContext http, GetAllGroupsRequest request) throws HueException {
+        try {
+            URI uri = uris.get(RequestUriCache.Type.ALL_GROUPS, null);
+            logger.trace("getAllGroups sending request to {}", uri);
+            http.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, request);
+        } catch (Exception e) {
+            throw new HueException("Error sending GetAllGroups request", e);
+        }
+    }
+
+    /**
+     * Creates a new group of lights on the Hue bridge.
+     *
+     * @param http the HttpChannel instance to use for the request
+     * @param request the request object
+     *
+     * @throws HueException on failure
+     */
+    public void sendCreateGroupRequest(HttpContext http, CreateGroupRequest request) throws HueException {
+        String json = parser.createGroupJSON(request).toString();
+        try {
+            URI uri = uris.get(RequestUriCache.Type.ALL_GROUPS, null);
+            logger.trace("createGroup sending request to {}: {}", uri, json);
+            http.sendHttpRequest(uri, HttpRequest.Method.POST, null, null, json.getBytes(), request);
+        } catch (Exception e) {
+            throw new HueException("Error sending CreateGroup request", e);
+        }
+    }
+
+    /**
+     * Deletes a group of lights from the Hue bridge.
+     *
+     * @param http the HttpChannel instance to use for the request
+     * @param request the request object
+     *
+     * @throws HueException on failure
+     */
+    public void sendDeleteGroupRequest(HttpContext http, DeleteGroupRequest request) throws HueException {
+        try {
+            URI uri = uris.get(RequestUriCache.Type.GROUP, request.getId());
+            logger.trace("deleteGroup sending request to {}", uri);
+            http.sendHttpRequest(uri, HttpRequest.Method.DELETE, null, null, null, request);
+        } catch (Exception e) {
+            throw new HueException("Error sending DeleteGroup request", e);
+        }
+    }
+
+    /**
+     * Sets the state of all lights in a group with a single request. Group 0 always contains every light known
+     * to the bridge.
+     *
+     * @param http the HttpChannel instance to use for the request
+     * @param request the request object
+     *
+     * @throws HueException on failure
+     */
+    public void sendSetGroupActionRequest(HttpContext http, SetGroupActionRequest request) throws HueException {
+        byte[] body = serializer.serialize(request.getState());
+        try {
+            URI uri = uris.get(RequestUriCache.Type.GROUP_ACTION, request.getId());
+            if (logger.isTraceEnabled()) {
+                logger.trace("setGroupAction sending request to {}: {}", uri, new String(body, "UTF-8"));
+            }
+            http.sendHttpRequest(uri, HttpRequest.Method.PUT, null, null, body, request);
+        } catch (Exception e) {
+            throw new HueException("Error sending SetGroupAction request", e);
+        }
+    }
+
     /**
      * Parses a bridge response based on the request type.
      *
@@ -148,15 +311,98 @@ public class HueBridge {
      * @throws HueException on failure
      */
     public BridgeResponse parseResponse(Object request, int statusCode, String response) throws HueException {
+        BridgeResponse br = parseResponseBody(request, statusCode, response);
+        if (br != null && request instanceof BridgeRequest) {
+            br.setSequence(((BridgeRequest)request).getSequence());
+        }
+        return br;
+    }
+
+    /**
+     * Returns the number of GetAllLights responses that had to be parsed.
+     *
+     * @return a count
+     */
+    synchronized public long getAllLightsParsedCount() {
+        return allLightsParsedCount;
+    }
+
+    /**
+     * Returns the number of GetAllLights responses that were identical to the previous one and weren't parsed.
+     *
+     * @return a count
+     */
+    synchronized public long getAllLightsUnchangedCount() {
+        return allLightsUnchangedCount;
+    }
+
+    /**
+     * Returns the number of lights in changed GetAllLights and GetFullState responses that had to be parsed.
+     *
+     * @return a count
+     */
+    public long getLightParsedCount() {
+        return parser.getLightParsedCount();
+    }
+
+    /**
+     * Returns the number of lights in changed GetAllLights and GetFullState responses that were identical to the
+     * previous response and weren't parsed.
+     *
+     * @return a count
+     */
+    public long getLightUnchangedCount() {
+        return parser.getLightUnchangedCount();
+    }
+
+    private BridgeResponse parseGetAllLightsResponse(int statusCode, String response) throws HueException {
+        // most polls return exactly the same payload as the previous one so the lights parsed from it can be re-used
+        synchronized (this) {
+            if (statusCode == 200 && response != null && lastAllLightsBody != null && response.hashCode() == lastAllLightsHash && response.equals(lastAllLightsBody)) {
+                allLightsUnchangedCount++;
+                return new GetAllLightsResponse(lastAllLights);
+            }
+        }
+
+        BridgeResponse br = parser.parseGetAllLightsResponse(statusCode, response);
+
+        synchronized (this) {
+            allLightsParsedCount++;
+            if (br instanceof GetAllLightsResponse) {
+                lastAllLightsBody = response;
+                lastAllLightsHash = response.hashCode();
+                lastAllLights = ((GetAllLightsResponse)br).getLights();
+            } else {
+                lastAllLightsBody = null;
+                lastAllLights = null;
+            }
+        }
+
+        return br;
+    }
+
+    private BridgeResponse parseResponseBody(Object request, int statusCode, String response) throws HueException {
         if (request instanceof CreateUserRequest) {
             return parser.parseCreateUserResponse(statusCode, response);
         } else if (request instanceof GetAllLightsRequest) {
-            return parser.parseGetAllLightsResponse(statusCode, response);
+            return parseGetAllLightsResponse(statusCode, response);
+        } else if (request instanceof GetFullStateRequest) {
+            return parser.parseGetFullStateResponse(statusCode, response);
         } else if (request instanceof GetLightAttributeAndStateRequest) {
             GetLightAttributeAndStateRequest glasr = (GetLightAttributeAndStateRequest)request;
             return parser.parseGetLightAttributeAndStateResponse(glasr.getId(), statusCode, response);
         } else if (request instanceof SetLightStateRequest) {
-            return parser.parseSetLightStateResponse(statusCode, response);
+            SetLightStateRequest slsr = (SetLightStateRequest)request;
+            return parser.parseSetLightStateResponse(slsr.getId(), statusCode, response);
+        } else if (request instanceof GetAllGroupsRequest) {
+            return parser.parseGetAllGroupsResponse(statusCode, response);
+        } else if (request instanceof CreateGroupRequest) {
+            CreateGroupRequest cgr = (CreateGroupRequest)request;
+            return parser.parseCreateGroupResponse(cgr.getName(), cgr.getLights(), statusCode, response);
+        } else if (request instanceof DeleteGroupRequest) {
+            return parser.parseDeleteGroupResponse(statusCode, response);
+        } else if (request instanceof SetGroupActionRequest) {
+            return parser.parseSetGroupActionResponse(statusCode, response);
         } else {
             return null;
         }
@@ -16,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,24 +33,10 @@ class HueBridgeParser {
         Object o = new JSONTokener(response).nextValue();
         if (o instanceof JSONObject) {
             JSONObject jsonObj = (JSONObject) o;
-            List<Light> lights = new ArrayList<>();
             if (logger.isTraceEnabled()) {
                 logger.trace("getAllLights response: {}", jsonObj.toString());
             }
-            for (Object key : jsonObj.keySet()) {
-                LightState state = null;
-                String deviceId = (String) key;
-                JSONObject jo = jsonObj.getJSONObject(deviceId);
-                String model = null;
-                if (jo.has("modelid")) {
-                    model = jo.getString("modelid");
-                }
-                if (jo.has("state")) {
-                    state = createLightState(jo.getJSONObject("state"));
-                }
-                lights.add(new Light(deviceId, jo.getString("name"), model, state));
-            }
-            return new GetAllLightsResponse(lights);
+            return new GetAllLightsResponse(createLights(jsonObj));
         } else if (o instanceof JSONArray) {
             JSONArray jsonArray = (JSONArray) o;
             for (int i = 0; i < jsonArray.length(); i++) {
@@ -91,7 +78,7 @@ class HueBridgeParser {
                 logger.trace("getLightAttributeAndState({}) response: {}", deviceId, jsonObj.toString());
             }
             if (jsonObj.has("state")) {
-                return new GetLightAttributeAndStateResponse(deviceId, createLightState(jsonObj.getJSONObject("state")));
+                return new GetLightAttributeAndStateResponse(deviceId, CompactLightState.of(createLightState(jsonObj.getJSONObject("state"))));
             }
         } else if (o instanceof JSONArray) {
             JSONArray jsonArray = (JSONArray) o;
@@ -105,34 +92,225 @@ class HueBridgeParser {
         throw new HueException("Error getting light information; received unexpected response " + response);
     }
 
-    BridgeResponse parseSetLightStateResponse(int statusCode, String response) throws HueException {
+    BridgeResponse parseSetLightStateResponse(String deviceId, int statusCode, String response) throws HueException {
         validateStatusCode(statusCode);
 
         Object o = new JSONTokener(response).nextValue();
         if (o instanceof JSONArray) {
             JSONArray jsonArray = (JSONArray) o;
+            LightState state = new LightState();
             for (int i = 0; i < jsonArray.length(); i++) {
                 JSONObject json = jsonArray.getJSONObject(i);
                 if (json.has("error")) {
                     return createErrorResponse(json.getJSONObject("error"));
+                } else if (json.has("success")) {
+                    JSONObject js = json.getJSONObject("success");
+                    for (Object key : js.keySet()) {
+                        String attribute = getLightStateAttribute(deviceId, (String)key);
+                        if (attribute != null) {
+                            setLightStateAttribute(state, attribute, js.get((String)key));
+                        }
+                    }
                 }
             }
-            return new SetLightStateResponse();
+            return new SetLightStateResponse(deviceId, state);
         }
         throw new HueException("Error setting light state; received unexpected response " + response);
     }
 
+    BridgeResponse parseGetAllGroupsResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+
+        Object o = new JSONTokener(response).nextValue();
+        if (o instanceof JSONObject) {
+            return new GetAllGroupsResponse(createGroups((JSONObject)o));
+        } else if (o instanceof JSONArray) {
+            BridgeResponse er = findErrorResponse((JSONArray)o);
+            if (er != null) {
+                return er;
+            }
+        }
+        throw new HueException("Error getting group information; received unexpected response " + response);
+    }
+
+    BridgeResponse parseGetFullStateResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+
+        Object o = new JSONTokener(response).nextValue();
+        if (o instanceof JSONObject) {
+            JSONObject jsonObj = (JSONObject)o;
+            if (jsonObj.has("lights")) {
+                return new GetFullStateResponse(
+                    createLights(jsonObj.getJSONObject("lights")),
+                    jsonObj.has("groups") ? createGroups(jsonObj.getJSONObject("groups")) : null
+                );
+            }
+        } else if (o instanceof JSONArray) {
+            BridgeResponse er = findErrorResponse((JSONArray)o);
+            if (er != null) {
+                return er;
+            }
+        }
+        throw new HueException("Error getting bridge state; received unexpected response " + response);
+    }
+
+    BridgeResponse parseCreateGroupResponse(String name, Collection<String> lights, int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+
+        Object o = new JSONTokener(response).nextValue();
+        if (o instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray)o;
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject json = jsonArray.getJSONObject(i);
+                if (json.has("error")) {
+                    return createErrorResponse(json.getJSONObject("error"));
+                } else if (json.has("success")) {
+                    return new CreateGroupResponse(new Group(json.getJSONObject("success").getString("id"), name, lights));
+                }
+            }
+        }
+        throw new HueException("Error creating group; received unexpected response " + response);
+    }
+
+    BridgeResponse parseDeleteGroupResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+
+        Object o = new JSONTokener(response).nextValue();
+        if (o instanceof JSONArray) {
+            BridgeResponse er = findErrorResponse((JSONArray)o);
+            return (er != null) ? er : new DeleteGroupResponse();
+        }
+        throw new HueException("Error deleting group; received unexpected response " + response);
+    }
+
+    BridgeResponse parseSetGroupActionResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+
+        Object o = new JSONTokener(response).nextValue();
+        if (o instanceof JSONArray) {
+            BridgeResponse er = findErrorResponse((JSONArray)o);
+            return (er != null) ? er : new SetGroupActionResponse();
+        }
+        throw new HueException("Error setting group action; received unexpected response " + response);
+    }
+
     void validateStatusCode(int statusCode) throws HueException {
         if (statusCode != 200) {
             throw new HueException("Error obtaining light state; received status code " + statusCode);
         }
     }
 
+    ErrorResponse findErrorResponse(JSONArray jsonArray) throws JSONException {
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject json = jsonArray.getJSONObject(i);
+            if (json.has("error")) {
+                return createErrorResponse(json.getJSONObject("error"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the light state attribute that a SetLightState success result refers to.
+     *
+     * @param deviceId the ID of the light the request was sent to
+     * @param address the result address (e.g. "/lights/1/state/bri")
+     *
+     * @return the attribute name (e.g. "bri") or null if the address isn't for the light's state
+     */
+    static String getLightStateAttribute(String deviceId, String address) {
+        int ix = 8 + deviceId.length();
+        if (address != null && address.startsWith("/lights/") && address.startsWith(deviceId, 8) && address.startsWith("/state/", ix)) {
+            return address.substring(ix + 7);
+        }
+        return null;
+    }
+
+    private void setLightStateAttribute(LightState state, String attribute, Object value) {
+        switch (attribute) {
+            case "on":
+                if (value instanceof Boolean) {
+                    state.setOn((Boolean)value);
+                }
+                break;
+            case "hue":
+                if (value instanceof Number) {
+                    state.setHue(((Number)value).intValue());
+                    state.setColorMode(LightState.MODE_HS);
+                }
+                break;
+            case "sat":
+                if (value instanceof Number) {
+                    state.setSaturation(((Number)value).intValue());
+                    state.setColorMode(LightState.MODE_HS);
+                }
+                break;
+            case "bri":
+                if (value instanceof Number) {
+                    state.setBrightness(((Number)value).intValue());
+                }
+                break;
+            case "ct":
+                if (value instanceof Number) {
+                    state.setColorTemperature(((Number)value).intValue());
+                    state.setColorMode(LightState.MODE_CT);
+                }
+                break;
+            case "effect":
+                if (value instanceof String) {
+                    state.setEffect((String)value);
+                }
+                break;
+            case "xy":
+                if (value instanceof JSONArray && ((JSONArray)value).length() >= 2) {
+                    JSONArray xy = (JSONArray)value;
+                    state.setXY((float)xy.getDouble(0), (float)xy.getDouble(1));
+                    state.setColorMode(LightState.MODE_XY);
+                }
+                break;
+        }
+    }
+
     ErrorResponse createErrorResponse(JSONObject json) throws JSONException {
         HueError error = new HueError(json);
         return new ErrorResponse(error.getType(), error.getAddress(), error.getDescription());
     }
 
+    List<Light> createLights(JSONObject jsonObj) throws JSONException {
+        List<Light> lights = new ArrayList<>();
+        for (Object key : jsonObj.keySet()) {
+            CompactLightState state = null;
+            String deviceId = (String) key;
+            JSONObject jo = jsonObj.getJSONObject(deviceId);
+            String model = null;
+            if (jo.has("modelid")) {
+                model = jo.getString("modelid");
+            }
+            if (jo.has("state")) {
+                state = CompactLightState.of(createLightState(jo.getJSONObject("state")));
+            }
+            lights.add(new Light(deviceId, jo.getString("name"), model, state));
+        }
+        return lights;
+    }
+
+    List<Group> createGroups(JSONObject jsonObj) throws JSONException {
+        List<Group> groups = new ArrayList<>();
+        for (Object key : jsonObj.keySet()) {
+            String groupId = (String)key;
+            JSONObject jo = jsonObj.getJSONObject(groupId);
+            List<String> lights = new ArrayList<>();
+            if (jo.has("lights")) {
+                JSONArray ja = jo.getJSONArray("lights");
+                for (int i = 0; i < ja.length(); i++) {
+                    lights.add(ja.getString(i));
+                }
+            }
+            groups.add(new Group(groupId, jo.optString("name", null), lights));
+        }
+        return groups;
+    }
+
     LightState createLightState(JSONObject obj) throws JSONException {
         LightState state = new LightState();
         state.setOn(obj.getBoolean("on"));
@@ -140,6 +318,10 @@ class HueBridgeParser {
         state.setSaturation(obj.getInt("sat"));
         state.setBrightness(obj.getInt("bri"));
         state.setColorTemperature(obj.getInt("ct"));
+        if (obj.has("xy")) {
+            JSONArray xy = obj.getJSONArray("xy");
+            state.setXY((float)xy.getDouble(0), (float)xy.getDouble(1));
+        }
         state.setColorMode(obj.getString("colormode"));
         state.setEffect(obj.getString("effect"));
         if (obj.has("modelid")) {
@@ -161,10 +343,38 @@ class HueBridgeParser {
         } else if (state.hasColorTemperature()) {
             json.put("ct", state.getColorTemperature());
             json.put("bri", state.getBrightness());
+        } else if (state.hasColorXY()) {
+            JSONArray xy = new JSONArray();
+            xy.put(roundXY(state.getX()));
+            xy.put(roundXY(state.getY()));
+            json.put("xy", xy);
+            json.put("bri", state.getBrightness());
         }
         if ((!state.hasOn() || state.getOn()) && state.hasEffect()) {
             json.put("effect", state.getEffect());
         }
         return json;
     }
+
+    /**
+     * Rounds an xy coordinate to the 4 decimal places the bridge works with.
+     *
+     * @param f the coordinate
+     *
+     * @return the rounded value
+     */
+    static double roundXY(float f) {
+        return Math.round(f * 10000.0) / 10000.0;
+    }
+
+    JSONObject createGroupJSON(CreateGroupRequest request) {
+        JSONObject json = new JSONObject();
+        json.put("name", request.getName());
+        JSONArray lights = new JSONArray();
+        for (String id : request.getLights()) {
+            lights.put(id);
+        }
+        json.put("lights", lights);
+        return json;
+    }
 }
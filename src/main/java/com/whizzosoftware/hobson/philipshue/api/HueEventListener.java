@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+/**
+ * An interface for receiving the light updates pushed by a HueEventStream. Callbacks are made from the stream's
+ * own thread.
+ *
+ * @author Dan Noguerol
+ */
+public interface HueEventListener {
+    /**
+     * Called when the event stream has been established.
+     */
+    void onEventStreamConnected();
+
+    /**
+     * Called when a light's state has changed. Events only describe what changed so the state will generally be
+     * partial and should be merged with the light's last known state.
+     *
+     * @param lightId the light ID
+     * @param state the fields that changed
+     */
+    void onLightEvent(String lightId, LightState state);
+
+    /**
+     * Called when an established event stream is lost. The stream will try to reconnect on its own.
+     *
+     * @param t the cause
+     */
+    void onEventStreamDisconnected(Throwable t);
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+/**
+ * Parses the JSON payloads delivered by the bridge's event stream. Each payload is an array of events and each
+ * update event contains a list of resources that changed. Only the light and connectivity resources that map
+ * back to a light ID are of interest; everything else is skipped.
+ *
+ * The stream uses the bridge's newer resource model so values are converted to their equivalent light state
+ * fields (e.g. brightness is a percentage rather than 1-254). Color changes are reported in xy form and are passed
+ * on as LightState.MODE_XY; a color change without coordinates is flagged with the color mode alone.
+ *
+ * @author Dan Noguerol
+ */
+class HueEventParser {
+    private static final String LIGHT_PREFIX = "/lights/";
+
+    private static final String[] EVENT_KEYS = {"type", "data"};
+    private static final int EVENT_TYPE = 0;
+    private static final int EVENT_DATA = 1;
+
+    private static final String[] RESOURCE_KEYS = {"type", "id_v1", "on", "dimming", "color_temperature", "color", "status"};
+    private static final int RESOURCE_TYPE = 0;
+    private static final int RESOURCE_ID = 1;
+    private static final int RESOURCE_ON = 2;
+    private static final int RESOURCE_DIMMING = 3;
+    private static final int RESOURCE_CT = 4;
+    private static final int RESOURCE_COLOR = 5;
+    private static final int RESOURCE_STATUS = 6;
+
+    private static final String[] RESOURCE_TYPES = {"light", "zigbee_connectivity"};
+    private static final int TYPE_LIGHT = 0;
+    private static final int TYPE_CONNECTIVITY = 1;
+
+    private static final String[] ON_KEYS = {"on"};
+    private static final String[] DIMMING_KEYS = {"brightness"};
+    private static final String[] CT_KEYS = {"mirek", "mirek_valid"};
+    private static final String[] COLOR_KEYS = {"xy"};
+    private static final String[] XY_KEYS = {"x", "y"};
+    private static final String[] EVENT_TYPES = {"update"};
+    private static final String[] STATUSES = {"connected"};
+
+    private final HueJsonReader reader = new HueJsonReader();
+    private final float[] xy = new float[2];
+
+    /**
+     * Parses an event payload.
+     *
+     * @param data the payload
+     * @param listener the listener to notify of light changes
+     *
+     * @return the number of light events found
+     *
+     * @throws HueException on malformed JSON
+     */
+    synchronized int parse(String data, HueEventListener listener) throws HueException {
+        int count = 0;
+        reader.reset(data);
+        reader.beginArray();
+        while (reader.nextElement()) {
+            count += readEvent(listener);
+        }
+        return count;
+    }
+
+    private int readEvent(HueEventListener listener) throws HueException {
+        int count = 0;
+        boolean update = true;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.nextName(EVENT_KEYS)) {
+                case EVENT_TYPE:
+                    // the type may come after the data in which case anything already found has been reported;
+                    // the bridge only ever sends light resources in update events so that's harmless
+                    update = (reader.nextStringIndex(EVENT_TYPES) == 0);
+                    break;
+                case EVENT_DATA:
+                    if (update) {
+                        reader.beginArray();
+                        while (reader.nextElement()) {
+                            if (readResource(listener)) {
+                                count++;
+                            }
+                        }
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        return count;
+    }
+
+    private boolean readResource(HueEventListener listener) throws HueException {
+        int type = -1;
+        String id = null;
+        Boolean on = null;
+        Integer brightness = null;
+        Integer ct = null;
+        boolean color = false;
+        boolean hasXY = false;
+        Boolean reachable = null;
+
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.nextName(RESOURCE_KEYS)) {
+                case RESOURCE_TYPE:
+                    type = reader.nextStringIndex(RESOURCE_TYPES);
+                    break;
+                case RESOURCE_ID:
+                    id = reader.nextString();
+                    break;
+                case RESOURCE_ON:
+                    on = readOn();
+                    break;
+                case RESOURCE_DIMMING:
+                    brightness = readBrightness();
+                    break;
+                case RESOURCE_CT:
+                    ct = readColorTemperature();
+                    break;
+                case RESOURCE_COLOR:
+                    color = true;
+                    hasXY = readColor();
+                    break;
+                case RESOURCE_STATUS:
+                    reachable = (reader.nextStringIndex(STATUSES) == 0);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        if (id != null && id.startsWith(LIGHT_PREFIX) && id.indexOf('/', LIGHT_PREFIX.length()) == -1) {
+            LightState state = null;
+            if (type == TYPE_LIGHT && (on != null || brightness != null || ct != null || color)) {
+                state = new LightState(on, null, null, brightness, ct, null, null, null, null);
+                if (ct != null) {
+                    state.setColorMode(LightState.MODE_CT);
+                } else if (color) {
+                    state.setColorMode(LightState.MODE_XY);
+                    if (hasXY) {
+                        state.setXY(xy[0], xy[1]);
+                    }
+                }
+            } else if (type == TYPE_CONNECTIVITY && reachable != null) {
+                state = new LightState(null, null, null, null, null, null, null, null, reachable);
+            }
+            if (state != null) {
+                listener.onLightEvent(id.substring(LIGHT_PREFIX.length()), state);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Boolean readOn() throws HueException {
+        Boolean on = null;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            if (reader.nextName(ON_KEYS) == 0) {
+                on = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        return on;
+    }
+
+    private Integer readBrightness() throws HueException {
+        Integer brightness = null;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            if (reader.nextName(DIMMING_KEYS) == 0) {
+                // a percentage here but 1-254 everywhere else
+                brightness = Math.max(1, Math.min(254, (int)Math.round(reader.nextDouble() * 2.54)));
+            } else {
+                reader.skipValue();
+            }
+        }
+        return brightness;
+    }
+
+    /**
+     * Reads a color object into the xy field.
+     *
+     * @return true if both coordinates were present
+     */
+    private boolean readColor() throws HueException {
+        if (reader.nextNull()) {
+            return false;
+        }
+        int found = 0;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            if (reader.nextName(COLOR_KEYS) == 0) {
+                reader.beginObject();
+                while (reader.nextMember()) {
+                    int key = reader.nextName(XY_KEYS);
+                    if (key > -1) {
+                        xy[key] = reader.nextFloat();
+                        found |= (1 << key);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        return (found == 3);
+    }
+
+    private Integer readColorTemperature() throws HueException {
+        Integer mirek = null;
+        boolean valid = true;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.nextName(CT_KEYS)) {
+                case 0:
+                    if (!reader.nextNull()) {
+                        mirek = reader.nextInt();
+                    }
+                    break;
+                case 1:
+                    valid = reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        return valid ? mirek : null;
+    }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.Charset;
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Subscribes to the bridge's server-sent event stream so that light changes (including those made with a wall
+ * switch or another app) are received as they happen rather than on the next poll.
+ *
+ * The stream runs on its own daemon thread and reconnects with an increasing delay whenever the connection is
+ * lost. The ID of the last event received is sent on reconnect so the bridge can replay anything that was missed.
+ *
+ * The bridge only serves the stream over HTTPS with its own certificate so HTTPS connections are checked with a
+ * BridgeCertificateTrust rather than the JVM's defaults.
+ *
+ * @author Dan Noguerol
+ */
+public class HueEventStream implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(HueEventStream.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CONNECT_TIMEOUT_IN_MS = 5000;
+    // the bridge doesn't send keep-alives so an idle stream is periodically re-established to detect dead connections
+    private static final int READ_TIMEOUT_IN_MS = 300000;
+    private static final long MIN_RECONNECT_DELAY_IN_MS = 1000;
+    private static final long MAX_RECONNECT_DELAY_IN_MS = 30000;
+
+    private final URI uri;
+    private final String applicationKey;
+    private final HueEventListener listener;
+    private final BridgeCertificateTrust trust;
+    private final HueEventParser parser = new HueEventParser();
+    private final Object lock = new Object();
+    private Thread thread;
+    private HttpURLConnection connection;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private String lastEventId;
+    private long minReconnectDelay = MIN_RECONNECT_DELAY_IN_MS;
+    private long connectCount;
+    private long eventCount;
+    private long errorCount;
+
+    /**
+     * Constructor.
+     *
+     * @param uri the URI of the event stream
+     * @param applicationKey the key (i.e. bridge user name) to authenticate with
+     * @param listener the listener to notify of events
+     */
+    public HueEventStream(URI uri, String applicationKey, HueEventListener listener) {
+        this(uri, applicationKey, listener, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param uri the URI of the event stream
+     * @param applicationKey the key (i.e. bridge user name) to authenticate with
+     * @param listener the listener to notify of events
+     * @param trust the trust to check the bridge's certificate with (required for HTTPS URIs)
+     */
+    public HueEventStream(URI uri, String applicationKey, HueEventListener listener, BridgeCertificateTrust trust) {
+        this.uri = uri;
+        this.applicationKey = applicationKey;
+        this.listener = listener;
+        this.trust = trust;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Starts the stream's thread. This has no effect if the stream has already been started.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (thread == null) {
+                running = true;
+                thread = new Thread(this, "Hue Event Stream");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the stream and closes any open connection.
+     */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            connected = false;
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (thread != null) {
+                thread.interrupt();
+                thread = null;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the stream is currently connected to the bridge.
+     *
+     * @return a boolean
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    synchronized public long getConnectCount() {
+        return connectCount;
+    }
+
+    synchronized public long getEventCount() {
+        return eventCount;
+    }
+
+    synchronized public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Sets the shortest delay before reconnecting after a lost connection.
+     *
+     * @param delay the delay in milliseconds
+     */
+    void setMinReconnectDelay(long delay) {
+        this.minReconnectDelay = delay;
+    }
+
+    @Override
+    public void run() {
+        long delay = minReconnectDelay;
+        while (running) {
+            HttpURLConnection conn = null;
+            try {
+                conn = open();
+                synchronized (lock) {
+                    if (!running) {
+                        throw new IOException("Event stream stopped");
+                    }
+                    connected = true;
+                }
+                synchronized (this) {
+                    connectCount++;
+                }
+                delay = minReconnectDelay;
+                logger.debug("Connected to event stream at {}", uri);
+                listener.onEventStreamConnected();
+
+                read(new InputStreamReader(conn.getInputStream(), UTF8));
+                throw new IOException("Event stream closed by bridge");
+            } catch (Exception e) {
+                if (connected) {
+                    connected = false;
+                    logger.debug("Lost connection to event stream", e);
+                    listener.onEventStreamDisconnected(e);
+                } else if (running) {
+                    logger.debug("Unable to connect to event stream at " + uri, e);
+                }
+            } finally {
+                if (conn != null) {
+                    conn.disconnect();
+                }
+                synchronized (lock) {
+                    connection = null;
+                }
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_IN_MS);
+            }
+        }
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)uri.toURL().openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            if (trust == null) {
+                throw new IOException("No bridge certificate trust available for " + uri);
+            }
+            try {
+                ((HttpsURLConnection)conn).setSSLSocketFactory(trust.getSocketFactory());
+            } catch (HueException e) {
+                throw new IOException("Unable to set up TLS for " + uri, e);
+            }
+            ((HttpsURLConnection)conn).setHostnameVerifier(trust);
+        }
+        conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MS);
+        conn.setReadTimeout(READ_TIMEOUT_IN_MS);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Accept", "text/event-stream");
+        conn.setRequestProperty("hue-application-key", applicationKey);
+        synchronized (this) {
+            if (lastEventId != null) {
+                conn.setRequestProperty("Last-Event-ID", lastEventId);
+            }
+        }
+        synchronized (lock) {
+            if (!running) {
+                throw new IOException("Event stream stopped");
+            }
+            connection = conn;
+        }
+        int status = conn.getResponseCode();
+        if (status != 200) {
+            throw new IOException("Unexpected status code from event stream: " + status);
+        }
+        return conn;
+    }
+
+    /**
+     * Reads server-sent events until the end of the stream is reached. Each event is made up of one or more lines
+     * and terminated by a blank line; only the "id" and "data" fields are used.
+     *
+     * @param r the stream to read
+     *
+     * @throws IOException on failure
+     */
+    void read(Reader r) throws IOException {
+        BufferedReader br = new BufferedReader(r);
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    dispatch(data.toString());
+                    data.setLength(0);
+                }
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(getFieldValue(line, 5));
+            } else if (line.startsWith("id:")) {
+                synchronized (this) {
+                    lastEventId = getFieldValue(line, 3);
+                }
+            }
+            // anything else (comments, event names, retry hints) is ignored
+        }
+    }
+
+    private void dispatch(String data) {
+        try {
+            int count = parser.parse(data, listener);
+            synchronized (this) {
+                eventCount += count;
+            }
+        } catch (HueException e) {
+            synchronized (this) {
+                errorCount++;
+            }
+            logger.error("Error parsing event stream data: " + data, e);
+        }
+    }
+
+    private String getFieldValue(String line, int ix) {
+        return (line.length() > ix && line.charAt(ix) == ' ') ? line.substring(ix + 1) : line.substring(ix);
+    }
+}
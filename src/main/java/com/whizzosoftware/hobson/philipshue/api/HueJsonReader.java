@@ -0,0 +1,548 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+/**
+ * A minimal pull-style JSON reader that walks a document in place. Unlike JSONTokener, nothing is materialized
+ * unless the caller asks for it: names can be matched against a list of known keys without creating Strings and
+ * entire values that aren't needed can be skipped.
+ *
+ * Instances can be re-used by calling reset().
+ *
+ * @author Dan Noguerol
+ */
+class HueJsonReader {
+    // every power of ten up to 10^22 is exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+        1e19, 1e20, 1e21, 1e22
+    };
+
+    private String json;
+    private int pos;
+    private int length;
+
+    /**
+     * Prepares the reader to walk a new document.
+     *
+     * @param json the JSON document
+     */
+    void reset(String json) {
+        this.json = json;
+        this.pos = 0;
+        this.length = (json != null) ? json.length() : 0;
+    }
+
+    /**
+     * Returns the next non-whitespace character without consuming it.
+     *
+     * @return a character or 0 if the end of the document has been reached
+     */
+    char peek() {
+        skipWhitespace();
+        return (pos < length) ? json.charAt(pos) : 0;
+    }
+
+    void beginObject() throws HueException {
+        expect('{');
+    }
+
+    void beginArray() throws HueException {
+        expect('[');
+    }
+
+    /**
+     * Advances to the next member of the current object.
+     *
+     * @return true if there is another member (whose name should be read next) or false if the end of the object
+     * has been consumed
+     *
+     * @throws HueException on malformed JSON
+     */
+    boolean nextMember() throws HueException {
+        return next('}');
+    }
+
+    /**
+     * Advances to the next element of the current array.
+     *
+     * @return true if there is another element or false if the end of the array has been consumed
+     *
+     * @throws HueException on malformed JSON
+     */
+    boolean nextElement() throws HueException {
+        return next(']');
+    }
+
+    /**
+     * Reads a member name.
+     *
+     * @return the name
+     *
+     * @throws HueException on malformed JSON
+     */
+    String nextName() throws HueException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads a member name and matches it against a list of known names without creating a String.
+     *
+     * @param names the known names
+     *
+     * @return the index of the matching name or -1 if there was no match
+     *
+     * @throws HueException on malformed JSON
+     */
+    int nextName(String[] names) throws HueException {
+        int ix = nextStringIndex(names);
+        expect(':');
+        return ix;
+    }
+
+    /**
+     * Reads a string value.
+     *
+     * @return the value (or null if the value is a JSON null)
+     *
+     * @throws HueException on malformed JSON
+     */
+    String nextString() throws HueException {
+        if (nextNull()) {
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return json.substring(start, pos++);
+            } else if (c == '\\') {
+                pos = start;
+                return readEscapedString();
+            }
+            pos++;
+        }
+        throw createException("Unterminated string");
+    }
+
+    /**
+     * Reads a string value and matches it against a list of known values without creating a String.
+     *
+     * @param values the known values
+     *
+     * @return the index of the matching value or -1 if there was no match
+     *
+     * @throws HueException on malformed JSON
+     */
+    int nextStringIndex(String[] values) throws HueException {
+        if (nextNull()) {
+            return -1;
+        }
+        expect('"');
+        int start = pos;
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == '"') {
+                int len = pos++ - start;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i].length() == len && json.regionMatches(start, values[i], 0, len)) {
+                        return i;
+                    }
+                }
+                return -1;
+            } else if (c == '\\') {
+                // escaped strings are rare enough that they can take the slow path
+                pos = start;
+                String s = readEscapedString();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i].equals(s)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            pos++;
+        }
+        throw createException("Unterminated string");
+    }
+
+    /**
+     * Reads a string value, returning the matching instance from a list of known values rather than creating a new
+     * String when possible.
+     *
+     * @param values the known values
+     *
+     * @return the value (or null if the value is a JSON null)
+     *
+     * @throws HueException on malformed JSON
+     */
+    String nextString(String[] values) throws HueException {
+        skipWhitespace();
+        int start = pos;
+        int ix = nextStringIndex(values);
+        if (ix > -1) {
+            return values[ix];
+        }
+        pos = start;
+        return nextString();
+    }
+
+    /**
+     * Reads an integer value. Fractional values are truncated.
+     *
+     * @return the value
+     *
+     * @throws HueException on malformed JSON
+     */
+    int nextInt() throws HueException {
+        skipWhitespace();
+        int start = pos;
+        boolean negative = false;
+        long value = 0;
+        long max = Integer.MAX_VALUE;
+        if (pos < length && json.charAt(pos) == '-') {
+            negative = true;
+            max++;
+            pos++;
+        }
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > max) {
+                    throw createException("Integer value out of range");
+                }
+                pos++;
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                pos = start;
+                return (int)nextDouble();
+            } else {
+                break;
+            }
+        }
+        if (pos == start || (negative && pos == start + 1)) {
+            throw createException("Expected a number");
+        }
+        return (int)(negative ? -value : value);
+    }
+
+    /**
+     * Reads a numeric value.
+     *
+     * @return the value
+     *
+     * @throws HueException on malformed JSON
+     */
+    double nextDouble() throws HueException {
+        skipWhitespace();
+        int start = pos;
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        try {
+            return Double.parseDouble(json.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw createException("Expected a number");
+        }
+    }
+
+    /**
+     * Reads a numeric value as a float. Plain decimals (e.g. the xy color coordinates in every light state) are
+     * converted without creating a String; the result is the same as casting nextDouble().
+     *
+     * @return the value
+     *
+     * @throws HueException on malformed JSON
+     */
+    float nextFloat() throws HueException {
+        skipWhitespace();
+        int start = pos;
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        if (pos < length && json.charAt(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > 0) {
+                    digits++;
+                }
+                if (scale > -1) {
+                    scale++;
+                }
+                pos++;
+            } else if (c == '.' && scale == -1) {
+                scale = 0;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        // anything else (exponents, more digits than a double holds exactly) takes the slow path
+        if (digits > 15 || scale == 0 || scale >= POWERS_OF_TEN.length || pos == start || (negative && pos == start + 1) || (pos < length && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E'))) {
+            pos = start;
+            return (float)nextDouble();
+        }
+        double value = (scale > 0) ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return (float)(negative ? -value : value);
+    }
+
+    /**
+     * Reads a boolean value.
+     *
+     * @return the value
+     *
+     * @throws HueException on malformed JSON
+     */
+    boolean nextBoolean() throws HueException {
+        skipWhitespace();
+        if (json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        } else if (json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw createException("Expected a boolean");
+    }
+
+    /**
+     * Consumes a JSON null if one is next.
+     *
+     * @return true if a null was consumed
+     */
+    boolean nextNull() {
+        skipWhitespace();
+        if (json.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips the next value, including any nested objects or arrays.
+     *
+     * @throws HueException on malformed JSON
+     */
+    void skipValue() throws HueException {
+        int depth = 0;
+        do {
+            char c = peek();
+            switch (c) {
+                case '{':
+                case '[':
+                    depth++;
+                    pos++;
+                    break;
+                case '}':
+                case ']':
+                    if (depth == 0) {
+                        throw createException("Expected a value");
+                    }
+                    depth--;
+                    pos++;
+                    break;
+                case ',':
+                case ':':
+                    if (depth == 0) {
+                        throw createException("Expected a value");
+                    }
+                    pos++;
+                    break;
+                case '"':
+                    skipString();
+                    break;
+                case 0:
+                    throw createException("Unexpected end of document");
+                default:
+                    // a literal (number, boolean or null)
+                    int start = pos;
+                    while (pos < length && ",:]} \t\r\n".indexOf(json.charAt(pos)) == -1) {
+                        pos++;
+                    }
+                    if (pos == start) {
+                        throw createException("Expected a value");
+                    }
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Returns the position of the next token so that a value can be skipped and read later with rewind().
+     *
+     * @return a position in the document
+     */
+    int position() {
+        skipWhitespace();
+        return pos;
+    }
+
+    /**
+     * Moves back to a position previously returned by position().
+     *
+     * @param position the position
+     */
+    void rewind(int position) {
+        this.pos = position;
+    }
+
+    /**
+     * Returns the hash code of a section of the document without creating a String. The result is the same as
+     * that of the equivalent substring.
+     *
+     * @param start the start position (inclusive)
+     * @param end the end position (exclusive)
+     *
+     * @return a hash code
+     */
+    int hashRange(int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + json.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * Indicates whether a section of the document is identical to a String.
+     *
+     * @param start the start position (inclusive)
+     * @param end the end position (exclusive)
+     * @param s the String to compare to
+     *
+     * @return a boolean
+     */
+    boolean rangeEquals(int start, int end, String s) {
+        return (s.length() == end - start && json.regionMatches(start, s, 0, end - start));
+    }
+
+    /**
+     * Returns a section of the document.
+     *
+     * @param start the start position (inclusive)
+     * @param end the end position (exclusive)
+     *
+     * @return a String
+     */
+    String substring(int start, int end) {
+        return json.substring(start, end);
+    }
+
+    private boolean next(char end) throws HueException {
+        char c = peek();
+        if (c == end) {
+            pos++;
+            return false;
+        } else if (c == ',') {
+            pos++;
+            c = peek();
+        }
+        if (c == 0) {
+            throw createException("Unexpected end of document");
+        }
+        return true;
+    }
+
+    private void skipString() throws HueException {
+        pos++;
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                pos++;
+            }
+        }
+        throw createException("Unterminated string");
+    }
+
+    private String readEscapedString() throws HueException {
+        StringBuilder sb = new StringBuilder();
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\') {
+                if (pos >= length) {
+                    break;
+                }
+                c = json.charAt(pos++);
+                switch (c) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > length) {
+                            throw createException("Invalid unicode escape");
+                        }
+                        try {
+                            sb.append((char)Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw createException("Invalid unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw createException("Unterminated string");
+    }
+
+    private void expect(char c) throws HueException {
+        if (peek() != c) {
+            throw createException("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private HueException createException(String msg) {
+        return new HueException(msg + " at position " + pos);
+    }
+}
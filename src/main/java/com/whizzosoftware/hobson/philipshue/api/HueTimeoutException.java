@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+/**
+ * An exception that occurs when the Hue bridge doesn't respond to a request in time.
+ *
+ * @author Dan Noguerol
+ */
+public class HueTimeoutException extends HueException {
+    /**
+     * Constructor.
+     *
+     * @param msg the error message
+     */
+    public HueTimeoutException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An HttpContext dedicated to the Hue bridge that re-uses persistent (keep-alive) connections rather than opening a
+ * new connection for every request.
+ *
+ * Requests are sent with the JDK's HttpURLConnection, which keeps idle connections in its own keep-alive cache (and
+ * transparently retries a request whose cached connection turns out to have been closed by the bridge). For that to
+ * work every response body is read in full and closed. Requests are sent by a fixed number of worker threads equal
+ * to the maximum connection count so the bridge never sees more concurrent connections than that.
+ *
+ * The JDK's cache is shared by everything running in the JVM and keeps at most "http.maxConnections" (5 by default)
+ * idle connections per destination; connections beyond that are closed rather than re-used and nothing is re-used
+ * if "http.keepAlive" is false. getJdkConnectionLimit() returns that limit so the connection count can be kept
+ * within it.
+ *
+ * HttpURLConnection doesn't say whether a request was sent on a cached connection so, where the runtime allows it
+ * (Java 8 and earlier, or later releases with java.base's sun.net.www.protocol.http and sun.net.www.http packages
+ * opened to the plugin), its internal client is asked instead. isReuseTracked() indicates whether the connection counts are available.
+ *
+ * Results are passed to an HttpResponseHandler on the supplied callback executor.
+ *
+ * @author Dan Noguerol
+ */
+public class KeepAliveHttpContext implements HttpContext {
+    private static final Logger logger = LoggerFactory.getLogger(KeepAliveHttpContext.class);
+
+    private static final int CONNECT_TIMEOUT_IN_MS = 5000;
+    private static final int READ_TIMEOUT_IN_MS = 10000;
+    private static final int DEFAULT_JDK_MAX_CONNECTIONS = 5;
+
+    private static final Field HTTP_CLIENT_FIELD;
+    private static final Method IS_CACHED_CONNECTION_METHOD;
+
+    static {
+        Field f = null;
+        Method m = null;
+        try {
+            f = Class.forName("sun.net.www.protocol.http.HttpURLConnection").getDeclaredField("http");
+            f.setAccessible(true);
+            m = Class.forName("sun.net.www.http.HttpClient").getMethod("isCachedConnection");
+            m.setAccessible(true);
+        } catch (Exception e) {
+            // this includes the runtime refusing access to its internals
+            logger.debug("Connection re-use can't be tracked on this runtime", e);
+            f = null;
+            m = null;
+        }
+        HTTP_CLIENT_FIELD = f;
+        IS_CACHED_CONNECTION_METHOD = m;
+    }
+
+    private final HttpResponseHandler handler;
+    private final Executor callbackExecutor;
+    private final int maxConnections;
+    private final ExecutorService workers;
+    private long requestCount;
+    private long failureCount;
+    private long connectCount;
+    private long reuseCount;
+
+    /**
+     * Constructor.
+     *
+     * @param handler the handler to pass responses to
+     * @param callbackExecutor the executor to call the handler on
+     * @param maxConnections the maximum number of connections to open to the bridge
+     */
+    public KeepAliveHttpContext(HttpResponseHandler handler, Executor callbackExecutor, int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Invalid maximum connection count: " + maxConnections);
+        }
+        this.handler = handler;
+        this.callbackExecutor = callbackExecutor;
+        this.maxConnections = maxConnections;
+        this.workers = Executors.newFixedThreadPool(maxConnections, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Hue Bridge HTTP " + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Returns the largest number of connections to the bridge that the JDK will keep alive for re-use.
+     *
+     * @return a count (0 if keep-alive is disabled for the JVM)
+     */
+    public static int getJdkConnectionLimit() {
+        if ("false".equalsIgnoreCase(System.getProperty("http.keepAlive"))) {
+            return 0;
+        }
+        int max = Integer.getInteger("http.maxConnections", DEFAULT_JDK_MAX_CONNECTIONS);
+        return (max > 0) ? max : DEFAULT_JDK_MAX_CONNECTIONS;
+    }
+
+    /**
+     * Indicates whether getConnectCount() and getReuseCount() are available on this runtime.
+     *
+     * @return a boolean
+     */
+    public static boolean isReuseTracked() {
+        return (HTTP_CLIENT_FIELD != null);
+    }
+
+    @Override
+    public void sendHttpRequest(final URI uri, final HttpRequest.Method method, final Map<String,String> headers, Collection<Cookie> cookies, final byte[] body, final Object context) {
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        onResponse(execute(uri, method, headers, body), context);
+                    } catch (Exception e) {
+                        onFailure(e, context);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onFailure(new IOException("HTTP context has been closed"), context);
+        }
+    }
+
+    /**
+     * Stops the worker threads. Requests already being sent are allowed to finish; idle connections are left to
+     * expire from the JDK's keep-alive cache.
+     */
+    public void close() {
+        workers.shutdown();
+    }
+
+    synchronized public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of requests that failed without a response from the bridge.
+     *
+     * @return a count
+     */
+    synchronized public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the number of requests that had to open a new connection to the bridge.
+     *
+     * @return a count (always 0 if isReuseTracked() is false)
+     */
+    synchronized public long getConnectCount() {
+        return connectCount;
+    }
+
+    /**
+     * Returns the number of requests sent on a connection kept alive from an earlier request.
+     *
+     * @return a count (always 0 if isReuseTracked() is false)
+     */
+    synchronized public long getReuseCount() {
+        return reuseCount;
+    }
+
+    BridgeHttpResponse execute(URI uri, HttpRequest.Method method, Map<String,String> headers, byte[] body) throws IOException {
+        synchronized (this) {
+            requestCount++;
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme())) {
+            throw new IOException("Unsupported URI scheme: " + uri);
+        }
+
+        HttpURLConnection conn = (HttpURLConnection)uri.toURL().openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MS);
+        conn.setReadTimeout(READ_TIMEOUT_IN_MS);
+        conn.setUseCaches(false);
+        conn.setInstanceFollowRedirects(false);
+        conn.setRequestMethod(method.name());
+        conn.setDoOutput(body != null);
+
+        boolean hasContentType = false;
+        if (headers != null) {
+            for (Map.Entry<String,String> e : headers.entrySet()) {
+                conn.setRequestProperty(e.getKey(), e.getValue());
+                hasContentType |= "Content-Type".equalsIgnoreCase(e.getKey());
+            }
+        }
+        if (body != null && !hasContentType) {
+            conn.setRequestProperty("Content-Type", "application/json");
+        }
+        conn.connect();
+        Boolean cached = isCachedConnection(conn);
+
+        // the body is left for HttpURLConnection to buffer (rather than streamed) so that it can re-send the
+        // request if a cached connection has gone stale
+        if (body != null) {
+            OutputStream out = conn.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+
+        int statusCode = conn.getResponseCode();
+        String statusText = conn.getResponseMessage();
+
+        // a stale cached connection is replaced by a new one while the request is sent so the connection the
+        // response arrived on is what counts (when it's still attached)
+        Boolean c = isCachedConnection(conn);
+        if (c != null) {
+            cached = c;
+        }
+        if (cached != null) {
+            synchronized (this) {
+                if (cached) {
+                    reuseCount++;
+                } else {
+                    connectCount++;
+                }
+            }
+        }
+        Map<String,Collection<String>> responseHeaders = new LinkedHashMap<>();
+        for (Map.Entry<String,List<String>> e : conn.getHeaderFields().entrySet()) {
+            // the status line is returned with a null key
+            if (e.getKey() != null) {
+                responseHeaders.put(e.getKey().toLowerCase(), new ArrayList<>(e.getValue()));
+            }
+        }
+        InputStream in = (statusCode >= 400) ? conn.getErrorStream() : conn.getInputStream();
+        return new BridgeHttpResponse(statusCode, statusText != null ? statusText : "", responseHeaders, readFully(in));
+    }
+
+    /**
+     * Asks HttpURLConnection's internal client whether it was taken from the keep-alive cache.
+     *
+     * @param conn the connection
+     *
+     * @return the answer or null if it isn't known
+     */
+    private Boolean isCachedConnection(HttpURLConnection conn) {
+        if (HTTP_CLIENT_FIELD != null && HTTP_CLIENT_FIELD.getDeclaringClass().isInstance(conn)) {
+            try {
+                Object client = HTTP_CLIENT_FIELD.get(conn);
+                if (client != null) {
+                    return (Boolean)IS_CACHED_CONNECTION_METHOD.invoke(client);
+                }
+            } catch (Exception e) {
+                logger.trace("Unable to determine whether connection was re-used", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads and closes a response body. It has to be read to the end for the connection to be re-used.
+     *
+     * @param in the body stream (can be null)
+     *
+     * @return the body
+     *
+     * @throws IOException on failure
+     */
+    private byte[] readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] b = new byte[4096];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                baos.write(b, 0, n);
+            }
+            return baos.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void onResponse(final BridgeHttpResponse response, final Object context) {
+        try {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.onHttpResponse(response, context);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Unable to report HTTP response", e);
+        }
+    }
+
+    private void onFailure(final Throwable t, final Object context) {
+        synchronized (this) {
+            failureCount++;
+        }
+        try {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.onHttpRequestFailure(t, context);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Unable to report HTTP failure", t);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serializes LightState objects into the JSON request bodies sent to the bridge. The JSON is written directly into
+ * a re-usable byte buffer rather than going through a JSONObject and String. The same fields are written as
+ * HueBridgeParser.createLightStateJSON().
+ *
+ * Recently encoded bodies are cached since the same few states (e.g. on or off) are sent over and over. The
+ * returned arrays may therefore be shared and must not be modified.
+ *
+ * @author Dan Noguerol
+ */
+class LightStateSerializer {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final byte[] ON_TRUE = "\"on\":true".getBytes(UTF8);
+    private static final byte[] ON_FALSE = "\"on\":false".getBytes(UTF8);
+    private static final byte[] HUE = "\"hue\":".getBytes(UTF8);
+    private static final byte[] SAT = "\"sat\":".getBytes(UTF8);
+    private static final byte[] BRI = "\"bri\":".getBytes(UTF8);
+    private static final byte[] CT = "\"ct\":".getBytes(UTF8);
+    private static final byte[] XY = "\"xy\":".getBytes(UTF8);
+    private static final byte[] EFFECT = "\"effect\":".getBytes(UTF8);
+
+    private final Map<LightState,byte[]> cache;
+    private byte[] buffer = new byte[128];
+    private int pos;
+    private long hitCount;
+    private long missCount;
+
+    LightStateSerializer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cacheSize the maximum number of encoded bodies to cache
+     */
+    LightStateSerializer(final int cacheSize) {
+        this.cache = new LinkedHashMap<LightState,byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LightState,byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the JSON encoding of a light state.
+     *
+     * @param state the light state
+     *
+     * @return a byte array (that must not be modified)
+     */
+    synchronized byte[] serialize(LightState state) {
+        byte[] body = cache.get(state);
+        if (body != null) {
+            hitCount++;
+            return body;
+        }
+
+        missCount++;
+        encode(state);
+
+        body = Arrays.copyOf(buffer, pos);
+        // the key is a copy so that later changes to the caller's state can't corrupt the cache
+        cache.put(state.merge(null), body);
+        return body;
+    }
+
+    /**
+     * Returns the length of the JSON encoding of a light state without caching it.
+     *
+     * @param state the light state
+     *
+     * @return the length in bytes
+     */
+    synchronized int getLength(LightState state) {
+        byte[] body = cache.get(state);
+        if (body != null) {
+            return body.length;
+        }
+        encode(state);
+        return pos;
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private void encode(LightState state) {
+        pos = 0;
+        write((byte)'{');
+        if (state.hasOn()) {
+            write(state.getOn() ? ON_TRUE : ON_FALSE);
+        }
+        if (state.hasColor()) {
+            writeField(HUE, state.getHue());
+            writeField(SAT, state.getSaturation());
+            writeField(BRI, state.getBrightness());
+        } else if (state.hasColorTemperature()) {
+            writeField(CT, state.getColorTemperature());
+            writeField(BRI, state.getBrightness());
+        } else if (state.hasColorXY()) {
+            writeSeparator();
+            write(XY);
+            write((byte)'[');
+            writeXY(state.getX());
+            write((byte)',');
+            writeXY(state.getY());
+            write((byte)']');
+            writeField(BRI, state.getBrightness());
+        }
+        if ((!state.hasOn() || state.getOn()) && state.hasEffect()) {
+            writeSeparator();
+            write(EFFECT);
+            writeString(state.getEffect());
+        }
+        write((byte)'}');
+    }
+
+    private void writeField(byte[] name, int value) {
+        writeSeparator();
+        write(name);
+        writeInt(value);
+    }
+
+    private void writeSeparator() {
+        if (pos > 1) {
+            write((byte)',');
+        }
+    }
+
+    private void writeInt(int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                write(Integer.toString(value).getBytes(UTF8));
+                return;
+            }
+            write((byte)'-');
+            value = -value;
+        }
+        ensureCapacity(10);
+        int start = pos;
+        do {
+            buffer[pos++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // the digits were written in reverse order
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    /**
+     * Writes an xy coordinate rounded to 4 decimal places (the same value as HueBridgeParser.roundXY()).
+     */
+    private void writeXY(float f) {
+        long v = Math.round(f * 10000.0);
+        if (v < 0) {
+            write((byte)'-');
+            v = -v;
+        }
+        writeInt((int)(v / 10000));
+        int fraction = (int)(v % 10000);
+        if (fraction > 0) {
+            ensureCapacity(5);
+            buffer[pos++] = '.';
+            for (int div = 1000; div > 0 && fraction > 0; div /= 10) {
+                buffer[pos++] = (byte)('0' + fraction / div);
+                fraction %= div;
+            }
+        }
+    }
+
+    private void writeString(String s) {
+        ensureCapacity(s.length() + 2);
+        int start = pos;
+        buffer[pos++] = '"';
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                // anything that needs escaping or encoding takes the slow path
+                pos = start;
+                write(JSONObject.quote(s).getBytes(UTF8));
+                return;
+            }
+            buffer[pos++] = (byte)c;
+        }
+        buffer[pos++] = '"';
+    }
+
+    private void write(byte b) {
+        ensureCapacity(1);
+        buffer[pos++] = b;
+    }
+
+    private void write(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buffer, pos, b.length);
+        pos += b.length;
+    }
+
+    private void ensureCapacity(int n) {
+        if (pos + n > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + n));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of the URIs used to make requests to the Hue bridge so they don't need to be built and parsed for every
+ * request. URIs are cached by request type and target ID (e.g. a light or group ID).
+ *
+ * @author Dan Noguerol
+ */
+class RequestUriCache {
+    // more IDs than this means groups are being created and deleted so it's safe to start over
+    private static final int MAX_IDS_PER_TYPE = 256;
+
+    enum Type {
+        CREATE_USER("", null),
+        FULL_STATE("", null),
+        ALL_LIGHTS("/lights", null),
+        LIGHT("/lights/", null),
+        LIGHT_STATE("/lights/", "/state"),
+        ALL_GROUPS("/groups", null),
+        GROUP("/groups/", null),
+        GROUP_ACTION("/groups/", "/action");
+
+        private final String prefix;
+        private final String suffix;
+
+        Type(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+
+    private final String apiUrl;
+    private final String userUrl;
+    private final Map<String,URI>[] uris;
+    private long missCount;
+
+    /**
+     * Constructor.
+     *
+     * @param baseUrl the base URL of the bridge (e.g. http://host)
+     * @param userName the user name used to access the bridge
+     */
+    @SuppressWarnings("unchecked")
+    RequestUriCache(String baseUrl, String userName) {
+        this.apiUrl = baseUrl + "/api";
+        this.userUrl = apiUrl + "/" + userName;
+        this.uris = new Map[Type.values().length];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Returns the URI for a request.
+     *
+     * @param type the request type
+     * @param id the target ID (or null if the request type has no target)
+     *
+     * @return a URI
+     *
+     * @throws URISyntaxException if the URI is invalid
+     */
+    URI get(Type type, String id) throws URISyntaxException {
+        Map<String,URI> map = uris[type.ordinal()];
+        String key = (id != null) ? id : "";
+        URI uri = map.get(key);
+        if (uri == null) {
+            StringBuilder sb = new StringBuilder(type == Type.CREATE_USER ? apiUrl : userUrl).append(type.prefix);
+            if (id != null) {
+                sb.append(id);
+            }
+            if (type.suffix != null) {
+                sb.append(type.suffix);
+            }
+            uri = new URI(sb.toString());
+            if (map.size() >= MAX_IDS_PER_TYPE) {
+                map.clear();
+            }
+            map.put(key, uri);
+            synchronized (this) {
+                missCount++;
+            }
+        }
+        return uri;
+    }
+
+    /**
+     * Returns the number of URIs that have had to be built.
+     *
+     * @return a count
+     */
+    synchronized long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,521 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A HueBridgeParser that parses the light, full state and user responses by walking the payload once with a HueJsonReader
+ * instead of building a JSONObject tree. Only the fields that are actually used are read; everything else
+ * (pointsymbol, swversion, etc.) is skipped without being materialized.
+ *
+ * Light state is read into a re-usable builder and only turned into a new CompactLightState if it differs from the
+ * last state parsed for that light; otherwise the previous instance is returned. Before that, each light's object
+ * in a light list is fingerprinted: if its text is identical to the last time the light was seen, the previous
+ * Light is returned without parsing anything. Since the builder and fingerprints are shared, the parse methods are
+ * synchronized.
+ *
+ * @author Dan Noguerol
+ */
+class StreamingHueBridgeParser extends HueBridgeParser {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingHueBridgeParser.class);
+
+    private static final String[] LIGHT_KEYS = {"state", "name", "modelid"};
+    private static final int LIGHT_STATE = 0;
+    private static final int LIGHT_NAME = 1;
+    private static final int LIGHT_MODEL = 2;
+
+    private static final String[] STATE_KEYS = {"on", "hue", "sat", "bri", "ct", "colormode", "effect", "modelid", "reachable", "xy"};
+    private static final int STATE_ON = 0;
+    private static final int STATE_HUE = 1;
+    private static final int STATE_SAT = 2;
+    private static final int STATE_BRI = 3;
+    private static final int STATE_CT = 4;
+    private static final int STATE_COLORMODE = 5;
+    private static final int STATE_EFFECT = 6;
+    private static final int STATE_MODEL = 7;
+    private static final int STATE_REACHABLE = 8;
+    private static final int STATE_XY = 9;
+
+    private static final String[] DATASTORE_KEYS = {"lights", "groups"};
+    private static final int DATASTORE_LIGHTS = 0;
+    private static final int DATASTORE_GROUPS = 1;
+
+    private static final String[] GROUP_KEYS = {"name", "lights"};
+    private static final int GROUP_NAME = 0;
+    private static final int GROUP_LIGHTS = 1;
+
+    private static final String[] RESULT_KEYS = {"error", "success"};
+    private static final int RESULT_ERROR = 0;
+    private static final int RESULT_SUCCESS = 1;
+
+    private static final String[] ERROR_KEYS = {"type", "address", "description"};
+    private static final int ERROR_TYPE = 0;
+    private static final int ERROR_ADDRESS = 1;
+    private static final int ERROR_DESCRIPTION = 2;
+
+    private static final String[] USER_KEYS = {"username"};
+
+    // values that appear in nearly every state object so they can be returned without creating new Strings
+    private static final String[] COLOR_MODES = {LightState.MODE_HS, LightState.MODE_CT, LightState.MODE_XY};
+    private static final String[] EFFECTS = {"none", "colorloop"};
+
+    private final HueJsonReader reader = new HueJsonReader();
+    private final CompactLightState.Builder builder = new CompactLightState.Builder();
+    private final float[] xy = new float[2];
+    private final Map<String,CompactLightState> lastStates = new HashMap<>();
+    private final Map<String,LightFingerprint> lastLights = new HashMap<>();
+    private long lightParsedCount;
+    private long lightUnchangedCount;
+
+    @Override
+    synchronized BridgeResponse parseGetAllLightsResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+        reset(response);
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("getAllLights response: {}", response);
+        }
+
+        char c = reader.peek();
+        if (c == '{') {
+            return new GetAllLightsResponse(readLights());
+        } else if (c == '[') {
+            BridgeResponse br = readResultArray(null);
+            if (br instanceof ErrorResponse) {
+                return br;
+            }
+        }
+        throw new HueException("Error getting light information; received unexpected response " + response);
+    }
+
+    @Override
+    synchronized BridgeResponse parseGetFullStateResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+        reset(response);
+
+        char c = reader.peek();
+        if (c == '{') {
+            List<Light> lights = null;
+            List<Group> groups = null;
+            reader.beginObject();
+            while (reader.nextMember()) {
+                switch (reader.nextName(DATASTORE_KEYS)) {
+                    case DATASTORE_LIGHTS:
+                        lights = readLights();
+                        break;
+                    case DATASTORE_GROUPS:
+                        groups = readGroups();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            if (lights != null) {
+                return new GetFullStateResponse(lights, groups);
+            }
+        } else if (c == '[') {
+            BridgeResponse br = readResultArray(null);
+            if (br instanceof ErrorResponse) {
+                return br;
+            }
+        }
+        throw new HueException("Error getting bridge state; received unexpected response " + response);
+    }
+
+    @Override
+    synchronized BridgeResponse parseCreateUserResponse(int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+        reset(response);
+
+        if (reader.peek() == '[') {
+            BridgeResponse br = readResultArray(USER_KEYS);
+            if (br != null) {
+                return br;
+            }
+        }
+        throw new HueException("Error creating user; received unexpected response " + response);
+    }
+
+    @Override
+    synchronized BridgeResponse parseGetLightAttributeAndStateResponse(String deviceId, int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+        reset(response);
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("getLightAttributeAndState({}) response: {}", deviceId, response);
+        }
+
+        char c = reader.peek();
+        if (c == '{') {
+            CompactLightState state = null;
+            reader.beginObject();
+            while (reader.nextMember()) {
+                if (reader.nextName(LIGHT_KEYS) == LIGHT_STATE) {
+                    state = readLightState(deviceId);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            if (state != null) {
+                return new GetLightAttributeAndStateResponse(deviceId, state);
+            }
+        } else if (c == '[') {
+            BridgeResponse br = readResultArray(null);
+            if (br instanceof ErrorResponse) {
+                return br;
+            }
+        }
+        throw new HueException("Error getting light information; received unexpected response " + response);
+    }
+
+    @Override
+    synchronized BridgeResponse parseSetLightStateResponse(String deviceId, int statusCode, String response) throws HueException {
+        validateStatusCode(statusCode);
+        reset(response);
+
+        if (reader.peek() == '[') {
+            LightState state = new LightState();
+            BridgeResponse br = readResultArray(null, deviceId, state);
+            return (br != null) ? br : new SetLightStateResponse(deviceId, state);
+        }
+        throw new HueException("Error setting light state; received unexpected response " + response);
+    }
+
+    /**
+     * Returns the number of lights in light lists that had to be parsed.
+     *
+     * @return a count
+     */
+    synchronized long getLightParsedCount() {
+        return lightParsedCount;
+    }
+
+    /**
+     * Returns the number of lights in light lists that were identical to the last time and weren't parsed.
+     *
+     * @return a count
+     */
+    synchronized long getLightUnchangedCount() {
+        return lightUnchangedCount;
+    }
+
+    private void reset(String response) throws HueException {
+        if (response == null) {
+            throw new HueException("Received empty response from Hue bridge");
+        }
+        reader.reset(response);
+    }
+
+    private BridgeResponse readResultArray(String[] userKeys) throws HueException {
+        return readResultArray(userKeys, null, null);
+    }
+
+    /**
+     * Reads an array of error/success results.
+     *
+     * @param userKeys if not null, the first success result is returned as a CreateUserResponse
+     * @param deviceId the ID of the light that light state results are for
+     * @param state if not null, light state success results are set on it
+     *
+     * @return the first ErrorResponse (or CreateUserResponse) found or null if there were none
+     *
+     * @throws HueException on malformed JSON
+     */
+    private BridgeResponse readResultArray(String[] userKeys, String deviceId, LightState state) throws HueException {
+        reader.beginArray();
+        while (reader.nextElement()) {
+            if (reader.peek() != '{') {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.nextMember()) {
+                int key = reader.nextName(RESULT_KEYS);
+                if (key == RESULT_ERROR) {
+                    return readError();
+                } else if (key == RESULT_SUCCESS && userKeys != null && reader.peek() == '{') {
+                    String username = null;
+                    reader.beginObject();
+                    while (reader.nextMember()) {
+                        if (reader.nextName(userKeys) == 0) {
+                            username = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    return new CreateUserResponse(username);
+                } else if (key == RESULT_SUCCESS && state != null && reader.peek() == '{') {
+                    reader.beginObject();
+                    while (reader.nextMember()) {
+                        readLightStateResult(deviceId, reader.nextName(), state);
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<Light> readLights() throws HueException {
+        List<Light> lights = new ArrayList<>();
+        reader.beginObject();
+        while (reader.nextMember()) {
+            String deviceId = reader.nextName();
+
+            // most lights don't change between polls so the previous Light is re-used if the text is identical
+            int start = reader.position();
+            reader.skipValue();
+            int end = reader.position();
+            int hash = reader.hashRange(start, end);
+            LightFingerprint last = lastLights.get(deviceId);
+            if (last != null && last.hash == hash && reader.rangeEquals(start, end, last.json)) {
+                lightUnchangedCount++;
+                lights.add(last.light);
+                continue;
+            }
+            reader.rewind(start);
+
+            String name = null;
+            String model = null;
+            CompactLightState state = null;
+            reader.beginObject();
+            while (reader.nextMember()) {
+                switch (reader.nextName(LIGHT_KEYS)) {
+                    case LIGHT_STATE:
+                        state = readLightState(deviceId);
+                        break;
+                    case LIGHT_NAME:
+                        name = reader.nextString();
+                        break;
+                    case LIGHT_MODEL:
+                        model = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            Light light = new Light(deviceId, name, model, state);
+            lightParsedCount++;
+            lastLights.put(deviceId, new LightFingerprint(reader.substring(start, end), hash, light));
+            lights.add(light);
+        }
+
+        // this is the bridge's complete list so anything else has been deleted; every light listed has a
+        // fingerprint so there's only something to remove when there are more of them than lights
+        if (lastLights.size() > lights.size() || lastStates.size() > lights.size()) {
+            Set<String> ids = new HashSet<>();
+            for (Light light : lights) {
+                ids.add(light.getId());
+            }
+            lastLights.keySet().retainAll(ids);
+            lastStates.keySet().retainAll(ids);
+        }
+
+        return lights;
+    }
+
+    private List<Group> readGroups() throws HueException {
+        List<Group> groups = new ArrayList<>();
+        reader.beginObject();
+        while (reader.nextMember()) {
+            String groupId = reader.nextName();
+            String name = null;
+            List<String> lights = new ArrayList<>();
+            reader.beginObject();
+            while (reader.nextMember()) {
+                switch (reader.nextName(GROUP_KEYS)) {
+                    case GROUP_NAME:
+                        name = reader.nextString();
+                        break;
+                    case GROUP_LIGHTS:
+                        reader.beginArray();
+                        while (reader.nextElement()) {
+                            lights.add(reader.nextString());
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            groups.add(new Group(groupId, name, lights));
+        }
+        return groups;
+    }
+
+    private void readLightStateResult(String deviceId, String address, LightState state) throws HueException {
+        String attribute = getLightStateAttribute(deviceId, address);
+        if (attribute == null) {
+            reader.skipValue();
+            return;
+        } else if (reader.nextNull()) {
+            return;
+        }
+        int key = -1;
+        for (int i = 0; i < STATE_KEYS.length; i++) {
+            if (STATE_KEYS[i].equals(attribute)) {
+                key = i;
+                break;
+            }
+        }
+        switch (key) {
+            case STATE_ON:
+                state.setOn(reader.nextBoolean());
+                break;
+            case STATE_HUE:
+                state.setHue(reader.nextInt());
+                state.setColorMode(LightState.MODE_HS);
+                break;
+            case STATE_SAT:
+                state.setSaturation(reader.nextInt());
+                state.setColorMode(LightState.MODE_HS);
+                break;
+            case STATE_BRI:
+                state.setBrightness(reader.nextInt());
+                break;
+            case STATE_CT:
+                state.setColorTemperature(reader.nextInt());
+                state.setColorMode(LightState.MODE_CT);
+                break;
+            case STATE_EFFECT:
+                state.setEffect(reader.nextString(EFFECTS));
+                break;
+            case STATE_XY:
+                if (readXY()) {
+                    state.setXY(xy[0], xy[1]);
+                    state.setColorMode(LightState.MODE_XY);
+                }
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    /**
+     * Reads an xy color array into the xy field.
+     *
+     * @return true if the array contained a pair of values
+     */
+    private boolean readXY() throws HueException {
+        int count = 0;
+        reader.beginArray();
+        while (reader.nextElement()) {
+            if (count < 2) {
+                xy[count] = reader.nextFloat();
+            } else {
+                reader.skipValue();
+            }
+            count++;
+        }
+        return (count >= 2);
+    }
+
+    private ErrorResponse readError() throws HueException {
+        Integer type = null;
+        String address = null;
+        String description = null;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.nextName(ERROR_KEYS)) {
+                case ERROR_TYPE:
+                    type = reader.nextInt();
+                    break;
+                case ERROR_ADDRESS:
+                    address = reader.nextString();
+                    break;
+                case ERROR_DESCRIPTION:
+                    description = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        return new ErrorResponse(type, address, description);
+    }
+
+    private CompactLightState readLightState(String deviceId) throws HueException {
+        builder.clear();
+        reader.beginObject();
+        while (reader.nextMember()) {
+            int key = reader.nextName(STATE_KEYS);
+            if (key > -1 && reader.nextNull()) {
+                continue;
+            }
+            switch (key) {
+                case STATE_ON:
+                    builder.setOn(reader.nextBoolean());
+                    break;
+                case STATE_HUE:
+                    builder.setHue(reader.nextInt());
+                    break;
+                case STATE_SAT:
+                    builder.setSaturation(reader.nextInt());
+                    break;
+                case STATE_BRI:
+                    builder.setBrightness(reader.nextInt());
+                    break;
+                case STATE_CT:
+                    builder.setColorTemperature(reader.nextInt());
+                    break;
+                case STATE_COLORMODE:
+                    builder.setColorMode(reader.nextString(COLOR_MODES));
+                    break;
+                case STATE_EFFECT:
+                    builder.setEffect(reader.nextString(EFFECTS));
+                    break;
+                case STATE_MODEL:
+                    builder.setModel(reader.nextString());
+                    break;
+                case STATE_REACHABLE:
+                    builder.setReachable(reader.nextBoolean());
+                    break;
+                case STATE_XY:
+                    if (readXY()) {
+                        builder.setXY(xy[0], xy[1]);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        // re-use the previous state object if nothing has changed
+        CompactLightState last = lastStates.get(deviceId);
+        if (builder.matches(last)) {
+            return last;
+        }
+        CompactLightState state = builder.build();
+        lastStates.put(deviceId, state);
+        return state;
+    }
+
+    /**
+     * The text a light was last parsed from.
+     */
+    private static class LightFingerprint {
+        final String json;
+        final int hash;
+        final Light light;
+
+        LightFingerprint(String json, int hash, Light light) {
+            this.json = json;
+            this.hash = hash;
+            this.light = light;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+/**
+ * A simple token bucket rate limiter. Tokens are added at a fixed rate up to a maximum capacity and each
+ * request consumes one token.
+ *
+ * @author Dan Noguerol
+ */
+public class TokenBucket {
+    private double ratePerMs;
+    private double capacity;
+    private double tokens;
+    private long lastRefillTime;
+
+    /**
+     * Constructor.
+     *
+     * @param ratePerSecond the number of tokens added per second
+     * @param capacity the maximum number of tokens the bucket can hold (i.e. the largest burst allowed)
+     * @param now the current time
+     */
+    public TokenBucket(double ratePerSecond, int capacity, long now) {
+        setRate(ratePerSecond, capacity);
+        this.tokens = capacity;
+        this.lastRefillTime = now;
+    }
+
+    public void setRate(double ratePerSecond, int capacity) {
+        if (ratePerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.ratePerMs = ratePerSecond / 1000.0;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Attempts to take a token from the bucket.
+     *
+     * @param now the current time
+     *
+     * @return true if a token was available
+     */
+    public boolean tryAcquire(long now) {
+        refill(now);
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns how long until the next token is available.
+     *
+     * @param now the current time
+     *
+     * @return a time interval in milliseconds
+     */
+    public long getWaitTime(long now) {
+        refill(now);
+        return (tokens >= 1.0) ? 0 : (long)Math.ceil((1.0 - tokens) / ratePerMs);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefillTime) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillTime) * ratePerMs);
+            lastRefillTime = now;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of RGB to xy conversions. Automations tend to send the same handful of colors over and over so
+ * each color only needs to be converted (and clamped to the gamut) once per gamut. The least recently used
+ * conversions are discarded once the cache is full.
+ *
+ * Cached values are rounded to the 4 decimal places the bridge works with so that they compare equal to the
+ * values it reports back.
+ *
+ * @author Dan Noguerol
+ */
+public class XYColorCache {
+    private final Map<Long,float[]> cache;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize the maximum number of conversions to cache
+     */
+    public XYColorCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this.cache = new LinkedHashMap<Long,float[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,float[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Converts an RGB color to the closest CIE xy color a lamp can produce.
+     *
+     * @param red the red value (0-255)
+     * @param green the green value (0-255)
+     * @param blue the blue value (0-255)
+     * @param gamut the gamut of the lamp
+     * @param xy receives the x and y values
+     */
+    synchronized public void calculateXY(int red, int green, int blue, ColorGamut gamut, float[] xy) {
+        Long key = ((long)gamut.getId() << 24) | ((red & 0xff) << 16) | ((green & 0xff) << 8) | (blue & 0xff);
+        float[] value = cache.get(key);
+        if (value == null) {
+            value = new float[2];
+            ColorConversion.calculateXY(red & 0xff, green & 0xff, blue & 0xff, gamut, value);
+            value[0] = round(value[0]);
+            value[1] = round(value[1]);
+            cache.put(key, value);
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        xy[0] = value[0];
+        xy[1] = value[1];
+    }
+
+    synchronized public int size() {
+        return cache.size();
+    }
+
+    synchronized public long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized public long getMissCount() {
+        return missCount;
+    }
+
+    private static float round(float f) {
+        return (float)(Math.round(f * 10000.0) / 10000.0);
+    }
+}
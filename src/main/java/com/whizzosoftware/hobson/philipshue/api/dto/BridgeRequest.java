@@ -13,4 +13,19 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
  * @author Dan Noguerol
  */
 abstract public class BridgeRequest {
+    private long sequence;
+
+    /**
+     * Returns the sequence number assigned to this request when it was sent. Sequence numbers increase
+     * monotonically so they can be used to determine which of two requests was sent more recently.
+     *
+     * @return a sequence number (or 0 if one was never assigned)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
@@ -13,4 +13,18 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
  * @author Dan Noguerol
  */
 abstract public class BridgeResponse {
+    private long sequence;
+
+    /**
+     * Returns the sequence number of the request that produced this response.
+     *
+     * @return a sequence number (or 0 if unknown)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
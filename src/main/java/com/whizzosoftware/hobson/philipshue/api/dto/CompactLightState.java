@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * An immutable representation of the state of a Hue light as reported by the bridge.
+ *
+ * Unlike LightState, the numeric fields are stored as primitives (with a sentinel for "not reported"; NaN for the xy
+ * coordinates) and the color mode and effect are interned against the handful of values the bridge actually uses,
+ * so an instance is a single small object and equals() doesn't need to unbox or compare string contents in the
+ * common case. The hash code is computed once up front.
+ *
+ * LightState is still used for commands and partial state (events and command results); those can be overlaid on
+ * a CompactLightState with merge().
+ *
+ * @author Dan Noguerol
+ */
+public final class CompactLightState {
+    private static final int NONE = Integer.MIN_VALUE;
+    private static final byte UNSET = -1;
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+
+    private static final String[] COLOR_MODES = {LightState.MODE_HS, LightState.MODE_CT, LightState.MODE_XY};
+    private static final String[] EFFECTS = {"none", "colorloop"};
+
+    private final byte on;
+    private final byte reachable;
+    private final int hue;
+    private final int saturation;
+    private final int brightness;
+    private final int colorTemperature;
+    private final float x;
+    private final float y;
+    private final String colorMode;
+    private final String effect;
+    private final String model;
+    private final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param on is light on?
+     * @param hue the hue value (0-65535)
+     * @param saturation the saturation value (1-254)
+     * @param brightness the brightness value (1-254)
+     * @param ct color temperature
+     * @param colorMode the color mode
+     * @param effect the effect
+     * @param model the model of light
+     * @param reachable is light reachable?
+     */
+    public CompactLightState(Boolean on, Integer hue, Integer saturation, Integer brightness, Integer ct, String colorMode, String effect, String model, Boolean reachable) {
+        this(toByte(on), toInt(hue), toInt(saturation), toInt(brightness), toInt(ct), Float.NaN, Float.NaN, colorMode, effect, model, toByte(reachable));
+    }
+
+    private CompactLightState(byte on, int hue, int saturation, int brightness, int colorTemperature, float x, float y, String colorMode, String effect, String model, byte reachable) {
+        this.on = on;
+        this.hue = hue;
+        this.saturation = saturation;
+        this.brightness = brightness;
+        this.colorTemperature = colorTemperature;
+        // a pair is only kept if both values are present
+        boolean xy = !Float.isNaN(x) && !Float.isNaN(y);
+        this.x = xy ? x : Float.NaN;
+        this.y = xy ? y : Float.NaN;
+        this.colorMode = intern(colorMode, COLOR_MODES);
+        this.effect = intern(effect, EFFECTS);
+        this.model = (model != null) ? model.intern() : null;
+        this.reachable = reachable;
+        this.hash = computeHashCode();
+    }
+
+    /**
+     * Creates a CompactLightState from a LightState.
+     *
+     * @param state the light state (can be null)
+     *
+     * @return a CompactLightState or null if state is null
+     */
+    public static CompactLightState of(LightState state) {
+        if (state == null) {
+            return null;
+        }
+        return new CompactLightState(toByte(state.getOn()), toInt(state.getHue()), toInt(state.getSaturation()), toInt(state.getBrightness()), toInt(state.getColorTemperature()), toFloat(state.getX()), toFloat(state.getY()), state.getColorMode(), state.getEffect(), state.getModel(), state.hasReachable() ? toByte(state.isReachable()) : UNSET);
+    }
+
+    public boolean hasOn() {
+        return (on != UNSET);
+    }
+
+    public Boolean getOn() {
+        return (on != UNSET) ? (on == TRUE) : null;
+    }
+
+    /**
+     * Returns the on value without boxing.
+     *
+     * @param defaultValue the value to return if the light didn't report one
+     *
+     * @return a boolean
+     */
+    public boolean getOn(boolean defaultValue) {
+        return (on != UNSET) ? (on == TRUE) : defaultValue;
+    }
+
+    public boolean hasColor() {
+        return (LightState.MODE_HS.equals(colorMode) && hue != NONE && saturation != NONE && brightness != NONE);
+    }
+
+    public boolean hasColorTemperature() {
+        return (LightState.MODE_CT.equals(colorMode) && colorTemperature != NONE && brightness != NONE);
+    }
+
+    public boolean hasColorXY() {
+        return (LightState.MODE_XY.equals(colorMode) && hasXY() && brightness != NONE);
+    }
+
+    public boolean hasHue() {
+        return (hue != NONE);
+    }
+
+    public Integer getHue() {
+        return box(hue);
+    }
+
+    public int getHue(int defaultValue) {
+        return (hue != NONE) ? hue : defaultValue;
+    }
+
+    public boolean hasSaturation() {
+        return (saturation != NONE);
+    }
+
+    public Integer getSaturation() {
+        return box(saturation);
+    }
+
+    public int getSaturation(int defaultValue) {
+        return (saturation != NONE) ? saturation : defaultValue;
+    }
+
+    public boolean hasBrightness() {
+        return (brightness != NONE);
+    }
+
+    public Integer getBrightness() {
+        return box(brightness);
+    }
+
+    public int getBrightness(int defaultValue) {
+        return (brightness != NONE) ? brightness : defaultValue;
+    }
+
+    public Integer getColorTemperature() {
+        return box(colorTemperature);
+    }
+
+    public int getColorTemperature(int defaultValue) {
+        return (colorTemperature != NONE) ? colorTemperature : defaultValue;
+    }
+
+    public boolean hasXY() {
+        return !Float.isNaN(x);
+    }
+
+    public Float getX() {
+        return hasXY() ? x : null;
+    }
+
+    public float getX(float defaultValue) {
+        return hasXY() ? x : defaultValue;
+    }
+
+    public Float getY() {
+        return hasXY() ? y : null;
+    }
+
+    public float getY(float defaultValue) {
+        return hasXY() ? y : defaultValue;
+    }
+
+    public String getColorMode() {
+        return colorMode;
+    }
+
+    public boolean hasEffect() {
+        return (effect != null);
+    }
+
+    public String getEffect() {
+        return effect;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public boolean isReachable() {
+        return (reachable == TRUE);
+    }
+
+    /**
+     * Creates a new CompactLightState by overlaying a newer (usually partial) state on top of this one. Any field
+     * that is set in the newer state wins; fields it doesn't specify are carried over from this state.
+     *
+     * @param newer the newer state
+     *
+     * @return a new CompactLightState instance (or this one if newer is null)
+     */
+    public CompactLightState merge(LightState newer) {
+        if (newer == null) {
+            return this;
+        }
+        return new CompactLightState(
+            newer.hasOn() ? toByte(newer.getOn()) : on,
+            newer.hasHue() ? newer.getHue() : hue,
+            newer.hasSaturation() ? newer.getSaturation() : saturation,
+            newer.hasBrightness() ? newer.getBrightness() : brightness,
+            newer.getColorTemperature() != null ? newer.getColorTemperature() : colorTemperature,
+            newer.hasXY() ? newer.getX() : x,
+            newer.hasXY() ? newer.getY() : y,
+            newer.getColorMode() != null ? newer.getColorMode() : colorMode,
+            newer.hasEffect() ? newer.getEffect() : effect,
+            newer.getModel() != null ? newer.getModel() : model,
+            newer.hasReachable() ? toByte(newer.isReachable()) : reachable
+        );
+    }
+
+    /**
+     * Creates a mutable LightState with the same values.
+     *
+     * @return a new LightState instance
+     */
+    public LightState toLightState() {
+        LightState s = new LightState(getOn(), getHue(), getSaturation(), getBrightness(), getColorTemperature(), colorMode, effect, model, (reachable != UNSET) ? (reachable == TRUE) : null);
+        s.setXY(getX(), getY());
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (o instanceof CompactLightState) {
+            CompactLightState s = (CompactLightState)o;
+            return (
+                hash == s.hash &&
+                on == s.on &&
+                hue == s.hue &&
+                saturation == s.saturation &&
+                brightness == s.brightness &&
+                colorTemperature == s.colorTemperature &&
+                Float.floatToIntBits(x) == Float.floatToIntBits(s.x) &&
+                Float.floatToIntBits(y) == Float.floatToIntBits(s.y) &&
+                reachable == s.reachable &&
+                equals(colorMode, s.colorMode) &&
+                equals(effect, s.effect) &&
+                equals(model, s.model)
+            );
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    public String toString() {
+        return new ToStringBuilder(this).
+            append("on", getOn()).
+            append("hue", getHue()).
+            append("sat", getSaturation()).
+            append("bri", getBrightness()).
+            append("ct", getColorTemperature()).
+            append("x", getX()).
+            append("y", getY()).
+            append("colormode", getColorMode()).
+            toString();
+    }
+
+    private int computeHashCode() {
+        int h = on;
+        h = 31 * h + reachable;
+        h = 31 * h + hue;
+        h = 31 * h + saturation;
+        h = 31 * h + brightness;
+        h = 31 * h + colorTemperature;
+        h = 31 * h + Float.floatToIntBits(x);
+        h = 31 * h + Float.floatToIntBits(y);
+        h = 31 * h + (colorMode != null ? colorMode.hashCode() : 0);
+        h = 31 * h + (effect != null ? effect.hashCode() : 0);
+        h = 31 * h + (model != null ? model.hashCode() : 0);
+        return h;
+    }
+
+    private static boolean equals(String s1, String s2) {
+        // interned values are usually the same instance so this rarely has to compare contents
+        return (s1 == s2) || (s1 != null && s1.equals(s2));
+    }
+
+    private static String intern(String s, String[] values) {
+        if (s != null) {
+            for (String v : values) {
+                if (v.equals(s)) {
+                    return v;
+                }
+            }
+        }
+        return s;
+    }
+
+    private static byte toByte(Boolean b) {
+        return (b != null) ? (b ? TRUE : FALSE) : UNSET;
+    }
+
+    private static int toInt(Integer i) {
+        return (i != null) ? i : NONE;
+    }
+
+    private static float toFloat(Float f) {
+        return (f != null) ? f : Float.NaN;
+    }
+
+    private static Integer box(int i) {
+        return (i != NONE) ? i : null;
+    }
+
+    /**
+     * A mutable, re-usable builder for CompactLightState instances. This lets a parser collect values as primitives
+     * and check them against an existing instance before deciding whether a new one is needed at all.
+     */
+    public static class Builder {
+        private byte on;
+        private byte reachable;
+        private int hue;
+        private int saturation;
+        private int brightness;
+        private int colorTemperature;
+        private float x;
+        private float y;
+        private String colorMode;
+        private String effect;
+        private String model;
+
+        public Builder() {
+            clear();
+        }
+
+        public Builder clear() {
+            on = UNSET;
+            reachable = UNSET;
+            hue = NONE;
+            saturation = NONE;
+            brightness = NONE;
+            colorTemperature = NONE;
+            x = Float.NaN;
+            y = Float.NaN;
+            colorMode = null;
+            effect = null;
+            model = null;
+            return this;
+        }
+
+        public Builder setOn(boolean on) {
+            this.on = on ? TRUE : FALSE;
+            return this;
+        }
+
+        public Builder setHue(int hue) {
+            this.hue = hue;
+            return this;
+        }
+
+        public Builder setSaturation(int saturation) {
+            this.saturation = saturation;
+            return this;
+        }
+
+        public Builder setBrightness(int brightness) {
+            this.brightness = brightness;
+            return this;
+        }
+
+        public Builder setColorTemperature(int colorTemperature) {
+            this.colorTemperature = colorTemperature;
+            return this;
+        }
+
+        public Builder setXY(float x, float y) {
+            this.x = x;
+            this.y = y;
+            return this;
+        }
+
+        public Builder setColorMode(String colorMode) {
+            this.colorMode = colorMode;
+            return this;
+        }
+
+        public Builder setEffect(String effect) {
+            this.effect = effect;
+            return this;
+        }
+
+        public Builder setModel(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder setReachable(boolean reachable) {
+            this.reachable = reachable ? TRUE : FALSE;
+            return this;
+        }
+
+        /**
+         * Indicates whether the builder's values are the same as those of an existing instance.
+         *
+         * @param s the instance to compare to
+         *
+         * @return a boolean
+         */
+        public boolean matches(CompactLightState s) {
+            return (
+                s != null &&
+                on == s.on &&
+                hue == s.hue &&
+                saturation == s.saturation &&
+                brightness == s.brightness &&
+                colorTemperature == s.colorTemperature &&
+                Float.floatToIntBits(x) == Float.floatToIntBits(s.x) &&
+                Float.floatToIntBits(y) == Float.floatToIntBits(s.y) &&
+                reachable == s.reachable &&
+                CompactLightState.equals(colorMode, s.colorMode) &&
+                CompactLightState.equals(effect, s.effect) &&
+                CompactLightState.equals(model, s.model)
+            );
+        }
+
+        public CompactLightState build() {
+            return new CompactLightState(on, hue, saturation, brightness, colorTemperature, x, y, colorMode, effect, model, reachable);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collection;
+
+/**
+ * A request to create a new group of lights on the Hue bridge.
+ *
+ * @author Dan Noguerol
+ */
+public class CreateGroupRequest extends BridgeRequest {
+    private String name;
+    private Collection<String> lights;
+
+    public CreateGroupRequest(String name, Collection<String> lights) {
+        this.name = name;
+        this.lights = lights;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Collection<String> getLights() {
+        return lights;
+    }
+
+    public String toString() {
+        return new ToStringBuilder(this).append("name", name).append("lights", lights).toString();
+    }
+}
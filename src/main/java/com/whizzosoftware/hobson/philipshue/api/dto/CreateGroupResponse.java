@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+/**
+ * A response from the Hue bridge for a CreateGroup request.
+ *
+ * @author Dan Noguerol
+ */
+public class CreateGroupResponse extends BridgeResponse {
+    private Group group;
+
+    public CreateGroupResponse(Group group) {
+        this.group = group;
+    }
+
+    public Group getGroup() {
+        return group;
+    }
+}
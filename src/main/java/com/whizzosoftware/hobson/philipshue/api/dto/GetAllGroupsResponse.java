@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import java.util.Collection;
+
+/**
+ * A response from the Hue bridge for a GetAllGroups request.
+ *
+ * @author Dan Noguerol
+ */
+public class GetAllGroupsResponse extends BridgeResponse {
+    private Collection<Group> groups;
+
+    public GetAllGroupsResponse(Collection<Group> groups) {
+        this.groups = groups;
+    }
+
+    public Collection<Group> getGroups() {
+        return groups;
+    }
+}
@@ -12,5 +12,5 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
  *
  * @author Dan Noguerol
  */
-public class GetAllLightsRequest {
+public class GetAllLightsRequest extends BridgeRequest {
 }
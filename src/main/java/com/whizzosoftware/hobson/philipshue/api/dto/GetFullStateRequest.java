@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+/**
+ * A request to get the entire datastore (lights, groups, configuration, etc.) from the Hue bridge in a single
+ * round-trip.
+ *
+ * @author Dan Noguerol
+ */
+public class GetFullStateRequest extends BridgeRequest {
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import java.util.Collection;
+
+/**
+ * A response from the Hue bridge for a GetFullState request. Only the parts of the datastore the plugin uses are
+ * included.
+ *
+ * @author Dan Noguerol
+ */
+public class GetFullStateResponse extends BridgeResponse {
+    private Collection<Light> lights;
+    private Collection<Group> groups;
+
+    public GetFullStateResponse(Collection<Light> lights, Collection<Group> groups) {
+        this.lights = lights;
+        this.groups = groups;
+    }
+
+    public Collection<Light> getLights() {
+        return lights;
+    }
+
+    public Collection<Group> getGroups() {
+        return groups;
+    }
+}
@@ -12,7 +12,7 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
  *
  * @author Dan Noguerol
  */
-public class GetLightAttributeAndStateRequest {
+public class GetLightAttributeAndStateRequest extends BridgeRequest {
     private String id;
 
     public GetLightAttributeAndStateRequest(String id) {
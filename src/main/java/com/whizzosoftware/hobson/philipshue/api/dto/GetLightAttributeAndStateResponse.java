@@ -14,9 +14,9 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
  */
 public class GetLightAttributeAndStateResponse extends BridgeResponse {
     private String id;
-    private LightState state;
+    private CompactLightState state;
 
-    public GetLightAttributeAndStateResponse(String id, LightState state) {
+    public GetLightAttributeAndStateResponse(String id, CompactLightState state) {
         this.id = id;
         this.state = state;
     }
@@ -25,7 +25,7 @@ public class GetLightAttributeAndStateResponse extends BridgeResponse {
         return id;
     }
 
-    public LightState getState() {
+    public CompactLightState getState() {
         return state;
     }
 }
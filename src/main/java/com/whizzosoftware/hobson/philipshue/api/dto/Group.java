@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collection;
+
+/**
+ * Represents a group of lights as the Hue bridge sees it.
+ *
+ * @author Dan Noguerol
+ */
+public class Group {
+    private String id;
+    private String name;
+    private Collection<String> lights;
+
+    public Group(String id, String name, Collection<String> lights) {
+        this.id = id;
+        this.name = name;
+        this.lights = lights;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Collection<String> getLights() {
+        return lights;
+    }
+
+    public String toString() {
+        return new ToStringBuilder(this).append("id", id).append("name", name).append("lights", lights).toString();
+    }
+}
@@ -16,9 +16,9 @@ public class Light {
     private String id;
     private String name;
     private String model;
-    private LightState state;
+    private CompactLightState state;
 
-    public Light(String id, String name, String model, LightState state) {
+    public Light(String id, String name, String model, CompactLightState state) {
         this.id = id;
         this.name = name;
         this.model = model;
@@ -37,7 +37,7 @@ public class Light {
         return model;
     }
 
-    public LightState getState() {
+    public CompactLightState getState() {
         return state;
     }
 
@@ -8,6 +8,8 @@
 package com.whizzosoftware.hobson.philipshue.api.dto;
 
 import com.whizzosoftware.hobson.api.color.Color;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
@@ -18,12 +20,15 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 public class LightState {
     public static final String MODE_HS = "hs";
     public static final String MODE_CT = "ct";
+    public static final String MODE_XY = "xy";
 
     private Boolean on;
     private Integer hue;
     private Integer saturation;
     private Integer brightness;
     private Integer colorTemperature;
+    private Float x;
+    private Float y;
     private String colorMode;
     private String effect;
     private String model;
@@ -92,6 +97,10 @@ public class LightState {
         return (MODE_CT.equals(colorMode) && colorTemperature != null && brightness != null);
     }
 
+    public boolean hasColorXY() {
+        return (MODE_XY.equals(colorMode) && x != null && y != null && brightness != null);
+    }
+
     public boolean hasHue() {
         return (hue != null);
     }
@@ -136,6 +145,30 @@ public class LightState {
         this.colorTemperature = colorTemperature;
     }
 
+    public boolean hasXY() {
+        return (x != null && y != null);
+    }
+
+    public Float getX() {
+        return x;
+    }
+
+    public Float getY() {
+        return y;
+    }
+
+    /**
+     * Sets the CIE xy color coordinates. Both values are set together since the bridge always reports and
+     * accepts them as a pair.
+     *
+     * @param x the x coordinate (0-1)
+     * @param y the y coordinate (0-1)
+     */
+    public void setXY(Float x, Float y) {
+        this.x = x;
+        this.y = y;
+    }
+
     public String getColorMode() {
         return colorMode;
     }
@@ -164,6 +197,10 @@ public class LightState {
         this.model = model;
     }
 
+    public boolean hasReachable() {
+        return (reachable != null);
+    }
+
     public Boolean isReachable() {
         return (reachable != null && reachable);
     }
@@ -172,6 +209,92 @@ public class LightState {
         this.reachable = reachable;
     }
 
+    /**
+     * Creates a new LightState by overlaying a newer state on top of this one. Any field that is set in the newer
+     * state wins; fields it doesn't specify are carried over from this state.
+     *
+     * @param newer the newer state
+     *
+     * @return a new LightState instance
+     */
+    public LightState merge(LightState newer) {
+        LightState s = new LightState(on, hue, saturation, brightness, colorTemperature, colorMode, effect, model, reachable);
+        s.setXY(x, y);
+        if (newer != null) {
+            if (newer.on != null) {
+                s.setOn(newer.on);
+            }
+            if (newer.hue != null) {
+                s.setHue(newer.hue);
+            }
+            if (newer.saturation != null) {
+                s.setSaturation(newer.saturation);
+            }
+            if (newer.brightness != null) {
+                s.setBrightness(newer.brightness);
+            }
+            if (newer.colorTemperature != null) {
+                s.setColorTemperature(newer.colorTemperature);
+            }
+            if (newer.hasXY()) {
+                s.setXY(newer.x, newer.y);
+            }
+            if (newer.colorMode != null) {
+                s.setColorMode(newer.colorMode);
+            }
+            if (newer.effect != null) {
+                s.setEffect(newer.effect);
+            }
+            if (newer.model != null) {
+                s.setModel(newer.model);
+            }
+            if (newer.reachable != null) {
+                s.setReachable(newer.reachable);
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (o instanceof LightState) {
+            LightState s = (LightState)o;
+            return new EqualsBuilder().
+                append(on, s.on).
+                append(hue, s.hue).
+                append(saturation, s.saturation).
+                append(brightness, s.brightness).
+                append(colorTemperature, s.colorTemperature).
+                append(x, s.x).
+                append(y, s.y).
+                append(colorMode, s.colorMode).
+                append(effect, s.effect).
+                append(model, s.model).
+                append(reachable, s.reachable).
+                isEquals();
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder().
+            append(on).
+            append(hue).
+            append(saturation).
+            append(brightness).
+            append(colorTemperature).
+            append(x).
+            append(y).
+            append(colorMode).
+            append(effect).
+            append(model).
+            append(reachable).
+            toHashCode();
+    }
+
     public String toString() {
         return new ToStringBuilder(this).
             append("on", getOn()).
@@ -179,6 +302,8 @@ public class LightState {
             append("sat", getSaturation()).
             append("bri", getBrightness()).
             append("ct", getColorTemperature()).
+            append("x", getX()).
+            append("y", getY()).
             append("colormode", getColorMode()).
             toString();
     }
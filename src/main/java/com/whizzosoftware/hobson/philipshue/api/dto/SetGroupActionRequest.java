@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A request to set the state of all lights in a group on the Hue bridge.
+ *
+ * @author Dan Noguerol
+ */
+public class SetGroupActionRequest extends BridgeRequest {
+    /**
+     * The special group that always contains all lights known to the bridge.
+     */
+    public static final String ALL_LIGHTS_GROUP = "0";
+
+    private String id;
+    private LightState state;
+    private Collection<String> lightIds;
+
+    public SetGroupActionRequest(String id, LightState state) {
+        this(id, state, Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id the group ID
+     * @param state the state to set
+     * @param lightIds the IDs of the lights the action is meant to change
+     */
+    public SetGroupActionRequest(String id, LightState state, Collection<String> lightIds) {
+        this.id = id;
+        this.state = state;
+        this.lightIds = lightIds;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public LightState getState() {
+        return state;
+    }
+
+    public Collection<String> getLightIds() {
+        return lightIds;
+    }
+
+    public String toString() {
+        return new ToStringBuilder(this).append("id", id).append("state", state).append("lightIds", lightIds).toString();
+    }
+}
@@ -0,0 +1,16 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+/**
+ * A response from the Hue bridge for a SetGroupAction request.
+ *
+ * @author Dan Noguerol
+ */
+public class SetGroupActionResponse extends BridgeResponse {
+}
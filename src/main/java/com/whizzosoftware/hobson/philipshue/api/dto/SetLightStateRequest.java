@@ -14,7 +14,7 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
  *
  * @author Dan Noguerol
  */
-public class SetLightStateRequest {
+public class SetLightStateRequest extends BridgeRequest {
     private String id;
     private LightState state;
 
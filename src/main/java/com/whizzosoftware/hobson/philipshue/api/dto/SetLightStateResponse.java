@@ -8,9 +8,25 @@
 package com.whizzosoftware.hobson.philipshue.api.dto;
 
 /**
- * A response from the Hue bridge for a SetLightState request.
+ * A response from the Hue bridge for a SetLightState request. The state contains only the fields the bridge
+ * reported as successfully set.
  *
  * @author Dan Noguerol
  */
 public class SetLightStateResponse extends BridgeResponse {
+    private String id;
+    private LightState state;
+
+    public SetLightStateResponse(String id, LightState state) {
+        this.id = id;
+        this.state = state;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public LightState getState() {
+        return state;
+    }
 }
@@ -12,6 +12,7 @@ import com.whizzosoftware.hobson.philipshue.api.dto.BridgeResponse;
 import com.whizzosoftware.hobson.philipshue.api.dto.CreateUserRequest;
 import com.whizzosoftware.hobson.philipshue.api.dto.CreateUserResponse;
 import com.whizzosoftware.hobson.philipshue.api.dto.ErrorResponse;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,4 +84,9 @@ public class CreateUserState extends AbstractTimeoutState {
     protected int getMaximumRetryCount() {
         return 2;
     }
+
+    @Override
+    public State onLightEvent(StateContext context, String lightId, LightState state, long sequence) {
+        return this;
+    }
 }
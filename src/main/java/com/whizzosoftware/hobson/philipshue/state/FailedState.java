@@ -8,6 +8,7 @@
 package com.whizzosoftware.hobson.philipshue.state;
 
 import com.whizzosoftware.hobson.philipshue.api.dto.BridgeResponse;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,4 +48,9 @@ public class FailedState implements State {
         logger.debug("Received set variable request while waiting for authorization; ignoring");
         return this;
     }
+
+    @Override
+    public State onLightEvent(StateContext context, String lightId, LightState state, long sequence) {
+        return this;
+    }
 }
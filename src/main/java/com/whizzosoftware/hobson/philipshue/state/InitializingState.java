@@ -9,6 +9,7 @@ package com.whizzosoftware.hobson.philipshue.state;
 
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.philipshue.api.dto.BridgeResponse;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,4 +61,9 @@ public class InitializingState implements State {
         logger.debug("Received set variable request before initialization was complete; ignoring");
         return this;
     }
+
+    @Override
+    public State onLightEvent(StateContext context, String lightId, LightState state, long sequence) {
+        return this;
+    }
 }
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.state;
+
+/**
+ * The ways the Hue bridge can be polled for state while running.
+ *
+ * @author Dan Noguerol
+ */
+public enum PollStrategy {
+    /**
+     * Poll the lights endpoint (falling back to one request per light if the bridge doesn't include state).
+     */
+    LIGHTS,
+    /**
+     * Poll the entire bridge datastore (lights and groups) in one request.
+     */
+    FULL_STATE
+}
@@ -12,6 +12,10 @@ import com.whizzosoftware.hobson.philipshue.api.dto.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A state representing the "normal" plugin running state.
  *
@@ -21,6 +25,7 @@ public class RunningState implements State {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private boolean hasRunningStatus = false;
+    private final Map<String,CompactLightState> lastStates = new HashMap<>();
 
     @Override
     public State onRefresh(StateContext context) {
@@ -32,8 +37,14 @@ public class RunningState implements State {
             hasRunningStatus = true;
         }
 
-        // get an updated list of lights
-        context.sendGetAllLightsRequest(new GetAllLightsRequest());
+        // get an updated list of lights if it's time
+        if (context.isPollDue()) {
+            if (context.getPollStrategy() == PollStrategy.FULL_STATE) {
+                context.sendGetFullStateRequest(new GetFullStateRequest());
+            } else {
+                context.sendGetAllLightsRequest(new GetAllLightsRequest());
+            }
+        }
 
         return this;
     }
@@ -48,23 +59,30 @@ public class RunningState implements State {
     public State onBridgeResponse(StateContext context, BridgeResponse response) {
         if (response instanceof GetAllLightsResponse) {
             GetAllLightsResponse galr = (GetAllLightsResponse)response;
-            for (Light light : galr.getLights()) {
-                // create any lights we don't already know about
-                if (!context.hasHueLight(light.getId())) {
-                    context.createHueLight(light);
-                } else {
-                    // if there's a state key in the light data (some firmware versions), use it
-                    if (light.getState() != null) {
-                        context.onLightState(light.getId(), light.getState());
-                    // otherwise, we have to request it specifically
-                    } else {
-                        context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(light.getId()));
-                    }
-                }
+            context.onPollResult(onLights(context, galr.getLights(), galr.getSequence()));
+        } else if (response instanceof GetFullStateResponse) {
+            GetFullStateResponse gfsr = (GetFullStateResponse)response;
+            boolean changed = onLights(context, gfsr.getLights(), gfsr.getSequence());
+            if (gfsr.getGroups() != null) {
+                context.onAllGroups(gfsr.getGroups());
             }
+            context.onPollResult(changed);
         } else if (response instanceof GetLightAttributeAndStateResponse) {
             GetLightAttributeAndStateResponse glasr = (GetLightAttributeAndStateResponse)response;
-            context.onLightState(glasr.getId(), glasr.getState());
+            if (applyLightState(context, glasr.getId(), glasr.getState(), glasr.getSequence())) {
+                context.onLightStateChange();
+            }
+        } else if (response instanceof SetLightStateResponse) {
+            // the bridge reports what it set so the new state can be applied without waiting for the next poll
+            SetLightStateResponse slsr = (SetLightStateResponse)response;
+            CompactLightState last = lastStates.get(slsr.getId());
+            if (last != null && slsr.getState() != null) {
+                applyLightState(context, slsr.getId(), last.merge(slsr.getState()), slsr.getSequence());
+            }
+        } else if (response instanceof GetAllGroupsResponse) {
+            context.onAllGroups(((GetAllGroupsResponse)response).getGroups());
+        } else if (response instanceof CreateGroupResponse) {
+            context.onGroupCreated(((CreateGroupResponse)response).getGroup());
         }
         return this;
     }
@@ -72,13 +90,29 @@ public class RunningState implements State {
     @Override
     public State onBridgeRequestFailure(StateContext context, Object requestContext, Throwable t) {
         // if a failure occurs getting state of all lights, invalidate all currently discovered lights
-        if (requestContext instanceof GetAllLightsRequest) {
+        if (requestContext instanceof GetAllLightsRequest || requestContext instanceof GetFullStateRequest) {
             logger.warn("Error while requesting light information from Hue bridge; will retry", t);
+            lastStates.clear();
             context.onAllLightStateFailure(t);
         // if a failure occurs getting state of one light, invalidate just that light
         } else if (requestContext instanceof GetLightAttributeAndStateRequest) {
             GetLightAttributeAndStateRequest glasr = (GetLightAttributeAndStateRequest)requestContext;
+            lastStates.remove(glasr.getId());
             context.onLightStateFailure(glasr.getId(), t);
+        // if a command to a light fails (or times out), whether it took effect is unknown so re-read its state
+        } else if (requestContext instanceof SetLightStateRequest) {
+            SetLightStateRequest slsr = (SetLightStateRequest)requestContext;
+            logger.warn("Error sending command to Hue light " + slsr.getId() + "; refreshing its state", t);
+            lastStates.remove(slsr.getId());
+            context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(slsr.getId()));
+        // the same goes for every light a group action was meant to change
+        } else if (requestContext instanceof SetGroupActionRequest) {
+            SetGroupActionRequest sgar = (SetGroupActionRequest)requestContext;
+            logger.warn("Error sending command to Hue group " + sgar.getId() + "; refreshing the state of its lights", t);
+            for (String id : sgar.getLightIds()) {
+                lastStates.remove(id);
+                context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(id));
+            }
         } else {
             logger.warn("Error while requesting light information from Hue bridge; will retry", t);
         }
@@ -90,4 +124,103 @@ public class RunningState implements State {
         context.onSetVariable(deviceId, name, value);
         return this;
     }
+
+    @Override
+    public State onLightEvent(StateContext context, String lightId, LightState state, long sequence) {
+        // lights we don't know about yet will be picked up by the next poll
+        if (!context.hasHueLight(lightId)) {
+            return this;
+        }
+
+        // a color change without coordinates can't be applied so the full state has to be requested; until then
+        // the light keeps its last known color mode (the event itself is left untouched)
+        boolean refresh = LightState.MODE_XY.equals(state.getColorMode()) && !state.hasXY();
+        LightState changes = state;
+        if (refresh) {
+            changes = state.merge(null);
+            changes.setColorMode(null);
+        }
+
+        // events only carry what changed so they need a complete state to be merged into
+        CompactLightState last = lastStates.get(lightId);
+        if (last != null) {
+            if (applyLightState(context, lightId, last.merge(changes), sequence)) {
+                context.onLightStateChange();
+            }
+        } else {
+            refresh = true;
+        }
+
+        if (refresh) {
+            context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(lightId));
+        }
+
+        return this;
+    }
+
+    /**
+     * Processes a list of lights received from the bridge.
+     *
+     * @param context the state context
+     * @param lights the lights
+     * @param sequence the sequence number of the request that produced the lights
+     *
+     * @return true if any light was added or changed state
+     */
+    private boolean onLights(StateContext context, Collection<Light> lights, long sequence) {
+        boolean changed = false;
+        for (Light light : lights) {
+            // create any lights we don't already know about
+            if (!context.hasHueLight(light.getId())) {
+                context.createHueLight(light);
+                changed = true;
+            } else {
+                // if there's a state key in the light data (some firmware versions), use it
+                if (light.getState() != null) {
+                    changed |= applyLightState(context, light.getId(), light.getState(), sequence);
+                // otherwise, we have to request it specifically
+                } else {
+                    context.sendGetLightAttributeAndStateRequest(new GetLightAttributeAndStateRequest(light.getId()));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Passes light state on to the context. State from a request older than the one that produced the light's
+     * current state is ignored before it can become the baseline for later comparisons, state that is identical to
+     * what was last received for the light isn't re-applied and state that the bridge reports before it has caught
+     * up with a recent command is ignored.
+     *
+     * @param context the state context
+     * @param id the light ID
+     * @param state the light state
+     * @param sequence the sequence number of the request that produced the state
+     *
+     * @return true if the state differs from the previously received state for reasons other than a command
+     */
+    private boolean applyLightState(StateContext context, String id, CompactLightState state, long sequence) {
+        if (!context.isLightStateCurrent(id, sequence)) {
+            logger.debug("Ignoring state for light {} from an older request: {}", id, state);
+            return false;
+        }
+
+        ShadowMatch match = context.checkLightState(id, state);
+        if (match == ShadowMatch.STALE) {
+            logger.trace("Ignoring state for light {} that predates a recent command: {}", id, state);
+            context.onLightStateUnchanged(id);
+            return false;
+        }
+
+        CompactLightState last = lastStates.put(id, state);
+        if (last != null && last.equals(state)) {
+            context.onLightStateUnchanged(id);
+            return false;
+        } else {
+            context.onLightState(id, state, sequence);
+            // a change that a command asked for isn't a reason to poll more often
+            return (last != null && match == ShadowMatch.NONE);
+        }
+    }
 }
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.state;
+
+/**
+ * How light state reported by the Hue bridge relates to the commands recently sent to the light.
+ *
+ * @author Dan Noguerol
+ */
+public enum ShadowMatch {
+    /**
+     * No command is outstanding for the light so the state should be applied normally.
+     */
+    NONE,
+    /**
+     * The state reflects a recently sent command; it should be applied but isn't an external change.
+     */
+    CONFIRMED,
+    /**
+     * The state predates a recently sent command and should be ignored.
+     */
+    STALE
+}
@@ -10,6 +10,7 @@
 package com.whizzosoftware.hobson.philipshue.state;
 
 import com.whizzosoftware.hobson.philipshue.api.dto.BridgeResponse;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 
 /**
  * An interface implemented by all classes that implement states of the finite state machine. The interface defines
@@ -68,4 +69,16 @@ public interface State {
      * @return the next transition state
      */
     State onSetVariable(StateContext context, String deviceId, String name, Object value);
+
+    /**
+     * Callback when the bridge pushes a change to a light's state.
+     *
+     * @param context the state context
+     * @param lightId the light ID
+     * @param state the fields of the light state that changed
+     * @param sequence the sequence number assigned to the event
+     *
+     * @return the next transition state
+     */
+    State onLightEvent(StateContext context, String lightId, LightState state, long sequence);
 }
@@ -12,6 +12,8 @@ package com.whizzosoftware.hobson.philipshue.state;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.philipshue.api.dto.*;
 
+import java.util.Collection;
+
 /**
  * Interface that represents all the actions that a state can perform.
  *
@@ -53,6 +55,13 @@ public interface StateContext {
      */
     void sendGetAllLightsRequest(GetAllLightsRequest request);
 
+    /**
+     * Send a request for the entire bridge datastore to the Hue bridge.
+     *
+     * @param request the request object
+     */
+    void sendGetFullStateRequest(GetFullStateRequest request);
+
     /**
      * Send a request for the state of a specific light to the Hue bridge.
      *
@@ -64,8 +73,36 @@ public interface StateContext {
      * Set the state of a specific light to the Hue bridge.
      *
      * @param request the request object
+     *
+     * @return false if the request was dropped because the Hue bridge isn't responding
+     */
+    boolean sendSetLightStateRequest(SetLightStateRequest request);
+
+    /**
+     * Returns the strategy to use when polling the Hue bridge for light state.
+     *
+     * @return a PollStrategy
+     */
+    PollStrategy getPollStrategy();
+
+    /**
+     * Indicates whether it is time to poll the Hue bridge for light state.
+     *
+     * @return a boolean
+     */
+    boolean isPollDue();
+
+    /**
+     * Callback when the result of polling the Hue bridge for light state has been processed.
+     *
+     * @param changed whether the state of any light changed since the previous poll
+     */
+    void onPollResult(boolean changed);
+
+    /**
+     * Callback when a change in light state is detected outside of a poll.
      */
-    void sendSetLightStateRequest(SetLightStateRequest request);
+    void onLightStateChange();
 
     /**
      * Sets the plugin status.
@@ -79,8 +116,38 @@ public interface StateContext {
      *
      * @param deviceId the device ID of the light
      * @param state the current state of the light
+     * @param sequence the sequence number of the request that produced the state
+     */
+    void onLightState(String deviceId, CompactLightState state, long sequence);
+
+    /**
+     * Checks whether state received from the Hue bridge is newer than the state last applied to a light. If it
+     * is, its sequence number is recorded as the light's most recent.
+     *
+     * @param deviceId the device ID of the light
+     * @param sequence the sequence number of the request (or event) that produced the state
+     *
+     * @return false if the state is older than state that has already been applied and should be ignored
+     */
+    boolean isLightStateCurrent(String deviceId, long sequence);
+
+    /**
+     * Checks state received from the Hue bridge against the commands recently sent to a light.
+     *
+     * @param deviceId the device ID of the light
+     * @param state the state received
+     *
+     * @return a ShadowMatch
+     */
+    ShadowMatch checkLightState(String deviceId, CompactLightState state);
+
+    /**
+     * Callback when state about a light is received from the Hue bridge that is identical to the last state
+     * received for it.
+     *
+     * @param deviceId the device ID of the light
      */
-    void onLightState(String deviceId, LightState state);
+    void onLightStateUnchanged(String deviceId);
 
     /**
      * Callback when a failure to obtain the state of a light from the Hue bridge occurs.
@@ -106,6 +173,20 @@ public interface StateContext {
      */
     void onSetVariable(String deviceId, String name, Object value);
 
+    /**
+     * Callback when the full list of groups is received from the Hue bridge.
+     *
+     * @param groups the groups
+     */
+    void onAllGroups(Collection<Group> groups);
+
+    /**
+     * Callback when a group has been created on the Hue bridge.
+     *
+     * @param group the new group
+     */
+    void onGroupCreated(Group group);
+
     /**
      * Creates a new HueLight based on a Light instance returned from an API call.
      *
@@ -0,0 +1,114 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptivePollControllerTest {
+    @Test
+    public void testBackoffWhileUnchanged() {
+        AdaptivePollController c = new AdaptivePollController(1000, 30000);
+        assertTrue(c.isPollDue(1000));
+        c.onPollSent(1000);
+        assertFalse(c.isPollDue(1999));
+        assertTrue(c.isPollDue(2000));
+
+        c.onPollResult(false);
+        assertEquals(2000, c.getInterval());
+        c.onPollResult(false);
+        assertEquals(4000, c.getInterval());
+        c.onPollResult(false);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        assertEquals(30000, c.getInterval());
+        c.onPollResult(false);
+        assertEquals(30000, c.getInterval());
+        assertEquals(6, c.getPollCount());
+        assertEquals(0, c.getChangeCount());
+        assertEquals(0.0, c.getChangeRate(), 0.0);
+    }
+
+    @Test
+    public void testChangeResetsInterval() {
+        AdaptivePollController c = new AdaptivePollController(1000, 30000);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        assertEquals(4000, c.getInterval());
+        c.onPollResult(true);
+        assertEquals(1000, c.getInterval());
+        assertEquals(1, c.getChangeCount());
+        assertEquals(0.2, c.getChangeRate(), 0.0001);
+
+        c.onPollResult(false);
+        c.onPollResult(false);
+        c.onChange();
+        assertEquals(1000, c.getInterval());
+        assertEquals(2, c.getChangeCount());
+    }
+
+    @Test
+    public void testWriteResetsInterval() {
+        AdaptivePollController c = new AdaptivePollController(1000, 30000);
+        c.onPollSent(1000);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        assertEquals(8000, c.getInterval());
+        assertFalse(c.isPollDue(5000));
+
+        // the next poll happens one minimum interval after the write
+        c.onWrite(5000);
+        assertEquals(1000, c.getInterval());
+        assertFalse(c.isPollDue(5500));
+        assertTrue(c.isPollDue(6000));
+    }
+
+    @Test
+    public void testSetIntervals() {
+        AdaptivePollController c = new AdaptivePollController(1000, 30000);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        c.onPollResult(false);
+        c.setIntervals(500, 5000);
+        assertEquals(5000, c.getInterval());
+        c.onPollResult(true);
+        assertEquals(500, c.getInterval());
+
+        try {
+            c.setIntervals(5000, 500);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            c.setIntervals(0, 500);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void testReconcileInterval() {
+        AdaptivePollController c = new AdaptivePollController(1000, 30000);
+        c.onPollSent(1000);
+        c.setReconcileInterval(60000);
+        assertEquals(60000, c.getInterval());
+
+        // changes don't shorten the interval while reconciling
+        c.onPollResult(true);
+        assertFalse(c.isPollDue(2000));
+        assertFalse(c.isPollDue(60999));
+        assertTrue(c.isPollDue(61000));
+
+        // the adaptive interval resumes when reconciling stops
+        c.setReconcileInterval(0);
+        assertEquals(1000, c.getInterval());
+        assertTrue(c.isPollDue(2000));
+    }
+}
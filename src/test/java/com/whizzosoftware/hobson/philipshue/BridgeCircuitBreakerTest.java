@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BridgeCircuitBreakerTest {
+    @Test
+    public void testOpensAfterThreshold() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(3, 1000, 60000, new FixedRandom(1.0));
+        assertTrue(b.allowRequest(0));
+        assertFalse(b.onFailure(0));
+        assertFalse(b.onFailure(0));
+        assertEquals(BridgeCircuitBreaker.State.CLOSED, b.getState());
+
+        // a success resets the failure count
+        assertFalse(b.onSuccess());
+        assertFalse(b.onFailure(0));
+        assertFalse(b.onFailure(0));
+        assertTrue(b.onFailure(100));
+        assertEquals(BridgeCircuitBreaker.State.OPEN, b.getState());
+        assertEquals(1, b.getOpenCount());
+
+        // further failures from requests already in flight don't re-open it
+        assertFalse(b.onFailure(200));
+        assertEquals(1100, b.getNextAttemptTime());
+        assertFalse(b.allowRequest(500));
+        assertEquals(1, b.getRejectedCount());
+    }
+
+    @Test
+    public void testSingleProbe() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(1, 1000, 60000, new FixedRandom(1.0));
+        assertTrue(b.onFailure(0));
+        assertFalse(b.allowRequest(999));
+
+        // only one request is let through once the delay has passed
+        assertTrue(b.allowRequest(1000));
+        assertEquals(BridgeCircuitBreaker.State.HALF_OPEN, b.getState());
+        assertFalse(b.allowRequest(1000));
+        assertFalse(b.allowRequest(2000));
+        assertEquals(1, b.getProbeCount());
+
+        // a successful probe closes the breaker
+        assertTrue(b.onSuccess());
+        assertEquals(BridgeCircuitBreaker.State.CLOSED, b.getState());
+        assertTrue(b.allowRequest(2000));
+    }
+
+    @Test
+    public void testIsRejecting() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(1, 1000, 60000, new FixedRandom(1.0));
+        assertFalse(b.isRejecting(0));
+        assertTrue(b.onFailure(0));
+        assertTrue(b.isRejecting(999));
+
+        // checking doesn't use up the probe
+        assertFalse(b.isRejecting(1000));
+        assertEquals(BridgeCircuitBreaker.State.OPEN, b.getState());
+        assertTrue(b.allowRequest(1000));
+
+        // nothing else is let through while the probe is outstanding
+        assertTrue(b.isRejecting(1000));
+        assertEquals(0, b.getRejectedCount());
+        assertTrue(b.onSuccess());
+        assertFalse(b.isRejecting(1000));
+    }
+
+    @Test
+    public void testBackoff() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(1, 1000, 5000, new FixedRandom(1.0));
+        b.onFailure(0);
+        long now = 0;
+        long[] expected = {1000, 2000, 4000, 5000, 5000};
+        for (long delay : expected) {
+            assertEquals(now + delay, b.getNextAttemptTime());
+            now = b.getNextAttemptTime();
+            assertTrue(b.allowRequest(now));
+            b.onFailure(now);
+        }
+
+        // the delay starts over once the bridge recovers
+        assertTrue(b.allowRequest(b.getNextAttemptTime()));
+        b.onSuccess();
+        b.onFailure(100000);
+        assertEquals(101000, b.getNextAttemptTime());
+    }
+
+    @Test
+    public void testJitter() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(1, 1000, 60000, new FixedRandom(0.0));
+        b.onFailure(0);
+        assertEquals(500, b.getNextAttemptTime());
+
+        b = new BridgeCircuitBreaker(1, 1000, 60000, new FixedRandom(0.5));
+        b.onFailure(0);
+        assertEquals(750, b.getNextAttemptTime());
+    }
+
+    @Test
+    public void testLostProbe() {
+        BridgeCircuitBreaker b = new BridgeCircuitBreaker(1, 1000, 60000, new FixedRandom(1.0));
+        b.onFailure(0);
+        assertTrue(b.allowRequest(1000));
+        assertFalse(b.allowRequest(60999));
+        // a probe that never gets an answer doesn't leave the breaker stuck
+        assertTrue(b.allowRequest(61000));
+        assertEquals(2, b.getProbeCount());
+    }
+
+    @Test
+    public void testInvalidSettings() {
+        try {
+            new BridgeCircuitBreaker(0, 1000, 60000);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+        try {
+            new BridgeCircuitBreaker(1, 1000, 500);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    private static class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+}
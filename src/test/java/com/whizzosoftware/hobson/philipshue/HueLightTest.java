@@ -17,12 +17,16 @@ import com.whizzosoftware.hobson.api.variable.DeviceVariableState;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableUpdate;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
 import com.whizzosoftware.hobson.philipshue.api.HueException;
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
 import com.whizzosoftware.hobson.philipshue.api.dto.Light;
 import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
 import com.whizzosoftware.hobson.philipshue.state.MockStateContext;
 
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -53,10 +57,10 @@ public class HueLightTest {
         plugin.setEventManager(em);
         MockStateContext context = new MockStateContext(plugin, "host");
 
-        LightState newState = new LightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true);
+        CompactLightState newState = new CompactLightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true);
 
         // start with one light in a known state
-        context.createHueLight(new Light("1", "Hue Light 1", "model", new LightState(true, null, null, 255, null, null, null, null, true)));
+        context.createHueLight(new Light("1", "Hue Light 1", "model", new CompactLightState(true, null, null, 255, null, null, null, null, true)));
 
         // check that there is no variable updates prior to the refresh() call
         HueLight light = new HueLight(plugin, "1", null, "Hue Light 1", context);
@@ -90,7 +94,7 @@ public class HueLightTest {
         assertEquals(0, em.getEventCount());
 
         // set the light state to new color value and verify one update detected
-        light.onLightState(new LightState(true, 30000, 254, 254, null, LightState.MODE_HS, null, null, true));
+        light.onLightState(new CompactLightState(true, 30000, 254, 254, null, LightState.MODE_HS, null, null, true));
         light.refresh();
         assertEquals(1, em.getEventCount());
         assertTrue(em.getEvent(0) instanceof DeviceVariablesUpdateEvent);
@@ -109,7 +113,7 @@ public class HueLightTest {
         plugin.setDeviceManager(dm);
         plugin.setEventManager(em);
         MockStateContext context = new MockStateContext(plugin, "host");
-        LightState state = new LightState(true, null, null, null, null, null, null, null, true);
+        CompactLightState state = new CompactLightState(true, null, null, null, null, null, null, null, true);
 
         // check that there is no update prior to the refresh() call
         HueLight light = new HueLight(plugin, "1", null, "Hue Light 1", context);
@@ -131,8 +135,7 @@ public class HueLightTest {
         em.clearEvents();
 
         // set light state to unreachable
-        state.setReachable(false);
-        light.onLightState(state);
+        light.onLightState(new CompactLightState(true, null, null, null, null, null, null, null, false));
         assertEquals(1, em.getEventCount());
         assertTrue(em.getEvent(0) instanceof DeviceUnavailableEvent);
     }
@@ -144,8 +147,17 @@ public class HueLightTest {
         plugin.setDeviceManager(dm);
         HueLight light = new HueLight(plugin, null, null, null, null);
         assertNull(light.convertLightStateToColor(null));
-        assertNull(light.convertLightStateToColor(new LightState(null, null, null, null, null, null, null, null, null)));
-        assertEquals("hsb(360,100,100)", light.convertLightStateToColor(new LightState(null, 65535, 254, 254, null, LightState.MODE_HS, null, null, null)));
+        assertNull(light.convertLightStateToColor(new CompactLightState(null, null, null, null, null, null, null, null, null)));
+        assertEquals("hsb(360,100,100)", light.convertLightStateToColor(new CompactLightState(null, 65535, 254, 254, null, LightState.MODE_HS, null, null, null)));
+
+        // strings are shared by all lights
+        String s = light.convertLightStateToColor(new CompactLightState(null, 65535, 254, 254, null, LightState.MODE_HS, null, null, null));
+        assertSame(s, new HueLight(plugin, null, null, null, null).convertLightStateToColor(new CompactLightState(null, 65535, 254, 254, null, LightState.MODE_HS, null, null, null)));
+        assertEquals(2, plugin.getLightColorCache().getHitCount());
+
+        // xy colors are converted using the gamut of the light's model
+        light = new HueLight(plugin, null, "LCT010", null, null);
+        assertEquals("hsb(0,100,100)", light.convertLightStateToColor(new CompactLightState.Builder().setXY(0.692f, 0.308f).setBrightness(254).setColorMode(LightState.MODE_XY).build()));
     }
 
     @Test
@@ -215,13 +227,163 @@ public class HueLightTest {
         HuePlugin plugin = new HuePlugin("plugin", "version", "description");
         plugin.setDeviceManager(dm);
         MockStateContext context = new MockStateContext(plugin, "host");
-        HueLight light = new HueLight(plugin, "id", "model", "name", context);
+        HueLight light = new HueLight(plugin, "id", "LCT001", "name", context);
         assertEquals(0, context.getSetLightStateRequests().size());
         light.onSetVariables(Collections.singletonMap("color", (Object)"hsb(360,100,100)"));
         assertEquals(1, context.getSetLightStateRequests().size());
         LightState state = context.getSetLightStateRequests().get(0).getState();
-        assertEquals(65535, (int)state.getHue());
-        assertEquals(254, (int)state.getSaturation());
+        assertTrue(state.hasColorXY());
+        assertFalse(state.hasHue());
         assertEquals(254, (int)state.getBrightness());
+
+        // the color is clamped to what the light can produce
+        assertEquals(0.674f, state.getX(), 0.0001f);
+        assertEquals(0.322f, state.getY(), 0.0001f);
+
+        // and the conversion is only done once
+        light.onSetVariables(Collections.singletonMap("color", (Object)"hsb(360,100,50)"));
+        assertEquals(state.getX(), context.getSetLightStateRequests().get(1).getState().getX());
+        assertEquals(1, plugin.getXYColorCache().getHitCount());
+    }
+
+    @Test
+    public void testOnSetVariablesIsOptimistic() {
+        MockDeviceManager dm = new MockDeviceManager();
+        MockEventManager em = new MockEventManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        plugin.setEventManager(em);
+        MockStateContext context = new MockStateContext(plugin, "host");
+        HueLight light = new HueLight(plugin, "1", "model", "name", context);
+        light.onStartup(null, null);
+
+        // unavailable lights aren't updated until the bridge reports their state
+        light.onSetVariables(Collections.singletonMap(VariableConstants.ON, (Object)true));
+        assertNull(light.getVariableState(VariableConstants.ON).getValue());
+
+        light.onLightState(new CompactLightState(false, 65535, 254, 254, null, LightState.MODE_HS, null, null, true));
+        assertEquals(false, light.getVariableState(VariableConstants.ON).getValue());
+
+        // variables change as soon as the command is sent
+        light.onSetVariables(Collections.singletonMap(VariableConstants.ON, (Object)true));
+        assertEquals(true, light.getVariableState(VariableConstants.ON).getValue());
+        light.onSetVariables(Collections.singletonMap(VariableConstants.COLOR, (Object)"hsb(180,50,50)"));
+        assertEquals("hsb(180,50,50)", light.getVariableState(VariableConstants.COLOR).getValue());
+        assertEquals(3, context.getSetLightStateRequests().size());
+    }
+
+    @Test
+    public void testDroppedCommandIsNotReflected() {
+        MockDeviceManager dm = new MockDeviceManager();
+        MockEventManager em = new MockEventManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        plugin.setEventManager(em);
+        MockStateContext context = new MockStateContext(plugin, "host");
+        HueLight light = new HueLight(plugin, "1", "model", "name", context);
+        light.onStartup(null, null);
+        light.onLightState(new CompactLightState(false, 65535, 254, 254, null, LightState.MODE_HS, null, null, true));
+
+        // a command the bridge isn't responding to doesn't change the variables
+        context.setBridgeAvailable(false);
+        light.onSetVariables(Collections.singletonMap(VariableConstants.ON, (Object)true));
+        assertEquals(false, light.getVariableState(VariableConstants.ON).getValue());
+        assertEquals(0, context.getSetLightStateRequests().size());
+
+        // and one dropped after it was reflected puts them back to the last reported state
+        context.setBridgeAvailable(true);
+        light.onSetVariables(Collections.singletonMap(VariableConstants.ON, (Object)true));
+        assertEquals(true, light.getVariableState(VariableConstants.ON).getValue());
+        light.onCommandDropped();
+        assertEquals(false, light.getVariableState(VariableConstants.ON).getValue());
+    }
+
+    @Test
+    public void testLastState() {
+        MockDeviceManager dm = new MockDeviceManager();
+        MockEventManager em = new MockEventManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        plugin.setEventManager(em);
+        MockStateContext context = new MockStateContext(plugin, "host");
+        HueLight light = new HueLight(plugin, "1", "model", "name", context);
+        light.onStartup(null, null);
+        assertNull(light.getLastState());
+
+        CompactLightState state = new CompactLightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true);
+        light.onLightState(state);
+        assertSame(state, light.getLastState());
+
+        // the state is unknown after a failure
+        light.onLightStateFailure(new HueException("failed"));
+        assertNull(light.getLastState());
+    }
+
+    @Test
+    public void testUnchangedStateIsNotPublished() {
+        MockDeviceManager dm = new MockDeviceManager();
+        MockEventManager em = new MockEventManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        plugin.setEventManager(em);
+        MockStateContext context = new MockStateContext(plugin, "host");
+        HueLight light = new HueLight(plugin, "1", "model", "name", context);
+        light.onStartup(null, null);
+
+        light.onLightState(new CompactLightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true));
+        em.clearEvents();
+        for (int i = 0; i < 1000; i++) {
+            light.onLightState(new CompactLightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true));
+        }
+        assertEquals(0, em.getEventCount());
+
+        // a command changes the variables behind the snapshot's back so contradicting state is published again
+        light.onSetVariables(Collections.singletonMap(VariableConstants.ON, (Object)false));
+        assertEquals(false, light.getVariableState(VariableConstants.ON).getValue());
+        light.onLightState(new CompactLightState(true, 65535, 254, 254, null, LightState.MODE_HS, null, null, true));
+        assertEquals(true, light.getVariableState(VariableConstants.ON).getValue());
+    }
+
+    @Test
+    public void testUnchangedPollsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)bean;
+        long tid = Thread.currentThread().getId();
+
+        MockDeviceManager dm = new MockDeviceManager();
+        MockEventManager em = new MockEventManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        plugin.setEventManager(em);
+        MockStateContext context = new MockStateContext(plugin, "host");
+        HueLight light = new HueLight(plugin, "1", "LCT001", "name", context);
+        light.onStartup(null, null);
+
+        // states are re-created for every poll just as they would be by the parser
+        CompactLightState[] states = new CompactLightState[1000];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new CompactLightState(true, 46920, 254, 144, 467, new String(LightState.MODE_HS), "none", "LCT001", true);
+        }
+        light.onLightState(states[0]);
+        em.clearEvents();
+
+        // the cost of measuring itself plus the check-in bookkeeping done by the framework for every poll
+        long baseline = tmx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < states.length; i++) {
+            light.onLightStateUnchanged();
+        }
+        baseline = tmx.getThreadAllocatedBytes(tid) - baseline;
+
+        long start = tmx.getThreadAllocatedBytes(tid);
+        for (CompactLightState state : states) {
+            light.onLightState(state);
+        }
+        long allocated = tmx.getThreadAllocatedBytes(tid) - start;
+
+        // nothing was published and, since the smallest object is bigger than a byte, less than a byte per poll
+        // means no poll allocated anything; the slack covers one-off allocations by the JVM while measuring
+        assertEquals(0, em.getEventCount());
+        assertTrue("Allocated " + (allocated - baseline) + " bytes over " + states.length + " unchanged polls", allocated - baseline < states.length);
     }
 }
@@ -12,16 +12,23 @@ package com.whizzosoftware.hobson.philipshue;
 import com.whizzosoftware.hobson.api.device.DeviceContext;
 import com.whizzosoftware.hobson.api.device.MockDeviceManager;
 import com.whizzosoftware.hobson.api.device.proxy.HobsonDeviceProxy;
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
 import com.whizzosoftware.hobson.api.property.PropertyContainer;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableContext;
 import com.whizzosoftware.hobson.api.variable.DeviceVariableState;
 import com.whizzosoftware.hobson.api.variable.VariableConstants;
+import com.whizzosoftware.hobson.philipshue.api.dto.CreateUserRequest;
 import com.whizzosoftware.hobson.philipshue.api.dto.GetAllLightsRequest;
 import com.whizzosoftware.hobson.philipshue.state.AuthorizingState;
 import com.whizzosoftware.hobson.philipshue.state.RunningState;
 import org.junit.Test;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -78,4 +85,27 @@ public class HuePluginTest {
         assertNotNull(v);
         assertEquals("hsb(0,0,0)", v.getValue());
     }
+
+    @Test
+    public void testCreateUserRequestCompletes() throws Exception {
+        final List<Object> contexts = new ArrayList<>();
+        HuePlugin plugin = new HuePlugin("pluginId", "version", "description") {
+            @Override
+            public void sendHttpRequest(URI uri, HttpRequest.Method method, Map<String,String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+                contexts.add(context);
+            }
+        };
+        plugin.setDeviceManager(new MockDeviceManager());
+        plugin.setBridgeHost("localhost:8081");
+
+        CreateUserRequest request = new CreateUserRequest("device", "user");
+        plugin.sendCreateUserRequest(request);
+        assertEquals(1, contexts.size());
+        assertSame(request, contexts.get(0));
+        assertEquals(1, plugin.getBridgeMetrics().get("requests.user.outstanding"));
+
+        // the response is matched to the request rather than left to time out
+        plugin.onHttpResponse(new MockHttpResponse(200, "[{\"success\":{\"username\":\"user\"}}]"), contexts.get(0));
+        assertEquals(0, plugin.getBridgeMetrics().get("requests.user.outstanding"));
+    }
 }
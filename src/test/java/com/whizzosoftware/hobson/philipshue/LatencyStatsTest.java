@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyStatsTest {
+    @Test
+    public void testPercentiles() {
+        LatencyStats s = new LatencyStats(1000);
+        assertEquals(0, s.getPercentile(50));
+        for (int i = 1000; i >= 1; i--) {
+            s.record(i);
+        }
+        assertEquals(1000, s.getCount());
+        assertEquals(500, s.getPercentile(50));
+        assertEquals(990, s.getPercentile(99));
+        assertEquals(1000, s.getPercentile(100));
+        assertEquals(1, s.getPercentile(0));
+        assertEquals(1000, s.getMax());
+    }
+
+    @Test
+    public void testWindow() {
+        LatencyStats s = new LatencyStats(10);
+        for (int i = 0; i < 10; i++) {
+            s.record(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            s.record(5);
+        }
+        // only the most recent samples count towards percentiles
+        assertEquals(5, s.getPercentile(99));
+        assertEquals(1000, s.getMax());
+        assertEquals(20, s.getCount());
+    }
+
+    @Test
+    public void testInvalidWindow() {
+        try {
+            new LatencyStats(0);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+}
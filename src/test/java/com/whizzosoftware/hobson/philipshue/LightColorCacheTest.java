@@ -0,0 +1,78 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LightColorCacheTest {
+    @Test
+    public void testHueSaturationColor() {
+        LightColorCache cache = new LightColorCache(10);
+        String s = cache.getHueSaturationColor(65535, 254, 254);
+        assertNotNull(s);
+        assertSame(s, cache.getHueSaturationColor(65535, 254, 254));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // any difference in the raw values is a different entry
+        cache.getHueSaturationColor(65535, 254, 253);
+        cache.getHueSaturationColor(65534, 254, 254);
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testTemperatureColor() {
+        LightColorCache cache = new LightColorCache(10);
+        String s = cache.getTemperatureColor(153, 254);
+        assertSame(s, cache.getTemperatureColor(153, 254));
+
+        // hue/saturation and color temperature values don't collide
+        cache.getHueSaturationColor(0, 153, 254);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreNotCached() {
+        LightColorCache cache = new LightColorCache(10);
+        assertNotNull(cache.getHueSaturationColor(70000, 254, 254));
+        assertNotNull(cache.getTemperatureColor(153, 300));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        LightColorCache cache = new LightColorCache(2);
+        String s1 = cache.getHueSaturationColor(1000, 254, 254);
+        cache.getHueSaturationColor(2000, 254, 254);
+        cache.getHueSaturationColor(1000, 254, 254);
+        cache.getHueSaturationColor(3000, 254, 254);
+        assertEquals(2, cache.size());
+
+        // the most recently used entry survives
+        assertSame(s1, cache.getHueSaturationColor(1000, 254, 254));
+        assertEquals(2, cache.getHitCount());
+        cache.getHueSaturationColor(2000, 254, 254);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidSize() {
+        try {
+            new LightColorCache(0);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LightCommandFilterTest {
+    private static final LightState KNOWN = new LightState(true, 1000, 200, 100, 300, LightState.MODE_HS, "none", null, true);
+
+    @Test
+    public void testUnknownStateIsNotFiltered() {
+        LightCommandFilter f = new LightCommandFilter();
+        LightState on = new LightState(true, null, null, null, null, null, null, null, null);
+        assertSame(on, f.filter(on, null));
+        assertSame(on, f.filter(on, new LightState(true, null, null, null, null, null, null, null, false)));
+        assertEquals(0, f.getSuppressedCount());
+    }
+
+    @Test
+    public void testNoOpCommandIsSuppressed() {
+        LightCommandFilter f = new LightCommandFilter();
+        assertNull(f.filter(new LightState(true, null, null, null, null, null, null, null, null), KNOWN));
+        assertNull(f.filter(new LightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", null, null), KNOWN));
+        assertNull(f.filter(new LightState(), KNOWN));
+        assertEquals(3, f.getSuppressedCount());
+        assertEquals(0, f.getTrimmedCount());
+    }
+
+    @Test
+    public void testNoOpXYCommandIsSuppressed() {
+        LightCommandFilter f = new LightCommandFilter();
+        LightState known = new LightState(true, 1000, 200, 100, null, LightState.MODE_XY, "none", null, true);
+        known.setXY(0.4f, 0.5f);
+
+        LightState s = new LightState(true, null, null, 100, null, LightState.MODE_XY, null, null, null);
+        s.setXY(0.4f, 0.5f);
+        assertNull(f.filter(s, known));
+
+        // a different color is sent without the on value
+        s.setXY(0.4f, 0.4f);
+        LightState t = f.filter(s, known);
+        assertFalse(t.hasOn());
+        assertTrue(t.hasColorXY());
+        assertEquals(0.4f, t.getY(), 0.0f);
+
+        // as is the same color in another mode
+        assertTrue(f.filter(new LightState(true, 1000, 200, 100, null, LightState.MODE_HS, null, null, null), known).hasColor());
+    }
+
+    @Test
+    public void testChangedCommandIsUntouched() {
+        LightCommandFilter f = new LightCommandFilter();
+        LightState s = new LightState(false, 2000, 200, 100, null, LightState.MODE_HS, null, null, null);
+        assertSame(s, f.filter(s, KNOWN));
+        assertEquals(0, f.getTrimmedCount());
+    }
+
+    @Test
+    public void testUnchangedFieldsAreTrimmed() {
+        LightCommandFilter f = new LightCommandFilter();
+
+        // the light is already on
+        LightState s = f.filter(new LightState(true, 2000, 200, 100, null, LightState.MODE_HS, null, null, null), KNOWN);
+        assertFalse(s.hasOn());
+        assertTrue(s.hasColor());
+        assertEquals(2000, (int)s.getHue());
+
+        // the color is already set
+        s = f.filter(new LightState(false, 1000, 200, 100, null, LightState.MODE_HS, "none", null, null), KNOWN);
+        assertFalse(s.getOn());
+        assertFalse(s.hasColor());
+        assertFalse(s.hasBrightness());
+        assertFalse(s.hasEffect());
+        assertEquals(2, f.getTrimmedCount());
+    }
+
+    @Test
+    public void testColorModeChangeIsKept() {
+        LightCommandFilter f = new LightCommandFilter();
+
+        // same color temperature but the light is in hue/saturation mode
+        LightState s = f.filter(new LightState(true, null, null, 100, 300, LightState.MODE_CT, null, null, null), KNOWN);
+        assertFalse(s.hasOn());
+        assertTrue(s.hasColorTemperature());
+        assertEquals(100, (int)s.getBrightness());
+
+        // a brightness change alone keeps the whole color
+        s = f.filter(new LightState(null, 1000, 200, 101, null, LightState.MODE_HS, null, null, null), KNOWN);
+        assertTrue(s.hasColor());
+    }
+
+    @Test
+    public void testBytesSaved() {
+        LightCommandFilter f = new LightCommandFilter();
+        f.onBytesSaved(11);
+        f.onBytesSaved(9);
+        assertEquals(20, f.getBytesSaved());
+    }
+}
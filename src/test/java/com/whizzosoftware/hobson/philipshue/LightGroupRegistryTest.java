@@ -0,0 +1,79 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LightGroupRegistryTest {
+    @Test
+    public void testAllLightsGroup() {
+        LightGroupRegistry r = new LightGroupRegistry(4);
+        Set<String> all = ids("1", "2", "3");
+        assertEquals(SetGroupActionRequest.ALL_LIGHTS_GROUP, r.getGroupId(ids("1", "2", "3"), all));
+        assertNull(r.getGroupId(ids("1", "2"), all));
+    }
+
+    @Test
+    public void testCreateGroup() {
+        LightGroupRegistry r = new LightGroupRegistry(4);
+        Set<String> all = ids("1", "2", "3", "4");
+
+        // the first attempt asks for the group list
+        List<BridgeRequest> reqs = r.prepareGroup(ids("1", "2", "3"), 1000);
+        assertEquals(1, reqs.size());
+        assertTrue(reqs.get(0) instanceof GetAllGroupsRequest);
+        assertTrue(r.prepareGroup(ids("1", "2", "3"), 1001).isEmpty());
+
+        // once groups are loaded, an existing group with the same membership is reused
+        r.setGroups(Collections.singletonList(new Group("7", "Living Room", Arrays.asList("2", "3", "4"))));
+        assertEquals("7", r.getGroupId(ids("4", "3", "2"), all));
+
+        // otherwise, a transient group is created only once
+        assertNull(r.getGroupId(ids("1", "2", "3"), all));
+        reqs = r.prepareGroup(ids("1", "2", "3"), 2000);
+        assertEquals(1, reqs.size());
+        CreateGroupRequest cgr = (CreateGroupRequest)reqs.get(0);
+        assertTrue(cgr.getName().startsWith(LightGroupRegistry.TRANSIENT_GROUP_PREFIX));
+        assertEquals(Arrays.asList("1", "2", "3"), new ArrayList<>(cgr.getLights()));
+        assertTrue(r.prepareGroup(ids("1", "2", "3"), 2001).isEmpty());
+
+        r.addGroup(new Group("8", cgr.getName(), cgr.getLights()));
+        assertEquals("8", r.getGroupId(ids("1", "2", "3"), all));
+        assertEquals(1, r.getTransientGroupCount());
+    }
+
+    @Test
+    public void testTransientGroupEviction() {
+        LightGroupRegistry r = new LightGroupRegistry(2);
+        Set<String> all = ids("1", "2", "3", "4", "5");
+        r.setGroups(Arrays.asList(
+            new Group("1", LightGroupRegistry.TRANSIENT_GROUP_PREFIX + "a", Arrays.asList("1", "2", "3")),
+            new Group("2", LightGroupRegistry.TRANSIENT_GROUP_PREFIX + "b", Arrays.asList("2", "3", "4"))
+        ));
+
+        // use group 1 so that group 2 is the least recently used
+        assertEquals("1", r.getGroupId(ids("1", "2", "3"), all));
+
+        List<BridgeRequest> reqs = r.prepareGroup(ids("3", "4", "5"), 1000);
+        assertEquals(2, reqs.size());
+        assertEquals("2", ((DeleteGroupRequest)reqs.get(0)).getId());
+        assertTrue(reqs.get(1) instanceof CreateGroupRequest);
+        assertNull(r.getGroupId(ids("2", "3", "4"), all));
+    }
+
+    private Set<String> ids(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import com.whizzosoftware.hobson.philipshue.state.ShadowMatch;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LightStateShadowTest {
+    private static final CompactLightState ON = new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", null, true);
+    private static final CompactLightState OFF = new CompactLightState(false, 1000, 200, 100, null, LightState.MODE_HS, "none", null, true);
+
+    @Test
+    public void testNoShadow() {
+        LightStateShadow s = new LightStateShadow(1000);
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 1000));
+        assertEquals(0, s.getShadowCount());
+    }
+
+    @Test
+    public void testStaleStateSuppressedUntilConfirmed() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        assertEquals(1, s.getShadowCount());
+
+        // the bridge hasn't applied the command yet
+        assertEquals(ShadowMatch.STALE, s.check("1", OFF, 1100));
+        assertEquals(ShadowMatch.STALE, s.check("1", OFF, 1999));
+        assertEquals(2, s.getSuppressedCount());
+
+        // now it has
+        assertEquals(ShadowMatch.CONFIRMED, s.check("1", ON, 1200));
+        assertEquals(1, s.getConfirmedCount());
+        assertEquals(0, s.getShadowCount());
+
+        // and the bridge is authoritative again
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 1300));
+    }
+
+    @Test
+    public void testXYMatchesWithinTolerance() {
+        LightStateShadow s = new LightStateShadow(1000);
+        LightState cmd = new LightState();
+        cmd.setXY(0.4f, 0.5f);
+        cmd.setBrightness(100);
+        cmd.setColorMode(LightState.MODE_XY);
+        s.onWrite("1", cmd, 1000);
+
+        CompactLightState.Builder b = new CompactLightState.Builder().setOn(true).setBrightness(100).setColorMode(LightState.MODE_XY).setReachable(true);
+        assertEquals(ShadowMatch.STALE, s.check("1", b.setXY(0.3f, 0.5f).build(), 1100));
+        assertEquals(ShadowMatch.STALE, s.check("1", ON, 1100));
+
+        // the bridge may report a slightly different value than it was sent
+        assertEquals(ShadowMatch.CONFIRMED, s.check("1", b.setXY(0.4003f, 0.4998f).build(), 1200));
+    }
+
+    @Test
+    public void testBridgeWinsAfterSettleWindow() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 2000));
+        assertEquals(1, s.getOverriddenCount());
+        assertEquals(0, s.getShadowCount());
+    }
+
+    @Test
+    public void testAcknowledgeRestartsWindow() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        s.onAcknowledge("1", 1500);
+        assertEquals(ShadowMatch.STALE, s.check("1", OFF, 2400));
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 2500));
+
+        // acknowledgements for lights without a shadow are ignored
+        s.onAcknowledge("2", 1500);
+        assertEquals(0, s.getShadowCount());
+    }
+
+    @Test
+    public void testWritesAreMerged() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        s.onWrite("1", new LightState(null, 32767, 127, 127, null, LightState.MODE_HS, null, null, null), 1500);
+        LightState shadow = s.getState("1");
+        assertTrue(shadow.getOn());
+        assertEquals(32767, (int)shadow.getHue());
+        assertEquals(127, (int)shadow.getSaturation());
+        assertEquals(127, (int)shadow.getBrightness());
+
+        // the first command alone doesn't satisfy the shadow
+        assertEquals(ShadowMatch.STALE, s.check("1", ON, 2100));
+        assertEquals(ShadowMatch.CONFIRMED, s.check("1", new CompactLightState(true, 32767, 127, 127, null, LightState.MODE_HS, "none", null, true), 2200));
+    }
+
+    @Test
+    public void testClear() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        s.clear("1");
+        assertNull(s.getState("1"));
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 1100));
+    }
+
+    @Test
+    public void testDisabled() {
+        LightStateShadow s = new LightStateShadow(1000);
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        s.setSettleWindow(0);
+        assertEquals(0, s.getShadowCount());
+        s.onWrite("1", new LightState(true, null, null, null), 1000);
+        assertEquals(ShadowMatch.NONE, s.check("1", OFF, 1000));
+    }
+
+    @Test
+    public void testInvalidSettleWindow() {
+        try {
+            new LightStateShadow(-1);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+}
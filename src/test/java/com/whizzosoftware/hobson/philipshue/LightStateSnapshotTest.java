@@ -0,0 +1,96 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class LightStateSnapshotTest {
+    private static final int BOTH = LightStateSnapshot.ON | LightStateSnapshot.COLOR;
+
+    @Test
+    public void testUpdate() {
+        LightStateSnapshot s = new LightStateSnapshot();
+        assertFalse(s.isValid());
+
+        // everything is a change the first time
+        assertEquals(BOTH, s.update(new CompactLightState(true, 1000, 200, 100, 300, LightState.MODE_HS, "none", null, true)));
+        assertTrue(s.isValid());
+
+        // fields that don't feed into variables are ignored
+        assertEquals(0, s.update(new CompactLightState(true, 1000, 200, 100, 300, LightState.MODE_HS, "colorloop", "LCT001", true)));
+
+        assertEquals(LightStateSnapshot.ON, s.update(new CompactLightState(false, 1000, 200, 100, 300, LightState.MODE_HS, "none", null, true)));
+        assertEquals(LightStateSnapshot.COLOR, s.update(new CompactLightState(false, 1001, 200, 100, 300, LightState.MODE_HS, "none", null, true)));
+        assertEquals(LightStateSnapshot.COLOR, s.update(new CompactLightState(false, 1001, 200, 100, 300, LightState.MODE_CT, "none", null, true)));
+        assertEquals(LightStateSnapshot.COLOR, s.update(new CompactLightState(false, 1001, 200, 100, 301, LightState.MODE_CT, "none", null, true)));
+        assertEquals(LightStateSnapshot.COLOR, s.update(new CompactLightState(false, 1001, 200, 100, 301, LightState.MODE_XY, "none", null, true)));
+        assertEquals(BOTH, s.update(new CompactLightState(null, null, null, null, null, null, null, null, true)));
+        assertEquals(0, s.update(new CompactLightState(null, null, null, null, null, null, null, null, true)));
+    }
+
+    @Test
+    public void testUpdateXY() {
+        LightStateSnapshot s = new LightStateSnapshot();
+        CompactLightState.Builder b = new CompactLightState.Builder().setOn(true).setBrightness(100).setColorMode(LightState.MODE_XY).setReachable(true);
+        assertEquals(BOTH, s.update(b.setXY(0.4f, 0.5f).build()));
+        assertEquals(0, s.update(b.setXY(0.4f, 0.5f).build()));
+        assertEquals(LightStateSnapshot.COLOR, s.update(b.setXY(0.4f, 0.5001f).build()));
+        assertEquals(LightStateSnapshot.COLOR, s.update(b.setXY(0.4001f, 0.5001f).build()));
+    }
+
+    @Test
+    public void testInvalidate() {
+        LightStateSnapshot s = new LightStateSnapshot();
+        CompactLightState state = new CompactLightState(true, 1000, 200, 100, 300, LightState.MODE_HS, "none", null, true);
+        s.update(state);
+        s.invalidate();
+        assertFalse(s.isValid());
+        assertEquals(BOTH, s.update(state));
+        assertEquals(0, s.update(state));
+    }
+
+    @Test
+    public void testUnchangedPollsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)bean;
+        long tid = Thread.currentThread().getId();
+
+        // states are re-created for every poll just as they would be by the parser
+        CompactLightState[] states = new CompactLightState[1000];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new CompactLightState(true, 46920, 254, 144, 467, new String(LightState.MODE_HS), "none", null, true);
+        }
+
+        LightStateSnapshot s = new LightStateSnapshot();
+        s.update(states[0]);
+
+        // the cost of measuring itself
+        long baseline = -tmx.getThreadAllocatedBytes(tid) + tmx.getThreadAllocatedBytes(tid);
+
+        long start = tmx.getThreadAllocatedBytes(tid);
+        int changes = 0;
+        for (CompactLightState state : states) {
+            changes |= s.update(state);
+        }
+        long allocated = tmx.getThreadAllocatedBytes(tid) - start - baseline;
+
+        assertEquals(0, changes);
+        assertEquals(0, allocated);
+    }
+}
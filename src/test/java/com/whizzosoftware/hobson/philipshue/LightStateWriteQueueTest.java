@@ -0,0 +1,100 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.SetLightStateRequest;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LightStateWriteQueueTest {
+    @Test
+    public void testFirstRequestSentImmediately() {
+        LightStateWriteQueue q = new LightStateWriteQueue(100);
+        SetLightStateRequest r = new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null));
+        assertSame(r, q.offer(r, 1000));
+        assertFalse(q.hasPending());
+        assertEquals(-1, q.getNextFlushTime());
+        assertEquals(1, q.getSentCount());
+        assertEquals(0, q.getMergedCount());
+
+        // a different light has its own window
+        r = new SetLightStateRequest("2", new LightState(true, null, null, null, null, null, null, null, null));
+        assertSame(r, q.offer(r, 1010));
+        assertEquals(2, q.getSentCount());
+    }
+
+    @Test
+    public void testRequestsWithinWindowAreMerged() {
+        LightStateWriteQueue q = new LightStateWriteQueue(100);
+        assertNotNull(q.offer(new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null)), 1000));
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(null, 1000, 200, 100, null, LightState.MODE_HS, null, null, null)), 1010));
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(null, 2000, 210, 110, null, LightState.MODE_HS, null, null, null)), 1020));
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(false, null, null, 120, null, null, null, null, null)), 1030));
+        assertTrue(q.hasPending());
+        assertEquals(1100, q.getNextFlushTime());
+        assertEquals(1, q.getSentCount());
+        assertEquals(2, q.getMergedCount());
+
+        // nothing is released before the window closes
+        assertTrue(q.poll(1099).isEmpty());
+
+        List<SetLightStateRequest> results = q.poll(1100);
+        assertEquals(1, results.size());
+        LightState s = results.get(0).getState();
+        assertEquals("1", results.get(0).getId());
+        assertFalse(s.getOn());
+        assertEquals(2000, (int)s.getHue());
+        assertEquals(210, (int)s.getSaturation());
+        assertEquals(120, (int)s.getBrightness());
+        assertTrue(s.hasColor());
+        assertEquals(2, q.getSentCount());
+        assertFalse(q.hasPending());
+
+        // a new request right after the flush has to wait for the next window
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null)), 1150));
+        assertEquals(1200, q.getNextFlushTime());
+    }
+
+    @Test
+    public void testColorModeSwitchWithinWindow() {
+        LightStateWriteQueue q = new LightStateWriteQueue(100);
+        assertNotNull(q.offer(new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null)), 1000));
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(null, 2000, 210, 110, null, LightState.MODE_HS, null, null, null)), 1010));
+        assertNull(q.offer(new SetLightStateRequest("1", new LightState(null, null, null, 50, 300, LightState.MODE_CT, null, null, null)), 1020));
+        LightState s = q.poll(2000).get(0).getState();
+        assertFalse(s.hasColor());
+        assertTrue(s.hasColorTemperature());
+        assertEquals(300, (int)s.getColorTemperature());
+        assertEquals(50, (int)s.getBrightness());
+    }
+
+    @Test
+    public void testBatchDelay() {
+        LightStateWriteQueue q = new LightStateWriteQueue(100, 20);
+        LightState off = new LightState(false, null, null, null, null, null, null, null, null);
+        assertNull(q.offer(new SetLightStateRequest("1", off), 1000));
+        assertNull(q.offer(new SetLightStateRequest("2", off), 1005));
+        assertNull(q.offer(new SetLightStateRequest("3", off), 1015));
+        assertEquals(1020, q.getNextFlushTime());
+        assertTrue(q.poll(1019).isEmpty());
+
+        // all requests that arrived during the batch are released together
+        assertEquals(3, q.poll(1020).size());
+        assertEquals(3, q.getSentCount());
+
+        // the per-light window still applies after a batch is released
+        assertNull(q.offer(new SetLightStateRequest("1", off), 1030));
+        assertEquals(1120, q.getNextFlushTime());
+    }
+}
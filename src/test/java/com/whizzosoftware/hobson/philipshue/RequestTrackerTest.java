@@ -0,0 +1,160 @@
+/*
+ *******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************
+*/
+package com.whizzosoftware.hobson.philipshue;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.BridgeRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.GetAllLightsRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.GetLightAttributeAndStateRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.SetLightStateRequest;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestTrackerTest {
+    @Test
+    public void testDuplicateSuppression() {
+        RequestTracker t = new RequestTracker(15000);
+        GetAllLightsRequest r1 = new GetAllLightsRequest();
+        assertTrue(t.start(r1, 1000));
+        assertEquals(1, t.getOutstandingCount(GetAllLightsRequest.class));
+
+        // a second request while the first is pending is suppressed
+        assertFalse(t.start(new GetAllLightsRequest(), 2000));
+        assertEquals(1, t.getSuppressedCount());
+        assertEquals(1, t.getOutstandingCount(GetAllLightsRequest.class));
+
+        // requests for different lights don't suppress each other
+        assertTrue(t.start(new GetLightAttributeAndStateRequest("1"), 2000));
+        assertTrue(t.start(new GetLightAttributeAndStateRequest("2"), 2000));
+        assertFalse(t.start(new GetLightAttributeAndStateRequest("1"), 2000));
+        assertEquals(2, t.getSuppressedCount());
+
+        // once complete, a new request can be sent
+        assertTrue(t.complete(r1));
+        assertFalse(t.complete(r1));
+        assertEquals(0, t.getOutstandingCount(GetAllLightsRequest.class));
+        assertTrue(t.start(new GetAllLightsRequest(), 3000));
+    }
+
+    @Test
+    public void testPendingRequestExpires() {
+        RequestTracker t = new RequestTracker(15000);
+        assertTrue(t.start(new GetAllLightsRequest(), 1000));
+        assertFalse(t.start(new GetAllLightsRequest(), 15999));
+        assertTrue(t.start(new GetAllLightsRequest(), 16000));
+        assertEquals(1, t.getOutstandingCount(GetAllLightsRequest.class));
+    }
+
+    @Test
+    public void testCommandsAreNeverSuppressed() {
+        RequestTracker t = new RequestTracker(15000);
+        LightState s = new LightState(true, null, null, null, null, null, null, null, null);
+        assertTrue(t.start(new SetLightStateRequest("1", s), 1000));
+        assertTrue(t.start(new SetLightStateRequest("1", s), 1000));
+        assertEquals(2, t.getOutstandingCount(SetLightStateRequest.class));
+        assertEquals(0, t.getSuppressedCount());
+    }
+
+    @Test
+    public void testSequencesIncrease() {
+        RequestTracker t = new RequestTracker(15000);
+        GetAllLightsRequest r1 = new GetAllLightsRequest();
+        GetLightAttributeAndStateRequest r2 = new GetLightAttributeAndStateRequest("1");
+        t.start(r1, 1000);
+        t.start(r2, 1000);
+        assertTrue(r1.getSequence() > 0);
+        assertTrue(r2.getSequence() > r1.getSequence());
+    }
+
+    @Test
+    public void testStaleLightState() {
+        RequestTracker t = new RequestTracker(15000);
+        GetAllLightsRequest r1 = new GetAllLightsRequest();
+        GetLightAttributeAndStateRequest r2 = new GetLightAttributeAndStateRequest("1");
+        t.start(r1, 1000);
+        t.start(r2, 1000);
+
+        // the newer request's response arrives first
+        assertTrue(t.acceptLightState("1", r2.getSequence()));
+        assertFalse(t.acceptLightState("1", r1.getSequence()));
+        assertEquals(1, t.getStaleCount());
+
+        // other lights are unaffected
+        assertTrue(t.acceptLightState("2", r1.getSequence()));
+
+        // state without a sequence is always accepted
+        assertTrue(t.acceptLightState("3", 0));
+        assertTrue(t.acceptLightState("1", r2.getSequence()));
+    }
+
+    @Test
+    public void testEventSequenceSupersedesEarlierRequests() {
+        RequestTracker t = new RequestTracker(15000);
+        GetAllLightsRequest r1 = new GetAllLightsRequest();
+        t.start(r1, 1000);
+        long event = t.nextSequence();
+        GetLightAttributeAndStateRequest r2 = new GetLightAttributeAndStateRequest("1");
+        t.start(r2, 1000);
+
+        // a poll sent before the event can't overwrite it but a request sent afterwards can
+        assertTrue(t.acceptLightState("1", event));
+        assertFalse(t.acceptLightState("1", r1.getSequence()));
+        assertTrue(t.acceptLightState("1", r2.getSequence()));
+    }
+
+    @Test
+    public void testExpire() {
+        RequestTracker t = new RequestTracker(10000);
+        GetAllLightsRequest r1 = new GetAllLightsRequest();
+        SetLightStateRequest r2 = new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null));
+        t.start(r1, 1000);
+        t.start(r2, 5000);
+        assertTrue(t.expire(10999).isEmpty());
+
+        List<BridgeRequest> expired = t.expire(11000);
+        assertEquals(1, expired.size());
+        assertSame(r1, expired.get(0));
+        assertEquals(0, t.getOutstandingCount(GetAllLightsRequest.class));
+        assertEquals(1, t.getTimeoutCount());
+
+        // an expired request no longer suppresses duplicates and a late response isn't tracked
+        assertTrue(t.start(new GetAllLightsRequest(), 11000));
+        assertFalse(t.complete(r1, 12000));
+
+        t.setMaxPendingTime(5000);
+        assertEquals(2, t.expire(16000).size());
+        assertEquals(3, t.getTimeoutCount());
+    }
+
+    @Test
+    public void testLatency() {
+        RequestTracker t = new RequestTracker(10000);
+        assertNull(t.getLatencyStats(GetAllLightsRequest.class));
+        for (int i = 1; i <= 100; i++) {
+            GetAllLightsRequest r = new GetAllLightsRequest();
+            t.start(r, 1000);
+            assertTrue(t.complete(r, 1000 + i));
+        }
+        LatencyStats stats = t.getLatencyStats(GetAllLightsRequest.class);
+        assertEquals(100, stats.getCount());
+        assertEquals(50, stats.getPercentile(50));
+        assertEquals(99, stats.getPercentile(99));
+        assertNull(t.getLatencyStats(SetLightStateRequest.class));
+
+        // failures aren't counted towards latency
+        GetAllLightsRequest r = new GetAllLightsRequest();
+        t.start(r, 1000);
+        assertTrue(t.complete(r));
+        assertEquals(100, stats.getCount());
+    }
+}
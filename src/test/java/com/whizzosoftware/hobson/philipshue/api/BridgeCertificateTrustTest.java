@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BridgeCertificateTrustTest {
+    // the SHA-256 fingerprint of the certificate in bridge.jks
+    static final String FINGERPRINT = "b3809da3c68f7e23bfc4193e2cb4378937d0bc892fb944f892c2ff5fdece2ff6";
+
+    @Test
+    public void testTrustOnFirstUse() throws Exception {
+        final List<String> pinned = new ArrayList<>();
+        BridgeCertificateTrust trust = new BridgeCertificateTrust(null, new BridgeCertificateTrust.Listener() {
+            @Override
+            public void onCertificatePinned(String fingerprint) {
+                pinned.add(fingerprint);
+            }
+        });
+        assertNull(trust.getFingerprint());
+
+        X509Certificate[] chain = {getBridgeCertificate()};
+        trust.checkServerTrusted(chain, "RSA");
+        assertEquals(FINGERPRINT, trust.getFingerprint());
+        assertEquals(1, pinned.size());
+
+        // the same certificate is accepted again without being reported
+        trust.checkServerTrusted(chain, "RSA");
+        assertEquals(1, pinned.size());
+    }
+
+    @Test
+    public void testPinnedCertificate() throws Exception {
+        X509Certificate[] chain = {getBridgeCertificate()};
+
+        // the usual colon separated form works too
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < FINGERPRINT.length(); i += 2) {
+            if (sb.length() > 0) {
+                sb.append(':');
+            }
+            sb.append(FINGERPRINT.substring(i, i + 2).toUpperCase());
+        }
+        new BridgeCertificateTrust(sb.toString(), null).checkServerTrusted(chain, "RSA");
+
+        try {
+            new BridgeCertificateTrust("0011223344", null).checkServerTrusted(chain, "RSA");
+            fail("Should have thrown exception");
+        } catch (CertificateException ignored) {}
+
+        try {
+            new BridgeCertificateTrust(null, null).checkServerTrusted(new X509Certificate[0], "RSA");
+            fail("Should have thrown exception");
+        } catch (CertificateException ignored) {}
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("abcd", BridgeCertificateTrust.normalize("AB:CD"));
+        assertEquals("abcd", BridgeCertificateTrust.normalize("ab cd"));
+        assertNull(BridgeCertificateTrust.normalize(""));
+        assertNull(BridgeCertificateTrust.normalize(null));
+    }
+
+    private X509Certificate getBridgeCertificate() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        InputStream is = getClass().getResourceAsStream("bridge.jks");
+        try {
+            ks.load(is, "password".toCharArray());
+        } finally {
+            is.close();
+        }
+        return (X509Certificate)ks.getCertificate("bridge");
+    }
+}
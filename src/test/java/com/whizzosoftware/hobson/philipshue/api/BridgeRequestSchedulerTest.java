@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class BridgeRequestSchedulerTest {
+    @Test
+    public void testGetLane() {
+        assertEquals(BridgeRequestScheduler.Lane.POLL, BridgeRequestScheduler.getLane(new GetAllLightsRequest()));
+        assertEquals(BridgeRequestScheduler.Lane.REFRESH, BridgeRequestScheduler.getLane(new GetLightAttributeAndStateRequest("1")));
+        assertEquals(BridgeRequestScheduler.Lane.COMMAND, BridgeRequestScheduler.getLane(new SetLightStateRequest("1", null)));
+        assertEquals(BridgeRequestScheduler.Lane.COMMAND, BridgeRequestScheduler.getLane(new SetGroupActionRequest("0", null)));
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        RecordingHttpContext http = new RecordingHttpContext();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        final Set<Thread> senderThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        try {
+            BridgeRequestScheduler s = new BridgeRequestScheduler(http, executor, new Executor() {
+                @Override
+                public void execute(final Runnable r) {
+                    sender.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            senderThreads.add(Thread.currentThread());
+                            r.run();
+                        }
+                    });
+                }
+            }, 20, 1);
+            URI uri = new URI("http://host");
+
+            // the first request uses the only token and is sent immediately
+            Object first = new GetAllLightsRequest();
+            s.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, first);
+            assertEquals(1, http.contexts.size());
+
+            // the rest have to wait and are sent in priority order
+            Object poll = new GetAllLightsRequest();
+            Object refresh = new GetLightAttributeAndStateRequest("1");
+            Object command = new SetLightStateRequest("1", null);
+            s.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, poll);
+            s.sendHttpRequest(uri, HttpRequest.Method.GET, null, null, null, refresh);
+            s.sendHttpRequest(uri, HttpRequest.Method.PUT, null, null, null, command);
+            assertEquals(1, s.getQueueSize(BridgeRequestScheduler.Lane.POLL));
+            assertEquals(3, s.getQueuedCount());
+
+            long start = System.currentTimeMillis();
+            while (http.size() < 4 && System.currentTimeMillis() - start < 5000) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(Arrays.asList(first, command, refresh, poll), http.contexts);
+            assertEquals(2, s.getSentCount(BridgeRequestScheduler.Lane.POLL));
+            assertEquals(1, s.getSentCount(BridgeRequestScheduler.Lane.REFRESH));
+            assertEquals(1, s.getSentCount(BridgeRequestScheduler.Lane.COMMAND));
+            assertEquals(0, s.getQueueSize(BridgeRequestScheduler.Lane.POLL));
+
+            // queued requests are only ever sent from the send executor
+            assertEquals(senderThreads, http.threads);
+        } finally {
+            executor.shutdownNow();
+            sender.shutdownNow();
+        }
+    }
+
+    private class RecordingHttpContext implements HttpContext {
+        final List<Object> contexts = Collections.synchronizedList(new ArrayList<>());
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        @Override
+        public void sendHttpRequest(URI uri, HttpRequest.Method method, Map<String, String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+            if (contexts.size() > 0) {
+                threads.add(Thread.currentThread());
+            }
+            contexts.add(context);
+        }
+
+        int size() {
+            return contexts.size();
+        }
+    }
+}
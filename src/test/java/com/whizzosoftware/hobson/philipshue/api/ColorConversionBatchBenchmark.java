@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A simple benchmark comparing converting a batch of colors one at a time by model (the way a light does it) with
+ * the batch conversion, with and without a ForkJoinPool. This is not run as part of the build; run it with:
+ *
+ * java -cp target/classes:target/test-classes:[dependencies] com.whizzosoftware.hobson.philipshue.api.ColorConversionBatchBenchmark
+ *
+ * @author Dan Noguerol
+ */
+public class ColorConversionBatchBenchmark {
+    private static final int CONVERSIONS = 20000000;
+    private static final String[] MODELS = {"LCT001", "LCT010", "LST001", "LCT007"};
+
+    private static float sink;
+
+    public static void main(String[] args) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            System.out.println(String.format("%-10s %10s %10s %10s", "batch", "scalar", "batch", "pool"));
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up
+                for (int size : new int[] {10, 100, 10000}) {
+                    Batch b = new Batch(size);
+                    double scalar = measureScalar(b);
+                    double batch = measureBatch(b, null);
+                    double pooled = measureBatch(b, pool);
+                    if (round > 0) {
+                        System.out.println(String.format("%-10d %10.1f %10.1f %10.1f", size, scalar, batch, pooled));
+                    }
+                }
+            }
+            System.out.println("(ns per conversion)");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double measureScalar(Batch b) {
+        int rounds = CONVERSIONS / b.rgb.length;
+        long start = System.nanoTime();
+        for (int n = 0; n < rounds; n++) {
+            for (int i = 0; i < b.rgb.length; i++) {
+                int c = b.rgb[i];
+                ColorConversion.PointF p = ColorConversion.calculateXY((c >> 16) & 0xff, (c >> 8) & 0xff, c & 0xff, b.models[i]);
+                sink += p.x;
+            }
+        }
+        return (double)(System.nanoTime() - start) / ((long)rounds * b.rgb.length);
+    }
+
+    private static double measureBatch(Batch b, ForkJoinPool pool) {
+        int rounds = CONVERSIONS / b.rgb.length;
+        long start = System.nanoTime();
+        for (int n = 0; n < rounds; n++) {
+            ColorConversion.calculateXY(b.rgb, b.gamutIndexes, b.gamuts, b.xy, b.rgb.length, pool);
+            sink += b.xy[0];
+        }
+        return (double)(System.nanoTime() - start) / ((long)rounds * b.rgb.length);
+    }
+
+    private static class Batch {
+        final int[] rgb;
+        final String[] models;
+        final int[] gamutIndexes;
+        final ColorGamut[] gamuts;
+        final float[] xy;
+
+        Batch(int size) {
+            rgb = new int[size];
+            models = new String[size];
+            gamutIndexes = new int[size];
+            gamuts = new ColorGamut[MODELS.length];
+            xy = new float[size * 2];
+            for (int i = 0; i < MODELS.length; i++) {
+                gamuts[i] = ColorGamut.forModel(MODELS[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                rgb[i] = (int)((i * 2654435761L) & 0xffffff);
+                models[i] = MODELS[i % MODELS.length];
+                gamutIndexes[i] = i % MODELS.length;
+            }
+        }
+    }
+}
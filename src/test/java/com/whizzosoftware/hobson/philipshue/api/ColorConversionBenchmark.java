@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+/**
+ * A simple benchmark comparing the cost of color conversions with the gamma curve calculated by Math.pow() and
+ * looked up in tables. This is not run as part of the build; run it with:
+ *
+ * java -cp target/classes:target/test-classes:[dependencies] com.whizzosoftware.hobson.philipshue.api.ColorConversionBenchmark
+ *
+ * @author Dan Noguerol
+ */
+public class ColorConversionBenchmark {
+    private static final int WARMUP_ITERATIONS = 2000000;
+    private static final int ITERATIONS = 10000000;
+
+    private static float sink;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%-12s %-12s %10s", "conversion", "gamma", "ns/op"));
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up
+            for (int size : new int[] {0, ColorConversion.DEFAULT_GAMMA_TABLE_SIZE}) {
+                ColorConversion.setGammaTableSize(size);
+                double toXY = measureCalculateXY();
+                double fromXY = measureColorFromXY();
+                if (round > 0) {
+                    String label = (size > 0) ? "table" : "Math.pow";
+                    System.out.println(String.format("%-12s %-12s %10.1f", "calculateXY", label, toXY));
+                    System.out.println(String.format("%-12s %-12s %10.1f", "colorFromXY", label, fromXY));
+                }
+            }
+        }
+        ColorConversion.setGammaTableSize(ColorConversion.DEFAULT_GAMMA_TABLE_SIZE);
+    }
+
+    private static double measureCalculateXY() {
+        float[] xy = new float[2];
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            ColorConversion.calculateXY(i & 0xff, (i >> 8) & 0xff, (i >> 16) & 0xff, ColorGamut.C, xy);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ColorConversion.calculateXY(i & 0xff, (i >> 8) & 0xff, (i >> 16) & 0xff, ColorGamut.C, xy);
+            sink += xy[0];
+        }
+        return (double)(System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static double measureColorFromXY() {
+        float[] xy = new float[2];
+        int[] rgb = new int[3];
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            xy[0] = 0.1f + (i % 600) / 1000.0f;
+            xy[1] = 0.1f + (i % 700) / 1000.0f;
+            ColorConversion.colorFromXY(xy, ColorGamut.C, rgb);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            xy[0] = 0.1f + (i % 600) / 1000.0f;
+            xy[1] = 0.1f + (i % 700) / 1000.0f;
+            ColorConversion.colorFromXY(xy, ColorGamut.C, rgb);
+            sink += rgb[0];
+        }
+        return (double)(System.nanoTime() - start) / ITERATIONS;
+    }
+}
@@ -7,7 +7,15 @@
  *******************************************************************************/
 package com.whizzosoftware.hobson.philipshue.api;
 
+import org.junit.Assume;
 import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.Assert.*;
 
 public class ColorConversionTest {
@@ -18,6 +26,33 @@ public class ColorConversionTest {
         assertEquals(0.394, p.y, 0.001);
     }
 
+    @Test
+    public void testHueSaturation() {
+        int[] rgb = new int[3];
+        ColorConversion.rgbFromHueSaturation(0, 100, rgb);
+        assertArrayEquals(new int[] {255, 0, 0}, rgb);
+        ColorConversion.rgbFromHueSaturation(360, 100, rgb);
+        assertArrayEquals(new int[] {255, 0, 0}, rgb);
+        ColorConversion.rgbFromHueSaturation(120, 50, rgb);
+        assertArrayEquals(new int[] {128, 255, 128}, rgb);
+        ColorConversion.rgbFromHueSaturation(240, 0, rgb);
+        assertArrayEquals(new int[] {255, 255, 255}, rgb);
+
+        // the conversion round trips (at low saturation 8-bit RGB can't resolve every hue)
+        int[] hs = new int[2];
+        for (int h = 0; h < 360; h++) {
+            for (int s = 50; s <= 100; s += 10) {
+                ColorConversion.rgbFromHueSaturation(h, s, rgb);
+                ColorConversion.hueSaturationFromRGB(rgb[0], rgb[1], rgb[2], hs);
+                assertEquals(h + "," + s, h, hs[0], 1);
+                assertEquals(h + "," + s, s, hs[1], 1);
+            }
+        }
+
+        ColorConversion.hueSaturationFromRGB(0, 0, 0, hs);
+        assertArrayEquals(new int[] {0, 0}, hs);
+    }
+
     @Test
     public void testCreateColorFromRGBString() {
         ColorConversion.Color c = ColorConversion.createColorFromRGBString("rgb(255,0,0)");
@@ -30,4 +65,296 @@ public class ColorConversionTest {
         assertEquals(0, c.g);
         assertEquals(0, c.b);
     }
+
+    @Test
+    public void testPrimitiveCalculateXYMatchesReference() {
+        Random r = new Random(12345);
+        float[] xy = new float[2];
+        ColorGamut[] gamuts = {ColorGamut.A, ColorGamut.B, ColorGamut.C, ColorGamut.DEFAULT};
+        for (int i = 0; i < 100000; i++) {
+            int red = r.nextInt(256);
+            int green = r.nextInt(256);
+            int blue = r.nextInt(256);
+            ColorGamut gamut = gamuts[i % gamuts.length];
+            ColorConversion.PointF expected = referenceCalculateXY(red, green, blue, gamut.getColorPoints());
+            ColorConversion.calculateXY(red, green, blue, gamut, xy);
+            assertEquals(expected.x, xy[0], 0.0f);
+            assertEquals(expected.y, xy[1], 0.0f);
+
+            ColorConversion.PointF p = ColorConversion.calculateXY(red, green, blue, gamut);
+            assertEquals(expected.x, p.x, 0.0f);
+            assertEquals(expected.y, p.y, 0.0f);
+        }
+    }
+
+    @Test
+    public void testBatchCalculateXYMatchesScalar() {
+        Random r = new Random(54321);
+        ColorGamut[] gamuts = {ColorGamut.A, ColorGamut.B, ColorGamut.C, ColorGamut.DEFAULT};
+        int count = ColorConversion.PARALLEL_BATCH_THRESHOLD * 3 + 17;
+        int[] rgb = new int[count];
+        int[] gamutIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            rgb[i] = r.nextInt(0x1000000);
+            gamutIndexes[i] = r.nextInt(gamuts.length);
+        }
+
+        float[] expected = new float[2];
+        float[] xy = new float[count * 2];
+        float[] pooledXY = new float[count * 2];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ColorConversion.calculateXY(rgb, gamutIndexes, gamuts, xy, count);
+            ColorConversion.calculateXY(rgb, gamutIndexes, gamuts, pooledXY, count, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < count; i++) {
+            ColorConversion.calculateXY((rgb[i] >> 16) & 0xff, (rgb[i] >> 8) & 0xff, rgb[i] & 0xff, gamuts[gamutIndexes[i]], expected);
+            assertEquals(expected[0], xy[i * 2], 0.0f);
+            assertEquals(expected[1], xy[i * 2 + 1], 0.0f);
+            assertEquals(expected[0], pooledXY[i * 2], 0.0f);
+            assertEquals(expected[1], pooledXY[i * 2 + 1], 0.0f);
+        }
+
+        // only count colors are converted
+        float[] partial = new float[6];
+        ColorConversion.calculateXY(rgb, gamutIndexes, gamuts, partial, 2);
+        assertEquals(xy[3], partial[3], 0.0f);
+        assertEquals(0.0f, partial[4], 0.0f);
+
+        try {
+            ColorConversion.calculateXY(rgb, gamutIndexes, gamuts, new float[count], count);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void testPrimitiveColorFromXYMatchesReference() {
+        // the reference calculates the gamma curve so the table has to be turned off for the results to be identical
+        ColorConversion.setGammaTableSize(0);
+        try {
+            assertColorFromXYMatchesReference();
+        } finally {
+            ColorConversion.setGammaTableSize(ColorConversion.DEFAULT_GAMMA_TABLE_SIZE);
+        }
+    }
+
+    @Test
+    public void testLinearTableIsExact() {
+        for (int i = 0; i < 256; i++) {
+            assertEquals(ColorConversion.calculateLinear(i), ColorConversion.toLinear(i), 0.0f);
+        }
+    }
+
+    @Test
+    public void testGammaTableAccuracy() {
+        assertEquals(ColorConversion.DEFAULT_GAMMA_TABLE_SIZE, ColorConversion.getGammaTableSize());
+
+        // the interpolated curve is within 0.00002 of the calculated one
+        float maxError = 0.0f;
+        for (int i = 0; i <= 1000000; i++) {
+            float v = i / 1000000.0f;
+            maxError = Math.max(maxError, Math.abs(ColorConversion.calculateGamma(v) - ColorConversion.toGamma(v)));
+        }
+        assertTrue("Max error was " + maxError, maxError < 0.00002f);
+
+        // which changes an RGB value by at most 1
+        Random r = new Random(54321);
+        float[] xy = new float[2];
+        int[] rgb = new int[3];
+        for (int i = 0; i < 100000; i++) {
+            float x = r.nextFloat() * 0.8f;
+            float y = 0.01f + r.nextFloat() * 0.8f;
+            ColorConversion.Color expected = referenceColorFromXY(new ColorConversion.PointF(x, y), ColorGamut.C.getColorPoints());
+            xy[0] = x;
+            xy[1] = y;
+            ColorConversion.colorFromXY(xy, ColorGamut.C, rgb);
+            assertTrue(Math.abs(expected.r - rgb[0]) <= 1);
+            assertTrue(Math.abs(expected.g - rgb[1]) <= 1);
+            assertTrue(Math.abs(expected.b - rgb[2]) <= 1);
+        }
+    }
+
+    @Test
+    public void testSetGammaTableSize() {
+        try {
+            ColorConversion.setGammaTableSize(65536);
+            assertEquals(65536, ColorConversion.getGammaTableSize());
+            float maxError = 0.0f;
+            for (int i = 0; i <= 1000000; i++) {
+                float v = i / 1000000.0f;
+                maxError = Math.max(maxError, Math.abs(ColorConversion.calculateGamma(v) - ColorConversion.toGamma(v)));
+            }
+            assertTrue("Max error was " + maxError, maxError < 0.000001f);
+
+            ColorConversion.setGammaTableSize(0);
+            assertEquals(0, ColorConversion.getGammaTableSize());
+            assertEquals(ColorConversion.calculateGamma(0.5f), ColorConversion.toGamma(0.5f), 0.0f);
+
+            try {
+                ColorConversion.setGammaTableSize(255);
+                fail("Should have thrown exception");
+            } catch (IllegalArgumentException ignored) {}
+        } finally {
+            ColorConversion.setGammaTableSize(ColorConversion.DEFAULT_GAMMA_TABLE_SIZE);
+        }
+    }
+
+    private void assertColorFromXYMatchesReference() {
+        Random r = new Random(54321);
+        float[] xy = new float[2];
+        int[] rgb = new int[3];
+        ColorGamut[] gamuts = {ColorGamut.A, ColorGamut.B, ColorGamut.C, ColorGamut.DEFAULT};
+        for (int i = 0; i < 100000; i++) {
+            // avoid y values so small that the result is meaningless
+            float x = r.nextFloat() * 0.8f;
+            float y = 0.01f + r.nextFloat() * 0.8f;
+            ColorGamut gamut = gamuts[i % gamuts.length];
+            ColorConversion.PointF expectedXY = new ColorConversion.PointF(x, y);
+            ColorConversion.Color expected = referenceColorFromXY(expectedXY, gamut.getColorPoints());
+
+            xy[0] = x;
+            xy[1] = y;
+            ColorConversion.colorFromXY(xy, gamut, rgb);
+            assertEquals(expected.r, rgb[0]);
+            assertEquals(expected.g, rgb[1]);
+            assertEquals(expected.b, rgb[2]);
+            assertEquals(expectedXY.x, xy[0], 0.0f);
+            assertEquals(expectedXY.y, xy[1], 0.0f);
+
+            ColorConversion.PointF p = new ColorConversion.PointF(x, y);
+            ColorConversion.Color c = ColorConversion.colorFromXY(p, gamut);
+            assertEquals(expected.r, c.r);
+            assertEquals(expected.g, c.g);
+            assertEquals(expected.b, c.b);
+            assertEquals(expectedXY.x, p.x, 0.0f);
+        }
+    }
+
+    @Test
+    public void testPrimitiveConversionsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)bean;
+        long tid = Thread.currentThread().getId();
+
+        float[] xy = new float[2];
+        int[] rgb = new int[3];
+        for (int i = 0; i < 20000; i++) {
+            ColorConversion.calculateXY(i % 256, (i * 7) % 256, (i * 13) % 256, ColorGamut.B, xy);
+            ColorConversion.colorFromXY(xy, ColorGamut.B, rgb);
+        }
+
+        // the cost of measuring itself
+        long baseline = -tmx.getThreadAllocatedBytes(tid) + tmx.getThreadAllocatedBytes(tid);
+
+        long start = tmx.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < 1000; i++) {
+            ColorConversion.calculateXY(i % 256, (i * 7) % 256, (i * 13) % 256, ColorGamut.B, xy);
+            ColorConversion.colorFromXY(xy, ColorGamut.B, rgb);
+        }
+        assertEquals(0, tmx.getThreadAllocatedBytes(tid) - start - baseline);
+    }
+
+    /**
+     * The original PointF based implementation of calculateXY().
+     */
+    private ColorConversion.PointF referenceCalculateXY(int aRed, int aGreen, int aBlue, List<ColorConversion.PointF> colorPoints) {
+        double normalizedRed = (double)aRed / 255.0;
+        double normalizedGreen = (double)aGreen / 255.0;
+        double normalizedBlue = (double)aBlue / 255.0;
+
+        float red = (normalizedRed > 0.04045f) ? (float)Math.pow((normalizedRed + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedRed / 12.92);
+        float green = (normalizedGreen > 0.04045) ? (float)Math.pow((normalizedGreen + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedGreen / 12.92);
+        float blue = (normalizedBlue > 0.04045) ? (float)Math.pow((normalizedBlue + 0.055) / (1.0 + 0.055), 2.4) : (float)(normalizedBlue / 12.92);
+
+        float X = (red * 0.649926f + green * 0.103455f + blue * 0.197109f);
+        float Y = (red * 0.234327f + green * 0.743075f + blue * 0.022598f);
+        float Z = (red * 0.0000000f + green * 0.053077f + blue * 1.035763f);
+
+        ColorConversion.PointF xy = new ColorConversion.PointF(X / (X + Y + Z), Y / (X + Y + Z));
+        referenceClamp(xy, colorPoints);
+        return xy;
+    }
+
+    /**
+     * The original PointF based implementation of colorFromXY().
+     */
+    private ColorConversion.Color referenceColorFromXY(ColorConversion.PointF xy, List<ColorConversion.PointF> colorPoints) {
+        referenceClamp(xy, colorPoints);
+
+        float x = xy.x;
+        float y = xy.y;
+        float z = 1.0f - x - y;
+        float Y = 1.0f;
+        float X = (Y / y) * x;
+        float Z = (Y / y) * z;
+
+        float r = X  * 3.2406f - Y * 1.5372f - Z * 0.4986f;
+        float g = -X * 0.9689f + Y * 1.8758f + Z * 0.0415f;
+        float b = X  * 0.0557f - Y * 0.2040f + Z * 1.0570f;
+
+        if (r > b && r > g && r > 1.0f) {
+            g = g / r;
+            b = b / r;
+            r = 1.0f;
+        } else if (g > b && g > r && g > 1.0f) {
+            r = r / g;
+            b = b / g;
+            g = 1.0f;
+        } else if (b > r && b > g && b > 1.0f) {
+            r = r / b;
+            g = g / b;
+            b = 1.0f;
+        }
+
+        r = r <= 0.0031308f ? 12.92f * r : (1.0f + 0.055f) * (float)Math.pow((double)r, (double)((1.0f / 2.4f))) - 0.055f;
+        g = g <= 0.0031308f ? 12.92f * g : (1.0f + 0.055f) * (float)Math.pow((double)g, (double)((1.0f / 2.4f))) - 0.055f;
+        b = b <= 0.0031308f ? 12.92f * b : (1.0f + 0.055f) * (float)Math.pow((double)b, (double)((1.0f / 2.4f))) - 0.055f;
+
+        if (r > b && r > g) {
+            if (r > 1.0f) {
+                g = g / r;
+                b = b / r;
+                r = 1.0f;
+            }
+        } else if (g > b && g > r) {
+            if (g > 1.0f) {
+                r = r / g;
+                b = b / g;
+                g = 1.0f;
+            }
+        } else if (b > r && b > g) {
+            if (b > 1.0f) {
+                r = r / b;
+                g = g / b;
+                b = 1.0f;
+            }
+        }
+
+        return new ColorConversion.Color(r, g, b);
+    }
+
+    private void referenceClamp(ColorConversion.PointF xy, List<ColorConversion.PointF> colorPoints) {
+        if (!ColorConversion.checkPointInLampsReach(xy, colorPoints)) {
+            ColorConversion.PointF pAB = ColorConversion.getClosestPointToPoints(colorPoints.get(0), colorPoints.get(1), xy);
+            ColorConversion.PointF pAC = ColorConversion.getClosestPointToPoints(colorPoints.get(2), colorPoints.get(0), xy);
+            ColorConversion.PointF pBC = ColorConversion.getClosestPointToPoints(colorPoints.get(1), colorPoints.get(2), xy);
+            float dAB = ColorConversion.getDistanceBetweenTwoPoints(xy, pAB);
+            float dAC = ColorConversion.getDistanceBetweenTwoPoints(xy, pAC);
+            float dBC = ColorConversion.getDistanceBetweenTwoPoints(xy, pBC);
+            float lowest = dAB;
+            ColorConversion.PointF closestPoint = pAB;
+            if (dAC < lowest) {
+                lowest = dAC;
+                closestPoint = pAC;
+            }
+            if (dBC < lowest) {
+                closestPoint = pBC;
+            }
+            xy.x = closestPoint.x;
+            xy.y = closestPoint.y;
+        }
+    }
 }
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ColorGamutRegistryTest {
+    @Test
+    public void testDefault() {
+        assertSame(ColorGamut.B, ColorGamutRegistry.DEFAULT.forModel("LCT001"));
+        assertSame(ColorGamut.DEFAULT, ColorGamutRegistry.DEFAULT.forModel("XYZ001"));
+        assertSame(ColorGamut.DEFAULT, ColorGamutRegistry.DEFAULT.forModel(null));
+        assertEquals(0, ColorGamutRegistry.DEFAULT.size());
+    }
+
+    @Test
+    public void testForModel() {
+        Map<String,ColorGamut> models = new HashMap<>();
+        models.put("XYZ001", ColorGamut.C);
+        // built-in models can be overridden
+        models.put("LCT001", ColorGamut.A);
+        ColorGamutRegistry r = new ColorGamutRegistry(models);
+        assertSame(ColorGamut.C, r.forModel("XYZ001"));
+        assertSame(ColorGamut.A, r.forModel("LCT001"));
+        assertSame(ColorGamut.C, r.forModel("LCT010"));
+        assertEquals(2, r.size());
+
+        // the registry is a copy and the built-in gamuts are untouched
+        models.clear();
+        assertSame(ColorGamut.C, r.forModel("XYZ001"));
+        assertSame(ColorGamut.DEFAULT, ColorGamut.forModel("XYZ001"));
+        assertSame(ColorGamut.B, ColorGamut.forModel("LCT001"));
+    }
+
+    @Test
+    public void testInvalidMapping() {
+        try {
+            new ColorGamutRegistry(Collections.<String,ColorGamut>singletonMap(null, ColorGamut.A));
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException ignored) {}
+    }
+}
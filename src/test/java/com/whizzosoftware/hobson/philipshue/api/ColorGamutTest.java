@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColorGamutTest {
+    @Test
+    public void testForModel() {
+        assertSame(ColorGamut.B, ColorGamut.forModel("LCT001"));
+        assertSame(ColorGamut.A, ColorGamut.forModel("LST001"));
+        assertSame(ColorGamut.C, ColorGamut.forModel("LCT010"));
+        assertSame(ColorGamut.DEFAULT, ColorGamut.forModel("XYZ001"));
+        assertSame(ColorGamut.DEFAULT, ColorGamut.forModel(null));
+    }
+
+    @Test
+    public void testForName() {
+        assertSame(ColorGamut.A, ColorGamut.forName("A"));
+        assertSame(ColorGamut.C, ColorGamut.forName("c"));
+        assertSame(ColorGamut.DEFAULT, ColorGamut.forName("default"));
+        assertNull(ColorGamut.forName("D"));
+    }
+
+    @Test
+    public void testContains() {
+        assertTrue(ColorGamut.B.contains(0.4f, 0.4f));
+        assertFalse(ColorGamut.B.contains(0.1f, 0.8f));
+        assertTrue(ColorGamut.DEFAULT.contains(0.1f, 0.8f));
+
+        // the result agrees with the List based check
+        List<ColorConversion.PointF> points = ColorConversion.colorPointsForModel("LCT001");
+        for (float x = 0.0f; x <= 1.0f; x += 0.05f) {
+            for (float y = 0.0f; y <= 1.0f; y += 0.05f) {
+                assertEquals(ColorConversion.checkPointInLampsReach(new ColorConversion.PointF(x, y), points), ColorGamut.B.contains(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testGetClosestPoint() {
+        // points within reach are unchanged
+        ColorConversion.PointF p = ColorGamut.B.getClosestPoint(0.4f, 0.4f);
+        assertEquals(0.4f, p.x, 0.0f);
+        assertEquals(0.4f, p.y, 0.0f);
+
+        // points out of reach are moved onto the edge of the triangle
+        p = ColorGamut.B.getClosestPoint(0.1f, 0.8f);
+        assertEquals(0.408f, p.x, 0.001f);
+        assertEquals(0.517f, p.y, 0.001f);
+        p = ColorGamut.B.getClosestPoint(0.9f, 0.3f);
+        assertEquals(0.674f, p.x, 0.001f);
+        assertEquals(0.322f, p.y, 0.001f);
+    }
+
+    @Test
+    public void testColorPointsForModel() {
+        List<ColorConversion.PointF> points = ColorConversion.colorPointsForModel("LLC011");
+        assertEquals(3, points.size());
+        assertEquals(0.703f, points.get(0).x, 0.0f);
+        assertEquals(0.709f, points.get(1).y, 0.0f);
+        assertEquals(0.139f, points.get(2).x, 0.0f);
+
+        // callers get their own copy
+        points.get(0).x = 0.0f;
+        assertEquals(0.703f, ColorGamut.A.getColorPoints().get(0).x, 0.0f);
+    }
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A simple benchmark comparing the JSONObject based HueBridgeParser with the StreamingHueBridgeParser for
+ * GetAllLights payloads of various sizes. This is not run as part of the build; run it with:
+ *
+ * java -cp target/classes:target/test-classes:[dependencies] com.whizzosoftware.hobson.philipshue.api.HueBridgeParserBenchmark
+ *
+ * Allocation figures are only reported on JVMs that support per-thread allocation counters.
+ *
+ * @author Dan Noguerol
+ */
+public class HueBridgeParserBenchmark {
+    private static final int[] LIGHT_COUNTS = {10, 50, 200};
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format("%-10s %-10s %-10s %15s %15s", "parser", "lights", "payload", "us/op", "bytes/op"));
+        for (int count : LIGHT_COUNTS) {
+            String[] payloads = {createPayload(count, false), createPayload(count, true)};
+            run("tree", new HueBridgeParser(), count, payloads);
+            run("streaming", new StreamingHueBridgeParser(), count, payloads);
+        }
+    }
+
+    private static void run(String name, HueBridgeParser parser, int count, String[] payloads) throws HueException {
+        // the same payload every time (the common case) and alternating payloads (every light changes)
+        measure(name, parser, count, "same", new String[] {payloads[0]});
+        measure(name, parser, count, "changing", payloads);
+    }
+
+    private static void measure(String name, HueBridgeParser parser, int count, String label, String[] payloads) throws HueException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parser.parseGetAllLightsResponse(200, payloads[i % payloads.length]);
+        }
+
+        long startBytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parser.parseGetAllLightsResponse(200, payloads[i % payloads.length]);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = getAllocatedBytes() - startBytes;
+
+        System.out.println(String.format("%-10s %-10d %-10s %15.2f %15s", name, count, label, elapsed / 1000.0 / ITERATIONS, startBytes > -1 ? Long.toString(bytes / ITERATIONS) : "n/a"));
+    }
+
+    static String createPayload(int count, boolean on) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                sb.append(",");
+            }
+            sb.append("\"").append(i).append("\":{\"state\":{\"on\":").append(on).append(",\"bri\":").append(i % 254)
+                .append(",\"hue\":").append(i * 100).append(",\"sat\":212,\"effect\":\"none\",\"xy\":[0.5128,0.4147],\"ct\":467,")
+                .append("\"alert\":\"none\",\"colormode\":\"hs\",\"reachable\":true},\"type\":\"Extended color light\",")
+                .append("\"name\":\"Hue Lamp ").append(i).append("\",\"modelid\":\"LCT001\",\"manufacturername\":\"Philips\",")
+                .append("\"uniqueid\":\"00:17:88:01:00:bd:c7:").append(String.format("%02x", i % 256)).append("-0b\",")
+                .append("\"swversion\":\"5.23.1.13452\",\"pointsymbol\":{\"1\":\"none\",\"2\":\"none\",\"3\":\"none\",")
+                .append("\"4\":\"none\",\"5\":\"none\",\"6\":\"none\",\"7\":\"none\",\"8\":\"none\"}}");
+        }
+        return sb.append("}").toString();
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
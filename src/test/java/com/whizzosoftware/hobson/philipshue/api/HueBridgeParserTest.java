@@ -8,6 +8,7 @@
 package com.whizzosoftware.hobson.philipshue.api;
 
 import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.json.JSONObject;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -43,12 +44,15 @@ public class HueBridgeParserTest {
     public void testParseGetLightAttributeAndState() throws HueException {
         HueBridgeParser parser = new HueBridgeParser();
         GetLightAttributeAndStateResponse response = (GetLightAttributeAndStateResponse)parser.parseGetLightAttributeAndStateResponse("", 200, "{\"state\": {\"on\":false,\"bri\":254,\"hue\":65535,\"sat\":254,\"xy\":[0.700,0.200],\"ct\":0,\"alert\":\"none\",\"effect\":\"none\",\"colormode\":\"hs\",\"reachable\":true}, \"type\": \"Extended color light\", \"name\": \"Hue Downlight\", \"modelid\": \"LCT002\", \"swversion\": \"66010673\", \"pointsymbol\": { \"1\":\"none\", \"2\":\"none\", \"3\":\"none\", \"4\":\"none\", \"5\":\"none\", \"6\":\"none\", \"7\":\"none\", \"8\":\"none\" }}");
-        LightState state = response.getState();
+        CompactLightState state = response.getState();
         assertEquals("none", state.getEffect());
         assertEquals(254, (int)state.getBrightness());
         assertTrue(state.hasColor());
         assertEquals(65535, (int)state.getHue());
         assertEquals(254, (int)state.getSaturation());
+        assertEquals(0.7f, state.getX(), 0.0f);
+        assertEquals(0.2f, state.getY(), 0.0f);
+        assertFalse(state.hasColorXY());
         assertEquals(true, state.isReachable());
         assertEquals(false, state.getOn());
 
@@ -65,6 +69,84 @@ public class HueBridgeParserTest {
     @Test
     public void testParseSetLightStateResponse() throws HueException {
         HueBridgeParser parser = new HueBridgeParser();
-        parser.parseSetLightStateResponse(200, "[{\"success\":{\"/lights/1/state/on\":true}},{\"success\":{\"/lights/1/state/hue\":10}},{\"success\":{\"/lights/1/state/sat\":20}},{\"success\":{\"/lights/1/state/bri\":30}},{\"success\":{\"/lights/1/state/effect\":\"none\"}}]");
+        SetLightStateResponse response = (SetLightStateResponse)parser.parseSetLightStateResponse("1", 200, "[{\"success\":{\"/lights/1/state/on\":true}},{\"success\":{\"/lights/1/state/hue\":10}},{\"success\":{\"/lights/1/state/sat\":20}},{\"success\":{\"/lights/1/state/bri\":30}},{\"success\":{\"/lights/1/state/effect\":\"none\"}}]");
+        assertEquals("1", response.getId());
+        assertEquals(new LightState(true, 10, 20, 30, null, LightState.MODE_HS, "none", null, null), response.getState());
+
+        // results for other lights or other resources are ignored
+        response = (SetLightStateResponse)parser.parseSetLightStateResponse("1", 200, "[{\"success\":{\"/lights/1/state/ct\":300}},{\"success\":{\"/lights/1/state/transitiontime\":4}},{\"success\":{\"/lights/12/state/on\":true}},{\"success\":{\"/lights/1/name\":\"x\"}}]");
+        assertEquals(new LightState(null, null, null, null, 300, LightState.MODE_CT, null, null, null), response.getState());
+
+        response = (SetLightStateResponse)parser.parseSetLightStateResponse("1", 200, "[{\"success\":{\"/lights/1/state/xy\":[0.4,0.5]}},{\"success\":{\"/lights/1/state/bri\":30}}]");
+        LightState expected = new LightState(null, null, null, 30, null, LightState.MODE_XY, null, null, null);
+        expected.setXY(0.4f, 0.5f);
+        assertEquals(expected, response.getState());
+    }
+
+    @Test
+    public void testCreateLightStateJSONWithXY() {
+        LightState state = new LightState(true, null, null, 200, null, LightState.MODE_XY, null, null, null);
+        state.setXY(0.40004f, 0.5f);
+        JSONObject json = new HueBridgeParser().createLightStateJSON(state);
+        assertEquals(0.4, json.getJSONArray("xy").getDouble(0), 0.0);
+        assertEquals(0.5, json.getJSONArray("xy").getDouble(1), 0.0);
+        assertEquals(200, json.getInt("bri"));
+        assertFalse(json.has("hue"));
+    }
+
+    @Test
+    public void testGetLightStateAttribute() {
+        assertEquals("bri", HueBridgeParser.getLightStateAttribute("1", "/lights/1/state/bri"));
+        assertEquals("on", HueBridgeParser.getLightStateAttribute("12", "/lights/12/state/on"));
+        assertNull(HueBridgeParser.getLightStateAttribute("1", "/lights/12/state/on"));
+        assertNull(HueBridgeParser.getLightStateAttribute("1", "/lights/1/name"));
+        assertNull(HueBridgeParser.getLightStateAttribute("1", "/groups/1/action/on"));
+        assertNull(HueBridgeParser.getLightStateAttribute("1", null));
+    }
+
+    @Test
+    public void testParseGetAllGroups() throws HueException {
+        HueBridgeParser parser = new HueBridgeParser();
+        GetAllGroupsResponse response = (GetAllGroupsResponse)parser.parseGetAllGroupsResponse(200, "{\"1\":{\"name\":\"Living Room\",\"lights\":[\"1\",\"2\"],\"type\":\"LightGroup\",\"action\":{\"on\":true,\"bri\":254}}}");
+        assertEquals(1, response.getGroups().size());
+        Group g = response.getGroups().iterator().next();
+        assertEquals("1", g.getId());
+        assertEquals("Living Room", g.getName());
+        assertEquals(2, g.getLights().size());
+    }
+
+    @Test
+    public void testParseCreateGroup() throws HueException {
+        HueBridgeParser parser = new HueBridgeParser();
+        CreateGroupResponse response = (CreateGroupResponse)parser.parseCreateGroupResponse("hobson-1", java.util.Arrays.asList("1", "2"), 200, "[{\"success\":{\"id\":\"3\"}}]");
+        assertEquals("3", response.getGroup().getId());
+        assertEquals("hobson-1", response.getGroup().getName());
+        assertEquals(2, response.getGroup().getLights().size());
+    }
+
+    @Test
+    public void testParseSetGroupActionResponse() throws HueException {
+        HueBridgeParser parser = new HueBridgeParser();
+        assertTrue(parser.parseSetGroupActionResponse(200, "[{\"success\":{\"/groups/0/action/on\":false}}]") instanceof SetGroupActionResponse);
+        assertTrue(parser.parseSetGroupActionResponse(200, "[{\"error\":{\"type\":3,\"address\":\"/groups/9\",\"description\":\"resource not available\"}}]") instanceof ErrorResponse);
+    }
+
+    @Test
+    public void testParseGetFullStateResponse() throws HueException {
+        HueBridgeParser parser = new HueBridgeParser();
+        GetFullStateResponse response = (GetFullStateResponse)parser.parseGetFullStateResponse(200, "{\"lights\":{\"1\":{\"state\":{\"on\":true,\"bri\":144,\"hue\":13088,\"sat\":212,\"ct\":467,\"effect\":\"none\",\"colormode\":\"hs\",\"reachable\":true},\"name\":\"Hue Lamp 1\",\"modelid\":\"LCT001\"}},\"groups\":{\"1\":{\"name\":\"Living Room\",\"lights\":[\"1\"],\"action\":{\"on\":true}}},\"config\":{\"name\":\"Philips hue\",\"whitelist\":{\"abc\":{\"name\":\"hobson\"}}},\"schedules\":{}}");
+        assertEquals(1, response.getLights().size());
+        Light l = response.getLights().iterator().next();
+        assertEquals("1", l.getId());
+        assertEquals("Hue Lamp 1", l.getName());
+        assertTrue(l.getState().getOn());
+        assertEquals(1, response.getGroups().size());
+        assertEquals("Living Room", response.getGroups().iterator().next().getName());
+
+        response = (GetFullStateResponse)parser.parseGetFullStateResponse(200, "{\"lights\":{}}");
+        assertEquals(0, response.getLights().size());
+        assertNull(response.getGroups());
+
+        assertTrue(parser.parseGetFullStateResponse(200, "[{\"error\":{\"type\":1,\"address\":\"/\",\"description\":\"unauthorized user\"}}]") instanceof ErrorResponse);
     }
 }
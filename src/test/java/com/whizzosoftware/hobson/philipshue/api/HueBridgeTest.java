@@ -1,11 +1,18 @@
 package com.whizzosoftware.hobson.philipshue.api;
 
+import com.whizzosoftware.hobson.api.plugin.http.Cookie;
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
 import com.whizzosoftware.hobson.philipshue.api.dto.*;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public class HueBridgeTest {
     @Test
@@ -83,6 +90,7 @@ public class HueBridgeTest {
         String s = "[{\"success\":{\"/lights/1/state/bri\":200}},{\"success\":{\"/lights/1/state/on\":true}},{\"success\":{\"/lights/1/state/hue\":50000}}]";
         BridgeResponse response = bridge.parseResponse(request, 200, s);
         assertTrue(response instanceof SetLightStateResponse);
+        assertEquals("light1", ((SetLightStateResponse)response).getId());
     }
 
     @Test
@@ -95,4 +103,67 @@ public class HueBridgeTest {
         assertTrue(response instanceof ErrorResponse);
         assertEquals(1, (int)((ErrorResponse)response).getType());
     }
+
+    @Test
+    public void testGetAllLightsUnchangedResponseNotParsed() throws HueException {
+        HueBridge bridge = new HueBridge("host", "device", "thedudeabides");
+        String s1 = "{\"1\":{\"state\":{\"on\":true,\"bri\":144,\"hue\":13088,\"sat\":212,\"ct\":467,\"effect\":\"none\",\"colormode\":\"hs\",\"reachable\":true},\"name\":\"Hue Lamp 1\",\"modelid\":\"LCT001\"}}";
+        String s2 = "{\"1\":{\"state\":{\"on\":false,\"bri\":144,\"hue\":13088,\"sat\":212,\"ct\":467,\"effect\":\"none\",\"colormode\":\"hs\",\"reachable\":true},\"name\":\"Hue Lamp 1\",\"modelid\":\"LCT001\"}}";
+
+        GetAllLightsResponse r1 = (GetAllLightsResponse)bridge.parseResponse(new GetAllLightsRequest(), 200, s1);
+        assertEquals(1, bridge.getAllLightsParsedCount());
+        assertEquals(0, bridge.getAllLightsUnchangedCount());
+
+        // an identical body re-uses the previously parsed lights
+        GetAllLightsRequest request = new GetAllLightsRequest();
+        request.setSequence(5);
+        GetAllLightsResponse r2 = (GetAllLightsResponse)bridge.parseResponse(request, 200, new String(s1));
+        assertNotSame(r1, r2);
+        assertSame(r1.getLights(), r2.getLights());
+        assertEquals(5, r2.getSequence());
+        assertEquals(1, bridge.getAllLightsParsedCount());
+        assertEquals(1, bridge.getAllLightsUnchangedCount());
+
+        // a different body is parsed
+        GetAllLightsResponse r3 = (GetAllLightsResponse)bridge.parseResponse(new GetAllLightsRequest(), 200, s2);
+        assertFalse(r3.getLights().iterator().next().getState().getOn());
+        assertEquals(2, bridge.getAllLightsParsedCount());
+
+        // an error clears the previous body
+        bridge.parseResponse(new GetAllLightsRequest(), 200, "[{\"error\":{\"type\":1,\"address\":\"address\",\"description\":\"description\"}}]");
+        bridge.parseResponse(new GetAllLightsRequest(), 200, s2);
+        assertEquals(4, bridge.getAllLightsParsedCount());
+        assertEquals(1, bridge.getAllLightsUnchangedCount());
+    }
+
+    @Test
+    public void testRequestUrisAreReused() throws HueException {
+        HueBridge bridge = new HueBridge("host", "device", "thedudeabides");
+        RecordingHttpContext http = new RecordingHttpContext();
+        LightState state = new LightState(true, null, null, null, null, null, null, null, null);
+
+        bridge.sendGetAllLightsRequest(http, new GetAllLightsRequest());
+        bridge.sendGetAllLightsRequest(http, new GetAllLightsRequest());
+        bridge.sendSetLightStateRequest(http, new SetLightStateRequest("1", state));
+        bridge.sendSetLightStateRequest(http, new SetLightStateRequest("1", state));
+        bridge.sendGetLightAttributeAndStateRequest(http, new GetLightAttributeAndStateRequest("1"));
+        bridge.sendGetLightAttributeAndStateRequest(http, new GetLightAttributeAndStateRequest("1"));
+
+        assertEquals("http://host/api/thedudeabides/lights", http.uris.get(0).toString());
+        assertSame(http.uris.get(0), http.uris.get(1));
+        assertEquals("http://host/api/thedudeabides/lights/1/state", http.uris.get(2).toString());
+        assertSame(http.uris.get(2), http.uris.get(3));
+        assertEquals("http://host/api/thedudeabides/lights/1", http.uris.get(4).toString());
+        assertSame(http.uris.get(4), http.uris.get(5));
+        assertEquals(3, bridge.getUriBuildCount());
+    }
+
+    private class RecordingHttpContext implements HttpContext {
+        final List<URI> uris = new ArrayList<>();
+
+        @Override
+        public void sendHttpRequest(URI uri, HttpRequest.Method method, Map<String, String> headers, Collection<Cookie> cookies, byte[] body, Object context) {
+            uris.add(uri);
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HueEventParserTest {
+    @Test
+    public void testParseOnAndBrightness() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventParser parser = new HueEventParser();
+        assertEquals(2, parser.parse("[{\"creationtime\":\"2016-10-18T17:04:55Z\",\"data\":[{\"id\":\"3c1f1b9e-7b5a-4c7b-a8e5-0b6e2c7d1f00\",\"id_v1\":\"/lights/1\",\"on\":{\"on\":true},\"owner\":{\"rid\":\"abc\",\"rtype\":\"device\"},\"type\":\"light\"},{\"dimming\":{\"brightness\":50.0},\"id\":\"def\",\"id_v1\":\"/lights/2\",\"type\":\"light\"}],\"id\":\"e1\",\"type\":\"update\"}]", l));
+        assertEquals(2, l.ids.size());
+        assertEquals("1", l.ids.get(0));
+        assertTrue(l.states.get(0).getOn());
+        assertFalse(l.states.get(0).hasBrightness());
+        assertEquals("2", l.ids.get(1));
+        assertNull(l.states.get(1).getOn());
+        assertEquals(127, (int)l.states.get(1).getBrightness());
+    }
+
+    @Test
+    public void testParseColor() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventParser parser = new HueEventParser();
+        parser.parse("[{\"type\":\"update\",\"data\":[{\"type\":\"light\",\"id_v1\":\"/lights/1\",\"color_temperature\":{\"mirek\":366,\"mirek_valid\":true}},{\"type\":\"light\",\"id_v1\":\"/lights/2\",\"color_temperature\":{\"mirek\":null,\"mirek_valid\":false},\"color\":{\"xy\":{\"x\":0.4,\"y\":0.5}}}]}]", l);
+        assertEquals(2, l.states.size());
+        assertEquals(LightState.MODE_CT, l.states.get(0).getColorMode());
+        assertEquals(366, (int)l.states.get(0).getColorTemperature());
+        assertEquals(LightState.MODE_XY, l.states.get(1).getColorMode());
+        assertEquals(0.4f, l.states.get(1).getX(), 0.0f);
+        assertEquals(0.5f, l.states.get(1).getY(), 0.0f);
+        assertNull(l.states.get(1).getColorTemperature());
+
+        // a color without coordinates is only flagged
+        l = new MockEventListener();
+        parser.parse("[{\"type\":\"update\",\"data\":[{\"type\":\"light\",\"id_v1\":\"/lights/1\",\"color\":{\"gamut_type\":\"C\"}}]}]", l);
+        assertEquals(LightState.MODE_XY, l.states.get(0).getColorMode());
+        assertFalse(l.states.get(0).hasXY());
+    }
+
+    @Test
+    public void testParseConnectivity() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventParser parser = new HueEventParser();
+        parser.parse("[{\"type\":\"update\",\"data\":[{\"type\":\"zigbee_connectivity\",\"id_v1\":\"/lights/4\",\"status\":\"connectivity_issue\"},{\"type\":\"zigbee_connectivity\",\"id_v1\":\"/lights/5\",\"status\":\"connected\"}]}]", l);
+        assertEquals(2, l.states.size());
+        assertFalse(l.states.get(0).isReachable());
+        assertTrue(l.states.get(1).isReachable());
+        assertNull(l.states.get(1).getOn());
+    }
+
+    @Test
+    public void testIgnoresOtherResources() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventParser parser = new HueEventParser();
+        assertEquals(0, parser.parse("[{\"type\":\"update\",\"data\":[{\"type\":\"grouped_light\",\"id_v1\":\"/groups/1\",\"on\":{\"on\":true}},{\"type\":\"button\",\"id_v1\":\"/sensors/5\",\"button\":{\"last_event\":\"short_release\"}},{\"type\":\"light\",\"id_v1\":\"/lights/1\",\"owner\":{\"rid\":\"abc\"}}]},{\"type\":\"add\",\"data\":[{\"type\":\"light\",\"id_v1\":\"/lights/9\",\"on\":{\"on\":true}}]}]", l));
+        assertEquals(0, l.states.size());
+    }
+
+    @Test
+    public void testParseInvalidJSON() {
+        try {
+            new HueEventParser().parse("[{\"type\":\"update\",\"data\":[{", new MockEventListener());
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+    }
+
+    static class MockEventListener implements HueEventListener {
+        final List<String> ids = new ArrayList<>();
+        final List<LightState> states = new ArrayList<>();
+
+        @Override
+        public void onEventStreamConnected() {
+        }
+
+        @Override
+        public void onLightEvent(String lightId, LightState state) {
+            ids.add(lightId);
+            states.add(state);
+        }
+
+        @Override
+        public void onEventStreamDisconnected(Throwable t) {
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import static org.junit.Assert.*;
+
+public class HueEventStreamTest {
+    private static final String EVENT = "[{\"type\":\"update\",\"data\":[{\"type\":\"light\",\"id_v1\":\"/lights/1\",\"on\":{\"on\":false}}]}]";
+
+    @Test
+    public void testRead() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventStream stream = new HueEventStream(new URI("http://localhost/eventstream/clip/v2"), "user", l);
+        stream.read(new StringReader(": hi\n\nid: 1:0\ndata: " + EVENT + "\n\nid: 2:0\ndata: [{\"type\":\"update\",\ndata: \"data\":[]}]\n\ndata: {bad\n\n"));
+        assertEquals(1, l.events.size());
+        assertEquals(1, stream.getEventCount());
+        // the multi-line payload is joined back together; only the invalid one fails
+        assertEquals(1, stream.getErrorCount());
+    }
+
+    @Test
+    public void testStreamAgainstLocalServer() throws Exception {
+        MockEventServer server = new MockEventServer();
+        server.start();
+        MockEventListener l = new MockEventListener();
+        HueEventStream stream = new HueEventStream(new URI("http://127.0.0.1:" + server.getPort() + "/eventstream/clip/v2"), "abcdefghijkl", l);
+        stream.setMinReconnectDelay(10);
+        try {
+            stream.start();
+            assertEquals("connected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertTrue(stream.isConnected());
+
+            server.send(": hi\n\nid: 1634576695:0\ndata: " + EVENT + "\n\n");
+            String id = l.events.poll(5, TimeUnit.SECONDS);
+            assertEquals("1", id);
+            assertFalse(l.states.get(0).getOn());
+
+            // dropping the connection should be reported and the stream should resume where it left off
+            server.disconnect();
+            assertEquals("disconnected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertEquals("connected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertEquals(2, stream.getConnectCount());
+            List<String> requests = server.getRequests();
+            assertTrue(requests.get(0).startsWith("GET /eventstream/clip/v2 "));
+            assertTrue(requests.get(0).toLowerCase().contains("hue-application-key: abcdefghijkl"));
+            assertFalse(requests.get(0).contains("Last-Event-ID"));
+            assertTrue(requests.get(1).contains("Last-Event-ID: 1634576695:0"));
+        } finally {
+            stream.stop();
+            server.stop();
+        }
+        assertFalse(stream.isConnected());
+    }
+
+    @Test
+    public void testStreamOverHttps() throws Exception {
+        SSLContext ssl = createBridgeSSLContext();
+        MockEventServer server = new MockEventServer(ssl.getServerSocketFactory().createServerSocket(0, 1, InetAddress.getByName("127.0.0.1")));
+        server.start();
+        MockEventListener l = new MockEventListener();
+        final BlockingQueue<String> pinned = new LinkedBlockingQueue<>();
+        BridgeCertificateTrust trust = new BridgeCertificateTrust(null, new BridgeCertificateTrust.Listener() {
+            @Override
+            public void onCertificatePinned(String fingerprint) {
+                pinned.add(fingerprint);
+            }
+        });
+        HueEventStream stream = new HueEventStream(new URI("https://127.0.0.1:" + server.getPort() + "/eventstream/clip/v2"), "abcdefghijkl", l, trust);
+        stream.setMinReconnectDelay(10);
+        try {
+            stream.start();
+            // the bridge's certificate is trusted the first time and reported so it can be saved
+            assertEquals("connected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertEquals(BridgeCertificateTrustTest.FINGERPRINT, pinned.poll(5, TimeUnit.SECONDS));
+
+            server.send("id: 1:0\ndata: " + EVENT + "\n\n");
+            assertEquals("1", l.events.poll(5, TimeUnit.SECONDS));
+
+            // reconnecting checks the certificate against the pinned one
+            server.disconnect();
+            assertEquals("disconnected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertEquals("connected", l.connections.poll(5, TimeUnit.SECONDS));
+            assertTrue(pinned.isEmpty());
+        } finally {
+            stream.stop();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStreamOverHttpsRejectsOtherCertificate() throws Exception {
+        SSLContext ssl = createBridgeSSLContext();
+        MockEventServer server = new MockEventServer(ssl.getServerSocketFactory().createServerSocket(0, 1, InetAddress.getByName("127.0.0.1")));
+        server.start();
+        MockEventListener l = new MockEventListener();
+        BridgeCertificateTrust trust = new BridgeCertificateTrust("00:11:22:33", null);
+        HueEventStream stream = new HueEventStream(new URI("https://127.0.0.1:" + server.getPort() + "/eventstream/clip/v2"), "abcdefghijkl", l, trust);
+        stream.setMinReconnectDelay(10);
+        try {
+            stream.start();
+            assertNull(l.connections.poll(1, TimeUnit.SECONDS));
+            assertFalse(stream.isConnected());
+            assertEquals("00112233", trust.getFingerprint());
+        } finally {
+            stream.stop();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testHttpsRequiresTrust() throws Exception {
+        MockEventListener l = new MockEventListener();
+        HueEventStream stream = new HueEventStream(new URI("https://127.0.0.1:1/eventstream/clip/v2"), "abcdefghijkl", l);
+        stream.setMinReconnectDelay(10);
+        try {
+            stream.start();
+            assertNull(l.connections.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            stream.stop();
+        }
+    }
+
+    /**
+     * Creates a TLS context that presents a bridge-like certificate (self-signed and issued to a bridge ID).
+     */
+    static SSLContext createBridgeSSLContext() throws Exception {
+        KeyStore ks = KeyStore.getInstance("JKS");
+        InputStream is = HueEventStreamTest.class.getResourceAsStream("bridge.jks");
+        try {
+            ks.load(is, "password".toCharArray());
+        } finally {
+            is.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, "password".toCharArray());
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), null, null);
+        return ctx;
+    }
+
+    /**
+     * A minimal stand-in for the bridge's event stream endpoint that serves one client at a time.
+     */
+    static class MockEventServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private final BlockingQueue<OutputStream> clients = new LinkedBlockingQueue<>();
+        private volatile Socket socket;
+        private Thread thread;
+
+        MockEventServer() throws IOException {
+            this(new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1")));
+        }
+
+        MockEventServer(ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        List<String> getRequests() {
+            return requests;
+        }
+
+        void start() {
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void send(String s) throws Exception {
+            OutputStream os = clients.poll(5, TimeUnit.SECONDS);
+            assertNotNull(os);
+            os.write(s.getBytes("UTF-8"));
+            os.flush();
+            clients.add(os);
+        }
+
+        void disconnect() throws Exception {
+            assertNotNull(clients.poll(5, TimeUnit.SECONDS));
+            socket.close();
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+            if (socket != null) {
+                socket.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    Socket s = serverSocket.accept();
+                    socket = s;
+                    BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+                    StringBuilder sb = new StringBuilder();
+                    String line;
+                    while ((line = r.readLine()) != null && !line.isEmpty()) {
+                        sb.append(line).append("\n");
+                    }
+                    requests.add(sb.toString());
+                    OutputStream os = s.getOutputStream();
+                    os.write("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nConnection: close\r\n\r\n".getBytes("UTF-8"));
+                    os.flush();
+                    clients.add(os);
+                }
+            } catch (IOException ignored) {
+                // server stopped (or a client rejected its certificate)
+            }
+        }
+    }
+
+    static class MockEventListener implements HueEventListener {
+        final BlockingQueue<String> connections = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final List<LightState> states = Collections.synchronizedList(new ArrayList<LightState>());
+
+        @Override
+        public void onEventStreamConnected() {
+            connections.add("connected");
+        }
+
+        @Override
+        public void onLightEvent(String lightId, LightState state) {
+            states.add(state);
+            events.add(lightId);
+        }
+
+        @Override
+        public void onEventStreamDisconnected(Throwable t) {
+            connections.add("disconnected");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HueJsonReaderTest {
+    @Test
+    public void testReadObject() throws HueException {
+        HueJsonReader r = new HueJsonReader();
+        r.reset(" { \"a\" : 1, \"b\":\"two\", \"c\":[1, {\"x\":[]}, \"]\"], \"d\":true, \"e\":null, \"f\":-2.5e1, \"g\":\"h\\u00e9\\n\" } ");
+        r.beginObject();
+        assertTrue(r.nextMember());
+        assertEquals("a", r.nextName());
+        assertEquals(1, r.nextInt());
+        assertTrue(r.nextMember());
+        assertEquals(-1, r.nextName(new String[] {"a", "c"}));
+        assertEquals("two", r.nextString());
+        assertTrue(r.nextMember());
+        assertEquals(1, r.nextName(new String[] {"a", "c"}));
+        r.skipValue();
+        assertTrue(r.nextMember());
+        assertEquals("d", r.nextName());
+        assertTrue(r.nextBoolean());
+        assertTrue(r.nextMember());
+        assertEquals("e", r.nextName());
+        assertTrue(r.nextNull());
+        assertTrue(r.nextMember());
+        assertEquals("f", r.nextName());
+        assertEquals(-25, r.nextInt());
+        assertTrue(r.nextMember());
+        assertEquals("g", r.nextName());
+        assertEquals("h\u00e9\n", r.nextString());
+        assertFalse(r.nextMember());
+        assertEquals(0, r.peek());
+    }
+
+    @Test
+    public void testReadKnownStrings() throws HueException {
+        String[] values = {"hs", "ct"};
+        HueJsonReader r = new HueJsonReader();
+        r.reset("[\"ct\", \"xy\", null, \"c\\u0074\"]");
+        r.beginArray();
+        assertTrue(r.nextElement());
+        assertSame(values[1], r.nextString(values));
+        assertTrue(r.nextElement());
+        assertEquals("xy", r.nextString(values));
+        assertTrue(r.nextElement());
+        assertNull(r.nextString(values));
+        assertTrue(r.nextElement());
+        assertSame(values[1], r.nextString(values));
+        assertFalse(r.nextElement());
+    }
+
+    @Test
+    public void testNextFloat() throws HueException {
+        HueJsonReader r = new HueJsonReader();
+        String[] values = {"0", "1", "-1", "0.5128", "0.4147", "0.700", "0.0001", "-0.3227", "123.456", "1e-4", "2.5E3", "0.12345678901234567890", "0.0000000000000000000000001"};
+        for (String v : values) {
+            r.reset("[" + v + "]");
+            r.beginArray();
+            r.nextElement();
+            assertEquals(v, (float)Double.parseDouble(v), r.nextFloat(), 0.0f);
+            assertFalse(r.nextElement());
+        }
+
+        // plain decimals match the String conversion
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < 10000; i++) {
+            String v = Float.toString(random.nextFloat());
+            r.reset(v);
+            assertEquals(v, (float)Double.parseDouble(v), r.nextFloat(), 0.0f);
+        }
+
+        r.reset("x");
+        try {
+            r.nextFloat();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+    }
+
+    @Test
+    public void testSkipAndRewind() throws HueException {
+        HueJsonReader r = new HueJsonReader();
+        r.reset("{\"a\": {\"b\":[1,2]} , \"c\":3}");
+        r.beginObject();
+        assertTrue(r.nextMember());
+        assertEquals("a", r.nextName());
+        int start = r.position();
+        r.skipValue();
+        int end = r.position();
+        assertEquals("{\"b\":[1,2]} ", r.substring(start, end));
+        assertEquals("{\"b\":[1,2]} ".hashCode(), r.hashRange(start, end));
+        assertTrue(r.rangeEquals(start, end, "{\"b\":[1,2]} "));
+        assertFalse(r.rangeEquals(start, end, "{\"b\":[1,2]}"));
+
+        // the skipped value can be read again
+        r.rewind(start);
+        r.beginObject();
+        assertTrue(r.nextMember());
+        assertEquals("b", r.nextName());
+        r.skipValue();
+        assertFalse(r.nextMember());
+        assertTrue(r.nextMember());
+        assertEquals("c", r.nextName());
+        assertEquals(3, r.nextInt());
+        assertFalse(r.nextMember());
+    }
+
+    @Test
+    public void testReadEmpty() throws HueException {
+        HueJsonReader r = new HueJsonReader();
+        r.reset("{}");
+        r.beginObject();
+        assertFalse(r.nextMember());
+        r.reset("[]");
+        r.beginArray();
+        assertFalse(r.nextElement());
+    }
+
+    @Test
+    public void testIntRange() throws Exception {
+        HueJsonReader r = new HueJsonReader();
+        r.reset("[2147483647,-2147483648]");
+        r.beginArray();
+        assertTrue(r.nextElement());
+        assertEquals(Integer.MAX_VALUE, r.nextInt());
+        assertTrue(r.nextElement());
+        assertEquals(Integer.MIN_VALUE, r.nextInt());
+        assertFalse(r.nextElement());
+    }
+
+    @Test
+    public void testMalformed() {
+        HueJsonReader r = new HueJsonReader();
+        r.reset("{\"a\":");
+        try {
+            r.beginObject();
+            r.nextMember();
+            r.nextName();
+            r.skipValue();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+
+        r.reset("\"abc");
+        try {
+            r.nextString();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+
+        r.reset("x");
+        try {
+            r.nextInt();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+
+        r.reset("2147483648");
+        try {
+            r.nextInt();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+
+        r.reset("{\"a\" 1}");
+        try {
+            r.beginObject();
+            r.nextMember();
+            r.nextName();
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+    }
+}
@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.api.plugin.http.HttpRequest;
+import com.whizzosoftware.hobson.api.plugin.http.HttpResponse;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KeepAliveHttpContextTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    private MockBridgeServer server;
+    private KeepAliveHttpContext ctx;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockBridgeServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (ctx != null) {
+            ctx.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 2);
+        for (int i = 0; i < 5; i++) {
+            BridgeHttpResponse r = ctx.execute(server.uri("/api/user/lights"), HttpRequest.Method.GET, null, null);
+            assertEquals(200, r.getStatusCode());
+            assertEquals("{\"path\":\"/api/user/lights\"}", r.getBody());
+            assertEquals("application/json", r.getHeader("Content-Type").iterator().next());
+        }
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(5, ctx.getRequestCount());
+    }
+
+    @Test
+    public void testReuseCounts() throws Exception {
+        Assume.assumeTrue(KeepAliveHttpContext.isReuseTracked());
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        for (int i = 0; i < 3; i++) {
+            ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        }
+        assertEquals(1, ctx.getConnectCount());
+        assertEquals(2, ctx.getReuseCount());
+
+        // connections the bridge closes have to be replaced
+        ctx.execute(server.uri("/close"), HttpRequest.Method.GET, null, null);
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        server.dropConnections();
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        assertEquals(server.getConnectionCount(), ctx.getConnectCount());
+        assertEquals(6, ctx.getConnectCount() + ctx.getReuseCount());
+    }
+
+    @Test
+    public void testJdkConnectionLimit() {
+        String keepAlive = System.getProperty("http.keepAlive");
+        String maxConnections = System.getProperty("http.maxConnections");
+        try {
+            System.clearProperty("http.keepAlive");
+            System.clearProperty("http.maxConnections");
+            assertEquals(5, KeepAliveHttpContext.getJdkConnectionLimit());
+            System.setProperty("http.maxConnections", "8");
+            assertEquals(8, KeepAliveHttpContext.getJdkConnectionLimit());
+            // the JDK ignores a limit that isn't positive
+            System.setProperty("http.maxConnections", "0");
+            assertEquals(5, KeepAliveHttpContext.getJdkConnectionLimit());
+            System.setProperty("http.keepAlive", "false");
+            assertEquals(0, KeepAliveHttpContext.getJdkConnectionLimit());
+        } finally {
+            restoreProperty("http.keepAlive", keepAlive);
+            restoreProperty("http.maxConnections", maxConnections);
+        }
+    }
+
+    @Test
+    public void testRequestFormat() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        ctx.execute(server.uri("/api/user/lights/1/state"), HttpRequest.Method.PUT, Collections.singletonMap("X-Test", "1"), "{\"on\":true}".getBytes("UTF-8"));
+        String req = server.getRequests().get(0);
+        assertTrue(req.startsWith("PUT /api/user/lights/1/state HTTP/1.1\r\n"));
+        assertTrue(req.contains("Host: 127.0.0.1:" + server.getPort() + "\r\n"));
+        assertTrue(req.contains("X-Test: 1\r\n"));
+        assertTrue(req.contains("Content-Type: application/json\r\n"));
+        assertTrue(req.contains("Content-Length: 11\r\n"));
+        assertTrue(req.endsWith("\r\n\r\n{\"on\":true}"));
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        BridgeHttpResponse r = ctx.execute(server.uri("/chunked"), HttpRequest.Method.GET, null, null);
+        assertEquals("{\"a\":1,\"b\":2}", r.getBody());
+        // the connection is still usable afterwards
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void testConnectionClose() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        ctx.execute(server.uri("/close"), HttpRequest.Method.GET, null, null);
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    @Test
+    public void testStaleConnectionRetry() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+
+        // the bridge drops the idle connection without telling us
+        server.dropConnections();
+        BridgeHttpResponse r = ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        assertEquals(200, r.getStatusCode());
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    @Test
+    public void testPoolIsBounded() throws Exception {
+        server.setResponseDelay(50);
+        MockHandler h = new MockHandler();
+        ctx = new KeepAliveHttpContext(h, DIRECT, 2);
+        for (int i = 0; i < 10; i++) {
+            ctx.sendHttpRequest(server.uri("/api"), HttpRequest.Method.GET, null, null, null, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(h.responses.poll(5, TimeUnit.SECONDS));
+        }
+        assertTrue(server.getConnectionCount() <= 2);
+        assertTrue(server.getMaxConcurrent() <= 2);
+        assertEquals(10, ctx.getRequestCount());
+    }
+
+    @Test
+    public void testCallbacksUseExecutor() throws Exception {
+        final ExecutorService callbacks = Executors.newSingleThreadExecutor();
+        try {
+            final Thread callbackThread = callbacks.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            final BlockingQueue<Thread> threads = new LinkedBlockingQueue<>();
+            ctx = new KeepAliveHttpContext(new MockHandler() {
+                @Override
+                public void onHttpResponse(HttpResponse response, Object context) {
+                    threads.add(Thread.currentThread());
+                }
+
+                @Override
+                public void onHttpRequestFailure(Throwable cause, Object context) {
+                    threads.add(Thread.currentThread());
+                }
+            }, callbacks, 1);
+
+            ctx.sendHttpRequest(server.uri("/api"), HttpRequest.Method.GET, null, null, null, "ctx");
+            assertSame(callbackThread, threads.poll(5, TimeUnit.SECONDS));
+
+            ctx.sendHttpRequest(new URI("https://127.0.0.1/api"), HttpRequest.Method.GET, null, null, null, "ssl");
+            assertSame(callbackThread, threads.poll(5, TimeUnit.SECONDS));
+        } finally {
+            callbacks.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        ctx = new KeepAliveHttpContext(null, DIRECT, 1);
+        BridgeHttpResponse r = ctx.execute(server.uri("/missing"), HttpRequest.Method.GET, null, null);
+        assertEquals(404, r.getStatusCode());
+        assertEquals("Not Found", r.getStatusText());
+        assertEquals("{\"path\":\"/missing\"}", r.getBody());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        MockHandler h = new MockHandler();
+        ctx = new KeepAliveHttpContext(h, DIRECT, 1);
+        int port = server.getPort();
+        server.stop();
+        ctx.sendHttpRequest(new URI("http://127.0.0.1:" + port + "/api"), HttpRequest.Method.GET, null, null, null, "ctx");
+        assertEquals("ctx", h.failures.poll(5, TimeUnit.SECONDS));
+
+        ctx.sendHttpRequest(new URI("https://127.0.0.1/api"), HttpRequest.Method.GET, null, null, null, "ssl");
+        assertEquals("ssl", h.failures.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, ctx.getFailureCount());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        MockHandler h = new MockHandler();
+        ctx = new KeepAliveHttpContext(h, DIRECT, 1);
+        ctx.execute(server.uri("/api"), HttpRequest.Method.GET, null, null);
+        ctx.close();
+        ctx.sendHttpRequest(server.uri("/api"), HttpRequest.Method.GET, null, null, null, "ctx");
+        assertEquals("ctx", h.failures.poll(5, TimeUnit.SECONDS));
+    }
+
+    private static void restoreProperty(String name, String value) {
+        if (value != null) {
+            System.setProperty(name, value);
+        } else {
+            System.clearProperty(name);
+        }
+    }
+
+    static class MockHandler implements HttpResponseHandler {
+        final BlockingQueue<Object> responses = new LinkedBlockingQueue<>();
+        final BlockingQueue<Object> failures = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onHttpResponse(HttpResponse response, Object context) {
+            responses.add(context);
+        }
+
+        @Override
+        public void onHttpRequestFailure(Throwable cause, Object context) {
+            failures.add(context);
+        }
+    }
+
+    /**
+     * A minimal keep-alive HTTP server standing in for the bridge. It echoes the request path back as JSON and
+     * handles a few special paths to exercise chunked responses, error responses and connection closes.
+     */
+    static class MockBridgeServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private volatile int maxConcurrent;
+        private volatile long responseDelay;
+
+        MockBridgeServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        }
+
+        URI uri(String path) throws Exception {
+            return new URI("http://127.0.0.1:" + getPort() + path);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return sockets.size();
+        }
+
+        int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        List<String> getRequests() {
+            return requests;
+        }
+
+        void setResponseDelay(long responseDelay) {
+            this.responseDelay = responseDelay;
+        }
+
+        void start() {
+            Thread t = new Thread(this);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        void dropConnections() throws IOException {
+            synchronized (sockets) {
+                for (Socket s : sockets) {
+                    s.close();
+                }
+            }
+        }
+
+        void stop() throws IOException {
+            serverSocket.close();
+            dropConnections();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket s = serverSocket.accept();
+                    sockets.add(s);
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(s);
+                        }
+                    });
+                    t.setDaemon(true);
+                    t.start();
+                }
+            } catch (IOException ignored) {
+                // server stopped
+            }
+        }
+
+        private void serve(Socket s) {
+            int c = concurrent.incrementAndGet();
+            maxConcurrent = Math.max(maxConcurrent, c);
+            try {
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = s.getOutputStream();
+                String head;
+                while ((head = readHead(in)) != null) {
+                    int length = 0;
+                    for (String line : head.split("\r\n")) {
+                        if (line.toLowerCase().startsWith("content-length:")) {
+                            length = Integer.parseInt(line.substring(15).trim());
+                        }
+                    }
+                    byte[] body = new byte[length];
+                    int off = 0;
+                    while (off < length) {
+                        off += in.read(body, off, length - off);
+                    }
+                    requests.add(head + new String(body, "UTF-8"));
+                    if (responseDelay > 0) {
+                        Thread.sleep(responseDelay);
+                    }
+
+                    String path = head.substring(head.indexOf(' ') + 1, head.indexOf(' ', head.indexOf(' ') + 1));
+                    if ("/chunked".equals(path)) {
+                        out.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n7\r\n{\"a\":1,\r\n6\r\n\"b\":2}\r\n0\r\n\r\n".getBytes("UTF-8"));
+                    } else {
+                        byte[] b = ("{\"path\":\"" + path + "\"}").getBytes("UTF-8");
+                        boolean close = "/close".equals(path);
+                        String status = "/missing".equals(path) ? "404 Not Found" : "200 OK";
+                        out.write(("HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nContent-Length: " + b.length + "\r\n" + (close ? "Connection: close\r\n" : "") + "\r\n").getBytes("UTF-8"));
+                        out.write(b);
+                        if (close) {
+                            out.flush();
+                            s.close();
+                            return;
+                        }
+                    }
+                    out.flush();
+                }
+            } catch (Exception ignored) {
+                // connection dropped
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        private String readHead(InputStream in) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != -1) {
+                baos.write(c);
+                byte[] b = baos.toByteArray();
+                int n = b.length;
+                if (n >= 4 && b[n - 4] == '\r' && b[n - 3] == '\n' && b[n - 2] == '\r' && b[n - 1] == '\n') {
+                    return new String(b, "UTF-8");
+                }
+            }
+            return null;
+        }
+    }
+}
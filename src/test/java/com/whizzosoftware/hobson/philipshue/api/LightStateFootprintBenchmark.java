@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.CompactLightState;
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+/**
+ * Reports the retained heap per light for the state kept by the parser, RunningState and HueLight: a LightState
+ * (with boxed fields) compared to a CompactLightState. The states are created the way the parser creates them, with
+ * realistic values (which mostly fall outside the Integer cache). This is not run as part of the build; run it with:
+ *
+ * java -cp target/classes:target/test-classes:[dependencies] com.whizzosoftware.hobson.philipshue.api.LightStateFootprintBenchmark
+ *
+ * The figures are heap deltas so they are approximate; run with a fixed heap size (e.g. -Xms512m -Xmx512m) for
+ * stable results.
+ *
+ * @author Dan Noguerol
+ */
+public class LightStateFootprintBenchmark {
+    private static final int COUNT = 200000;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%-20s %15s", "type", "bytes/light"));
+        for (int i = 0; i < 2; i++) {
+            // the first round warms up
+            long ls = measureLightState();
+            long cls = measureCompactLightState();
+            if (i > 0) {
+                System.out.println(String.format("%-20s %15d", "LightState", ls));
+                System.out.println(String.format("%-20s %15d", "CompactLightState", cls));
+            }
+        }
+    }
+
+    private static long measureLightState() {
+        Object[] states = new Object[COUNT];
+        long start = getUsedMemory();
+        for (int i = 0; i < COUNT; i++) {
+            states[i] = new LightState(i % 2 == 0, 1000 + i % 60000, 128 + i % 126, 128 + i % 126, 153 + i % 347, LightState.MODE_HS, "none", null, true);
+        }
+        long used = getUsedMemory() - start;
+        keep(states);
+        return used / COUNT;
+    }
+
+    private static long measureCompactLightState() {
+        Object[] states = new Object[COUNT];
+        CompactLightState.Builder b = new CompactLightState.Builder();
+        long start = getUsedMemory();
+        for (int i = 0; i < COUNT; i++) {
+            states[i] = b.clear().setOn(i % 2 == 0).setHue(1000 + i % 60000).setSaturation(128 + i % 126).setBrightness(128 + i % 126).setColorTemperature(153 + i % 347).setColorMode(LightState.MODE_HS).setEffect("none").setReachable(true).build();
+        }
+        long used = getUsedMemory() - start;
+        keep(states);
+        return used / COUNT;
+    }
+
+    private static long getUsedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void keep(Object[] states) {
+        if (states[states.length - 1] == null) {
+            throw new IllegalStateException();
+        }
+    }
+}
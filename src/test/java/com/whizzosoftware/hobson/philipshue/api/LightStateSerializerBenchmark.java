@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A simple benchmark comparing light state request body creation via JSONObject with the LightStateSerializer.
+ * This is not run as part of the build; run it with:
+ *
+ * java -cp target/classes:target/test-classes:[dependencies] com.whizzosoftware.hobson.philipshue.api.LightStateSerializerBenchmark
+ *
+ * @author Dan Noguerol
+ */
+public class LightStateSerializerBenchmark {
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        // a repeated state (e.g. turning lights off) and a stream of distinct colors
+        LightState[] repeated = {new LightState(false, null, null, null, null, null, null, null, null)};
+        LightState[] colors = new LightState[1000];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = new LightState(true, i * 65, 254 - (i % 254), 1 + (i % 253), null, LightState.MODE_HS, "none", null, null);
+        }
+
+        System.out.println(String.format("%-12s %-10s %12s %12s", "method", "states", "ns/op", "bytes/op"));
+        measure("jsonobject", "repeated", repeated, null);
+        measure("serializer", "repeated", repeated, new LightStateSerializer());
+        measure("jsonobject", "distinct", colors, null);
+        measure("serializer", "distinct", colors, new LightStateSerializer());
+    }
+
+    private static void measure(String name, String label, LightState[] states, LightStateSerializer serializer) {
+        HueBridgeParser parser = new HueBridgeParser();
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += encode(parser, serializer, states[i % states.length]).length;
+        }
+
+        long startBytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encode(parser, serializer, states[i % states.length]).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = getAllocatedBytes() - startBytes;
+
+        System.out.println(String.format("%-12s %-10s %12.1f %12s %s", name, label, (double)elapsed / ITERATIONS, startBytes > -1 ? Long.toString(bytes / ITERATIONS) : "n/a", sink == 0 ? "!" : ""));
+    }
+
+    private static byte[] encode(HueBridgeParser parser, LightStateSerializer serializer, LightState state) {
+        return (serializer != null) ? serializer.serialize(state) : parser.createLightStateJSON(state).toString().getBytes();
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
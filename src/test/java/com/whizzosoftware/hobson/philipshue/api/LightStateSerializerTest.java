@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.LightState;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LightStateSerializerTest {
+    @Test
+    public void testSerializeMatchesJSONObject() throws Exception {
+        LightState[] states = {
+            new LightState(false, null, null, null, null, null, null, null, null),
+            new LightState(true, null, null, null, null, null, null, null, null),
+            new LightState(true, 65535, 254, 1, null, LightState.MODE_HS, null, null, null),
+            new LightState(null, 0, 0, 0, null, LightState.MODE_HS, "colorloop", null, null),
+            new LightState(true, null, null, 128, 153, LightState.MODE_CT, "none", null, null),
+            new LightState(false, null, null, 128, 500, LightState.MODE_CT, "colorloop", null, null),
+            new LightState(true, null, null, null, null, null, "a \"quoted\" \u00e9ffect\n", null, null),
+            new LightState(null, null, null, null, null, null, null, null, null),
+            xy(true, 0.5128f, 0.4147f, 144),
+            xy(null, 0.0f, 1.0f, 1),
+            xy(false, 0.12345f, 0.7f, 254),
+        };
+
+        HueBridgeParser parser = new HueBridgeParser();
+        LightStateSerializer serializer = new LightStateSerializer();
+        for (LightState state : states) {
+            JSONObject expected = parser.createLightStateJSON(state);
+            JSONObject actual = new JSONObject(new String(serializer.serialize(state), "UTF-8"));
+            assertEquals(state.toString(), expected.length(), actual.length());
+            for (Object key : expected.keySet()) {
+                // arrays don't implement equals()
+                assertEquals(state.toString(), expected.get((String)key).toString(), actual.get((String)key).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        LightStateSerializer serializer = new LightStateSerializer();
+        assertEquals("{\"on\":true,\"hue\":1000,\"sat\":20,\"bri\":254}", new String(serializer.serialize(new LightState(true, 1000, 20, 254, null, LightState.MODE_HS, null, null, null)), "UTF-8"));
+        assertEquals("{\"ct\":153,\"bri\":0,\"effect\":\"none\"}", new String(serializer.serialize(new LightState(null, null, null, 0, 153, LightState.MODE_CT, "none", null, null)), "UTF-8"));
+        assertEquals("{}", new String(serializer.serialize(new LightState()), "UTF-8"));
+        assertEquals("{\"xy\":[0.5128,0.4],\"bri\":100}", new String(serializer.serialize(xy(null, 0.5128f, 0.40001f, 100)), "UTF-8"));
+        assertEquals("{\"on\":true,\"xy\":[0,1],\"bri\":100}", new String(serializer.serialize(xy(true, 0.0f, 1.0f, 100)), "UTF-8"));
+    }
+
+    private LightState xy(Boolean on, float x, float y, int brightness) {
+        LightState s = new LightState(on, null, null, brightness, null, LightState.MODE_XY, null, null, null);
+        s.setXY(x, y);
+        return s;
+    }
+
+    @Test
+    public void testCache() {
+        LightStateSerializer serializer = new LightStateSerializer(2);
+        LightState off = new LightState(false, null, null, null, null, null, null, null, null);
+        byte[] b1 = serializer.serialize(off);
+        assertSame(b1, serializer.serialize(new LightState(false, null, null, null, null, null, null, null, null)));
+        assertEquals(1, serializer.getHitCount());
+        assertEquals(1, serializer.getMissCount());
+
+        // changing the caller's state doesn't affect the cached body
+        off.setOn(true);
+        byte[] b2 = serializer.serialize(off);
+        assertNotSame(b1, b2);
+        assertSame(b1, serializer.serialize(new LightState(false, null, null, null, null, null, null, null, null)));
+
+        // the least recently used body is evicted
+        serializer.serialize(new LightState(true, 1, 2, 3, null, LightState.MODE_HS, null, null, null));
+        assertNotSame(b2, serializer.serialize(off));
+        assertEquals(4, serializer.getMissCount());
+    }
+
+    @Test
+    public void testGetLength() {
+        LightStateSerializer serializer = new LightStateSerializer();
+        LightState state = new LightState(true, 1000, 20, 254, null, LightState.MODE_HS, null, null, null);
+        assertEquals(41, serializer.getLength(state));
+        assertEquals(0, serializer.getMissCount());
+        assertEquals(41, serializer.serialize(state).length);
+        assertEquals(41, serializer.getLength(state));
+        assertEquals(0, serializer.getHitCount());
+        assertEquals(2, serializer.getLength(new LightState()));
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+public class RequestUriCacheTest {
+    @Test
+    public void testGet() throws Exception {
+        RequestUriCache c = new RequestUriCache("http://host", "thedudeabides");
+        assertEquals(new URI("http://host/api"), c.get(RequestUriCache.Type.CREATE_USER, null));
+        assertEquals(new URI("http://host/api/thedudeabides/lights"), c.get(RequestUriCache.Type.ALL_LIGHTS, null));
+        assertEquals(new URI("http://host/api/thedudeabides/lights/1"), c.get(RequestUriCache.Type.LIGHT, "1"));
+        assertEquals(new URI("http://host/api/thedudeabides/lights/1/state"), c.get(RequestUriCache.Type.LIGHT_STATE, "1"));
+        assertEquals(new URI("http://host/api/thedudeabides/groups"), c.get(RequestUriCache.Type.ALL_GROUPS, null));
+        assertEquals(new URI("http://host/api/thedudeabides/groups/2"), c.get(RequestUriCache.Type.GROUP, "2"));
+        assertEquals(new URI("http://host/api/thedudeabides/groups/2/action"), c.get(RequestUriCache.Type.GROUP_ACTION, "2"));
+        assertEquals(7, c.getMissCount());
+    }
+
+    @Test
+    public void testCachedInstancesAreReused() throws Exception {
+        RequestUriCache c = new RequestUriCache("http://host", "thedudeabides");
+        URI u1 = c.get(RequestUriCache.Type.LIGHT_STATE, "1");
+        URI u2 = c.get(RequestUriCache.Type.LIGHT_STATE, "2");
+        assertSame(u1, c.get(RequestUriCache.Type.LIGHT_STATE, "1"));
+        assertSame(u2, c.get(RequestUriCache.Type.LIGHT_STATE, "2"));
+        assertNotSame(u1, c.get(RequestUriCache.Type.LIGHT, "1"));
+        assertEquals(3, c.getMissCount());
+    }
+
+    @Test
+    public void testInvalidUri() {
+        RequestUriCache c = new RequestUriCache("http://host", "thedudeabides");
+        try {
+            c.get(RequestUriCache.Type.LIGHT, "bad id");
+            fail("Should have thrown exception");
+        } catch (Exception ignored) {}
+    }
+}
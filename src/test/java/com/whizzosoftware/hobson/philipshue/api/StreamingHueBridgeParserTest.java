@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class StreamingHueBridgeParserTest {
+    private static final String ALL_LIGHTS = "{\"1\":{\"state\":{\"on\":true,\"bri\":144,\"hue\":13088,\"sat\":212,\"xy\":[0.5128,0.4147],\"ct\":467,\"alert\":\"none\",\"effect\":\"none\",\"colormode\":\"xy\",\"reachable\":true},\"type\":\"Extended color light\",\"name\":\"Hue Lamp 1\",\"modelid\":\"LCT001\",\"swversion\":\"66009461\",\"pointsymbol\":{\"1\":\"none\",\"2\":\"none\",\"3\":\"none\",\"4\":\"none\",\"5\":\"none\",\"6\":\"none\",\"7\":\"none\",\"8\":\"none\"}},\"2\":{\"state\":{\"on\":false,\"bri\":0,\"hue\":0,\"sat\":0,\"xy\":[0,0],\"ct\":0,\"alert\":\"none\",\"effect\":\"none\",\"colormode\":\"hs\",\"reachable\":true},\"type\":\"Extended color light\",\"name\":\"Hue Lamp 2\",\"modelid\":\"LCT001\",\"swversion\":\"66009461\",\"pointsymbol\":{\"1\":\"none\",\"2\":\"none\",\"3\":\"none\",\"4\":\"none\",\"5\":\"none\",\"6\":\"none\",\"7\":\"none\",\"8\":\"none\"}}}";
+    private static final String LIGHT = "{\"state\": {\"on\":false,\"bri\":254,\"hue\":65535,\"sat\":254,\"xy\":[0.700,0.200],\"ct\":500,\"alert\":\"none\",\"effect\":\"none\",\"colormode\":\"ct\",\"reachable\":true}, \"type\": \"Extended color light\", \"name\": \"Hue Downlight\", \"modelid\": \"LCT002\", \"swversion\": \"66010673\", \"pointsymbol\": { \"1\":\"none\", \"2\":\"none\", \"3\":\"none\", \"4\":\"none\", \"5\":\"none\", \"6\":\"none\", \"7\":\"none\", \"8\":\"none\" }}";
+    private static final String ERROR = "[{\"error\":{\"type\":1,\"address\":\"/lights\",\"description\":\"unauthorized user\"}}]";
+
+    @Test
+    public void testParseGetAllLightsMatchesTreeParser() throws Exception {
+        GetAllLightsResponse expected = (GetAllLightsResponse)new HueBridgeParser().parseGetAllLightsResponse(200, ALL_LIGHTS);
+        GetAllLightsResponse actual = (GetAllLightsResponse)new StreamingHueBridgeParser().parseGetAllLightsResponse(200, ALL_LIGHTS);
+        assertEquals(expected.getLights().size(), actual.getLights().size());
+        Iterator<Light> it = expected.getLights().iterator();
+        for (Light a : actual.getLights()) {
+            Light e = it.next();
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getModel(), a.getModel());
+            assertEquals(e.getState(), a.getState());
+        }
+    }
+
+    @Test
+    public void testParseXY() throws Exception {
+        GetAllLightsResponse response = (GetAllLightsResponse)new StreamingHueBridgeParser().parseGetAllLightsResponse(200, ALL_LIGHTS);
+        Iterator<Light> it = response.getLights().iterator();
+        CompactLightState state = it.next().getState();
+        assertTrue(state.hasColorXY());
+        assertEquals(0.5128f, state.getX(), 0.0f);
+        assertEquals(0.4147f, state.getY(), 0.0f);
+        state = it.next().getState();
+        assertFalse(state.hasColorXY());
+        assertEquals(0.0f, state.getX(), 0.0f);
+    }
+
+    @Test
+    public void testParseGetAllLightsWithoutState() throws Exception {
+        GetAllLightsResponse response = (GetAllLightsResponse)new StreamingHueBridgeParser().parseGetAllLightsResponse(200, "{\"1\":{\"name\": \"Hue Downlight\"},\"2\":{\"name\": \"Hue Downlight 1\"},\"3\":{\"name\": \"Hue \\\"Downlight\\\" 2\"}}");
+        assertEquals(3, response.getLights().size());
+        Iterator<Light> it = response.getLights().iterator();
+        Light l = it.next();
+        assertEquals("1", l.getId());
+        assertNull(l.getState());
+        assertNull(l.getModel());
+        it.next();
+        assertEquals("Hue \"Downlight\" 2", it.next().getName());
+    }
+
+    @Test
+    public void testParseGetAllLightsWithError() throws Exception {
+        BridgeResponse response = new StreamingHueBridgeParser().parseGetAllLightsResponse(200, ERROR);
+        assertTrue(response instanceof ErrorResponse);
+        ErrorResponse er = (ErrorResponse)response;
+        assertEquals(1, (int)er.getType());
+        assertEquals("/lights", er.getAddress());
+        assertEquals("unauthorized user", er.getDescription());
+    }
+
+    @Test
+    public void testParseGetAllLightsReusesUnchangedState() throws Exception {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        GetAllLightsResponse r1 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS);
+        GetAllLightsResponse r2 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS.replace("\"on\":false", "\"on\":true"));
+        Iterator<Light> it1 = r1.getLights().iterator();
+        Iterator<Light> it2 = r2.getLights().iterator();
+        assertSame(it1.next().getState(), it2.next().getState());
+        CompactLightState s1 = it1.next().getState();
+        CompactLightState s2 = it2.next().getState();
+        assertNotSame(s1, s2);
+        assertFalse(s1.getOn());
+        assertTrue(s2.getOn());
+    }
+
+    @Test
+    public void testParseGetAllLightsReusesUnchangedLights() throws Exception {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        GetAllLightsResponse r1 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS);
+        assertEquals(2, parser.getLightParsedCount());
+        assertEquals(0, parser.getLightUnchangedCount());
+
+        // only the light whose text changed is parsed again
+        GetAllLightsResponse r2 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS.replace("\"on\":false", "\"on\":true"));
+        Iterator<Light> it1 = r1.getLights().iterator();
+        Iterator<Light> it2 = r2.getLights().iterator();
+        assertSame(it1.next(), it2.next());
+        Light l1 = it1.next();
+        Light l2 = it2.next();
+        assertNotSame(l1, l2);
+        assertEquals("2", l2.getId());
+        assertEquals("Hue Lamp 2", l2.getName());
+        assertTrue(l2.getState().getOn());
+        assertEquals(3, parser.getLightParsedCount());
+        assertEquals(1, parser.getLightUnchangedCount());
+
+        // the same light text under a different ID isn't mistaken for it
+        GetAllLightsResponse r3 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS.replace("\"2\":{\"state\"", "\"3\":{\"state\""));
+        Iterator<Light> it3 = r3.getLights().iterator();
+        assertSame(r1.getLights().iterator().next(), it3.next());
+        assertEquals("3", it3.next().getId());
+        assertEquals(4, parser.getLightParsedCount());
+        assertEquals(2, parser.getLightUnchangedCount());
+    }
+
+    @Test
+    public void testParseGetAllLightsForgetsDeletedLights() throws Exception {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        GetAllLightsResponse r1 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS);
+        Iterator<Light> it1 = r1.getLights().iterator();
+        Light light1 = it1.next();
+        Light light2 = it1.next();
+
+        // light 2 is deleted from the bridge
+        String oneLight = ALL_LIGHTS.substring(0, ALL_LIGHTS.indexOf(",\"2\":{\"state\"")) + "}";
+        GetAllLightsResponse r2 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, oneLight);
+        assertEquals(1, r2.getLights().size());
+        assertSame(light1, r2.getLights().iterator().next());
+
+        // so when a light with the same ID shows up again it's parsed from scratch
+        GetAllLightsResponse r3 = (GetAllLightsResponse)parser.parseGetAllLightsResponse(200, ALL_LIGHTS);
+        Iterator<Light> it3 = r3.getLights().iterator();
+        assertSame(light1, it3.next());
+        Light light3 = it3.next();
+        assertNotSame(light2, light3);
+        assertNotSame(light2.getState(), light3.getState());
+        assertEquals(light2.getState(), light3.getState());
+    }
+
+    @Test
+    public void testParseGetAllLightsWithInvalidJSON() throws Exception {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        try {
+            parser.parseGetAllLightsResponse(200, "{\"1\":{\"name\": \"Hue Downlight\"");
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+        try {
+            parser.parseGetAllLightsResponse(200, "foo");
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+        try {
+            parser.parseGetAllLightsResponse(404, ALL_LIGHTS);
+            fail("Should have thrown exception");
+        } catch (HueException ignored) {}
+    }
+
+    @Test
+    public void testCreateUser() throws HueException {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        BridgeResponse response = parser.parseCreateUserResponse(200, "[{\"success\":{\"username\":\"fasfjewnfwenkfekf\"}}]");
+        assertTrue(response instanceof CreateUserResponse);
+        assertEquals("fasfjewnfwenkfekf", ((CreateUserResponse)response).getUsername());
+
+        response = parser.parseCreateUserResponse(200, "[{\"error\":{\"type\":101,\"address\":\"\",\"description\":\"link button not pressed\"}}]");
+        assertTrue(response instanceof ErrorResponse);
+        assertEquals(ErrorResponse.LINK_BUTTON_NOT_PRESSED, (int)((ErrorResponse)response).getType());
+    }
+
+    @Test
+    public void testParseGetLightAttributeAndState() throws HueException {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        GetLightAttributeAndStateResponse response = (GetLightAttributeAndStateResponse)parser.parseGetLightAttributeAndStateResponse("1", 200, LIGHT);
+        CompactLightState expected = ((GetLightAttributeAndStateResponse)new HueBridgeParser().parseGetLightAttributeAndStateResponse("1", 200, LIGHT)).getState();
+        assertEquals("1", response.getId());
+        assertEquals(expected, response.getState());
+        assertTrue(response.getState().hasColorTemperature());
+        assertEquals(500, (int)response.getState().getColorTemperature());
+
+        // a light without color support
+        response = (GetLightAttributeAndStateResponse)parser.parseGetLightAttributeAndStateResponse("2", 200, "{\"state\":{\"on\":true,\"bri\":100,\"alert\":\"none\",\"reachable\":false},\"name\":\"White\"}");
+        CompactLightState state = response.getState();
+        assertTrue(state.getOn());
+        assertEquals(100, (int)state.getBrightness());
+        assertNull(state.getHue());
+        assertNull(state.getColorMode());
+        assertFalse(state.isReachable());
+
+        assertTrue(parser.parseGetLightAttributeAndStateResponse("1", 200, ERROR) instanceof ErrorResponse);
+    }
+
+    @Test
+    public void testParseSetLightStateResponse() throws HueException {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        String[] responses = {
+            "[{\"success\":{\"/lights/1/state/on\":true}},{\"success\":{\"/lights/1/state/hue\":10}},{\"success\":{\"/lights/1/state/sat\":20}},{\"success\":{\"/lights/1/state/bri\":30}},{\"success\":{\"/lights/1/state/effect\":\"none\"}}]",
+            "[{\"success\":{\"/lights/1/state/ct\":300}},{\"success\":{\"/lights/1/state/xy\":[0.1,0.2]}},{\"success\":{\"/lights/12/state/on\":true}},{\"success\":{\"/lights/1/state/bri\":null}}]",
+            "[{\"success\":{\"/lights/1/state/on\":false,\"/lights/1/state/effect\":\"colorloop\"}}]"
+        };
+        for (String r : responses) {
+            SetLightStateResponse response = (SetLightStateResponse)parser.parseSetLightStateResponse("1", 200, r);
+            SetLightStateResponse expected = (SetLightStateResponse)new HueBridgeParser().parseSetLightStateResponse("1", 200, r);
+            assertEquals("1", response.getId());
+            assertEquals(r, expected.getState(), response.getState());
+        }
+        assertTrue(parser.parseSetLightStateResponse("1", 200, "[{\"success\":{\"/lights/1/state/on\":true}},{\"error\":{\"type\":201,\"address\":\"/lights/1/state/hue\",\"description\":\"parameter, hue, is not modifiable. Device is set to off.\"}}]") instanceof ErrorResponse);
+    }
+
+    @Test
+    public void testParseGetFullStateResponse() throws HueException {
+        StreamingHueBridgeParser parser = new StreamingHueBridgeParser();
+        GetFullStateResponse response = (GetFullStateResponse)parser.parseGetFullStateResponse(200, "{\"config\":{\"name\":\"Philips hue\",\"whitelist\":{\"abc\":{\"name\":\"hobson\"}}},\"lights\":" + ALL_LIGHTS + ",\"groups\":{\"1\":{\"name\":\"Living Room\",\"lights\":[\"1\",\"2\"],\"type\":\"LightGroup\",\"action\":{\"on\":true,\"xy\":[0.1,0.2]}}},\"schedules\":{}}");
+        GetAllLightsResponse expected = (GetAllLightsResponse)new HueBridgeParser().parseGetAllLightsResponse(200, ALL_LIGHTS);
+        assertEquals(expected.getLights().size(), response.getLights().size());
+        Iterator<Light> it = expected.getLights().iterator();
+        for (Light a : response.getLights()) {
+            Light e = it.next();
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getState(), a.getState());
+        }
+        assertEquals(1, response.getGroups().size());
+        Group g = response.getGroups().iterator().next();
+        assertEquals("1", g.getId());
+        assertEquals("Living Room", g.getName());
+        assertEquals(2, g.getLights().size());
+
+        assertTrue(parser.parseGetFullStateResponse(200, ERROR) instanceof ErrorResponse);
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+    @Test
+    public void testBurstAndRefill() {
+        TokenBucket b = new TokenBucket(10, 3, 1000);
+        assertTrue(b.tryAcquire(1000));
+        assertTrue(b.tryAcquire(1000));
+        assertTrue(b.tryAcquire(1000));
+        assertFalse(b.tryAcquire(1000));
+        assertEquals(100, b.getWaitTime(1000));
+
+        // one token is added every 100ms
+        assertFalse(b.tryAcquire(1099));
+        assertTrue(b.tryAcquire(1100));
+        assertFalse(b.tryAcquire(1100));
+
+        // tokens never exceed the capacity
+        assertEquals(0, b.getWaitTime(5000));
+        assertTrue(b.tryAcquire(5000));
+        assertTrue(b.tryAcquire(5000));
+        assertTrue(b.tryAcquire(5000));
+        assertFalse(b.tryAcquire(5000));
+    }
+
+    @Test
+    public void testSetRate() {
+        TokenBucket b = new TokenBucket(10, 5, 1000);
+        b.setRate(1, 1);
+        assertTrue(b.tryAcquire(1000));
+        assertFalse(b.tryAcquire(1000));
+        assertEquals(1000, b.getWaitTime(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0, 1, 1000);
+    }
+}
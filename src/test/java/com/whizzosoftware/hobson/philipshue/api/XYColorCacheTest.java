@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class XYColorCacheTest {
+    @Test
+    public void testCalculateXY() {
+        XYColorCache cache = new XYColorCache(4);
+        float[] xy = new float[2];
+        cache.calculateXY(255, 173, 90, ColorGamut.B, xy);
+        assertEquals(0.513f, xy[0], 0.001f);
+        assertEquals(0.394f, xy[1], 0.001f);
+        assertEquals(1, cache.getMissCount());
+
+        // values are rounded to 4 decimal places
+        ColorConversion.PointF p = ColorConversion.calculateXY(255, 173, 90, ColorGamut.B);
+        assertEquals((float)(Math.round(p.x * 10000.0) / 10000.0), xy[0], 0.0f);
+        assertEquals((float)(Math.round(p.y * 10000.0) / 10000.0), xy[1], 0.0f);
+
+        float[] xy2 = new float[2];
+        cache.calculateXY(255, 173, 90, ColorGamut.B, xy2);
+        assertArrayEquals(xy, xy2, 0.0f);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testGamutsAreCachedSeparately() {
+        XYColorCache cache = new XYColorCache(4);
+        float[] a = new float[2];
+        float[] b = new float[2];
+        cache.calculateXY(255, 0, 0, ColorGamut.A, a);
+        cache.calculateXY(255, 0, 0, ColorGamut.B, b);
+        assertEquals(0.703f, a[0], 0.0001f);
+        assertEquals(0.674f, b[0], 0.0001f);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        XYColorCache cache = new XYColorCache(2);
+        float[] xy = new float[2];
+        cache.calculateXY(1, 2, 3, ColorGamut.C, xy);
+        cache.calculateXY(4, 5, 6, ColorGamut.C, xy);
+        cache.calculateXY(1, 2, 3, ColorGamut.C, xy);
+        cache.calculateXY(7, 8, 9, ColorGamut.C, xy);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+
+        // 1,2,3 was used more recently than 4,5,6
+        cache.calculateXY(1, 2, 3, ColorGamut.C, xy);
+        assertEquals(2, cache.getHitCount());
+        cache.calculateXY(4, 5, 6, ColorGamut.C, xy);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new XYColorCache(0);
+    }
+}
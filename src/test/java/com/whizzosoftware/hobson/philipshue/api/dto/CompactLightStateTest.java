@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Whizzo Software, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package com.whizzosoftware.hobson.philipshue.api.dto;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactLightStateTest {
+    @Test
+    public void testConversion() {
+        LightState[] states = {
+            new LightState(true, 65535, 254, 1, null, LightState.MODE_HS, "none", "LCT001", true),
+            new LightState(false, null, null, 128, 500, LightState.MODE_CT, "colorloop", null, false),
+            new LightState(null, 0, 0, 0, 0, "xy", "other", null, null),
+            new LightState(null, null, null, null, null, null, null, null, null),
+        };
+        for (LightState state : states) {
+            CompactLightState cs = CompactLightState.of(state);
+            assertEquals(state.getOn(), cs.getOn());
+            assertEquals(state.getHue(), cs.getHue());
+            assertEquals(state.getSaturation(), cs.getSaturation());
+            assertEquals(state.getBrightness(), cs.getBrightness());
+            assertEquals(state.getColorTemperature(), cs.getColorTemperature());
+            assertEquals(state.getColorMode(), cs.getColorMode());
+            assertEquals(state.getEffect(), cs.getEffect());
+            assertEquals(state.getModel(), cs.getModel());
+            assertEquals(state.isReachable(), cs.isReachable());
+            assertEquals(state.hasColor(), cs.hasColor());
+            assertEquals(state.hasColorTemperature(), cs.hasColorTemperature());
+            assertEquals(state, cs.toLightState());
+        }
+        assertNull(CompactLightState.of(null));
+    }
+
+    @Test
+    public void testXY() {
+        LightState state = new LightState(true, null, null, 100, null, LightState.MODE_XY, null, null, true);
+        state.setXY(0.4f, 0.5f);
+        CompactLightState cs = CompactLightState.of(state);
+        assertTrue(cs.hasColorXY());
+        assertEquals(0.4f, cs.getX(), 0.0f);
+        assertEquals(0.5f, cs.getY(-1.0f), 0.0f);
+        assertEquals(state, cs.toLightState());
+        assertEquals(cs, new CompactLightState.Builder().setOn(true).setBrightness(100).setXY(0.4f, 0.5f).setColorMode(LightState.MODE_XY).setReachable(true).build());
+        assertFalse(cs.equals(new CompactLightState.Builder().setOn(true).setBrightness(100).setXY(0.4f, 0.50001f).setColorMode(LightState.MODE_XY).setReachable(true).build()));
+
+        // coordinates are merged as a pair
+        LightState newer = new LightState();
+        newer.setXY(0.3f, 0.3f);
+        CompactLightState merged = cs.merge(newer);
+        assertEquals(0.3f, merged.getX(), 0.0f);
+        assertEquals(0.3f, merged.getY(), 0.0f);
+        assertEquals(0.4f, cs.merge(new LightState(false, null, null, null, null, null, null, null, null)).getX(), 0.0f);
+
+        CompactLightState none = new CompactLightState(null, null, null, 100, null, LightState.MODE_XY, null, null, null);
+        assertFalse(none.hasXY());
+        assertFalse(none.hasColorXY());
+        assertNull(none.getX());
+        assertEquals(-1.0f, none.getY(-1.0f), 0.0f);
+    }
+
+    @Test
+    public void testPrimitiveGetters() {
+        CompactLightState s = new CompactLightState(true, 1000, null, 0, null, null, null, null, null);
+        assertTrue(s.getOn(false));
+        assertEquals(1000, s.getHue(-1));
+        assertEquals(-1, s.getSaturation(-1));
+        assertEquals(0, s.getBrightness(-1));
+        assertEquals(-1, s.getColorTemperature(-1));
+
+        s = new CompactLightState(null, null, null, null, null, null, null, null, null);
+        assertFalse(s.hasOn());
+        assertTrue(s.getOn(true));
+        assertFalse(s.isReachable());
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        CompactLightState s1 = new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", null, true);
+        CompactLightState s2 = new CompactLightState(true, 1000, 200, 100, null, new String("hs"), new String("none"), null, true);
+        assertEquals(s1, s2);
+        assertEquals(s1.hashCode(), s2.hashCode());
+
+        // known values are interned
+        assertSame(LightState.MODE_HS, s2.getColorMode());
+        assertSame(s1.getEffect(), s2.getEffect());
+
+        // an unreported value is not the same as false or 0
+        assertFalse(s1.equals(new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", null, null)));
+        assertFalse(new CompactLightState(false, null, null, null, null, null, null, null, null).equals(new CompactLightState(null, null, null, null, null, null, null, null, null)));
+        assertFalse(new CompactLightState(null, 0, null, null, null, null, null, null, null).equals(new CompactLightState(null, null, null, null, null, null, null, null, null)));
+
+        assertFalse(s1.equals(new CompactLightState(true, 1001, 200, 100, null, LightState.MODE_HS, "none", null, true)));
+        assertFalse(s1.equals(new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "colorloop", null, true)));
+        assertFalse(s1.equals(new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", "LCT001", true)));
+        assertFalse(s1.equals(s1.toLightState()));
+    }
+
+    @Test
+    public void testMerge() {
+        CompactLightState older = new CompactLightState(true, 1000, 100, 50, null, LightState.MODE_HS, "none", "LCT001", true);
+        CompactLightState merged = older.merge(new LightState(false, 2000, null, 60, null, null, null, null, null));
+        assertFalse(merged.getOn());
+        assertEquals(2000, (int)merged.getHue());
+        assertEquals(100, (int)merged.getSaturation());
+        assertEquals(60, (int)merged.getBrightness());
+        assertEquals(LightState.MODE_HS, merged.getColorMode());
+        assertEquals("none", merged.getEffect());
+        assertEquals("LCT001", merged.getModel());
+        assertTrue(merged.isReachable());
+
+        // the original state is left untouched
+        assertTrue(older.getOn());
+        assertEquals(1000, (int)older.getHue());
+        assertEquals(50, (int)older.getBrightness());
+
+        assertSame(older, older.merge(null));
+    }
+
+    @Test
+    public void testBuilder() {
+        CompactLightState.Builder b = new CompactLightState.Builder();
+        CompactLightState s = b.setOn(true).setHue(1000).setSaturation(200).setBrightness(100).setColorMode(LightState.MODE_HS).setEffect("none").setReachable(true).build();
+        assertEquals(new CompactLightState(true, 1000, 200, 100, null, LightState.MODE_HS, "none", null, true), s);
+        assertTrue(b.matches(s));
+
+        b.setBrightness(101);
+        assertFalse(b.matches(s));
+        assertFalse(b.matches(null));
+
+        // a cleared builder produces an empty state
+        assertEquals(new CompactLightState(null, null, null, null, null, null, null, null, null), b.clear().build());
+    }
+}
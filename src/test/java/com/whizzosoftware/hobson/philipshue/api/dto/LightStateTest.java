@@ -10,7 +10,7 @@ package com.whizzosoftware.hobson.philipshue.api.dto;
 import com.whizzosoftware.hobson.api.color.Color;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class LightStateTest {
     @Test
@@ -19,4 +19,41 @@ public class LightStateTest {
         assertEquals(200, (int)state.getColorTemperature());
         assertEquals(254, (int)state.getBrightness());
     }
+
+    @Test
+    public void testXY() {
+        LightState s1 = new LightState(true, null, null, 100, null, LightState.MODE_XY, null, null, null);
+        s1.setXY(0.4f, 0.5f);
+        LightState s2 = new LightState(true, null, null, 100, null, LightState.MODE_XY, null, null, null);
+        assertFalse(s2.hasColorXY());
+        assertFalse(s1.equals(s2));
+        s2.setXY(0.4f, 0.5f);
+        assertTrue(s2.hasColorXY());
+        assertEquals(s1, s2);
+        assertEquals(s1.hashCode(), s2.hashCode());
+
+        LightState newer = new LightState();
+        newer.setXY(0.3f, 0.2f);
+        LightState merged = s1.merge(newer);
+        assertEquals(0.3f, merged.getX(), 0.0f);
+        assertEquals(0.2f, merged.getY(), 0.0f);
+        assertEquals(0.4f, s1.merge(new LightState()).getX(), 0.0f);
+    }
+
+    @Test
+    public void testMerge() {
+        LightState older = new LightState(true, 1000, 100, 50, null, LightState.MODE_HS, "none", "LCT001", true);
+        LightState merged = older.merge(new LightState(null, 2000, null, 60, null, null, null, null, null));
+        assertTrue(merged.getOn());
+        assertEquals(2000, (int)merged.getHue());
+        assertEquals(100, (int)merged.getSaturation());
+        assertEquals(60, (int)merged.getBrightness());
+        assertEquals(LightState.MODE_HS, merged.getColorMode());
+        assertEquals("none", merged.getEffect());
+        assertEquals("LCT001", merged.getModel());
+
+        // the original state is left untouched
+        assertEquals(1000, (int)older.getHue());
+        assertEquals(50, (int)older.getBrightness());
+    }
 }
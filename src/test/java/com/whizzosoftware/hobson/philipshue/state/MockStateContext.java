@@ -12,6 +12,7 @@ package com.whizzosoftware.hobson.philipshue.state;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.philipshue.HueLight;
 import com.whizzosoftware.hobson.philipshue.HuePlugin;
+import com.whizzosoftware.hobson.philipshue.RequestTracker;
 import com.whizzosoftware.hobson.philipshue.api.dto.*;
 
 import java.util.*;
@@ -21,10 +22,22 @@ public class MockStateContext implements StateContext {
     private HuePlugin plugin;
     private PluginStatus status;
     private int getAllLightsRequests;
+    private int getFullStateRequests;
+    private PollStrategy pollStrategy = PollStrategy.LIGHTS;
     private int createUserRequests;
     private List<GetLightAttributeAndStateRequest> getLightAttributeAndStateRequests = new ArrayList<>();
     private List<SetLightStateRequest> setLightStateRequests = new ArrayList<>();
     private Map<String,HueLight> hueLights = new HashMap<>();
+    private Collection<Group> groups;
+    private List<Group> createdGroups = new ArrayList<>();
+    private boolean pollDue = true;
+    private boolean bridgeAvailable = true;
+    private List<Boolean> pollResults = new ArrayList<>();
+    private int lightStateChanges;
+    private List<CompactLightState> lightStates = new ArrayList<>();
+    private int unchangedLightStates;
+    private Map<String,ShadowMatch> shadowMatches = new HashMap<>();
+    private RequestTracker requestTracker = new RequestTracker(15000);
 
     public MockStateContext(HuePlugin plugin, String host) {
         this.plugin = plugin;
@@ -55,6 +68,24 @@ public class MockStateContext implements StateContext {
         return getAllLightsRequests;
     }
 
+    @Override
+    public void sendGetFullStateRequest(GetFullStateRequest request) {
+        getFullStateRequests++;
+    }
+
+    public int getGetFullStateRequestsCount() {
+        return getFullStateRequests;
+    }
+
+    @Override
+    public PollStrategy getPollStrategy() {
+        return pollStrategy;
+    }
+
+    public void setPollStrategy(PollStrategy pollStrategy) {
+        this.pollStrategy = pollStrategy;
+    }
+
     @Override
     public void sendGetLightAttributeAndStateRequest(GetLightAttributeAndStateRequest request) {
         getLightAttributeAndStateRequests.add(request);
@@ -70,14 +101,64 @@ public class MockStateContext implements StateContext {
     }
 
     @Override
-    public void sendSetLightStateRequest(SetLightStateRequest request) {
+    public boolean sendSetLightStateRequest(SetLightStateRequest request) {
+        if (!bridgeAvailable) {
+            return false;
+        }
         setLightStateRequests.add(request);
+        return true;
+    }
+
+    public void setBridgeAvailable(boolean bridgeAvailable) {
+        this.bridgeAvailable = bridgeAvailable;
     }
 
     public List<SetLightStateRequest> getSetLightStateRequests() {
         return setLightStateRequests;
     }
 
+    @Override
+    public boolean isPollDue() {
+        return pollDue;
+    }
+
+    public void setPollDue(boolean pollDue) {
+        this.pollDue = pollDue;
+    }
+
+    @Override
+    public void onPollResult(boolean changed) {
+        pollResults.add(changed);
+    }
+
+    public List<Boolean> getPollResults() {
+        return pollResults;
+    }
+
+    @Override
+    public boolean isLightStateCurrent(String deviceId, long sequence) {
+        return requestTracker.acceptLightState(deviceId, sequence);
+    }
+
+    @Override
+    public ShadowMatch checkLightState(String deviceId, CompactLightState state) {
+        ShadowMatch match = shadowMatches.get(deviceId);
+        return (match != null) ? match : ShadowMatch.NONE;
+    }
+
+    public void setShadowMatch(String deviceId, ShadowMatch match) {
+        shadowMatches.put(deviceId, match);
+    }
+
+    @Override
+    public void onLightStateChange() {
+        lightStateChanges++;
+    }
+
+    public int getLightStateChangeCount() {
+        return lightStateChanges;
+    }
+
     public int getSendCreateUserRequestCount() {
         return createUserRequests;
     }
@@ -88,7 +169,21 @@ public class MockStateContext implements StateContext {
     }
 
     @Override
-    public void onLightState(String deviceId, LightState state) {
+    public void onLightState(String deviceId, CompactLightState state, long sequence) {
+        lightStates.add(state);
+    }
+
+    public List<CompactLightState> getLightStates() {
+        return lightStates;
+    }
+
+    @Override
+    public void onLightStateUnchanged(String deviceId) {
+        unchangedLightStates++;
+    }
+
+    public int getUnchangedLightStateCount() {
+        return unchangedLightStates;
     }
 
     @Override
@@ -103,6 +198,24 @@ public class MockStateContext implements StateContext {
     public void onSetVariable(String deviceId, String name, Object value) {
     }
 
+    @Override
+    public void onAllGroups(Collection<Group> groups) {
+        this.groups = groups;
+    }
+
+    public Collection<Group> getGroups() {
+        return groups;
+    }
+
+    @Override
+    public void onGroupCreated(Group group) {
+        createdGroups.add(group);
+    }
+
+    public List<Group> getCreatedGroups() {
+        return createdGroups;
+    }
+
     public PluginStatus getPluginStatus() {
         return status;
     }
@@ -12,11 +12,13 @@ package com.whizzosoftware.hobson.philipshue.state;
 import com.whizzosoftware.hobson.api.device.MockDeviceManager;
 import com.whizzosoftware.hobson.api.plugin.PluginStatus;
 import com.whizzosoftware.hobson.philipshue.HuePlugin;
-import com.whizzosoftware.hobson.philipshue.api.dto.Light;
-import com.whizzosoftware.hobson.philipshue.api.dto.GetAllLightsResponse;
+import com.whizzosoftware.hobson.philipshue.api.HueTimeoutException;
+import com.whizzosoftware.hobson.philipshue.api.dto.*;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -89,4 +91,253 @@ public class RunningStateTest {
         RunningState state = new RunningState();
         assertTrue(state.onSetVariable(ctx, "1", "on", true) instanceof RunningState);
     }
+
+    @Test
+    public void testOnBridgeResponseWithGroups() {
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+
+        state.onBridgeResponse(ctx, new GetAllGroupsResponse(Collections.singletonList(new Group("1", "group1", Arrays.asList("1", "2")))));
+        assertEquals(1, ctx.getGroups().size());
+
+        state.onBridgeResponse(ctx, new CreateGroupResponse(new Group("2", "group2", Arrays.asList("1", "3"))));
+        assertEquals(1, ctx.getCreatedGroups().size());
+        assertEquals("2", ctx.getCreatedGroups().get(0).getId());
+    }
+
+    @Test
+    public void testOnRefreshWhenPollNotDue() {
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        ctx.setPollDue(false);
+        RunningState state = new RunningState();
+        state.onRefresh(ctx);
+        assertEquals(0, ctx.getGetAllLightRequestsCount());
+    }
+
+    @Test
+    public void testOnBridgeResponseDetectsChanges() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+
+        CompactLightState on = new CompactLightState(true, null, null, 254, null, null, null, null, true);
+        CompactLightState off = new CompactLightState(false, null, null, 254, null, null, null, null, true);
+
+        // new lights are a change
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        assertEquals(1, ctx.getPollResults().size());
+        assertTrue(ctx.getPollResults().get(0));
+
+        // first state seen for an existing light and then an identical state are not
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        assertFalse(ctx.getPollResults().get(1));
+        assertFalse(ctx.getPollResults().get(2));
+        assertEquals(1, ctx.getLightStates().size());
+        assertEquals(1, ctx.getUnchangedLightStateCount());
+
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", off))));
+        assertTrue(ctx.getPollResults().get(3));
+        assertEquals(2, ctx.getLightStates().size());
+
+        // changes from single light requests are reported separately
+        state.onBridgeResponse(ctx, new GetLightAttributeAndStateResponse("1", on));
+        assertEquals(1, ctx.getLightStateChangeCount());
+        assertEquals(4, ctx.getPollResults().size());
+    }
+
+    @Test
+    public void testFullStatePolling() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        ctx.setPollStrategy(PollStrategy.FULL_STATE);
+        RunningState state = new RunningState();
+
+        state.onRefresh(ctx);
+        assertEquals(0, ctx.getGetAllLightRequestsCount());
+        assertEquals(1, ctx.getGetFullStateRequestsCount());
+
+        state.onBridgeResponse(ctx, new GetFullStateResponse(
+            Collections.singletonList(new Light("1", "Light1", "Model", null)),
+            Collections.singletonList(new Group("1", "group1", Arrays.asList("1")))
+        ));
+        assertEquals(1, ctx.getHueLights().size());
+        assertEquals(1, ctx.getGroups().size());
+        assertEquals(1, ctx.getPollResults().size());
+        assertTrue(ctx.getPollResults().get(0));
+
+        assertTrue(state.onBridgeRequestFailure(ctx, new GetFullStateRequest(), new Exception()) instanceof RunningState);
+    }
+
+    @Test
+    public void testOnLightEvent() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+
+        // events for unknown lights are ignored
+        assertTrue(state.onLightEvent(ctx, "1", new LightState(false, null, null, null, null, null, null, null, null), 1) instanceof RunningState);
+        assertEquals(0, ctx.getLightStates().size());
+
+        // without a previous state to merge into, the full state is requested
+        ctx.createHueLight(new Light("1", "Light1", "Model", null));
+        state.onLightEvent(ctx, "1", new LightState(false, null, null, null, null, null, null, null, null), 2);
+        assertEquals(0, ctx.getLightStates().size());
+        assertEquals(1, ctx.getGetLightAttributeAndStateRequests().size());
+
+        // events are merged into the last known state
+        state.onBridgeResponse(ctx, new GetLightAttributeAndStateResponse("1", new CompactLightState(true, 100, 200, 254, null, LightState.MODE_HS, null, null, true)));
+        state.onLightEvent(ctx, "1", new LightState(false, null, null, null, null, null, null, null, null), 3);
+        CompactLightState s = ctx.getLightStates().get(ctx.getLightStates().size() - 1);
+        assertFalse(s.getOn());
+        assertEquals(100, (int)s.getHue());
+        assertTrue(s.isReachable());
+        assertEquals(1, ctx.getLightStateChangeCount());
+
+        // xy color changes without coordinates need the full state
+        LightState xy = new LightState(null, null, null, null, null, LightState.MODE_XY, null, null, null);
+        state.onLightEvent(ctx, "1", xy, 4);
+        assertEquals(2, ctx.getGetLightAttributeAndStateRequests().size());
+        assertEquals(LightState.MODE_HS, ctx.getLightStates().get(ctx.getLightStates().size() - 1).getColorMode());
+        // the event itself isn't modified
+        assertEquals(LightState.MODE_XY, xy.getColorMode());
+
+        // but ones with coordinates are applied as they are
+        xy = new LightState(null, null, null, null, null, LightState.MODE_XY, null, null, null);
+        xy.setXY(0.4f, 0.5f);
+        state.onLightEvent(ctx, "1", xy, 5);
+        assertEquals(2, ctx.getGetLightAttributeAndStateRequests().size());
+        s = ctx.getLightStates().get(ctx.getLightStates().size() - 1);
+        assertTrue(s.hasColorXY());
+        assertEquals(0.4f, s.getX(), 0.0f);
+    }
+
+    @Test
+    public void testOnSetLightStateFailure() {
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+        assertTrue(state.onBridgeRequestFailure(ctx, new SetLightStateRequest("1", new LightState(true, null, null, null, null, null, null, null, null)), new HueTimeoutException("timeout")) instanceof RunningState);
+        assertEquals(1, ctx.getGetLightAttributeAndStateRequests().size());
+        assertEquals("1", ctx.getGetLightAttributeAndStateRequests().get(0).getId());
+    }
+
+    @Test
+    public void testOnSetGroupActionFailure() {
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+        SetGroupActionRequest request = new SetGroupActionRequest("2", new LightState(true, null, null, null, null, null, null, null, null), Arrays.asList("1", "3"));
+        assertTrue(state.onBridgeRequestFailure(ctx, request, new HueTimeoutException("timeout")) instanceof RunningState);
+        assertEquals(2, ctx.getGetLightAttributeAndStateRequests().size());
+        assertEquals("1", ctx.getGetLightAttributeAndStateRequests().get(0).getId());
+        assertEquals("3", ctx.getGetLightAttributeAndStateRequests().get(1).getId());
+    }
+
+    @Test
+    public void testShadowedLightState() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+
+        CompactLightState on = new CompactLightState(true, null, null, 254, null, null, null, null, true);
+        CompactLightState off = new CompactLightState(false, null, null, 254, null, null, null, null, true);
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        assertEquals(1, ctx.getLightStates().size());
+
+        // state the bridge reports before catching up with a command is ignored
+        ctx.setShadowMatch("1", ShadowMatch.STALE);
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", off))));
+        assertEquals(1, ctx.getLightStates().size());
+        assertFalse(ctx.getPollResults().get(2));
+        assertEquals(1, ctx.getUnchangedLightStateCount());
+
+        // state that reflects the command is applied but isn't an external change
+        ctx.setShadowMatch("1", ShadowMatch.CONFIRMED);
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", off))));
+        assertEquals(2, ctx.getLightStates().size());
+        assertFalse(ctx.getLightStates().get(1).getOn());
+        assertFalse(ctx.getPollResults().get(3));
+
+        // changes made elsewhere are still changes
+        ctx.setShadowMatch("1", ShadowMatch.NONE);
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", on))));
+        assertEquals(3, ctx.getLightStates().size());
+        assertTrue(ctx.getPollResults().get(4));
+    }
+
+    @Test
+    public void testOnSetLightStateResponse() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        ctx.createHueLight(new Light("1", "Light1", "Model", null));
+        RunningState state = new RunningState();
+
+        // results for a light without a known state can't be applied
+        state.onBridgeResponse(ctx, new SetLightStateResponse("1", new LightState(false, null, null, null, null, null, null, null, null)));
+        assertEquals(0, ctx.getLightStates().size());
+
+        // otherwise they're merged into it right away
+        state.onBridgeResponse(ctx, new GetLightAttributeAndStateResponse("1", new CompactLightState(true, 100, 200, 254, null, LightState.MODE_HS, "none", null, true)));
+        state.onBridgeResponse(ctx, new SetLightStateResponse("1", new LightState(false, null, null, 100, null, null, null, null, null)));
+        assertEquals(2, ctx.getLightStates().size());
+        CompactLightState s = ctx.getLightStates().get(1);
+        assertFalse(s.getOn());
+        assertEquals(100, (int)s.getBrightness());
+        assertEquals(100, (int)s.getHue());
+        assertTrue(s.isReachable());
+
+        // and the next poll that agrees isn't a change
+        state.onBridgeResponse(ctx, new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", CompactLightState.of(s.toLightState())))));
+        assertFalse(ctx.getPollResults().get(0));
+        assertEquals(2, ctx.getLightStates().size());
+    }
+
+    @Test
+    public void testOlderLightStateIsIgnored() {
+        MockDeviceManager dm = new MockDeviceManager();
+        HuePlugin plugin = new HuePlugin("plugin", "version", "description");
+        plugin.setDeviceManager(dm);
+        MockStateContext ctx = new MockStateContext(plugin, "host");
+        RunningState state = new RunningState();
+        ctx.createHueLight(new Light("1", "Light1", "Model", null));
+
+        CompactLightState on = new CompactLightState(true, 100, 200, 254, null, LightState.MODE_HS, null, null, true);
+        CompactLightState off = new CompactLightState(false, 100, 200, 254, null, LightState.MODE_HS, null, null, true);
+
+        GetLightAttributeAndStateResponse newer = new GetLightAttributeAndStateResponse("1", on);
+        newer.setSequence(5);
+        state.onBridgeResponse(ctx, newer);
+        assertEquals(1, ctx.getLightStates().size());
+
+        // a response to an earlier request that arrives late is ignored
+        GetLightAttributeAndStateResponse older = new GetLightAttributeAndStateResponse("1", off);
+        older.setSequence(3);
+        state.onBridgeResponse(ctx, older);
+        assertEquals(1, ctx.getLightStates().size());
+        assertEquals(0, ctx.getLightStateChangeCount());
+
+        // and doesn't become the baseline: events merge into the newer state and the next poll isn't a change
+        state.onLightEvent(ctx, "1", new LightState(null, null, null, 100, null, null, null, null, null), 6);
+        CompactLightState s = ctx.getLightStates().get(ctx.getLightStates().size() - 1);
+        assertTrue(s.getOn());
+        assertEquals(100, (int)s.getBrightness());
+        GetAllLightsResponse poll = new GetAllLightsResponse(Collections.singletonList(new Light("1", "Light1", "Model", s)));
+        poll.setSequence(7);
+        state.onBridgeResponse(ctx, poll);
+        assertFalse(ctx.getPollResults().get(0));
+    }
 }